@@ -0,0 +1,38 @@
+package com.pmattioli.diffresolver.benchmark;
+
+import java.util.Random;
+
+/**
+ * Builds the payloads the benchmarks run on, always from the same seed so results can be compared between runs.
+ */
+final class BenchmarkData {
+
+    private static final long SEED = 42;
+
+    private BenchmarkData() {
+    }
+
+    static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(SEED).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * @param data the data to copy
+     * @param density the fraction of bytes to alter, evenly spread over the copy
+     * @return a copy of data where one byte out of every {@code 1 / density} differs, and at least one does
+     */
+    static byte[] alter(byte[] data, double density) {
+        byte[] altered = data.clone();
+        if (density <= 0) {
+            return altered;
+        }
+        int stride = (int) Math.max(1, Math.round(1 / density));
+        for (int i = new Random(SEED).nextInt(Math.min(stride, altered.length)); i < altered.length; i += stride) {
+            altered[i]++;
+        }
+        return altered;
+    }
+
+}
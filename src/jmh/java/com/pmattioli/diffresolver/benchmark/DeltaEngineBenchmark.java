@@ -0,0 +1,91 @@
+package com.pmattioli.diffresolver.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pmattioli.diffresolver.service.delta.BlockMatchingDeltaEngine;
+import com.pmattioli.diffresolver.service.delta.Delta;
+import com.pmattioli.diffresolver.service.delta.DeltaEngine;
+
+import io.sigpipe.jbsdiff.DefaultDiffSettings;
+import io.sigpipe.jbsdiff.Diff;
+
+/**
+ * Compares {@code BlockMatchingDeltaEngine} with javaxdelta, an xdelta-style block matcher, and jbsdiff, a Java port of
+ * bsdiff based on suffix sorting. The right side is the left side with a few bytes inserted or deleted every 10000
+ * bytes, so it has a different size.
+ *
+ * <p>Both libraries encode a patch rather than report operations, and jbsdiff always compresses it, here with gzip, so
+ * their timings include some work the engine doesn't do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeltaEngineBenchmark {
+
+    private static final int BYTES_PER_EDIT = 10_000;
+    private static final int MAX_EDIT_LENGTH = 8;
+
+    @Param({ "65536", "1048576", "8388608" })
+    public int size;
+
+    private final DeltaEngine deltaEngine = new BlockMatchingDeltaEngine();
+    private final com.nothome.delta.Delta javaxdelta = new com.nothome.delta.Delta();
+    private final DefaultDiffSettings jbsdiffSettings = new DefaultDiffSettings("gz");
+    private byte[] left;
+    private byte[] right;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        left = new byte[size];
+        random.nextBytes(left);
+
+        ByteArrayOutputStream edited = new ByteArrayOutputStream(size + size / BYTES_PER_EDIT * MAX_EDIT_LENGTH);
+        for (int from = 0; from < size; ) {
+            int to = Math.min(size, from + BYTES_PER_EDIT);
+            edited.write(left, from, to - from);
+            byte[] inserted = new byte[random.nextInt(MAX_EDIT_LENGTH)];
+            random.nextBytes(inserted);
+            edited.write(inserted, 0, inserted.length);
+            from = to + random.nextInt(MAX_EDIT_LENGTH);
+        }
+        right = edited.toByteArray();
+    }
+
+    @Benchmark
+    public Delta blockMatching() {
+        Delta.Builder delta = Delta.builder(left.length, right.length);
+        deltaEngine.delta(left, right, delta);
+        return delta.build();
+    }
+
+    @Benchmark
+    public byte[] javaxdelta() throws Exception {
+        return javaxdelta.compute(left, right);
+    }
+
+    @Benchmark
+    public byte[] jbsdiff() throws Exception {
+        ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        Diff.diff(left, right, patch, jbsdiffSettings);
+        return patch.toByteArray();
+    }
+
+}
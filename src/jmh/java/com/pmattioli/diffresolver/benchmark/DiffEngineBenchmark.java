@@ -0,0 +1,66 @@
+package com.pmattioli.diffresolver.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pmattioli.diffresolver.service.DiffResult;
+import com.pmattioli.diffresolver.service.engine.ByteByByteDiffEngine;
+import com.pmattioli.diffresolver.service.engine.DiffEngine;
+import com.pmattioli.diffresolver.service.engine.WordDiffEngine;
+
+/**
+ * Compares the {@code DiffEngine} implementations on mostly-equal inputs, where only one byte out of every 10000
+ * differs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiffEngineBenchmark {
+
+    private static final int BYTES_PER_DIFFERENCE = 10_000;
+
+    @Param({ "byte", "word" })
+    public String engine;
+
+    @Param({ "1024", "1048576", "16777216" })
+    public int size;
+
+    private DiffEngine diffEngine;
+    private byte[] left;
+    private byte[] right;
+
+    @Setup
+    public void setUp() {
+        diffEngine = "word".equals(engine) ? new WordDiffEngine() : new ByteByByteDiffEngine();
+        Random random = new Random(42);
+        left = new byte[size];
+        random.nextBytes(left);
+        right = left.clone();
+        for (int i = random.nextInt(BYTES_PER_DIFFERENCE); i < size; i += BYTES_PER_DIFFERENCE) {
+            right[i]++;
+        }
+    }
+
+    @Benchmark
+    public DiffResult diffMostlyEqual() {
+        DiffResult.Builder result = DiffResult.builder(size);
+        diffEngine.diff(left, right, 0, size, result);
+        return result.build();
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.pmattioli.diffresolver.benchmark;
+
+import java.time.Clock;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pmattioli.diffresolver.service.Side;
+import com.pmattioli.diffresolver.service.store.BoundedDiffStore;
+import com.pmattioli.diffresolver.service.store.ConcurrentDiffStore;
+import com.pmattioli.diffresolver.service.store.DiffSide;
+import com.pmattioli.diffresolver.service.store.DiffSides;
+import com.pmattioli.diffresolver.service.store.DiffStore;
+
+/**
+ * Measures {@code DiffStore} puts and gets on random diff IDs, from one thread, from several threads doing the same
+ * operation, and from readers and writers running at the same time. The store only holds references to the sides, so
+ * their size doesn't matter here; the number of diff IDs does, through contention and cache misses. The bounded store
+ * is given a budget its diffs never exceed, so it measures the cost of accounting and tracking accesses, not evictions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiffStoreBenchmark {
+
+    private static final int THREADS = 4;
+
+    @Param({ "concurrent", "bounded" })
+    public String store;
+
+    @Param({ "1000", "1000000" })
+    public int diffIds;
+
+    private DiffStore diffStore;
+    private DiffSide diffSide;
+
+    @Setup
+    public void setUp() {
+        diffStore = "bounded".equals(store)
+                ? new BoundedDiffStore(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE / 2, 1000, Clock.systemUTC())
+                : new ConcurrentDiffStore();
+        diffSide = DiffSide.of(BenchmarkData.randomBytes(1024));
+        for (int diffId = 0; diffId < diffIds; diffId++) {
+            diffStore.put(diffId, Side.LEFT, diffSide);
+            diffStore.put(diffId, Side.RIGHT, diffSide);
+        }
+    }
+
+    @Benchmark
+    public void put() {
+        doPut();
+    }
+
+    @Benchmark
+    public DiffSides get() {
+        return doGet();
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public void putConcurrently() {
+        doPut();
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public DiffSides getConcurrently() {
+        return doGet();
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void writer() {
+        doPut();
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(THREADS - 1)
+    public DiffSides reader() {
+        return doGet();
+    }
+
+    private void doPut() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        diffStore.put(random.nextInt(diffIds), random.nextBoolean() ? Side.LEFT : Side.RIGHT, diffSide);
+    }
+
+    private DiffSides doGet() {
+        return diffStore.get(ThreadLocalRandom.current().nextInt(diffIds));
+    }
+
+}
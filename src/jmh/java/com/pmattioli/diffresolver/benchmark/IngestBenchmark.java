@@ -0,0 +1,76 @@
+package com.pmattioli.diffresolver.benchmark;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pmattioli.diffresolver.service.codec.StrictBase64Decoder;
+import com.pmattioli.diffresolver.service.impl.SimpleDiffResolverService;
+
+/**
+ * Measures the ingest path of a side: decoding and validating its Base64 payload, and setting it through the service,
+ * which also computes its digest and hash tree. The JDK decoder, which doesn't validate as strictly, is a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class IngestBenchmark {
+
+    private static final int DIFF_ID = 1;
+
+    @Param({ "1024", "1048576", "16777216", "268435456" })
+    public int size;
+
+    private String encodedData;
+    private String invalidData;
+    private SimpleDiffResolverService diffResolver;
+
+    @Setup
+    public void setUp() {
+        encodedData = Base64.getEncoder().encodeToString(BenchmarkData.randomBytes(size));
+        invalidData = encodedData.substring(0, encodedData.length() - 4) + "AA*A";
+        diffResolver = new SimpleDiffResolverService();
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return StrictBase64Decoder.decode(encodedData);
+    }
+
+    /**
+     * Invalid data is only detected at its very end, so the whole payload is validated before it's rejected.
+     */
+    @Benchmark
+    public Object validateInvalid() {
+        try {
+            return StrictBase64Decoder.decode(invalidData);
+        } catch (IllegalArgumentException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public byte[] decodeWithJdkBaseline() {
+        return Base64.getDecoder().decode(encodedData);
+    }
+
+    @Benchmark
+    public long setSide() {
+        return diffResolver.setLeft(DIFF_ID, encodedData);
+    }
+
+}
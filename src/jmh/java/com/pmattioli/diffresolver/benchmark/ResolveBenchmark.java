@@ -0,0 +1,75 @@
+package com.pmattioli.diffresolver.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pmattioli.diffresolver.service.DiffResult;
+import com.pmattioli.diffresolver.service.engine.ByteByByteDiffEngine;
+import com.pmattioli.diffresolver.service.engine.WordDiffEngine;
+import com.pmattioli.diffresolver.service.impl.SimpleDiffResolverService;
+import com.pmattioli.diffresolver.service.store.ConcurrentDiffStore;
+import com.pmattioli.diffresolver.service.store.SideBufferAllocator;
+
+/**
+ * Measures {@code resolve} end to end, without a result cache, for every engine, payload size and density of
+ * differences. Equal sides take the digest fast path, and sides with few differences skip the chunks their hash trees
+ * tell apart as equal, so the 0% and 0.01% densities measure those rather than a full scan. Sides are either held on
+ * the heap or in memory-mapped temporary files, which the engines compare in place.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ResolveBenchmark {
+
+    private static final int DIFF_ID = 1;
+
+    @Param({ "byte", "word" })
+    public String engine;
+
+    @Param({ "1024", "1048576", "16777216", "268435456" })
+    public int size;
+
+    @Param({ "0", "0.0001", "0.5" })
+    public double density;
+
+    @Param({ "heap", "mapped" })
+    public String storage;
+
+    private SimpleDiffResolverService diffResolver;
+
+    @Setup
+    public void setUp() throws Exception {
+        diffResolver = new SimpleDiffResolverService(new ConcurrentDiffStore(),
+                "word".equals(engine) ? new WordDiffEngine() : new ByteByByteDiffEngine());
+        if ("mapped".equals(storage)) {
+            diffResolver.setSideBufferAllocator(new SideBufferAllocator(SideBufferAllocator.Mode.MAPPED, 0,
+                    Paths.get(System.getProperty("java.io.tmpdir"))));
+        }
+        byte[] left = BenchmarkData.randomBytes(size);
+        byte[] right = BenchmarkData.alter(left, density);
+        diffResolver.setLeft(DIFF_ID, new ByteArrayInputStream(left), size);
+        diffResolver.setRight(DIFF_ID, new ByteArrayInputStream(right), size);
+    }
+
+    @Benchmark
+    public DiffResult resolve() {
+        return diffResolver.resolve(DIFF_ID);
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.pmattioli.diffresolver.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.pmattioli.diffresolver.api.writer.BinaryDiffWriter;
+import com.pmattioli.diffresolver.api.writer.JsonDiffWriter;
+import com.pmattioli.diffresolver.service.DiffResult;
+
+/**
+ * Measures writing an already resolved diff in every response format, for every payload size and density of
+ * differences. The size of the output is printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ResponseBenchmark {
+
+    @Param({ "json", "offsets", "ranges" })
+    public String format;
+
+    @Param({ "1048576", "16777216" })
+    public int size;
+
+    @Param({ "0.0001", "0.5" })
+    public double density;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private DiffResult result;
+
+    @Setup
+    public void setUp() {
+        int step = (int) Math.max(1, Math.round(1 / density));
+        DiffResult.Builder builder = DiffResult.builder(size);
+        for (int index = step - 1; index < size; index += step) {
+            builder.addRange(index, 1);
+        }
+        result = builder.build();
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        return write(new CountingOutputStream());
+    }
+
+    private long write(CountingOutputStream output) throws IOException {
+        if ("json".equals(format)) {
+            try (JsonGenerator generator = jsonFactory.createGenerator(output)) {
+                JsonDiffWriter writer = new JsonDiffWriter(generator, size);
+                result.compare(writer);
+                writer.finish();
+            }
+        } else {
+            BinaryDiffWriter writer = new BinaryDiffWriter(output, size, "ranges".equals(format));
+            result.compare(writer);
+            writer.finish(null);
+        }
+        return output.bytes;
+    }
+
+    /**
+     * Discards what is written, counting its bytes.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.pmattioli.diffresolver.api.controller;
+
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.pmattioli.diffresolver.api.model.DiffDeltaResponse;
+import com.pmattioli.diffresolver.service.DeltaResolverService;
+
+@RestController
+@RequestMapping("/v1/diff")
+public class BinaryDeltaController {
+
+    private static final Logger LOG = Logger.getLogger(BinaryDeltaController.class.getName());
+
+    @Autowired
+    private DeltaResolverService deltaResolver;
+
+    /**
+     * Returns the copy, insert and delete operations that turn the left side into the right side, which unlike
+     * {@code BinaryDiffController.diff} may have different sizes.
+     */
+    @GetMapping("/{diff-id}/delta")
+    public ResponseEntity<DiffDeltaResponse> delta(@PathVariable(value = "diff-id") int diffId) {
+
+        LOG.info("Received delta request for ID " + diffId);
+
+        return new ResponseEntity<>(DiffDeltaResponse.of(deltaResolver.resolveDelta(diffId)), HttpStatus.OK);
+
+    }
+
+}
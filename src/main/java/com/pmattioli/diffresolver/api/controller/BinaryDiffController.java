@@ -1,21 +1,39 @@
 package com.pmattioli.diffresolver.api.controller;
 
-import java.util.Arrays;
+import java.io.IOException;
 import java.util.logging.Logger;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.Assert;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pmattioli.diffresolver.api.model.DiffApiRequest;
 import com.pmattioli.diffresolver.api.model.DiffApiResponse;
+import com.pmattioli.diffresolver.api.model.DiffEqualityResponse;
+import com.pmattioli.diffresolver.api.model.DiffSummaryResponse;
+import com.pmattioli.diffresolver.api.writer.DiffResponseFormat;
+import com.pmattioli.diffresolver.api.writer.DiffResponseWriter;
+import com.pmattioli.diffresolver.service.DiffComparison;
 import com.pmattioli.diffresolver.service.DiffResolverService;
+import com.pmattioli.diffresolver.service.MismatchSummary;
+import com.pmattioli.diffresolver.service.hash.XxHash64;
 
 @RestController
 @RequestMapping("/v1/diff")
@@ -23,9 +41,17 @@ public class BinaryDiffController {
 
     private static final Logger LOG = Logger.getLogger(BinaryDiffController.class.getName());
     private static final String SUCCESS_MESSAGE = "Data was added sucessfully for ID ";
+    private static final String PATCH_SUCCESS_MESSAGE = "Data was patched successfully for ID ";
+    private static final String EQUAL_HEADER = "X-Diff-Equal";
+    private static final String FIRST_OFFSET_HEADER = "X-Diff-First-Offset";
+    private static final int DEFAULT_SUMMARY_BLOCKS = 64;
+    private static final int MAX_SUMMARY_BLOCKS = 4096;
 
     @Autowired
     private DiffResolverService diffResolver;
+
+    @Autowired
+    private ObjectMapper objectMapper;
     
     @PostMapping("/{diff-id}/left")
     public ResponseEntity<DiffApiResponse> diffLeft(@RequestBody DiffApiRequest request,
@@ -33,9 +59,10 @@ public class BinaryDiffController {
 
         LOG.info("Received left-side data for ID " + diffId);
 
-        diffResolver.setLeft(diffId, request.getData());
+        long digest = diffResolver.setLeft(diffId, request.getData());
 
-        return new ResponseEntity(new DiffApiResponse(SUCCESS_MESSAGE + diffId), HttpStatus.OK);
+        return new ResponseEntity<>(new DiffApiResponse(SUCCESS_MESSAGE + diffId, XxHash64.toHex(digest)),
+                HttpStatus.OK);
     }
 
     @PostMapping("/{diff-id}/right")
@@ -44,33 +71,194 @@ public class BinaryDiffController {
 
         LOG.info("Received right-side data for ID " + diffId);
 
-        diffResolver.setRight(diffId, request.getData());
+        long digest = diffResolver.setRight(diffId, request.getData());
+
+        return new ResponseEntity<>(new DiffApiResponse(SUCCESS_MESSAGE + diffId, XxHash64.toHex(digest)),
+                HttpStatus.OK);
+
+    }
+
+    /**
+     * Raw binary variant of {@code diffLeft}: the request body is read straight into the diff store, without any JSON
+     * or Base64 decoding.
+     */
+    @PostMapping(value = "/{diff-id}/left", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<DiffApiResponse> diffLeftBinary(HttpServletRequest request,
+            @PathVariable(value = "diff-id") int diffId) throws IOException {
+
+        LOG.info("Received binary left-side data for ID " + diffId);
+
+        long digest = diffResolver.setLeft(diffId, request.getInputStream(), request.getContentLengthLong());
+
+        return new ResponseEntity<>(new DiffApiResponse(SUCCESS_MESSAGE + diffId, XxHash64.toHex(digest)),
+                HttpStatus.OK);
+    }
+
+    /**
+     * Raw binary variant of {@code diffRight}: the request body is read straight into the diff store, without any JSON
+     * or Base64 decoding.
+     */
+    @PostMapping(value = "/{diff-id}/right", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<DiffApiResponse> diffRightBinary(HttpServletRequest request,
+            @PathVariable(value = "diff-id") int diffId) throws IOException {
 
-        return new ResponseEntity(new DiffApiResponse(SUCCESS_MESSAGE + diffId), HttpStatus.OK);
+        LOG.info("Received binary right-side data for ID " + diffId);
 
+        long digest = diffResolver.setRight(diffId, request.getInputStream(), request.getContentLengthLong());
+
+        return new ResponseEntity<>(new DiffApiResponse(SUCCESS_MESSAGE + diffId, XxHash64.toHex(digest)),
+                HttpStatus.OK);
+    }
+
+    /**
+     * Overwrites the bytes of the left side starting at the offset (index + 1) given in the request, without changing
+     * its length.
+     */
+    @PatchMapping("/{diff-id}/left")
+    public ResponseEntity<DiffApiResponse> patchLeft(@RequestBody DiffApiRequest request,
+            @PathVariable(value = "diff-id") int diffId) {
+
+        LOG.info("Received left-side patch for ID " + diffId);
+
+        long digest = diffResolver.patchLeft(diffId, toIndex(request.getOffset()), request.getData());
+
+        return new ResponseEntity<>(new DiffApiResponse(PATCH_SUCCESS_MESSAGE + diffId, XxHash64.toHex(digest)),
+                HttpStatus.OK);
     }
 
+    /**
+     * Overwrites the bytes of the right side starting at the offset (index + 1) given in the request, without changing
+     * its length.
+     */
+    @PatchMapping("/{diff-id}/right")
+    public ResponseEntity<DiffApiResponse> patchRight(@RequestBody DiffApiRequest request,
+            @PathVariable(value = "diff-id") int diffId) {
+
+        LOG.info("Received right-side patch for ID " + diffId);
+
+        long digest = diffResolver.patchRight(diffId, toIndex(request.getOffset()), request.getData());
+
+        return new ResponseEntity<>(new DiffApiResponse(PATCH_SUCCESS_MESSAGE + diffId, XxHash64.toHex(digest)),
+                HttpStatus.OK);
+    }
+
+    /**
+     * Raw binary variant of {@code patchLeft}, taking the offset as a request parameter.
+     */
+    @PatchMapping(value = "/{diff-id}/left", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<DiffApiResponse> patchLeftBinary(HttpServletRequest request,
+            @PathVariable(value = "diff-id") int diffId,
+            @RequestParam(value = "offset") Integer offset) throws IOException {
+
+        LOG.info("Received binary left-side patch for ID " + diffId);
+
+        long digest = diffResolver.patchLeft(diffId, toIndex(offset), request.getInputStream(),
+                request.getContentLengthLong());
+
+        return new ResponseEntity<>(new DiffApiResponse(PATCH_SUCCESS_MESSAGE + diffId, XxHash64.toHex(digest)),
+                HttpStatus.OK);
+    }
+
+    /**
+     * Raw binary variant of {@code patchRight}, taking the offset as a request parameter.
+     */
+    @PatchMapping(value = "/{diff-id}/right", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<DiffApiResponse> patchRightBinary(HttpServletRequest request,
+            @PathVariable(value = "diff-id") int diffId,
+            @RequestParam(value = "offset") Integer offset) throws IOException {
+
+        LOG.info("Received binary right-side patch for ID " + diffId);
+
+        long digest = diffResolver.patchRight(diffId, toIndex(offset), request.getInputStream(),
+                request.getContentLengthLong());
+
+        return new ResponseEntity<>(new DiffApiResponse(PATCH_SUCCESS_MESSAGE + diffId, XxHash64.toHex(digest)),
+                HttpStatus.OK);
+    }
+
+    /**
+     * Streams the diff result while both sides are being compared, or a page of it, as described by
+     * {@code DiffResponseWriter}. The result is JSON unless one of the binary formats of {@code DiffResponseFormat} is
+     * preferred in the {@code Accept} header. Callers that don't need the offsets can use {@code diffEqual} or
+     * {@code diffSummary} instead.
+     */
     @GetMapping("/{diff-id}")
-    public ResponseEntity<DiffApiResponse> diff(@PathVariable(value = "diff-id") int diffId) {
+    public void diff(@PathVariable(value = "diff-id") int diffId,
+            @RequestParam(value = "start", required = false) Integer start,
+            @RequestParam(value = "end", required = false) Integer end,
+            @RequestParam(value = "from", required = false) Integer from,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            HttpServletResponse response) throws IOException {
 
         LOG.info("Received resolve request for ID " + diffId);
 
-        int[] resolvedOffsetsArray = diffResolver.resolveDiff(diffId);
+        DiffComparison comparison = diffResolver.prepare(diffId);
 
-        return new ResponseEntity<>(resolveToDiffApiResponse(resolvedOffsetsArray), HttpStatus.OK);
+        DiffResponseWriter.write(comparison, start, end, from, limit, DiffResponseFormat.negotiate(accept),
+                objectMapper.getFactory(), response);
 
     }
 
-    private DiffApiResponse resolveToDiffApiResponse(int[] offsetsArray) {
+    /**
+     * Tells whether both sides are equal, comparing them only up to their first mismatch, whose offset is returned
+     * as well.
+     */
+    @GetMapping(value = "/{diff-id}", params = "mode=equal")
+    public ResponseEntity<DiffEqualityResponse> diffEqual(@PathVariable(value = "diff-id") int diffId) {
+
+        LOG.info("Received equality check for ID " + diffId);
 
-        int[] filteredOffsetsArray = Arrays.stream(offsetsArray).filter(value -> value != 0).toArray();
+        DiffComparison comparison = diffResolver.prepare(diffId);
+        int firstIndex = comparison.findFirstMismatch();
 
-        if (filteredOffsetsArray.length == 0){
-            return new DiffApiResponse("Both data strings provided are equal");
-        }else{
-            return new DiffApiResponse(offsetsArray.length, Arrays.toString(filteredOffsetsArray));
+        return new ResponseEntity<>(new DiffEqualityResponse(comparison.getLength(),
+                firstIndex < 0 ? null : firstIndex + 1), HttpStatus.OK);
+    }
+
+    /**
+     * Body-less variant of {@code diffEqual}: the outcome is returned in the {@value #EQUAL_HEADER} header, along with
+     * the {@value #FIRST_OFFSET_HEADER} header when both sides differ.
+     */
+    @RequestMapping(value = "/{diff-id}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> diffEqualHead(@PathVariable(value = "diff-id") int diffId) {
+
+        LOG.info("Received equality check for ID " + diffId);
+
+        DiffComparison comparison = diffResolver.prepare(diffId);
+        int firstIndex = comparison.findFirstMismatch();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(EQUAL_HEADER, Boolean.toString(firstIndex < 0));
+        if (firstIndex >= 0) {
+            headers.set(FIRST_OFFSET_HEADER, Integer.toString(firstIndex + 1));
         }
+        return new ResponseEntity<>(headers, HttpStatus.OK);
+    }
+
+    /**
+     * Sums up the mismatches in a single pass over both sides, without collecting them: how many bytes differ, the
+     * first and last offsets, and a histogram of the differing bytes over at most {@code blocks} blocks.
+     */
+    @GetMapping(value = "/{diff-id}", params = "mode=summary")
+    public ResponseEntity<DiffSummaryResponse> diffSummary(@PathVariable(value = "diff-id") int diffId,
+            @RequestParam(value = "blocks", required = false) Integer blocks) {
+
+        LOG.info("Received summary request for ID " + diffId);
+
+        int maxBlocks = blocks == null ? DEFAULT_SUMMARY_BLOCKS : blocks;
+        Assert.isTrue(maxBlocks > 0 && maxBlocks <= MAX_SUMMARY_BLOCKS,
+                "Number of blocks has to be between 1 and " + MAX_SUMMARY_BLOCKS);
+        DiffComparison comparison = diffResolver.prepare(diffId);
+        MismatchSummary summary = new MismatchSummary(comparison.getLength(), maxBlocks);
+        comparison.compare(summary);
+
+        return new ResponseEntity<>(DiffSummaryResponse.of(summary), HttpStatus.OK);
+    }
 
+    private static int toIndex(Integer offset) {
+        Assert.isTrue(offset != null && offset >= 1, "Offset has to be positive");
+        return offset - 1;
     }
 
 }
@@ -0,0 +1,151 @@
+package com.pmattioli.diffresolver.api.controller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.Assert;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pmattioli.diffresolver.api.model.DiffBatchRequest;
+import com.pmattioli.diffresolver.api.model.DiffBatchResponse;
+import com.pmattioli.diffresolver.api.writer.JsonDiffWriter;
+import com.pmattioli.diffresolver.service.BatchItemResult;
+import com.pmattioli.diffresolver.service.DiffResolverService;
+import com.pmattioli.diffresolver.service.DiffResult;
+import com.pmattioli.diffresolver.service.Side;
+import com.pmattioli.diffresolver.service.SideUpload;
+import com.pmattioli.diffresolver.service.hash.XxHash64;
+import com.pmattioli.diffresolver.service.store.DiffStoreFullException;
+
+/**
+ * Uploads or resolves many diffs in a single request, reporting the outcome of every item separately: an invalid item
+ * gets the status it would have had on its own, without failing the rest of the batch.
+ */
+@RestController
+@RequestMapping("/v1/diff/batch")
+public class DiffBatchController {
+
+    private static final Logger LOG = Logger.getLogger(DiffBatchController.class.getName());
+    private static final String SUCCESS_MESSAGE = "Data was added sucessfully for ID ";
+
+    @Autowired
+    private DiffResolverService diffResolver;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${diffresolver.batch.max-items:10000}")
+    private int maxItems;
+
+    @PostMapping
+    public ResponseEntity<DiffBatchResponse> upload(@RequestBody DiffBatchRequest request) {
+
+        List<DiffBatchRequest.Item> items = request.getItems();
+        Assert.notNull(items, "Items can't be null");
+        Assert.isTrue(items.size() <= maxItems, "Batches can't hold more than " + maxItems + " items");
+        LOG.info("Received batch of " + items.size() + " sides");
+
+        DiffBatchResponse.Item[] responses = new DiffBatchResponse.Item[items.size()];
+        List<SideUpload> uploads = new ArrayList<>(items.size());
+        List<Integer> uploadIndexes = new ArrayList<>(items.size());
+        for (int index = 0; index < items.size(); index++) {
+            DiffBatchRequest.Item item = items.get(index);
+            Side side = toSide(item.getSide());
+            if (side == null) {
+                responses[index] = failure(item.getDiffId(), item.getSide(), "Side has to be left or right");
+            } else {
+                uploads.add(new SideUpload(item.getDiffId(), side, item.getData()));
+                uploadIndexes.add(index);
+            }
+        }
+
+        List<BatchItemResult<Long>> results = diffResolver.setSides(uploads);
+        for (int upload = 0; upload < results.size(); upload++) {
+            DiffBatchRequest.Item item = items.get(uploadIndexes.get(upload));
+            BatchItemResult<Long> result = results.get(upload);
+            responses[uploadIndexes.get(upload)] = result.isSuccessful()
+                    ? new DiffBatchResponse.Item(item.getDiffId(), item.getSide(), HttpStatus.OK.value(),
+                            SUCCESS_MESSAGE + item.getDiffId(), XxHash64.toHex(result.getValue()), null, null)
+                    : failure(item.getDiffId(), item.getSide(), result.getError());
+        }
+
+        return new ResponseEntity<>(new DiffBatchResponse(Arrays.asList(responses)), HttpStatus.OK);
+    }
+
+    /**
+     * Resolves every diff and streams the response, writing the offsets of each item with a {@code JsonDiffWriter}
+     * from the ranges of its result, so that neither the offsets of an item nor their text are held in memory.
+     */
+    @PostMapping("/resolve")
+    public void resolve(@RequestBody DiffBatchRequest request, HttpServletResponse response) throws IOException {
+
+        int[] diffIds = request.getDiffIds();
+        Assert.notNull(diffIds, "Diff IDs can't be null");
+        Assert.isTrue(diffIds.length <= maxItems, "Batches can't hold more than " + maxItems + " items");
+        LOG.info("Received batch of " + diffIds.length + " resolve requests");
+
+        List<BatchItemResult<DiffResult>> results = diffResolver.resolveAll(diffIds);
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("items");
+            for (int index = 0; index < results.size(); index++) {
+                BatchItemResult<DiffResult> result = results.get(index);
+                if (!result.isSuccessful()) {
+                    generator.writeObject(failure(diffIds[index], null, result.getError()));
+                } else {
+                    generator.writeStartObject();
+                    generator.writeNumberField("diffId", diffIds[index]);
+                    generator.writeNumberField("status", HttpStatus.OK.value());
+                    JsonDiffWriter writer = JsonDiffWriter.intoObject(generator, result.getValue().getLength());
+                    result.getValue().compare(writer);
+                    writer.finish();
+                    generator.writeEndObject();
+                }
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private static Side toSide(String side) {
+        if ("left".equalsIgnoreCase(side)) {
+            return Side.LEFT;
+        }
+        return "right".equalsIgnoreCase(side) ? Side.RIGHT : null;
+    }
+
+    private static DiffBatchResponse.Item failure(int diffId, String side, String message) {
+        return new DiffBatchResponse.Item(diffId, side, HttpStatus.PRECONDITION_FAILED.value(), message, null, null,
+                null);
+    }
+
+    /**
+     * Same as the other {@code failure}, with the status the exception would have had in a request of its own.
+     */
+    private static DiffBatchResponse.Item failure(int diffId, String side, RuntimeException error) {
+        if (error instanceof DiffStoreFullException) {
+            return new DiffBatchResponse.Item(diffId, side, HttpStatus.INSUFFICIENT_STORAGE.value(),
+                    error.getMessage(), null, null, null);
+        }
+        return failure(diffId, side, error.getMessage());
+    }
+
+}
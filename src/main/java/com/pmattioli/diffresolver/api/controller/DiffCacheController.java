@@ -0,0 +1,25 @@
+package com.pmattioli.diffresolver.api.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.pmattioli.diffresolver.service.cache.CacheStats;
+import com.pmattioli.diffresolver.service.cache.DiffResultCache;
+
+@RestController
+@RequestMapping("/v1/diff/cache")
+public class DiffCacheController {
+
+    @Autowired
+    private DiffResultCache diffResultCache;
+
+    @GetMapping("/stats")
+    public ResponseEntity<CacheStats> stats() {
+        return new ResponseEntity<>(diffResultCache.getStats(), HttpStatus.OK);
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.pmattioli.diffresolver.api.controller;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pmattioli.diffresolver.api.model.DiffApiResponse;
+import com.pmattioli.diffresolver.api.model.DiffJobResponse;
+import com.pmattioli.diffresolver.api.writer.DiffResponseWriter;
+import com.pmattioli.diffresolver.service.job.DiffJob;
+import com.pmattioli.diffresolver.service.job.DiffJobService;
+
+/**
+ * Resolves diffs in the background: a job is submitted for a diff ID, answered with {@code 202 Accepted} and the
+ * location of the job, which can then be polled until its result is available.
+ */
+@RestController
+@RequestMapping("/v1/diff")
+public class DiffJobController {
+
+    private static final Logger LOG = Logger.getLogger(DiffJobController.class.getName());
+    private static final String JOBS_PATH = "/v1/diff/jobs/";
+
+    @Autowired
+    private DiffJobService diffJobService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PostMapping("/{diff-id}/jobs")
+    public ResponseEntity<DiffJobResponse> submit(@PathVariable(value = "diff-id") int diffId) {
+
+        LOG.info("Received job request for ID " + diffId);
+
+        DiffJob job = diffJobService.submit(diffId);
+        String location = JOBS_PATH + job.getId();
+
+        return ResponseEntity.accepted().location(URI.create(location)).body(DiffJobResponse.of(job, location));
+    }
+
+    @GetMapping("/jobs/{job-id}")
+    public ResponseEntity<DiffJobResponse> status(@PathVariable(value = "job-id") long jobId) {
+
+        DiffJob job = diffJobService.get(jobId);
+        if (job == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        return new ResponseEntity<>(DiffJobResponse.of(job, JOBS_PATH + jobId), HttpStatus.OK);
+    }
+
+    /**
+     * Streams the result of a job that is done, or a page of it, exactly like {@code BinaryDiffController.diff}. Jobs
+     * that aren't done yet are answered with {@code 202 Accepted} and their status.
+     */
+    @GetMapping("/jobs/{job-id}/result")
+    public void result(@PathVariable(value = "job-id") long jobId,
+            @RequestParam(value = "start", required = false) Integer start,
+            @RequestParam(value = "end", required = false) Integer end,
+            @RequestParam(value = "from", required = false) Integer from,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            HttpServletResponse response) throws IOException {
+
+        DiffJob job = diffJobService.get(jobId);
+        if (job == null) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        switch (job.getStatus()) {
+            case DONE:
+                DiffResponseWriter.write(job.getResult(), start, end, from, limit, objectMapper.getFactory(),
+                        response);
+                break;
+            case FAILED:
+                writeJson(response, HttpStatus.INTERNAL_SERVER_ERROR, new DiffApiResponse(job.getError()));
+                break;
+            default:
+                writeJson(response, HttpStatus.ACCEPTED, DiffJobResponse.of(job, JOBS_PATH + jobId));
+        }
+    }
+
+    private void writeJson(HttpServletResponse response, HttpStatus status, Object body) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+
+}
@@ -1,17 +1,22 @@
 package com.pmattioli.diffresolver.api.exception;
 
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.ZipException;
 
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
 import com.pmattioli.diffresolver.api.model.DiffApiResponse;
+import com.pmattioli.diffresolver.service.codec.PayloadTooLargeException;
+import com.pmattioli.diffresolver.service.store.DiffStoreFullException;
 
 @ControllerAdvice
 public class DiffApiResponseEntityExceptionHandler extends ResponseEntityExceptionHandler {
@@ -24,4 +29,45 @@ public class DiffApiResponseEntityExceptionHandler extends ResponseEntityExcepti
         return handleExceptionInternal(ex, new DiffApiResponse(ex.getMessage()),
                 new HttpHeaders(), HttpStatus.PRECONDITION_FAILED, request);
     }
+
+    @ExceptionHandler(value = { ZipException.class })
+    protected ResponseEntity<Object> handleCorruptBody(ZipException ex, WebRequest request) {
+        LOG.log(Level.WARNING, "Corrupt compressed body: " + ex.getMessage());
+        return handleExceptionInternal(ex, new DiffApiResponse("Corrupt compressed body: " + ex.getMessage()),
+                new HttpHeaders(), HttpStatus.BAD_REQUEST, request);
+    }
+
+    @ExceptionHandler(value = { PayloadTooLargeException.class })
+    protected ResponseEntity<Object> handleTooLarge(PayloadTooLargeException ex, WebRequest request) {
+        LOG.log(Level.WARNING, "Request rejected: " + ex.getMessage());
+        return handleExceptionInternal(ex, new DiffApiResponse(ex.getMessage()),
+                new HttpHeaders(), HttpStatus.PAYLOAD_TOO_LARGE, request);
+    }
+
+    /**
+     * JSON bodies are read by the message converters, which report a body that turned out to be too large as
+     * unreadable.
+     */
+    @Override
+    protected ResponseEntity<Object> handleHttpMessageNotReadable(HttpMessageNotReadableException ex,
+            HttpHeaders headers, HttpStatus status, WebRequest request) {
+        if (ex.getCause() instanceof PayloadTooLargeException) {
+            return handleTooLarge((PayloadTooLargeException) ex.getCause(), request);
+        }
+        return super.handleHttpMessageNotReadable(ex, headers, status, request);
+    }
+
+    @ExceptionHandler(value = { RejectedExecutionException.class })
+    protected ResponseEntity<Object> handleRejection(RejectedExecutionException ex, WebRequest request) {
+        LOG.log(Level.WARNING, "Request rejected: " + ex.getMessage());
+        return handleExceptionInternal(ex, new DiffApiResponse(ex.getMessage()),
+                new HttpHeaders(), HttpStatus.TOO_MANY_REQUESTS, request);
+    }
+
+    @ExceptionHandler(value = { DiffStoreFullException.class })
+    protected ResponseEntity<Object> handleStoreFull(DiffStoreFullException ex, WebRequest request) {
+        LOG.log(Level.WARNING, "Request rejected: " + ex.getMessage());
+        return handleExceptionInternal(ex, new DiffApiResponse(ex.getMessage()),
+                new HttpHeaders(), HttpStatus.INSUFFICIENT_STORAGE, request);
+    }
 }
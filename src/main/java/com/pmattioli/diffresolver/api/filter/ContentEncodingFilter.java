@@ -0,0 +1,568 @@
+package com.pmattioli.diffresolver.api.filter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.Assert;
+
+import com.pmattioli.diffresolver.service.codec.BufferPool;
+import com.pmattioli.diffresolver.service.codec.PayloadTooLargeException;
+
+/**
+ * Decompresses request bodies and compresses response bodies, as streams, so neither is ever held whole in memory.
+ *
+ * <p>Requests with a {@code gzip} or {@code deflate} {@code Content-Encoding} are read through an inflating stream, so
+ * controllers, and the JSON parser or the diff store behind them, read the decompressed bytes as they're inflated.
+ * Their length is unknown up front, so they're reported as having none, and the inflated bytes are counted instead:
+ * reading more than {@code maxInflatedSize} of them fails with a {@code PayloadTooLargeException}, so a small
+ * compressed body can't make the server hold gigabytes of inflated data. Other encodings are answered with
+ * {@code 415 Unsupported Media Type}.
+ *
+ * <p>Responses are compressed with {@code gzip}, or {@code deflate}, when the {@code Accept-Encoding} header allows it.
+ * The first {@code minResponseSize} bytes are buffered: responses that end before that are sent as they are, with their
+ * length, since compressing them would save less than it costs, and longer ones are compressed from there on while
+ * they're written. Explicit flushes of compressed responses reach the client, but flushes of a response that's still
+ * being buffered are deferred until that decision is made.
+ * @author pmattioli
+ */
+public class ContentEncodingFilter implements Filter {
+
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
+    private static final String IDENTITY = "identity";
+    private static final int STREAM_BUFFER_SIZE = 8192;
+
+    private final int minResponseSize;
+    private final int compressionLevel;
+    private final long maxInflatedSize;
+
+    /**
+     * @param minResponseSize the size, in bytes, from which responses are compressed
+     * @param compressionLevel the compression level, from 0 to 9
+     * @param maxInflatedSize the largest size, in bytes, request bodies can inflate to
+     */
+    public ContentEncodingFilter(int minResponseSize, int compressionLevel, long maxInflatedSize) {
+        Assert.isTrue(minResponseSize >= 0, "Minimum response size can't be negative");
+        Assert.isTrue(compressionLevel >= Deflater.NO_COMPRESSION && compressionLevel <= Deflater.BEST_COMPRESSION,
+                "Compression level has to be between 0 and 9");
+        Assert.isTrue(maxInflatedSize > 0, "Maximum inflated size has to be positive");
+        this.minResponseSize = minResponseSize;
+        this.compressionLevel = compressionLevel;
+        this.maxInflatedSize = maxInflatedSize;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        DecompressingRequest decompressingRequest = null;
+        String contentEncoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        if (contentEncoding != null && !IDENTITY.equalsIgnoreCase(contentEncoding.trim())) {
+            String encoding = contentEncoding.trim().toLowerCase();
+            if (!GZIP.equals(encoding) && !DEFLATE.equals(encoding)) {
+                response.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE,
+                        "Unsupported content encoding: " + contentEncoding);
+                return;
+            }
+            decompressingRequest = new DecompressingRequest(request, GZIP.equals(encoding));
+            request = decompressingRequest;
+        }
+
+        CompressingResponse compressingResponse = findCompressingResponse(response);
+        if (compressingResponse == null) {
+            String encoding = negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (encoding != null) {
+                compressingResponse = new CompressingResponse(response, GZIP.equals(encoding));
+                response = compressingResponse;
+            }
+        }
+
+        chain.doFilter(request, response);
+
+        if (!request.isAsyncStarted()) {
+            if (decompressingRequest != null) {
+                decompressingRequest.release();
+            }
+            if (compressingResponse != null) {
+                compressingResponse.finish();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * Responses started asynchronously come back wrapped on the dispatches that follow, and go on with the same
+     * compression.
+     */
+    private static CompressingResponse findCompressingResponse(ServletResponse response) {
+        while (response instanceof HttpServletResponseWrapper) {
+            if (response instanceof CompressingResponse) {
+                return (CompressingResponse) response;
+            }
+            response = ((HttpServletResponseWrapper) response).getResponse();
+        }
+        return null;
+    }
+
+    /**
+     * @return {@code gzip} or {@code deflate}, preferring whichever has the highest quality and then {@code gzip}, or
+     * {@code null} when neither is acceptable
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        double gzipQuality = -1;
+        double deflateQuality = -1;
+        double wildcardQuality = 0;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase();
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (GZIP.equals(coding)) {
+                gzipQuality = quality;
+            } else if (DEFLATE.equals(coding)) {
+                deflateQuality = quality;
+            } else if ("*".equals(coding)) {
+                wildcardQuality = quality;
+            }
+        }
+        gzipQuality = gzipQuality < 0 ? wildcardQuality : gzipQuality;
+        deflateQuality = deflateQuality < 0 ? wildcardQuality : deflateQuality;
+        if (gzipQuality <= 0 && deflateQuality <= 0) {
+            return null;
+        }
+        return gzipQuality >= deflateQuality ? GZIP : DEFLATE;
+    }
+
+    /**
+     * Request whose body is inflated as it's read.
+     */
+    private final class DecompressingRequest extends HttpServletRequestWrapper {
+
+        private final boolean gzip;
+        private ServletInputStream input;
+
+        private DecompressingRequest(HttpServletRequest request, boolean gzip) {
+            super(request);
+            this.gzip = gzip;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (input == null) {
+                ServletInputStream compressed = super.getInputStream();
+                input = new InflatingInputStream(compressed,
+                        gzip ? new GZIPInputStream(compressed, STREAM_BUFFER_SIZE) : new InflaterInputStream(compressed,
+                                new Inflater(), STREAM_BUFFER_SIZE) {
+                                    @Override
+                                    public void close() throws IOException {
+                                        try {
+                                            super.close();
+                                        } finally {
+                                            inf.end();
+                                        }
+                                    }
+                                });
+            }
+            return input;
+        }
+
+        /**
+         * Releases the inflater once the request has been handled, whether or not its body was read to the end.
+         */
+        private void release() throws IOException {
+            if (input != null) {
+                input.close();
+            }
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)
+                    || HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)) {
+                return null;
+            }
+            return super.getHeader(name);
+        }
+
+    }
+
+    /**
+     * Stream of the inflated body, failing as soon as more than {@code maxInflatedSize} bytes have been inflated.
+     */
+    private final class InflatingInputStream extends ServletInputStream {
+
+        private final ServletInputStream compressed;
+        private final InputStream inflated;
+        private long inflatedSize;
+        private boolean finished;
+
+        private InflatingInputStream(ServletInputStream compressed, InputStream inflated) {
+            this.compressed = compressed;
+            this.inflated = inflated;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = inflated.read();
+            finished = read < 0;
+            count(finished ? 0 : 1);
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = inflated.read(buffer, offset, length);
+            finished = read < 0;
+            count(Math.max(read, 0));
+            return read;
+        }
+
+        private void count(int read) throws PayloadTooLargeException {
+            inflatedSize += read;
+            if (inflatedSize > maxInflatedSize) {
+                throw new PayloadTooLargeException("Decompressed body is larger than " + maxInflatedSize + " bytes");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflated.close();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return compressed.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            throw new IllegalStateException("Compressed bodies can only be read with blocking I/O");
+        }
+
+    }
+
+    /**
+     * Response buffering its first {@code minResponseSize} bytes, and compressing the rest of it, if any, along with
+     * them. The buffer is taken from the shared {@code BufferPool} on the first write, and released as soon as it has
+     * been sent or compressed.
+     */
+    private final class CompressingResponse extends HttpServletResponseWrapper {
+
+        private final boolean gzip;
+        private byte[] buffer;
+        private int buffered;
+        private boolean passThrough;
+        private boolean finished;
+        private DeflaterOutputStream compressor;
+        private CompressingOutputStream output;
+        private PrintWriter writer;
+
+        private CompressingResponse(HttpServletResponse response, boolean gzip) {
+            super(response);
+            this.gzip = gzip;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            Assert.state(writer == null, "getWriter() has already been called");
+            if (output == null) {
+                output = new CompressingOutputStream(super.getOutputStream());
+            }
+            return output;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                ServletOutputStream stream = getOutputStream();
+                writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (output != null) {
+                output.flush();
+            }
+            if (passThrough || compressor != null) {
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void setContentLength(int length) {
+            setContentLengthLong(length);
+        }
+
+        @Override
+        public void setContentLengthLong(long length) {
+            if (compressor == null && length >= 0 && length < minResponseSize) {
+                passThrough();
+                super.setContentLengthLong(length);
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (!interceptHeader(name, value)) {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (!interceptHeader(name, value)) {
+                super.addHeader(name, value);
+            }
+        }
+
+        private boolean interceptHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                try {
+                    setContentLengthLong(Long.parseLong(value));
+                } catch (NumberFormatException e) {
+                    // Ignored, like containers do
+                }
+                return true;
+            }
+            if (HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name) && compressor == null) {
+                passThrough();
+            }
+            return false;
+        }
+
+        /**
+         * Gives up on compressing the response, when its length is known to be below the minimum size or it's already
+         * encoded, sending what has been buffered so far.
+         */
+        private void passThrough() {
+            if (passThrough) {
+                return;
+            }
+            passThrough = true;
+            if (buffered > 0) {
+                try {
+                    output.target.write(buffer, 0, buffered);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            releaseBuffer();
+        }
+
+        @Override
+        public void sendError(int status) throws IOException {
+            discard();
+            super.sendError(status);
+        }
+
+        @Override
+        public void sendError(int status, String message) throws IOException {
+            discard();
+            super.sendError(status, message);
+        }
+
+        @Override
+        public void resetBuffer() {
+            Assert.state(compressor == null, "The response has already been committed");
+            releaseBuffer();
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            Assert.state(compressor == null, "The response has already been committed");
+            releaseBuffer();
+            passThrough = false;
+            super.reset();
+            super.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        private void discard() {
+            releaseBuffer();
+            finished = true;
+        }
+
+        private void releaseBuffer() {
+            BufferPool.SHARED.release(buffer);
+            buffer = null;
+            buffered = 0;
+        }
+
+        /**
+         * Sends what's left of the response: the buffered bytes as they are, or the end of the compressed stream.
+         */
+        private void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (compressor != null) {
+                compressor.close();
+            } else if (buffered > 0) {
+                super.setContentLength(buffered);
+                output.target.write(buffer, 0, buffered);
+            }
+            releaseBuffer();
+        }
+
+        private OutputStream compressor() throws IOException {
+            if (compressor == null) {
+                super.setHeader(HttpHeaders.CONTENT_ENCODING, gzip ? GZIP : DEFLATE);
+                if (gzip) {
+                    compressor = new GZIPOutputStream(output.target, STREAM_BUFFER_SIZE, true) {
+                        {
+                            def.setLevel(compressionLevel);
+                        }
+                    };
+                } else {
+                    compressor = new DeflaterOutputStream(output.target, new Deflater(compressionLevel),
+                            STREAM_BUFFER_SIZE, true) {
+                        @Override
+                        public void close() throws IOException {
+                            try {
+                                super.close();
+                            } finally {
+                                def.end();
+                            }
+                        }
+                    };
+                }
+                if (buffered > 0) {
+                    compressor.write(buffer, 0, buffered);
+                }
+                releaseBuffer();
+            }
+            return compressor;
+        }
+
+        private final class CompressingOutputStream extends ServletOutputStream {
+
+            private final ServletOutputStream target;
+            private final byte[] singleByte = new byte[1];
+
+            private CompressingOutputStream(ServletOutputStream target) {
+                this.target = target;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                singleByte[0] = (byte) b;
+                write(singleByte, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                Assert.state(!finished || passThrough, "The response has already been completed");
+                if (passThrough) {
+                    target.write(bytes, offset, length);
+                } else if (compressor == null && length <= minResponseSize - buffered) {
+                    if (buffer == null) {
+                        buffer = BufferPool.SHARED.acquire(minResponseSize);
+                    }
+                    System.arraycopy(bytes, offset, buffer, buffered, length);
+                    buffered += length;
+                } else {
+                    compressor().write(bytes, offset, length);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (passThrough) {
+                    target.flush();
+                } else if (compressor != null) {
+                    compressor.flush();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                finish();
+            }
+
+            @Override
+            public boolean isReady() {
+                return target.isReady();
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                target.setWriteListener(writeListener);
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,316 @@
+package com.pmattioli.diffresolver.api.filter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.util.Assert;
+
+import com.pmattioli.diffresolver.service.codec.BufferPool;
+import com.pmattioli.diffresolver.service.store.SideBufferAllocator;
+
+/**
+ * Reads upload bodies with non-blocking servlet I/O, so that slow clients don't hold a request thread while they send
+ * them.
+ *
+ * <p>When a POST or PATCH request with a body arrives, the filter starts asynchronous processing and registers a
+ * {@code ReadListener}, which copies the body into a buffer whenever the container has data for it, and returns the
+ * thread right away otherwise. Once the whole body has been read, the request is dispatched again, and that dispatch
+ * goes through the rest of the chain with the buffered body in place of the request stream, so controllers read it
+ * from memory without waiting. Threads are thus only held while there is data to copy and while the upload is being
+ * decoded and stored, and slow uploads can't starve other requests of threads.
+ *
+ * <p>Bodies up to the largest class of the shared {@code BufferPool} are buffered in pooled arrays, released once the
+ * request has been handled, and larger ones with a {@code SideBufferAllocator}, so they can be kept off the heap. The
+ * buffer grows as the body arrives, up to its declared length, so clients declaring large bodies and sending nothing
+ * don't hold memory they haven't used. Bodies declared or turning out to be larger than {@code maxBodySize} are
+ * answered with {@code 413 Payload Too Large}, and uploads that don't complete within {@code timeoutMillis} with
+ * {@code 408 Request Timeout}.
+ * @author pmattioli
+ */
+public class NonBlockingUploadFilter implements Filter {
+
+    private static final Logger LOG = Logger.getLogger(NonBlockingUploadFilter.class.getName());
+    private static final String BODY_ATTRIBUTE = NonBlockingUploadFilter.class.getName() + ".BODY";
+    private static final int MAX_BODY_SIZE = Integer.MAX_VALUE - 8;
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    private static final int READ_CHUNK_SIZE = 64 * 1024;
+
+    private final SideBufferAllocator bufferAllocator;
+    private final long timeoutMillis;
+    private final int maxBodySize;
+
+    /**
+     * @param bufferAllocator the allocator of the buffers bodies are read into
+     * @param timeoutMillis how long a body can take to arrive, in milliseconds
+     * @param maxBodySize the largest body accepted, in bytes
+     */
+    public NonBlockingUploadFilter(SideBufferAllocator bufferAllocator, long timeoutMillis, long maxBodySize) {
+        Assert.notNull(bufferAllocator, "Buffer allocator can't be null");
+        Assert.isTrue(timeoutMillis > 0, "Timeout has to be positive");
+        Assert.isTrue(maxBodySize > 0, "Maximum body size has to be positive");
+        this.bufferAllocator = bufferAllocator;
+        this.timeoutMillis = timeoutMillis;
+        this.maxBodySize = (int) Math.min(maxBodySize, MAX_BODY_SIZE);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            ByteBuffer body = (ByteBuffer) request.getAttribute(BODY_ATTRIBUTE);
+            if (body != null) {
+                request.removeAttribute(BODY_ATTRIBUTE);
+                chain.doFilter(new BufferedBodyRequest(request, body), response);
+                if (!request.isAsyncStarted() && body.hasArray()) {
+                    BufferPool.SHARED.release(body.array());
+                }
+                return;
+            }
+        }
+        if (request.getDispatcherType() != DispatcherType.REQUEST || !request.isAsyncSupported()
+                || !hasBody(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        long contentLength = request.getContentLengthLong();
+        if (contentLength > maxBodySize) {
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(timeoutMillis);
+        BodyReader bodyReader = new BodyReader(asyncContext, request.getInputStream(), (int) contentLength);
+        asyncContext.addListener(bodyReader);
+        request.getInputStream().setReadListener(bodyReader);
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private static boolean hasBody(HttpServletRequest request) {
+        String method = request.getMethod();
+        return ("POST".equals(method) || "PATCH".equals(method))
+                && (request.getContentLengthLong() > 0 || request.getHeader("Transfer-Encoding") != null);
+    }
+
+    /**
+     * Copies the body into a buffer as it arrives, and dispatches the request again once it's complete.
+     */
+    private final class BodyReader implements ReadListener, AsyncListener {
+
+        private final AsyncContext asyncContext;
+        private final ServletInputStream input;
+        private final int maxLength;
+        private final byte[] chunk;
+        private ByteBuffer body;
+        private volatile boolean complete;
+
+        /**
+         * @param contentLength the declared length of the body, or -1 if unknown
+         */
+        private BodyReader(AsyncContext asyncContext, ServletInputStream input, int contentLength) {
+            this.asyncContext = asyncContext;
+            this.input = input;
+            this.maxLength = contentLength >= 0 ? contentLength : maxBodySize;
+            this.body = allocate(Math.min(maxLength, INITIAL_BUFFER_SIZE));
+            this.chunk = BufferPool.SHARED.acquire(Math.min(READ_CHUNK_SIZE, Math.max(maxLength, 1)));
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException {
+            while (!complete && input.isReady() && !input.isFinished()) {
+                int read = input.read(chunk, 0, Math.min(chunk.length, READ_CHUNK_SIZE));
+                if (read < 0) {
+                    break;
+                }
+                if ((long) body.position() + read > maxBodySize) {
+                    complete = true;
+                    release();
+                    respond(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                    return;
+                }
+                if (body.remaining() < read) {
+                    grow(read);
+                }
+                body.put(chunk, 0, read);
+            }
+        }
+
+        @Override
+        public void onAllDataRead() {
+            if (complete) {
+                return;
+            }
+            complete = true;
+            BufferPool.SHARED.release(chunk);
+            body.flip();
+            asyncContext.getRequest().setAttribute(BODY_ATTRIBUTE, body.slice());
+            asyncContext.dispatch();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            LOG.log(Level.FINE, "Upload failed", t);
+            if (!complete) {
+                complete = true;
+                respond(HttpServletResponse.SC_BAD_REQUEST);
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            if (!complete) {
+                complete = true;
+                respond(HttpServletResponse.SC_REQUEST_TIMEOUT);
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            onError(event.getThrowable());
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        /**
+         * Doubles the buffer, without going over the declared length when there's one, unless the body turns out to be
+         * longer, which the container rejects anyway.
+         */
+        private void grow(int required) {
+            long minimum = (long) body.position() + required;
+            long capacity = Math.max(minimum, Math.min(2L * body.capacity(), maxLength));
+            ByteBuffer grown = allocate((int) Math.min(capacity, maxBodySize));
+            body.flip();
+            grown.put(body);
+            if (body.hasArray()) {
+                BufferPool.SHARED.release(body.array());
+            }
+            body = grown;
+        }
+
+        private void release() {
+            BufferPool.SHARED.release(chunk);
+            if (body.hasArray()) {
+                BufferPool.SHARED.release(body.array());
+            }
+        }
+
+        private ByteBuffer allocate(int capacity) {
+            if (capacity <= BufferPool.SHARED.getMaxSize()) {
+                return ByteBuffer.wrap(BufferPool.SHARED.acquire(capacity));
+            }
+            return bufferAllocator.allocate(capacity);
+        }
+
+        private void respond(int status) {
+            try {
+                ((HttpServletResponse) asyncContext.getResponse()).sendError(status);
+            } catch (IOException | IllegalStateException e) {
+                LOG.log(Level.FINE, "Couldn't answer the failed upload", e);
+            }
+            asyncContext.complete();
+        }
+
+    }
+
+    /**
+     * Request whose body is read from a buffer instead of the connection.
+     */
+    private static final class BufferedBodyRequest extends HttpServletRequestWrapper {
+
+        private final ServletInputStream input;
+
+        private BufferedBodyRequest(HttpServletRequest request, ByteBuffer body) {
+            super(request);
+            this.input = new BufferedInputStream(body);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return input;
+        }
+
+    }
+
+    private static final class BufferedInputStream extends ServletInputStream {
+
+        private final ByteBuffer body;
+
+        private BufferedInputStream(ByteBuffer body) {
+            this.body = body;
+        }
+
+        @Override
+        public int read() {
+            return body.hasRemaining() ? body.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!body.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, body.remaining());
+            body.get(buffer, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return body.remaining();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return !body.hasRemaining();
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            throw new IllegalStateException("The body has already been read");
+        }
+
+    }
+
+}
@@ -25,6 +25,7 @@ package com.pmattioli.diffresolver.api.model;
 public class DiffApiRequest {
 
     private String data;
+    private Integer offset;
 
     public String getData() {
         return data;
@@ -33,4 +34,15 @@ public class DiffApiRequest {
     public void setData(String data) {
         this.data = data;
     }
+
+    /**
+     * @return the offset (index + 1) of the first byte a patch overwrites, only used when patching a side
+     */
+    public Integer getOffset() {
+        return offset;
+    }
+
+    public void setOffset(Integer offset) {
+        this.offset = offset;
+    }
 }
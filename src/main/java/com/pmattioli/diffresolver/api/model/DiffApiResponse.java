@@ -9,6 +9,8 @@ public class DiffApiResponse {
     private Integer length;
     private String message;
     private String offsets;
+    private Integer next;
+    private String digest;
 
     public DiffApiResponse(){}
 
@@ -17,10 +19,21 @@ public class DiffApiResponse {
         this.offsets = offsets;
     }
 
+    public DiffApiResponse(Integer length, String offsets, Integer next) {
+        this.length = length;
+        this.offsets = offsets;
+        this.next = next;
+    }
+
     public DiffApiResponse(String message) {
         this.message = message;
     }
 
+    public DiffApiResponse(String message, String digest) {
+        this.message = message;
+        this.digest = digest;
+    }
+
     public Integer getLength() {
         return length;
     }
@@ -33,6 +46,21 @@ public class DiffApiResponse {
         return offsets;
     }
 
+    /**
+     * @return the offset to pass as the 'from' parameter to get the next page of offsets, or {@code null} if there are
+     * no more differences
+     */
+    public Integer getNext() {
+        return next;
+    }
+
+    /**
+     * @return the digest of the data posted, as described in {@code DiffResolverService}, as 16 hexadecimal digits
+     */
+    public String getDigest() {
+        return digest;
+    }
+
     @Override
     public boolean equals(Object o) {
 
@@ -43,12 +71,14 @@ public class DiffApiResponse {
         DiffApiResponse diffResult = (DiffApiResponse) o;
         return Objects.equals(this.length, diffResult.length) &&
                 Objects.equals(this.message, diffResult.message) &&
-                Objects.equals(this.offsets, diffResult.offsets);
+                Objects.equals(this.offsets, diffResult.offsets) &&
+                Objects.equals(this.next, diffResult.next) &&
+                Objects.equals(this.digest, diffResult.digest);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(length, message, offsets);
+        return Objects.hash(length, message, offsets, next, digest);
     }
 
     @Override public String toString() {
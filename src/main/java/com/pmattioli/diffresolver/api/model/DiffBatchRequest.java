@@ -0,0 +1,70 @@
+package com.pmattioli.diffresolver.api.model;
+
+import java.util.List;
+
+/**
+ * A batch of sides to upload, or of diff IDs to resolve.
+ */
+public class DiffBatchRequest {
+
+    private List<Item> items;
+    private int[] diffIds;
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public void setItems(List<Item> items) {
+        this.items = items;
+    }
+
+    public int[] getDiffIds() {
+        return diffIds;
+    }
+
+    public void setDiffIds(int[] diffIds) {
+        this.diffIds = diffIds;
+    }
+
+    /**
+     * One side of one diff: its diff ID, 'left' or 'right', and its Base64-encoded data.
+     */
+    public static class Item {
+
+        private int diffId;
+        private String side;
+        private String data;
+
+        public Item(){}
+
+        public Item(int diffId, String side, String data) {
+            this.diffId = diffId;
+            this.side = side;
+            this.data = data;
+        }
+
+        public int getDiffId() {
+            return diffId;
+        }
+
+        public void setDiffId(int diffId) {
+            this.diffId = diffId;
+        }
+
+        public String getSide() {
+            return side;
+        }
+
+        public void setSide(String side) {
+            this.side = side;
+        }
+
+        public String getData() {
+            return data;
+        }
+
+        public void setData(String data) {
+            this.data = data;
+        }
+    }
+}
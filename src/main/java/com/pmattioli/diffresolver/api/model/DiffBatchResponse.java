@@ -0,0 +1,126 @@
+package com.pmattioli.diffresolver.api.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+
+/**
+ * The outcome of every item of a batch, in the order they were requested. Each item carries the HTTP status the same
+ * request would have had on its own, along with the fields of the matching {@code DiffApiResponse}.
+ */
+public class DiffBatchResponse {
+
+    private List<Item> items = new ArrayList<>();
+
+    public DiffBatchResponse(){}
+
+    public DiffBatchResponse(List<Item> items) {
+        this.items = items;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (o == this) return true;
+        if (!(o instanceof DiffBatchResponse)) {
+            return false;
+        }
+        return Objects.equals(this.items, ((DiffBatchResponse) o).items);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(items);
+    }
+
+    @Override public String toString() {
+        return ReflectionToStringBuilder.toString(this);
+    }
+
+    public static class Item {
+
+        private int diffId;
+        private String side;
+        private int status;
+        private String message;
+        private String digest;
+        private Integer length;
+        private String offsets;
+
+        public Item(){}
+
+        public Item(int diffId, String side, int status, String message, String digest, Integer length,
+                String offsets) {
+            this.diffId = diffId;
+            this.side = side;
+            this.status = status;
+            this.message = message;
+            this.digest = digest;
+            this.length = length;
+            this.offsets = offsets;
+        }
+
+        public int getDiffId() {
+            return diffId;
+        }
+
+        /**
+         * @return the side uploaded, only for uploads
+         */
+        public String getSide() {
+            return side;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getDigest() {
+            return digest;
+        }
+
+        public Integer getLength() {
+            return length;
+        }
+
+        public String getOffsets() {
+            return offsets;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (o == this) return true;
+            if (!(o instanceof Item)) {
+                return false;
+            }
+            Item item = (Item) o;
+            return diffId == item.diffId &&
+                    status == item.status &&
+                    Objects.equals(this.side, item.side) &&
+                    Objects.equals(this.message, item.message) &&
+                    Objects.equals(this.digest, item.digest) &&
+                    Objects.equals(this.length, item.length) &&
+                    Objects.equals(this.offsets, item.offsets);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(diffId, side, status, message, digest, length, offsets);
+        }
+
+        @Override public String toString() {
+            return ReflectionToStringBuilder.toString(this);
+        }
+    }
+}
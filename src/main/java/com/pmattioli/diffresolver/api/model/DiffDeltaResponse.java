@@ -0,0 +1,131 @@
+package com.pmattioli.diffresolver.api.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+
+import com.pmattioli.diffresolver.service.delta.Delta;
+
+/**
+ * The edit operations that turn the left side of a diff into the right side, with offsets (index + 1) like the ones in
+ * {@code DiffApiResponse}.
+ */
+public class DiffDeltaResponse {
+
+    private int leftLength;
+    private int rightLength;
+    private List<Operation> operations = new ArrayList<>();
+
+    public DiffDeltaResponse(){}
+
+    public DiffDeltaResponse(int leftLength, int rightLength, List<Operation> operations) {
+        this.leftLength = leftLength;
+        this.rightLength = rightLength;
+        this.operations = operations;
+    }
+
+    public static DiffDeltaResponse of(Delta delta) {
+        List<Operation> operations = new ArrayList<>(delta.getOperationCount());
+        for (int index = 0; index < delta.getOperationCount(); index++) {
+            operations.add(new Operation(delta.getOperation(index).name(), delta.getLeftOffset(index) + 1,
+                    delta.getRightOffset(index) + 1, delta.getLength(index)));
+        }
+        return new DiffDeltaResponse(delta.getLeftLength(), delta.getRightLength(), operations);
+    }
+
+    public int getLeftLength() {
+        return leftLength;
+    }
+
+    public int getRightLength() {
+        return rightLength;
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (o == this) return true;
+        if (!(o instanceof DiffDeltaResponse)) {
+            return false;
+        }
+        DiffDeltaResponse response = (DiffDeltaResponse) o;
+        return leftLength == response.leftLength &&
+                rightLength == response.rightLength &&
+                Objects.equals(this.operations, response.operations);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(leftLength, rightLength, operations);
+    }
+
+    @Override public String toString() {
+        return ReflectionToStringBuilder.toString(this);
+    }
+
+    /**
+     * One of the COPY, INSERT or DELETE operations of a delta. Inserted bytes start at the right offset and are placed
+     * before the left offset, while deleted bytes start at the left offset and are removed before the right offset.
+     */
+    public static class Operation {
+
+        private String type;
+        private int leftOffset;
+        private int rightOffset;
+        private int length;
+
+        public Operation(){}
+
+        public Operation(String type, int leftOffset, int rightOffset, int length) {
+            this.type = type;
+            this.leftOffset = leftOffset;
+            this.rightOffset = rightOffset;
+            this.length = length;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public int getLeftOffset() {
+            return leftOffset;
+        }
+
+        public int getRightOffset() {
+            return rightOffset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (o == this) return true;
+            if (!(o instanceof Operation)) {
+                return false;
+            }
+            Operation operation = (Operation) o;
+            return Objects.equals(this.type, operation.type) &&
+                    leftOffset == operation.leftOffset &&
+                    rightOffset == operation.rightOffset &&
+                    length == operation.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, leftOffset, rightOffset, length);
+        }
+
+        @Override public String toString() {
+            return ReflectionToStringBuilder.toString(this);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.pmattioli.diffresolver.api.model;
+
+import java.util.Objects;
+
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+
+/**
+ * Whether both sides of a diff are equal and, when they aren't, the offset (index + 1) at which they first differ.
+ */
+public class DiffEqualityResponse {
+
+    private int length;
+    private boolean equal;
+    private Integer firstOffset;
+
+    public DiffEqualityResponse(){}
+
+    public DiffEqualityResponse(int length, Integer firstOffset) {
+        this.length = length;
+        this.equal = firstOffset == null;
+        this.firstOffset = firstOffset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public boolean isEqual() {
+        return equal;
+    }
+
+    /**
+     * @return the offset of the first differing byte, or {@code null} if both sides are equal
+     */
+    public Integer getFirstOffset() {
+        return firstOffset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (o == this) return true;
+        if (!(o instanceof DiffEqualityResponse)) {
+            return false;
+        }
+        DiffEqualityResponse response = (DiffEqualityResponse) o;
+        return length == response.length &&
+                equal == response.equal &&
+                Objects.equals(this.firstOffset, response.firstOffset);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(length, equal, firstOffset);
+    }
+
+    @Override public String toString() {
+        return ReflectionToStringBuilder.toString(this);
+    }
+}
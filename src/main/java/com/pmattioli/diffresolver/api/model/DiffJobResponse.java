@@ -0,0 +1,94 @@
+package com.pmattioli.diffresolver.api.model;
+
+import java.util.Objects;
+
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+
+import com.pmattioli.diffresolver.service.job.DiffJob;
+
+/**
+ * The status of a diff job, along with the location of its result once it's done.
+ */
+public class DiffJobResponse {
+
+    private Long jobId;
+    private Integer diffId;
+    private String status;
+    private String result;
+    private String error;
+
+    public DiffJobResponse(){}
+
+    public DiffJobResponse(Long jobId, Integer diffId, String status, String result, String error) {
+        this.jobId = jobId;
+        this.diffId = diffId;
+        this.status = status;
+        this.result = result;
+        this.error = error;
+    }
+
+    /**
+     * @param job the job to describe
+     * @param location the location of the job, which its result is relative to
+     * @return a response describing job
+     */
+    public static DiffJobResponse of(DiffJob job, String location) {
+        DiffJob.Status status = job.getStatus();
+        return new DiffJobResponse(job.getId(), job.getDiffId(), status.name(),
+                status == DiffJob.Status.DONE ? location + "/result" : null,
+                status == DiffJob.Status.FAILED ? job.getError() : null);
+    }
+
+    public Long getJobId() {
+        return jobId;
+    }
+
+    public Integer getDiffId() {
+        return diffId;
+    }
+
+    /**
+     * @return one of QUEUED, RUNNING, DONE or FAILED
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the location of the result, once the job is done
+     */
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * @return why the job failed, if it did
+     */
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (o == this) return true;
+        if (!(o instanceof DiffJobResponse)) {
+            return false;
+        }
+        DiffJobResponse response = (DiffJobResponse) o;
+        return Objects.equals(this.jobId, response.jobId) &&
+                Objects.equals(this.diffId, response.diffId) &&
+                Objects.equals(this.status, response.status) &&
+                Objects.equals(this.result, response.result) &&
+                Objects.equals(this.error, response.error);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(jobId, diffId, status, result, error);
+    }
+
+    @Override public String toString() {
+        return ReflectionToStringBuilder.toString(this);
+    }
+}
@@ -0,0 +1,99 @@
+package com.pmattioli.diffresolver.api.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+
+import com.pmattioli.diffresolver.service.MismatchSummary;
+
+/**
+ * Summary of the mismatches between both sides of a diff: how many bytes differ, the offsets (index + 1) of the first
+ * and the last of them, and how many differ within each block of {@code blockSize} bytes, in order.
+ */
+public class DiffSummaryResponse {
+
+    private int length;
+    private int mismatchCount;
+    private Integer firstOffset;
+    private Integer lastOffset;
+    private int blockSize;
+    private int[] histogram;
+
+    public DiffSummaryResponse(){}
+
+    public DiffSummaryResponse(int length, int mismatchCount, Integer firstOffset, Integer lastOffset, int blockSize,
+            int[] histogram) {
+        this.length = length;
+        this.mismatchCount = mismatchCount;
+        this.firstOffset = firstOffset;
+        this.lastOffset = lastOffset;
+        this.blockSize = blockSize;
+        this.histogram = histogram;
+    }
+
+    public static DiffSummaryResponse of(MismatchSummary summary) {
+        boolean equal = summary.getMismatchCount() == 0;
+        return new DiffSummaryResponse(summary.getLength(), summary.getMismatchCount(),
+                equal ? null : summary.getFirstIndex() + 1, equal ? null : summary.getLastIndex() + 1,
+                summary.getBlockSize(), summary.getHistogram());
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getMismatchCount() {
+        return mismatchCount;
+    }
+
+    /**
+     * @return the offset of the first differing byte, or {@code null} if both sides are equal
+     */
+    public Integer getFirstOffset() {
+        return firstOffset;
+    }
+
+    /**
+     * @return the offset of the last differing byte, or {@code null} if both sides are equal
+     */
+    public Integer getLastOffset() {
+        return lastOffset;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return the number of differing bytes within each block, the last of which may be shorter than the others
+     */
+    public int[] getHistogram() {
+        return histogram;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (o == this) return true;
+        if (!(o instanceof DiffSummaryResponse)) {
+            return false;
+        }
+        DiffSummaryResponse response = (DiffSummaryResponse) o;
+        return length == response.length &&
+                mismatchCount == response.mismatchCount &&
+                Objects.equals(this.firstOffset, response.firstOffset) &&
+                Objects.equals(this.lastOffset, response.lastOffset) &&
+                blockSize == response.blockSize &&
+                Arrays.equals(this.histogram, response.histogram);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(length, mismatchCount, firstOffset, lastOffset, blockSize, Arrays.hashCode(histogram));
+    }
+
+    @Override public String toString() {
+        return ReflectionToStringBuilder.toString(this);
+    }
+}
@@ -0,0 +1,106 @@
+package com.pmattioli.diffresolver.api.writer;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.pmattioli.diffresolver.service.DiffResult;
+
+/**
+ * Reads diffs written in the binary formats described by {@code BinaryDiffWriter}, for clients of the API and tests.
+ * @author pmattioli
+ */
+public final class BinaryDiffDecoder {
+
+    private BinaryDiffDecoder() {
+    }
+
+    /**
+     * Reads a diff byte by byte, without buffering, so that the stream is left right after the end of the diff and
+     * whatever follows it can still be read. Callers reading from an unbuffered source should wrap it themselves.
+     *
+     * @param input the stream to read the diff from, which is read up to the end of the diff and not closed
+     * @return the decoded diff, or page of it
+     * @throws IOException when reading fails or the input is not a well-formed diff
+     */
+    public static Page decode(InputStream input) throws IOException {
+        int format = input.read();
+        if (format != BinaryDiffWriter.OFFSETS_FORMAT && format != BinaryDiffWriter.RANGES_FORMAT) {
+            throw new IOException("Unknown binary diff format: " + format);
+        }
+        DiffResult.Builder builder = DiffResult.builder(readVarint(input));
+        int previousEnd = 0;
+        try {
+            for (int entryCount = readVarint(input); entryCount > 0; entryCount = readVarint(input)) {
+                for (int entry = 0; entry < entryCount; entry++) {
+                    int offset = previousEnd + readVarint(input);
+                    int rangeLength = format == BinaryDiffWriter.RANGES_FORMAT ? readVarint(input) : 1;
+                    builder.addRange(offset, rangeLength);
+                    previousEnd = offset + rangeLength;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed binary diff", e);
+        }
+        int next = readVarint(input);
+        return new Page(builder.build(), next == 0 ? null : next);
+    }
+
+    /**
+     * @param input the stream to read the diff from
+     * @return the decoded diff, or page of it
+     * @throws IOException when the input is not a well-formed diff
+     */
+    public static Page decode(byte[] input) throws IOException {
+        return decode(new ByteArrayInputStream(input));
+    }
+
+    private static int readVarint(InputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int read = input.read();
+            if (read < 0) {
+                throw new EOFException("Binary diff ended unexpectedly");
+            }
+            value |= (read & 0x7F) << shift;
+            if ((read & 0x80) == 0) {
+                if (value < 0) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in binary diff");
+    }
+
+    /**
+     * A decoded diff, or page of it.
+     */
+    public static final class Page {
+
+        private final DiffResult result;
+        private final Integer next;
+
+        private Page(DiffResult result, Integer next) {
+            this.result = result;
+            this.next = next;
+        }
+
+        /**
+         * @return the mismatch ranges of the diff, or of the page
+         */
+        public DiffResult getResult() {
+            return result;
+        }
+
+        /**
+         * @return the offset the next page starts at, or {@code null} if there is none
+         */
+        public Integer getNext() {
+            return next;
+        }
+
+    }
+
+}
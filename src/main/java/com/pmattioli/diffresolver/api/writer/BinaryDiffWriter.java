@@ -0,0 +1,143 @@
+package com.pmattioli.diffresolver.api.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import com.pmattioli.diffresolver.service.MismatchHandler;
+import com.pmattioli.diffresolver.service.codec.BufferPool;
+
+/**
+ * Writes a diff incrementally, as the mismatches are reported, in one of the compact binary formats:
+ *
+ * <pre>
+ * format   1 byte: 1 for offsets, 2 for ranges
+ * length   varint: the byte size of the sides compared
+ * frames   each one a varint count of entries, greater than zero, followed by that many entries
+ * end      varint: 0
+ * next     varint: the offset the next page starts at, or 0 if there is none
+ * </pre>
+ *
+ * <p>Varints are unsigned LEB128: seven bits per byte, least significant first, with the high bit set on every byte but
+ * the last. Offsets entries are one varint per differing byte, its distance to the byte after the previous differing
+ * one (or to the first byte), so runs of differing bytes take one byte per offset. Ranges entries are two varints per
+ * run, the distance from the end of the previous run and the length of the run, so they grow with the number of runs
+ * only. Frames are written whenever close to {@value #FRAME_SIZE} bytes of entries have been encoded, so the output is
+ * streamed without knowing the number of entries up front. Equal sides have no frames, like pages without differences.
+ *
+ * <p>Frames are encoded in an array taken from the shared {@code BufferPool}, which {@code finish} releases.
+ * @author pmattioli
+ */
+public class BinaryDiffWriter implements MismatchHandler {
+
+    static final int OFFSETS_FORMAT = 1;
+    static final int RANGES_FORMAT = 2;
+    static final int FRAME_SIZE = 8192;
+
+    private static final int MAX_VARINT_BYTES = 5;
+    private static final int FRAME_LIMIT = FRAME_SIZE - 2 * MAX_VARINT_BYTES;
+
+    private final OutputStream output;
+    private final int length;
+    private final boolean ranges;
+    private byte[] frame = BufferPool.SHARED.acquire(FRAME_SIZE);
+    private final byte[] header = new byte[1 + MAX_VARINT_BYTES];
+    private int position;
+    private int entryCount;
+    private int previousEnd;
+    private boolean started;
+
+    /**
+     * @param output the stream to write to, which is not closed by this writer
+     * @param length the byte size of the sides being compared
+     * @param ranges whether to write ranges rather than offsets
+     */
+    public BinaryDiffWriter(OutputStream output, int length, boolean ranges) {
+        this.output = output;
+        this.length = length;
+        this.ranges = ranges;
+    }
+
+    @Override
+    public boolean onMismatch(int offset, int rangeLength) {
+        try {
+            start();
+            int gap = offset - previousEnd;
+            previousEnd = offset + rangeLength;
+            if (ranges) {
+                position = putVarint(frame, position, gap);
+                position = putVarint(frame, position, rangeLength);
+                entryCount++;
+                flushFrameIfFull();
+                return true;
+            }
+            position = putVarint(frame, position, gap);
+            entryCount++;
+            flushFrameIfFull();
+            int remaining = rangeLength - 1;
+            while (remaining > 0) {
+                int zeros = Math.min(remaining, FRAME_LIMIT - position);
+                Arrays.fill(frame, position, position + zeros, (byte) 0);
+                position += zeros;
+                entryCount += zeros;
+                remaining -= zeros;
+                flushFrameIfFull();
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the last frame and the end of the diff once the comparison has finished, flushes it and releases the frame
+     * array. Nothing can be written afterwards.
+     *
+     * @param next the offset the next page starts at, or {@code null} if there is none
+     * @throws IOException when writing fails
+     */
+    public void finish(Integer next) throws IOException {
+        start();
+        flushFrame();
+        int end = putVarint(header, 0, 0);
+        end = putVarint(header, end, next == null ? 0 : next);
+        output.write(header, 0, end);
+        output.flush();
+        BufferPool.SHARED.release(frame);
+        frame = null;
+    }
+
+    private void start() throws IOException {
+        if (!started) {
+            started = true;
+            header[0] = (byte) (ranges ? RANGES_FORMAT : OFFSETS_FORMAT);
+            output.write(header, 0, putVarint(header, 1, length));
+        }
+    }
+
+    private void flushFrameIfFull() throws IOException {
+        if (position >= FRAME_LIMIT) {
+            flushFrame();
+        }
+    }
+
+    private void flushFrame() throws IOException {
+        if (entryCount > 0) {
+            output.write(header, 0, putVarint(header, 0, entryCount));
+            output.write(frame, 0, position);
+            position = 0;
+            entryCount = 0;
+        }
+    }
+
+    private static int putVarint(byte[] buffer, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+}
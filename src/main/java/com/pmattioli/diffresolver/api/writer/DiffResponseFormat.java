@@ -0,0 +1,68 @@
+package com.pmattioli.diffresolver.api.writer;
+
+import java.util.List;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+/**
+ * The representations a diff can be returned in, negotiated through the {@code Accept} header.
+ *
+ * <p>{@code JSON} is the default, written by {@code JsonDiffWriter}. The binary formats, written by
+ * {@code BinaryDiffWriter} and read by {@code BinaryDiffDecoder}, are only returned when they're asked for explicitly,
+ * so wildcards keep getting JSON.
+ * @author pmattioli
+ */
+public enum DiffResponseFormat {
+
+    JSON(MediaType.APPLICATION_JSON_UTF8),
+    OFFSETS(MediaType.valueOf(DiffResponseFormat.OFFSETS_VALUE)),
+    RANGES(MediaType.valueOf(DiffResponseFormat.RANGES_VALUE));
+
+    public static final String OFFSETS_VALUE = "application/vnd.pmattioli.diff-offsets";
+    public static final String RANGES_VALUE = "application/vnd.pmattioli.diff-ranges";
+
+    private final MediaType mediaType;
+
+    DiffResponseFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @param accept the value of the {@code Accept} header, which may be {@code null}
+     * @return the binary format of the most preferred binary media type accepted, if it's preferred to JSON, and
+     *         {@code JSON} otherwise, including when the header can't be parsed
+     */
+    public static DiffResponseFormat negotiate(String accept) {
+        if (accept == null || accept.isEmpty()) {
+            return JSON;
+        }
+        List<MediaType> acceptedTypes;
+        try {
+            acceptedTypes = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return JSON;
+        }
+        MediaType.sortBySpecificityAndQuality(acceptedTypes);
+        for (MediaType acceptedType : acceptedTypes) {
+            if (acceptedType.getQualityValue() == 0) {
+                continue;
+            }
+            if (OFFSETS.mediaType.includes(acceptedType)) {
+                return OFFSETS;
+            }
+            if (RANGES.mediaType.includes(acceptedType)) {
+                return RANGES;
+            }
+            if (acceptedType.includes(MediaType.APPLICATION_JSON)) {
+                return JSON;
+            }
+        }
+        return JSON;
+    }
+
+}
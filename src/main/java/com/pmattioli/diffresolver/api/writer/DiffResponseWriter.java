@@ -0,0 +1,90 @@
+package com.pmattioli.diffresolver.api.writer;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.pmattioli.diffresolver.service.DiffComparison;
+import com.pmattioli.diffresolver.service.MismatchHandler;
+import com.pmattioli.diffresolver.service.MismatchLimiter;
+
+/**
+ * Streams a {@code DiffComparison}, or a page of it, as the body of a response, while the comparison runs. The body is
+ * JSON, or one of the binary formats of {@code DiffResponseFormat}.
+ *
+ * <p>The optional parameters, all of them expressed as offsets (index + 1), restrict the result to a page:
+ * {@code start} and {@code end} bound the window of bytes compared, {@code limit} caps the number of offsets returned,
+ * and {@code from} resumes a previous page at the offset it returned as 'next'. Only the bytes from {@code from} up to
+ * the offset after the last one returned are compared.
+ * @author pmattioli
+ */
+public final class DiffResponseWriter {
+
+    private DiffResponseWriter() {
+    }
+
+    /**
+     * Validates the paging parameters and writes the comparison as JSON.
+     *
+     * @throws IllegalArgumentException when the paging parameters are out of bounds
+     */
+    public static void write(DiffComparison comparison, Integer start, Integer end, Integer from, Integer limit,
+            JsonFactory jsonFactory, HttpServletResponse response) throws IOException {
+        write(comparison, start, end, from, limit, DiffResponseFormat.JSON, jsonFactory, response);
+    }
+
+    /**
+     * Validates the paging parameters and writes the comparison in the given format. Every check that can fail runs
+     * before the first byte is written, so errors can still be reported through the exception handler.
+     *
+     * @throws IllegalArgumentException when the paging parameters are out of bounds
+     */
+    public static void write(DiffComparison comparison, Integer start, Integer end, Integer from, Integer limit,
+            DiffResponseFormat format, JsonFactory jsonFactory, HttpServletResponse response) throws IOException {
+
+        boolean paged = start != null || end != null || from != null || limit != null;
+        int windowStart = start == null ? 1 : start;
+        int windowEnd = end == null ? comparison.getLength() : end;
+        int resumeFrom = from == null ? windowStart : from;
+        Assert.isTrue(windowStart >= 1 && windowStart <= windowEnd + 1 && windowEnd <= comparison.getLength(),
+                "Invalid window " + windowStart + "-" + windowEnd + " for length " + comparison.getLength());
+        Assert.isTrue(resumeFrom >= windowStart && resumeFrom <= windowEnd + 1,
+                "Offset to resume from has to be within the window");
+        Assert.isTrue(limit == null || limit > 0, "Limit has to be positive");
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(format.getMediaType().toString());
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        if (format != DiffResponseFormat.JSON) {
+            BinaryDiffWriter writer = new BinaryDiffWriter(response.getOutputStream(), comparison.getLength(),
+                    format == DiffResponseFormat.RANGES);
+            MismatchLimiter limiter = limit == null ? null : new MismatchLimiter(writer, limit);
+
+            comparison.compare(resumeFrom - 1, windowEnd, limiter == null ? writer : limiter);
+
+            writer.finish(nextOffset(limiter));
+            return;
+        }
+        try (JsonGenerator generator = jsonFactory.createGenerator(response.getOutputStream())) {
+            JsonDiffWriter writer = new JsonDiffWriter(generator, comparison.getLength(), paged);
+            MismatchLimiter limiter = limit == null ? null : new MismatchLimiter(writer, limit);
+            MismatchHandler handler = limiter == null ? writer : limiter;
+
+            comparison.compare(resumeFrom - 1, windowEnd, handler);
+
+            writer.finish(nextOffset(limiter));
+        }
+
+    }
+
+    private static Integer nextOffset(MismatchLimiter limiter) {
+        return limiter == null || limiter.getNextIndex() < 0 ? null : limiter.getNextIndex() + 1;
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.pmattioli.diffresolver.api.writer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.pmattioli.diffresolver.service.MismatchHandler;
+
+/**
+ * Writes the JSON representation of a diff incrementally, as the mismatches are reported.
+ *
+ * <p>The output is the same as serializing a {@code DiffApiResponse}: {@code {"length":15,"offsets":"[8, 13]"}} when
+ * the sides differ, or the equality message otherwise. Pages of a diff always hold the length and the offsets, which
+ * may be empty, followed by the offset the next page starts at, if any. The offsets string is written piece by piece as
+ * raw JSON, so neither the offsets nor their textual representation are ever held in memory as a whole.
+ *
+ * <p>Writers obtained from {@code intoObject} write the same fields into an object their caller has started, so other
+ * fields can go along with them, and leave ending the object, and flushing, to their caller.
+ * @author pmattioli
+ */
+public class JsonDiffWriter implements MismatchHandler {
+
+    public static final String EQUAL_SIDES_MESSAGE = "Both data strings provided are equal";
+
+    private static final String SEPARATOR = ", ";
+
+    private final JsonGenerator generator;
+    private final int length;
+    private final boolean paged;
+    private final boolean embedded;
+    private final char[] digits = new char[10];
+    private boolean started;
+    private boolean anyOffsetWritten;
+
+    /**
+     * @param generator the generator to write to, which is not closed by this writer
+     * @param length the byte size of the sides being compared
+     */
+    public JsonDiffWriter(JsonGenerator generator, int length) {
+        this(generator, length, false);
+    }
+
+    /**
+     * @param generator the generator to write to, which is not closed by this writer
+     * @param length the byte size of the sides being compared
+     * @param paged whether the output is a page of the diff rather than the whole diff
+     */
+    public JsonDiffWriter(JsonGenerator generator, int length, boolean paged) {
+        this(generator, length, paged, false);
+    }
+
+    private JsonDiffWriter(JsonGenerator generator, int length, boolean paged, boolean embedded) {
+        this.generator = generator;
+        this.length = length;
+        this.paged = paged;
+        this.embedded = embedded;
+    }
+
+    /**
+     * @param generator the generator to write to, within an object it has started
+     * @param length the byte size of the sides being compared
+     * @return a writer of the fields of the whole diff, which doesn't start nor end the object they're written in
+     */
+    public static JsonDiffWriter intoObject(JsonGenerator generator, int length) {
+        return new JsonDiffWriter(generator, length, false, true);
+    }
+
+    @Override
+    public boolean onMismatch(int offset, int rangeLength) {
+        try {
+            startOffsets();
+            int end = offset + rangeLength;
+            for (int index = offset; index < end; index++) {
+                if (anyOffsetWritten) {
+                    generator.writeRaw(SEPARATOR);
+                }
+                anyOffsetWritten = true;
+                writeOffset(index + 1);
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Completes the JSON document once the comparison has finished, and flushes it.
+     *
+     * @throws IOException when writing fails
+     */
+    public void finish() throws IOException {
+        finish(null);
+    }
+
+    /**
+     * Completes the JSON document once the comparison has finished, and flushes it, unless the writer was obtained
+     * from {@code intoObject}.
+     *
+     * @param next the offset the next page starts at, or {@code null} if there is none
+     * @throws IOException when writing fails
+     */
+    public void finish(Integer next) throws IOException {
+        if (paged) {
+            startOffsets();
+        }
+        if (started) {
+            generator.writeRaw("]\"");
+            if (next != null) {
+                generator.writeNumberField("next", next);
+            }
+        } else {
+            startObject();
+            generator.writeStringField("message", EQUAL_SIDES_MESSAGE);
+        }
+        if (!embedded) {
+            generator.writeEndObject();
+            generator.flush();
+        }
+    }
+
+    private void startOffsets() throws IOException {
+        if (!started) {
+            started = true;
+            startObject();
+            generator.writeNumberField("length", length);
+            generator.writeFieldName("offsets");
+            generator.writeRawValue("\"[");
+        }
+    }
+
+    private void startObject() throws IOException {
+        if (!embedded) {
+            generator.writeStartObject();
+        }
+    }
+
+    private void writeOffset(int offset) throws IOException {
+        int start = digits.length;
+        do {
+            digits[--start] = (char) ('0' + offset % 10);
+            offset /= 10;
+        } while (offset > 0);
+        generator.writeRaw(digits, start, digits.length - start);
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.pmattioli.diffresolver.service;
+
+/**
+ * The outcome of one item of a batch: either its value or the exception that made it fail, so that one invalid item
+ * doesn't fail the whole batch.
+ *
+ * @param <T> the type of the value of a successful item
+ * @author pmattioli
+ */
+public final class BatchItemResult<T> {
+
+    private final T value;
+    private final RuntimeException error;
+
+    private BatchItemResult(T value, RuntimeException error) {
+        this.value = value;
+        this.error = error;
+    }
+
+    public static <T> BatchItemResult<T> of(T value) {
+        return new BatchItemResult<>(value, null);
+    }
+
+    public static <T> BatchItemResult<T> failed(RuntimeException error) {
+        return new BatchItemResult<>(null, error);
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    /**
+     * @return the value of the item, or {@code null} if it failed
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return the exception that made the item fail, or {@code null} if it succeeded
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+}
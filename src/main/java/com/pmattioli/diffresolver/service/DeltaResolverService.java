@@ -0,0 +1,26 @@
+package com.pmattioli.diffresolver.service;
+
+import com.pmattioli.diffresolver.service.delta.Delta;
+
+/**
+ * A {@code DiffResolverService} that can also compare sides of different sizes, by describing how to turn the left
+ * side into the right one as a sequence of copy, insert and delete operations.
+ * @author pmattioli
+ */
+public interface DeltaResolverService extends DiffResolverService {
+
+    /**
+     * Returns the edit operations that turn the data provided via the setLeft method into the data provided via the
+     * setRight method, after decoding. Unlike {@code resolve}, both sides may have different sizes.
+     *
+     * @param diffId an {@code int} value representing a diff ID for which both setLeft and setRight methods have been
+     *               invoked with valid Base64 encoded data.
+     *
+     * @throws IllegalStateException unless both setLeft and setRight methods have been invoked for the
+     * specified diffId.
+     *
+     * @return the delta
+     */
+    Delta resolveDelta(int diffId);
+
+}
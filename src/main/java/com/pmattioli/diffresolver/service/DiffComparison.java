@@ -0,0 +1,53 @@
+package com.pmattioli.diffresolver.service;
+
+/**
+ * A validated pair of equal-sized sides, ready to be compared.
+ *
+ * <p>Obtaining a {@code DiffComparison} performs every check that can fail, so callers can start writing a response
+ * before the comparison runs, and stream the mismatches out as they are found.
+ * @author pmattioli
+ */
+public interface DiffComparison {
+
+    /**
+     * @return the byte size of both sides
+     */
+    int getLength();
+
+    /**
+     * Reports the mismatch ranges between index {@code from} (inclusive) and index {@code to} (exclusive) in
+     * ascending order. Ranges crossing either bound are clipped to them.
+     *
+     * @param from the zero-based index of the first byte to compare
+     * @param to the index after the last byte to compare
+     * @param handler the handler receiving every mismatch range found
+     * @return {@code true} if the whole window was compared, {@code false} if the handler stopped the comparison
+     * @throws IllegalArgumentException when the window is not within both sides
+     */
+    boolean compare(int from, int to, MismatchHandler handler);
+
+    /**
+     * Reports every mismatch range between both sides in ascending order.
+     *
+     * @param handler the handler receiving every mismatch range found
+     * @return {@code true} if both sides were compared entirely, {@code false} if the handler stopped the comparison
+     */
+    default boolean compare(MismatchHandler handler) {
+        return compare(0, getLength(), handler);
+    }
+
+    /**
+     * Compares both sides only up to their first mismatch, which is all it takes to tell whether they are equal.
+     *
+     * @return the zero-based index of the first differing byte, or -1 if both sides are equal
+     */
+    default int findFirstMismatch() {
+        int[] firstIndex = { -1 };
+        compare((offset, length) -> {
+            firstIndex[0] = offset;
+            return false;
+        });
+        return firstIndex[0];
+    }
+
+}
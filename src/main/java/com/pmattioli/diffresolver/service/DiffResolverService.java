@@ -1,38 +1,191 @@
 package com.pmattioli.diffresolver.service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
- * Provides methods for setting both sides of a Binary Diff comparison and obtaining an {@code int[]} representing the
- * offsets in which both data strings provided differ.
+ * Provides methods for setting both sides of a Binary Diff comparison and obtaining the offsets in which both data
+ * strings provided differ, either as a sparse {@code DiffResult} or as a dense {@code int[]}.
  *
  * <p>The interface expects te data provided to be non-null, equal-sized and Base64-encoded.
+ *
+ * <p>Digests are built with the 64-bit xxHash (XXH64, seed zero): data up to the index chunk size is hashed whole,
+ * while larger data is digested as the root of its {@code ChunkHashTree}, so that patching it only rehashes the chunks
+ * that change.
  * @author pmattioli
  */
 
 public interface DiffResolverService {
 
     /**
-     * Identifies the provided data with the specified diffId for later reference. This data will be decoded to UTF-8
-     * and compared byte to byte to the data provided via de setRight method when the resolveDiff method is invoked.
+     * Identifies the provided data with the specified diffId for later reference. This data is decoded right away and
+     * compared byte to byte to the data provided via de setRight method when the resolveDiff method is invoked, unless
+     * both sides have the same length and digest, in which case they are known to be equal without comparing them.
      *
      * @param diffId an {@code int} value which identifies the provided data with the specified DiffID for later
      *               reference. It has to match the value provided for the right side of the comparison.
      * @param data a Base64-encoded {@code String} representing the left side of a binary diff comparison.
      *
+     * @return the digest of the decoded data
+     *
      * @throws IllegalArgumentException when the data provided is not a valid Base64-encoded string
      */
-    void setLeft(int diffId, String data);
+    long setLeft(int diffId, String data);
 
     /**
-     * Identifies the provided data with the specified diffId for later reference. This data will be decoded to UTF-8
-     * and compared byte to byte to the data provided via de setLeft method when the resolveDiff method is invoked.
+     * Identifies the provided data with the specified diffId for later reference. This data is decoded right away and
+     * compared byte to byte to the data provided via de setLeft method when the resolveDiff method is invoked, unless
+     * both sides have the same length and digest, in which case they are known to be equal without comparing them.
      *
      * @param diffId an {@code int} value which identifies the provided data with the specified DiffID for later
      *               reference. It has to match the value provided for the left side of the comparison.
      * @param data a Base64-encoded {@code String} representing the right side of a binary diff comparison.
      *
+     * @return the digest of the decoded data
+     *
      * @throws IllegalArgumentException when the data provided is not a valid Base64-encoded string
      */
-    void setRight(int diffId, String data);
+    long setRight(int diffId, String data);
+
+    /**
+     * Identifies the provided raw binary data with the specified diffId, exactly like {@code setLeft(int, String)}
+     * does with Base64-encoded data but without the cost of Base64.
+     *
+     * @param diffId an {@code int} value which identifies the provided data with the specified DiffID for later
+     *               reference. It has to match the value provided for the right side of the comparison.
+     * @param data a stream holding the left side of a binary diff comparison. It's read fully but not closed.
+     * @param length the number of bytes in the stream, or a negative value if unknown
+     *
+     * @return the digest of the data
+     *
+     * @throws IllegalArgumentException when the stream is empty or doesn't hold the declared number of bytes
+     * @throws IOException when reading the stream fails
+     */
+    long setLeft(int diffId, InputStream data, long length) throws IOException;
+
+    /**
+     * Identifies the provided raw binary data with the specified diffId, exactly like {@code setRight(int, String)}
+     * does with Base64-encoded data but without the cost of Base64.
+     *
+     * @param diffId an {@code int} value which identifies the provided data with the specified DiffID for later
+     *               reference. It has to match the value provided for the left side of the comparison.
+     * @param data a stream holding the right side of a binary diff comparison. It's read fully but not closed.
+     * @param length the number of bytes in the stream, or a negative value if unknown
+     *
+     * @return the digest of the data
+     *
+     * @throws IllegalArgumentException when the stream is empty or doesn't hold the declared number of bytes
+     * @throws IOException when reading the stream fails
+     */
+    long setRight(int diffId, InputStream data, long length) throws IOException;
+
+    /**
+     * Sets many sides at once, as if {@code setLeft} or {@code setRight} had been invoked for each of them in order,
+     * except that every diff ID is updated in the store only once, with every side uploaded for it.
+     *
+     * @param uploads the sides to set
+     *
+     * @return for every upload, in the same order, either the digest of its decoded data or the
+     * {@code IllegalArgumentException} that made it fail, in which case it wasn't set, or the
+     * {@code DiffStoreFullException} thrown when there was no room left for the sides of its diff ID
+     */
+    List<BatchItemResult<Long>> setSides(List<SideUpload> uploads);
+
+    /**
+     * Overwrites a range of bytes of the left side already set for diffId, keeping its length. Only the patched range
+     * has to be compared again, so a cached result for the previous data is brought up to date rather than discarded.
+     *
+     * @param diffId an {@code int} value representing a diff ID whose left side has been set
+     * @param from the zero-based index of the first byte to overwrite
+     * @param data a Base64-encoded {@code String} representing the bytes to write from there on
+     *
+     * @return the digest of the patched data
+     *
+     * @throws IllegalArgumentException when the data provided is not a valid Base64-encoded string or doesn't fit
+     * within the left side
+     * @throws IllegalStateException when no left side has been set for diffId
+     */
+    long patchLeft(int diffId, int from, String data);
+
+    /**
+     * Overwrites a range of bytes of the right side already set for diffId, keeping its length. Only the patched range
+     * has to be compared again, so a cached result for the previous data is brought up to date rather than discarded.
+     *
+     * @param diffId an {@code int} value representing a diff ID whose right side has been set
+     * @param from the zero-based index of the first byte to overwrite
+     * @param data a Base64-encoded {@code String} representing the bytes to write from there on
+     *
+     * @return the digest of the patched data
+     *
+     * @throws IllegalArgumentException when the data provided is not a valid Base64-encoded string or doesn't fit
+     * within the right side
+     * @throws IllegalStateException when no right side has been set for diffId
+     */
+    long patchRight(int diffId, int from, String data);
+
+    /**
+     * Raw binary variant of {@code patchLeft(int, int, String)}.
+     *
+     * @param diffId an {@code int} value representing a diff ID whose left side has been set
+     * @param from the zero-based index of the first byte to overwrite
+     * @param data a stream holding the bytes to write from there on. It's read fully but not closed.
+     * @param length the number of bytes in the stream, or a negative value if unknown
+     *
+     * @return the digest of the patched data
+     *
+     * @throws IllegalArgumentException when the stream is empty, doesn't hold the declared number of bytes or doesn't
+     * fit within the left side
+     * @throws IllegalStateException when no left side has been set for diffId
+     * @throws IOException when reading the stream fails
+     */
+    long patchLeft(int diffId, int from, InputStream data, long length) throws IOException;
+
+    /**
+     * Raw binary variant of {@code patchRight(int, int, String)}.
+     *
+     * @param diffId an {@code int} value representing a diff ID whose right side has been set
+     * @param from the zero-based index of the first byte to overwrite
+     * @param data a stream holding the bytes to write from there on. It's read fully but not closed.
+     * @param length the number of bytes in the stream, or a negative value if unknown
+     *
+     * @return the digest of the patched data
+     *
+     * @throws IllegalArgumentException when the stream is empty, doesn't hold the declared number of bytes or doesn't
+     * fit within the right side
+     * @throws IllegalStateException when no right side has been set for diffId
+     * @throws IOException when reading the stream fails
+     */
+    long patchRight(int diffId, int from, InputStream data, long length) throws IOException;
+
+    /**
+     * Validates that both sides have been set for diffId and have the same size, and returns a {@code DiffComparison}
+     * that reports their mismatches as they are found, without collecting them.
+     *
+     * @param diffId an {@code int} value representing a diff ID for which both setLeft and setRight methods have been
+     *               invoked with valid Base64 encoded equal-sized data.
+     *
+     * @throws IllegalStateException unless both setLeft and setRight methods have been invoked for the
+     * specified diffId, or when the left and right data posted have different sizes.
+     *
+     * @return the comparison, ready to be run
+     */
+    DiffComparison prepare(int diffId);
+
+    /**
+     * Returns a {@code DiffResult} holding the ranges of bytes at which the data provided via the setLeft and setRight
+     * methods differ after decoding. Its size depends on the number of differences only.
+     *
+     * @param diffId an {@code int} value representing a diff ID for which both setLeft and setRight methods have been
+     *               invoked with valid Base64 encoded equal-sized data.
+     *
+     * @throws IllegalStateException unless both setLeft and setRight methods have been invoked for the
+     * specified diffId, or when the left and right data posted have different sizes.
+     *
+     * @return the diff result
+     */
+    DiffResult resolve(int diffId);
 
     /**
      * Returns an {@code int[]} of equal length than the byte size of the data provided via the
@@ -43,6 +196,9 @@ public interface DiffResolverService {
      *
      * <p>This method behaves similar to the 'cmp -l' Unix command in the way it presents offset indexes.
      *
+     * <p>The array is as long as the data compared, so callers that only need the differences should prefer
+     * {@code resolve}. This method is kept as an adapter over it.
+     *
      * @param diffId an {@code int} value representing a diff ID for which both setLeft and setRight methods have been
      *               invoked with valid Base64 encoded equal-sized data.
      *
@@ -51,6 +207,28 @@ public interface DiffResolverService {
      *
      * @return the offsets array
      */
-    int[] resolveDiff(int diffId);
+    default int[] resolveDiff(int diffId) {
+        return resolve(diffId).toOffsetsArray();
+    }
+
+    /**
+     * Resolves many diffs at once, as if {@code resolve} had been invoked for each of them in order.
+     *
+     * @param diffIds the diff IDs to resolve
+     *
+     * @return for every diff ID, in the same order, either its result or the {@code IllegalStateException} that made
+     * it fail
+     */
+    default List<BatchItemResult<DiffResult>> resolveAll(int[] diffIds) {
+        List<BatchItemResult<DiffResult>> results = new ArrayList<>(diffIds.length);
+        for (int diffId : diffIds) {
+            try {
+                results.add(BatchItemResult.of(resolve(diffId)));
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                results.add(BatchItemResult.failed(e));
+            }
+        }
+        return results;
+    }
 
 }
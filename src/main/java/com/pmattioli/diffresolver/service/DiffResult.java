@@ -0,0 +1,243 @@
+package com.pmattioli.diffresolver.service;
+
+import java.util.Arrays;
+
+/**
+ * Sparse representation of the outcome of a Binary Diff comparison.
+ *
+ * <p>Rather than holding one entry per compared byte, a {@code DiffResult} keeps the runs of consecutive differing
+ * bytes as (offset, length) ranges, so its size grows with the number of differences and not with the size of the
+ * data compared. Range offsets are zero-based byte indexes, while {@code getOffsets} and {@code toOffsetsArray} present
+ * them as offsets (index + 1), as described by the {@code DiffResolverService} interface.
+ *
+ * <p>A {@code DiffResult} is also a {@code DiffComparison} whose comparison has already been made: comparing it again
+ * just replays the ranges it holds.
+ * @author pmattioli
+ */
+public final class DiffResult implements DiffComparison {
+
+    private static final int[] NO_RANGES = new int[0];
+
+    private final int length;
+    private final int[] rangeOffsets;
+    private final int[] rangeLengths;
+    private final int mismatchCount;
+
+    private DiffResult(int length, int[] rangeOffsets, int[] rangeLengths, int mismatchCount) {
+        this.length = length;
+        this.rangeOffsets = rangeOffsets;
+        this.rangeLengths = rangeLengths;
+        this.mismatchCount = mismatchCount;
+    }
+
+    public static Builder builder(int length) {
+        return new Builder(length);
+    }
+
+    /**
+     * @return the byte size of the data compared
+     */
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return whether both sides compared are equal
+     */
+    public boolean isEqual() {
+        return rangeOffsets.length == 0;
+    }
+
+    /**
+     * @return the total number of bytes at which both sides differ
+     */
+    public int getMismatchCount() {
+        return mismatchCount;
+    }
+
+    public int getRangeCount() {
+        return rangeOffsets.length;
+    }
+
+    /**
+     * @param rangeIndex the index of the range, from zero to {@code getRangeCount() - 1}
+     * @return the zero-based index of the first differing byte of the range
+     */
+    public int getRangeOffset(int rangeIndex) {
+        return rangeOffsets[rangeIndex];
+    }
+
+    /**
+     * @param rangeIndex the index of the range, from zero to {@code getRangeCount() - 1}
+     * @return the number of consecutive differing bytes in the range
+     */
+    public int getRangeLength(int rangeIndex) {
+        return rangeLengths[rangeIndex];
+    }
+
+    @Override
+    public boolean compare(int from, int to, MismatchHandler handler) {
+        if (from < 0 || to > length || from > to) {
+            throw new IllegalArgumentException("Invalid window " + from + "-" + to + " for length " + length);
+        }
+        for (int range = firstRangeEndingAfter(from); range < rangeOffsets.length; range++) {
+            int start = Math.max(from, rangeOffsets[range]);
+            int end = Math.min(to, rangeOffsets[range] + rangeLengths[range]);
+            if (start >= end) {
+                break;
+            }
+            if (!handler.onMismatch(start, end - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int firstRangeEndingAfter(int index) {
+        int low = 0;
+        int high = rangeOffsets.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (rangeOffsets[middle] + rangeLengths[middle] <= index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the offsets (index + 1) at which both sides differ, in ascending order
+     */
+    public int[] getOffsets() {
+        int[] offsets = new int[mismatchCount];
+        int next = 0;
+        for (int range = 0; range < rangeOffsets.length; range++) {
+            int end = rangeOffsets[range] + rangeLengths[range];
+            for (int index = rangeOffsets[range]; index < end; index++) {
+                offsets[next++] = index + 1;
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Adapts this result to the dense {@code int[]} contract of {@code DiffResolverService.resolveDiff}: an array as
+     * long as the data compared, holding zero where both sides are equal and the offset (index + 1) where they differ.
+     *
+     * @return the dense offsets array
+     */
+    public int[] toOffsetsArray() {
+        int[] offsetsArray = new int[length];
+        for (int range = 0; range < rangeOffsets.length; range++) {
+            int end = rangeOffsets[range] + rangeLengths[range];
+            for (int index = rangeOffsets[range]; index < end; index++) {
+                offsetsArray[index] = index + 1;
+            }
+        }
+        return offsetsArray;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (o == this) return true;
+        if (!(o instanceof DiffResult)) {
+            return false;
+        }
+        DiffResult diffResult = (DiffResult) o;
+        return length == diffResult.length &&
+                Arrays.equals(rangeOffsets, diffResult.rangeOffsets) &&
+                Arrays.equals(rangeLengths, diffResult.rangeLengths);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * length + Arrays.hashCode(rangeOffsets)) + Arrays.hashCode(rangeLengths);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("DiffResult[length=").append(length).append(", ranges=[");
+        for (int range = 0; range < rangeOffsets.length; range++) {
+            if (range > 0) {
+                builder.append(", ");
+            }
+            builder.append(rangeOffsets[range]).append('+').append(rangeLengths[range]);
+        }
+        return builder.append("]]").toString();
+    }
+
+    /**
+     * Accumulates mismatch ranges in ascending order, merging ranges that touch each other.
+     */
+    public static final class Builder implements MismatchHandler {
+
+        private static final int INITIAL_CAPACITY = 8;
+
+        private final int length;
+        private int[] rangeOffsets = NO_RANGES;
+        private int[] rangeLengths = NO_RANGES;
+        private int rangeCount;
+        private int mismatchCount;
+
+        private Builder(int length) {
+            this.length = length;
+        }
+
+        /**
+         * @param offset the zero-based index of the first differing byte of the range
+         * @param rangeLength the number of consecutive differing bytes
+         * @return this builder
+         * @throws IllegalArgumentException when the range is empty, out of bounds or not after the previous range
+         */
+        public Builder addRange(int offset, int rangeLength) {
+            if (rangeLength <= 0 || offset < 0 || offset > length - rangeLength) {
+                throw new IllegalArgumentException("Invalid mismatch range " + offset + "+" + rangeLength);
+            }
+            if (rangeCount > 0) {
+                int previousEnd = rangeOffsets[rangeCount - 1] + rangeLengths[rangeCount - 1];
+                if (offset < previousEnd) {
+                    throw new IllegalArgumentException("Mismatch ranges have to be added in ascending order");
+                }
+                if (offset == previousEnd) {
+                    rangeLengths[rangeCount - 1] += rangeLength;
+                    mismatchCount += rangeLength;
+                    return this;
+                }
+            }
+            if (rangeCount == rangeOffsets.length) {
+                int capacity = Math.max(INITIAL_CAPACITY, rangeCount * 2);
+                rangeOffsets = Arrays.copyOf(rangeOffsets, capacity);
+                rangeLengths = Arrays.copyOf(rangeLengths, capacity);
+            }
+            rangeOffsets[rangeCount] = offset;
+            rangeLengths[rangeCount] = rangeLength;
+            rangeCount++;
+            mismatchCount += rangeLength;
+            return this;
+        }
+
+        public int getRangeCount() {
+            return rangeCount;
+        }
+
+        @Override
+        public boolean onMismatch(int offset, int length) {
+            addRange(offset, length);
+            return true;
+        }
+
+        public DiffResult build() {
+            if (rangeCount == 0) {
+                return new DiffResult(length, NO_RANGES, NO_RANGES, 0);
+            }
+            return new DiffResult(length, Arrays.copyOf(rangeOffsets, rangeCount),
+                    Arrays.copyOf(rangeLengths, rangeCount), mismatchCount);
+        }
+
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.pmattioli.diffresolver.service;
+
+/**
+ * Receives the ranges of differing bytes found while comparing both sides of a diff, in ascending order.
+ * @author pmattioli
+ */
+@FunctionalInterface
+public interface MismatchHandler {
+
+    /**
+     * @param offset the zero-based index of the first differing byte of the range
+     * @param length the number of consecutive differing bytes
+     * @return {@code true} to go on with the comparison, {@code false} to stop it
+     */
+    boolean onMismatch(int offset, int length);
+
+}
@@ -0,0 +1,54 @@
+package com.pmattioli.diffresolver.service;
+
+/**
+ * {@code MismatchHandler} which forwards at most a given number of differing bytes to another handler, and then stops
+ * the comparison.
+ *
+ * <p>The comparison is only stopped when a differing byte beyond the limit is found, so once it's over
+ * {@code getNextIndex} tells whether there are more mismatches and where the next page starts.
+ * @author pmattioli
+ */
+public class MismatchLimiter implements MismatchHandler {
+
+    private final MismatchHandler delegate;
+    private int remaining;
+    private int nextIndex = -1;
+
+    /**
+     * @param delegate the handler receiving the mismatch ranges within the limit
+     * @param limit the maximum number of differing bytes to forward
+     */
+    public MismatchLimiter(MismatchHandler delegate, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit has to be positive");
+        }
+        this.delegate = delegate;
+        this.remaining = limit;
+    }
+
+    @Override
+    public boolean onMismatch(int offset, int length) {
+        if (remaining == 0) {
+            nextIndex = offset;
+            return false;
+        }
+        int forwarded = Math.min(length, remaining);
+        remaining -= forwarded;
+        if (!delegate.onMismatch(offset, forwarded)) {
+            return false;
+        }
+        if (forwarded < length) {
+            nextIndex = offset + forwarded;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the zero-based index of the first differing byte beyond the limit, or -1 if there is none
+     */
+    public int getNextIndex() {
+        return nextIndex;
+    }
+
+}
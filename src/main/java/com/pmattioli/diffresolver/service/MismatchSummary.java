@@ -0,0 +1,96 @@
+package com.pmattioli.diffresolver.service;
+
+import java.util.Arrays;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@code MismatchHandler} which sums up the mismatches of a comparison instead of collecting them: how many bytes
+ * differ, the first and the last of them, and how many differ within each block of the sides.
+ *
+ * <p>The sides are split into at most {@code maxBlocks} blocks of equal size, except for the last one, so the memory
+ * used depends on the number of blocks only, whatever the size of the sides or the number of mismatches.
+ * @author pmattioli
+ */
+public class MismatchSummary implements MismatchHandler {
+
+    private final int length;
+    private final int blockSize;
+    private final int[] histogram;
+    private int mismatchCount;
+    private int firstIndex = -1;
+    private int lastIndex = -1;
+
+    /**
+     * @param length the byte size of both sides
+     * @param maxBlocks the maximum number of blocks the sides are split into
+     */
+    public MismatchSummary(int length, int maxBlocks) {
+        Assert.isTrue(length >= 0, "Length can't be negative");
+        Assert.isTrue(maxBlocks > 0, "Number of blocks has to be positive");
+        this.length = length;
+        this.blockSize = Math.max(1, (int) ((length + (long) maxBlocks - 1) / maxBlocks));
+        this.histogram = new int[(int) ((length + (long) blockSize - 1) / blockSize)];
+    }
+
+    @Override
+    public boolean onMismatch(int offset, int length) {
+        if (firstIndex < 0) {
+            firstIndex = offset;
+        }
+        lastIndex = offset + length - 1;
+        mismatchCount += length;
+        int index = offset;
+        int end = offset + length;
+        while (index < end) {
+            int block = index / blockSize;
+            int blockEnd = (int) Math.min(end, (block + 1L) * blockSize);
+            histogram[block] += blockEnd - index;
+            index = blockEnd;
+        }
+        return true;
+    }
+
+    /**
+     * @return the byte size of both sides
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the number of differing bytes
+     */
+    public int getMismatchCount() {
+        return mismatchCount;
+    }
+
+    /**
+     * @return the zero-based index of the first differing byte, or -1 if there is none
+     */
+    public int getFirstIndex() {
+        return firstIndex;
+    }
+
+    /**
+     * @return the zero-based index of the last differing byte, or -1 if there is none
+     */
+    public int getLastIndex() {
+        return lastIndex;
+    }
+
+    /**
+     * @return the size of every block but the last one, which may be shorter
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return the number of differing bytes within each block, in order
+     */
+    public int[] getHistogram() {
+        return Arrays.copyOf(histogram, histogram.length);
+    }
+
+}
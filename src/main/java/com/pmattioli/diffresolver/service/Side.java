@@ -0,0 +1,10 @@
+package com.pmattioli.diffresolver.service;
+
+/**
+ * Identifies each of the two sides of a Binary Diff comparison.
+ * @author pmattioli
+ */
+public enum Side {
+    LEFT,
+    RIGHT
+}
@@ -0,0 +1,36 @@
+package com.pmattioli.diffresolver.service;
+
+/**
+ * One side of one diff, as uploaded in a batch.
+ * @author pmattioli
+ */
+public final class SideUpload {
+
+    private final int diffId;
+    private final Side side;
+    private final String data;
+
+    /**
+     * @param diffId the diff ID the data belongs to
+     * @param side the side being set
+     * @param data the Base64-encoded data
+     */
+    public SideUpload(int diffId, Side side, String data) {
+        this.diffId = diffId;
+        this.side = side;
+        this.data = data;
+    }
+
+    public int getDiffId() {
+        return diffId;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+}
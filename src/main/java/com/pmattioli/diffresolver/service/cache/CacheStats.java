@@ -0,0 +1,51 @@
+package com.pmattioli.diffresolver.service.cache;
+
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+
+/**
+ * Snapshot of the counters of a {@code DiffResultCache}, meant for sizing it.
+ * @author pmattioli
+ */
+public class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long entryCount;
+    private final long totalBytes;
+
+    public CacheStats(long hitCount, long missCount, long evictionCount, long entryCount, long totalBytes) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.entryCount = entryCount;
+        this.totalBytes = totalBytes;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the estimated heap footprint of all cached results, in bytes
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    @Override public String toString() {
+        return ReflectionToStringBuilder.toString(this);
+    }
+}
@@ -0,0 +1,105 @@
+package com.pmattioli.diffresolver.service.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.util.Assert;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pmattioli.diffresolver.service.DiffResult;
+
+/**
+ * Bounded cache of {@code DiffResult}s, keyed by diff ID and by the version of the sides they were computed from.
+ *
+ * <p>The cache is bounded by the estimated heap footprint of the results it holds rather than by their number, and
+ * evicts with Caffeine's W-TinyLFU policy, which keeps the results that are polled often even when a burst of one-off
+ * lookups goes through. A result is only returned for the exact version it was computed from, so a stale entry is never
+ * served even if it hasn't been invalidated yet.
+ * @author pmattioli
+ */
+public class DiffResultCache {
+
+    private static final int RESULT_OVERHEAD_BYTES = 64;
+
+    private final Cache<Integer, VersionedResult> cache;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * @param maximumBytes the maximum estimated size, in bytes, of all cached results together
+     */
+    public DiffResultCache(long maximumBytes) {
+        Assert.isTrue(maximumBytes >= 0, "Maximum cache size can't be negative");
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((Integer diffId, VersionedResult entry) -> weigh(entry.result))
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param diffId the diff ID of the result
+     * @param version the version of the sides the result has to have been computed from
+     * @return the cached result, or {@code null} if there is none for this version
+     */
+    public DiffResult get(int diffId, long version) {
+        VersionedResult entry = cache.getIfPresent(diffId);
+        if (entry != null && entry.version == version) {
+            hitCount.increment();
+            return entry.result;
+        }
+        missCount.increment();
+        return null;
+    }
+
+    /**
+     * Same as {@code get}, without counting a hit or a miss, for lookups made on behalf of the cache itself.
+     *
+     * @param diffId the diff ID of the result
+     * @param version the version of the sides the result has to have been computed from
+     * @return the cached result, or {@code null} if there is none for this version
+     */
+    public DiffResult peek(int diffId, long version) {
+        VersionedResult entry = cache.getIfPresent(diffId);
+        return entry != null && entry.version == version ? entry.result : null;
+    }
+
+    public void put(int diffId, long version, DiffResult result) {
+        cache.asMap().merge(diffId, new VersionedResult(version, result),
+                (current, candidate) -> current.version > candidate.version ? current : candidate);
+    }
+
+    public void invalidate(int diffId) {
+        cache.invalidate(diffId);
+    }
+
+    public CacheStats getStats() {
+        long totalBytes = cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+        return new CacheStats(hitCount.sum(), missCount.sum(), cache.stats().evictionCount(),
+                cache.estimatedSize(), totalBytes);
+    }
+
+    /**
+     * @return the estimated heap footprint of result, in bytes
+     */
+    static int weigh(DiffResult result) {
+        long bytes = RESULT_OVERHEAD_BYTES + 8L * result.getRangeCount();
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private static final class VersionedResult {
+
+        private final long version;
+        private final DiffResult result;
+
+        private VersionedResult(long version, DiffResult result) {
+            this.version = version;
+            this.result = result;
+        }
+
+    }
+
+}
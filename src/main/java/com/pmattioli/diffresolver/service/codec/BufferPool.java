@@ -0,0 +1,135 @@
+package com.pmattioli.diffresolver.service.codec;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.util.Assert;
+
+/**
+ * Pool of the scratch arrays requests use and discard: decode and copy buffers, response frames and the like, so they
+ * are reused instead of being allocated, and collected, on every request.
+ *
+ * <p>Arrays come in size classes, the powers of two from {@code minSize} to {@code maxSize}, each pooling up to
+ * {@code maxBytesPerClass} bytes worth of arrays. {@code acquire} returns an array of the smallest class that fits,
+ * possibly longer than requested, and arrays larger than the largest class are allocated as usual. Arrays are
+ * released explicitly, once whatever they held has been written out; those that aren't, because of an error for
+ * instance, are just collected. Each class is a stack guarded by its own lock, so neither acquiring nor releasing
+ * allocates.
+ *
+ * <p>A released array must not be used anymore, since it may be handed to another request right away.
+ * @author pmattioli
+ */
+public final class BufferPool {
+
+    public static final BufferPool SHARED = new BufferPool(4096, 1 << 20, 8 << 20);
+
+    private static final int MAX_ARRAYS_PER_CLASS = 256;
+
+    private final int minShift;
+    private final int maxShift;
+    private final SizeClass[] sizeClasses;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param minSize the size of the smallest class, a power of two
+     * @param maxSize the size of the largest class, a power of two
+     * @param maxBytesPerClass how many bytes worth of arrays each class can pool, at least one array
+     */
+    public BufferPool(int minSize, int maxSize, int maxBytesPerClass) {
+        Assert.isTrue(minSize > 0 && Integer.bitCount(minSize) == 1, "Minimum size has to be a power of two");
+        Assert.isTrue(maxSize >= minSize && Integer.bitCount(maxSize) == 1,
+                "Maximum size has to be a power of two, not lower than the minimum size");
+        Assert.isTrue(maxBytesPerClass > 0, "Maximum bytes per class has to be positive");
+        this.minShift = Integer.numberOfTrailingZeros(minSize);
+        this.maxShift = Integer.numberOfTrailingZeros(maxSize);
+        this.sizeClasses = new SizeClass[maxShift - minShift + 1];
+        for (int shift = minShift; shift <= maxShift; shift++) {
+            int capacity = Math.min(MAX_ARRAYS_PER_CLASS, Math.max(1, maxBytesPerClass >>> shift));
+            sizeClasses[shift - minShift] = new SizeClass(capacity);
+        }
+    }
+
+    /**
+     * @param minLength the minimum length of the array
+     * @return a pooled array at least that long, or a new one if none is available; its contents are undefined
+     */
+    public byte[] acquire(int minLength) {
+        Assert.isTrue(minLength >= 0, "Length can't be negative");
+        int shift = Math.max(minShift, 32 - Integer.numberOfLeadingZeros(Math.max(minLength, 1) - 1));
+        if (shift > maxShift) {
+            misses.increment();
+            return new byte[minLength];
+        }
+        byte[] array = sizeClasses[shift - minShift].pop();
+        if (array == null) {
+            misses.increment();
+            return new byte[1 << shift];
+        }
+        hits.increment();
+        return array;
+    }
+
+    /**
+     * Returns an array to the pool, if it's the size of a class that isn't full. Arrays of any other size are ignored,
+     * so it's safe to release any array that is no longer used.
+     *
+     * @param array the array, which may be {@code null}
+     */
+    public void release(byte[] array) {
+        if (array == null || Integer.bitCount(array.length) != 1) {
+            return;
+        }
+        int shift = Integer.numberOfTrailingZeros(array.length);
+        if (shift >= minShift && shift <= maxShift) {
+            sizeClasses[shift - minShift].push(array);
+        }
+    }
+
+    /**
+     * @return the size of the largest class: longer arrays are never pooled
+     */
+    public int getMaxSize() {
+        return 1 << maxShift;
+    }
+
+    /**
+     * @return the number of arrays acquired from the pool
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of arrays allocated because the pool had none of their class, or they were too large
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private static final class SizeClass {
+
+        private final byte[][] arrays;
+        private int count;
+
+        private SizeClass(int capacity) {
+            this.arrays = new byte[capacity][];
+        }
+
+        private synchronized byte[] pop() {
+            if (count == 0) {
+                return null;
+            }
+            byte[] array = arrays[--count];
+            arrays[count] = null;
+            return array;
+        }
+
+        private synchronized void push(byte[] array) {
+            if (count < arrays.length) {
+                arrays[count++] = array;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,224 @@
+package com.pmattioli.diffresolver.service.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Reads raw binary payloads into memory.
+ * @author pmattioli
+ */
+public final class ByteStreams {
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    private static final int SCRATCH_BUFFER_SIZE = 64 * 1024;
+
+    private ByteStreams() {
+    }
+
+    /**
+     * Same as {@code readFully(InputStream, long, long)}, without any limit but the largest array size.
+     */
+    public static byte[] readFully(InputStream inputStream, long expectedLength) throws IOException {
+        return readFully(inputStream, expectedLength, MAX_ARRAY_SIZE);
+    }
+
+    /**
+     * Reads the whole stream. When expectedLength is known, the data is read into an array that starts at up to
+     * {@value #SCRATCH_BUFFER_SIZE} bytes and doubles as the data arrives, up to exactly that size, so a declared
+     * length only takes memory once the data proves it. Otherwise it's read into pooled chunks which are copied to an
+     * array of the exact size at the end.
+     *
+     * @param inputStream the stream to read, which is not closed
+     * @param expectedLength the number of bytes in the stream, or a negative value if unknown
+     * @param maxLength the largest number of bytes accepted
+     * @return the bytes read
+     * @throws PayloadTooLargeException when expectedLength, or the stream, goes over maxLength
+     * @throws IOException when reading fails
+     * @throws IllegalArgumentException when the stream doesn't hold exactly expectedLength bytes
+     */
+    public static byte[] readFully(InputStream inputStream, long expectedLength, long maxLength) throws IOException {
+        int limit = checkLength(expectedLength, maxLength);
+        if (expectedLength >= 0) {
+            byte[] data = new byte[(int) Math.min(SCRATCH_BUFFER_SIZE, expectedLength)];
+            int read = readAtMost(inputStream, data, 0, data.length);
+            while (read == data.length && data.length < expectedLength) {
+                data = Arrays.copyOf(data, (int) Math.min(2L * data.length, expectedLength));
+                read += readAtMost(inputStream, data, read, data.length - read);
+            }
+            checkEnd(inputStream, read, expectedLength);
+            return data;
+        }
+
+        Chunks chunks = new Chunks();
+        try {
+            chunks.read(inputStream, limit);
+            byte[] data = new byte[chunks.length];
+            chunks.copyTo(ByteBuffer.wrap(data));
+            return data;
+        } finally {
+            chunks.release();
+        }
+    }
+
+    /**
+     * Same as {@code readFully(InputStream, long, long, IntFunction)}, without any limit but the largest buffer size.
+     */
+    public static ByteBuffer readFully(InputStream inputStream, long expectedLength, IntFunction<ByteBuffer> allocator)
+            throws IOException {
+        return readFully(inputStream, expectedLength, MAX_ARRAY_SIZE, allocator);
+    }
+
+    /**
+     * Same as {@code readFully(InputStream, long, long)}, reading into buffers obtained from allocator, which may be
+     * direct or memory-mapped ones so that large payloads are read off the heap. Such buffers are filled through a
+     * pooled scratch array of up to {@value #SCRATCH_BUFFER_SIZE} bytes. When expectedLength is known, the buffer grows
+     * as the data arrives, up to exactly that size, and otherwise the data is read into pooled chunks and copied to a
+     * buffer of its exact size at the end.
+     *
+     * @param inputStream the stream to read, which is not closed
+     * @param expectedLength the number of bytes in the stream, or a negative value if unknown
+     * @param maxLength the largest number of bytes accepted
+     * @param allocator the function returning a buffer of the given capacity
+     * @return the buffer, holding the bytes read from index zero up to its limit
+     * @throws PayloadTooLargeException when expectedLength, or the stream, goes over maxLength
+     * @throws IOException when reading fails
+     * @throws IllegalArgumentException when the stream doesn't hold exactly expectedLength bytes
+     */
+    public static ByteBuffer readFully(InputStream inputStream, long expectedLength, long maxLength,
+            IntFunction<ByteBuffer> allocator) throws IOException {
+        int limit = checkLength(expectedLength, maxLength);
+        if (expectedLength >= 0) {
+            ByteBuffer data = allocator.apply((int) Math.min(SCRATCH_BUFFER_SIZE, expectedLength));
+            byte[] scratch = BufferPool.SHARED.acquire((int) Math.min(SCRATCH_BUFFER_SIZE, expectedLength));
+            try {
+                int read = readAtMost(inputStream, data, 0, scratch);
+                while (read == data.capacity() && data.capacity() < expectedLength) {
+                    ByteBuffer grown = allocator.apply((int) Math.min(2L * data.capacity(), expectedLength));
+                    data.clear();
+                    grown.put(data);
+                    data = grown;
+                    read += readAtMost(inputStream, data, read, scratch);
+                }
+                checkEnd(inputStream, read, expectedLength);
+                data.clear();
+                return data;
+            } finally {
+                BufferPool.SHARED.release(scratch);
+            }
+        }
+
+        Chunks chunks = new Chunks();
+        try {
+            chunks.read(inputStream, limit);
+            ByteBuffer data = allocator.apply(chunks.length);
+            chunks.copyTo(data.duplicate());
+            return data;
+        } finally {
+            chunks.release();
+        }
+    }
+
+    /**
+     * @return the largest number of bytes that can be read
+     */
+    private static int checkLength(long expectedLength, long maxLength) throws PayloadTooLargeException {
+        int limit = (int) Math.min(maxLength, MAX_ARRAY_SIZE);
+        if (expectedLength > limit) {
+            throw new PayloadTooLargeException("Data is too large: " + expectedLength + " bytes, the maximum is "
+                    + limit);
+        }
+        return limit;
+    }
+
+    private static void checkEnd(InputStream inputStream, int read, long expectedLength) throws IOException {
+        if (read < expectedLength || inputStream.read() >= 0) {
+            throw new IllegalArgumentException("Data length doesn't match the declared length " + expectedLength);
+        }
+    }
+
+    /**
+     * Reads into buffer from offset up to its capacity, straight into its array if it has one, or else through scratch.
+     */
+    private static int readAtMost(InputStream inputStream, ByteBuffer buffer, int offset, byte[] scratch)
+            throws IOException {
+        if (buffer.hasArray()) {
+            return readAtMost(inputStream, buffer.array(), buffer.arrayOffset() + offset, buffer.capacity() - offset);
+        }
+        ByteBuffer output = buffer.duplicate();
+        output.clear().position(offset);
+        int total = 0;
+        while (output.hasRemaining()) {
+            int requested = Math.min(scratch.length, output.remaining());
+            int read = readAtMost(inputStream, scratch, 0, requested);
+            output.put(scratch, 0, read);
+            total += read;
+            if (read < requested) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private static int readAtMost(InputStream inputStream, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = inputStream.read(buffer, offset + total, length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Holds a stream of unknown length in pooled arrays of {@value #SCRATCH_BUFFER_SIZE} bytes while it's read.
+     */
+    private static final class Chunks {
+
+        private byte[][] chunks = new byte[4][];
+        private int chunkCount;
+        private int length;
+
+        private void read(InputStream inputStream, int maxLength) throws IOException {
+            while (length < maxLength) {
+                if (chunkCount == chunks.length) {
+                    chunks = Arrays.copyOf(chunks, chunkCount * 2);
+                }
+                byte[] chunk = BufferPool.SHARED.acquire(SCRATCH_BUFFER_SIZE);
+                chunks[chunkCount++] = chunk;
+                int requested = Math.min(SCRATCH_BUFFER_SIZE, maxLength - length);
+                int read = readAtMost(inputStream, chunk, 0, requested);
+                length += read;
+                if (read < requested) {
+                    return;
+                }
+            }
+            if (inputStream.read() >= 0) {
+                throw new PayloadTooLargeException("Data is larger than " + maxLength + " bytes");
+            }
+        }
+
+        private void copyTo(ByteBuffer output) {
+            int remaining = length;
+            for (int chunk = 0; chunk < chunkCount && remaining > 0; chunk++) {
+                int copied = Math.min(SCRATCH_BUFFER_SIZE, remaining);
+                output.put(chunks[chunk], 0, copied);
+                remaining -= copied;
+            }
+        }
+
+        private void release() {
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                BufferPool.SHARED.release(chunks[chunk]);
+                chunks[chunk] = null;
+            }
+            chunkCount = 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.pmattioli.diffresolver.service.codec;
+
+import java.io.IOException;
+
+/**
+ * Thrown while a request body is being read, as soon as it's known to be larger than the configured limit, so that
+ * oversized bodies are rejected before they're held in memory.
+ * @author pmattioli
+ */
+public class PayloadTooLargeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PayloadTooLargeException(String message) {
+        super(message);
+    }
+
+}
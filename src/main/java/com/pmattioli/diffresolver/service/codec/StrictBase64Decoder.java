@@ -0,0 +1,138 @@
+package com.pmattioli.diffresolver.service.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Validates and decodes Base64-encoded data in a single pass.
+ *
+ * <p>Accepts exactly what the former
+ * {@code ^([A-Za-z0-9+/]{4})*([A-Za-z0-9+/]{4}|[A-Za-z0-9+/]{3}=|[A-Za-z0-9+/]{2}==)$} validation pattern accepted:
+ * the standard alphabet, no line separators or whitespace, a length that is a non-zero multiple of four and padding
+ * only at the very end. Characters are read straight from the {@code CharSequence}, so the only allocation is the
+ * buffer holding the decoded bytes, which is sized exactly up front.
+ * @author pmattioli
+ */
+public final class StrictBase64Decoder {
+
+    public static final String INVALID_DATA_MESSAGE = "Data has to be Base64-encoded";
+
+    private static final char PADDING = '=';
+    private static final int SCRATCH_QUADS = 16 * 1024;
+    private static final int[] DECODING_TABLE = new int[128];
+
+    static {
+        Arrays.fill(DECODING_TABLE, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODING_TABLE[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private StrictBase64Decoder() {
+    }
+
+    /**
+     * @param encodedData the Base64-encoded data
+     * @return the decoded bytes
+     * @throws IllegalArgumentException when encodedData is not valid Base64
+     */
+    public static byte[] decode(CharSequence encodedData) {
+        int padding = padding(encodedData);
+        int length = encodedData.length();
+        byte[] decoded = new byte[(length / 4) * 3 - padding];
+        decodeQuads(encodedData, 0, length - 4, decoded, 0);
+        decodeLastQuad(encodedData, padding, decoded, decoded.length - (3 - padding));
+        return decoded;
+    }
+
+    /**
+     * Same as {@code decode(CharSequence)}, decoding into a buffer obtained from allocator, which may be a direct or
+     * memory-mapped one so that large payloads are decoded off the heap. Such buffers are filled through a scratch
+     * array of up to {@value #SCRATCH_QUADS} quads, taken from the shared {@code BufferPool}, so nothing but the buffer
+     * is allocated.
+     *
+     * @param encodedData the Base64-encoded data
+     * @param allocator the function returning a buffer of the given capacity, called once the decoded length is known
+     * @return the buffer, holding the decoded bytes from index zero up to its limit
+     * @throws IllegalArgumentException when encodedData is not valid Base64
+     */
+    public static ByteBuffer decode(CharSequence encodedData, IntFunction<ByteBuffer> allocator) {
+        int padding = padding(encodedData);
+        int length = encodedData.length();
+        int decodedLength = (length / 4) * 3 - padding;
+        ByteBuffer decoded = allocator.apply(decodedLength);
+        if (decoded.hasArray()) {
+            int offset = decoded.arrayOffset();
+            decodeQuads(encodedData, 0, length - 4, decoded.array(), offset);
+            decodeLastQuad(encodedData, padding, decoded.array(), offset + decodedLength - (3 - padding));
+            return decoded;
+        }
+
+        byte[] scratch = BufferPool.SHARED.acquire(Math.min(SCRATCH_QUADS, length / 4) * 3);
+        try {
+            ByteBuffer output = decoded.duplicate();
+            output.clear();
+            for (int in = 0; in < length - 4; in += SCRATCH_QUADS * 4) {
+                int to = Math.min(in + SCRATCH_QUADS * 4, length - 4);
+                decodeQuads(encodedData, in, to, scratch, 0);
+                output.put(scratch, 0, (to - in) / 4 * 3);
+            }
+            decodeLastQuad(encodedData, padding, scratch, 0);
+            output.put(scratch, 0, 3 - padding);
+            return decoded;
+        } finally {
+            BufferPool.SHARED.release(scratch);
+        }
+    }
+
+    private static int padding(CharSequence encodedData) {
+        int length = encodedData.length();
+        if (length == 0 || (length & 3) != 0) {
+            throw new IllegalArgumentException(INVALID_DATA_MESSAGE);
+        }
+        if (encodedData.charAt(length - 1) != PADDING) {
+            return 0;
+        }
+        return encodedData.charAt(length - 2) == PADDING ? 2 : 1;
+    }
+
+    private static void decodeQuads(CharSequence encodedData, int from, int to, byte[] decoded, int offset) {
+        int out = offset;
+        for (int in = from; in < to; in += 4) {
+            int bits = sextet(encodedData, in) << 18
+                    | sextet(encodedData, in + 1) << 12
+                    | sextet(encodedData, in + 2) << 6
+                    | sextet(encodedData, in + 3);
+            decoded[out++] = (byte) (bits >> 16);
+            decoded[out++] = (byte) (bits >> 8);
+            decoded[out++] = (byte) bits;
+        }
+    }
+
+    private static void decodeLastQuad(CharSequence encodedData, int padding, byte[] decoded, int offset) {
+        int lastQuadStart = encodedData.length() - 4;
+        int out = offset;
+        int bits = sextet(encodedData, lastQuadStart) << 18 | sextet(encodedData, lastQuadStart + 1) << 12;
+        decoded[out++] = (byte) (bits >> 16);
+        if (padding < 2) {
+            bits |= sextet(encodedData, lastQuadStart + 2) << 6;
+            decoded[out++] = (byte) (bits >> 8);
+        }
+        if (padding < 1) {
+            bits |= sextet(encodedData, lastQuadStart + 3);
+            decoded[out] = (byte) bits;
+        }
+    }
+
+    private static int sextet(CharSequence encodedData, int index) {
+        char c = encodedData.charAt(index);
+        int value = c < DECODING_TABLE.length ? DECODING_TABLE[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException(INVALID_DATA_MESSAGE);
+        }
+        return value;
+    }
+
+}
@@ -1,17 +1,251 @@
 package com.pmattioli.diffresolver.service.conf;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.DispatcherType;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
 
+import com.pmattioli.diffresolver.api.filter.ContentEncodingFilter;
+import com.pmattioli.diffresolver.api.filter.NonBlockingUploadFilter;
+import com.pmattioli.diffresolver.service.DeltaResolverService;
 import com.pmattioli.diffresolver.service.DiffResolverService;
-import com.pmattioli.diffresolver.service.impl.SimpleDiffResolverService;
+import com.pmattioli.diffresolver.service.cache.DiffResultCache;
+import com.pmattioli.diffresolver.service.codec.BufferPool;
+import com.pmattioli.diffresolver.service.delta.BlockMatchingDeltaEngine;
+import com.pmattioli.diffresolver.service.engine.ByteByByteDiffEngine;
+import com.pmattioli.diffresolver.service.engine.DiffEngine;
+import com.pmattioli.diffresolver.service.engine.ParallelDiffEngine;
+import com.pmattioli.diffresolver.service.engine.WordDiffEngine;
+import com.pmattioli.diffresolver.service.impl.DeltaDiffResolverService;
+import com.pmattioli.diffresolver.service.job.DiffJobService;
+import com.pmattioli.diffresolver.service.metrics.BufferPoolMetrics;
+import com.pmattioli.diffresolver.service.metrics.DiffMetrics;
+import com.pmattioli.diffresolver.service.metrics.DiffStoreMetrics;
+import com.pmattioli.diffresolver.service.store.BoundedDiffStore;
+import com.pmattioli.diffresolver.service.store.DiffStore;
+import com.pmattioli.diffresolver.service.store.SegmentDiffStore;
+import com.pmattioli.diffresolver.service.store.SideBufferAllocator;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 @Configuration
 public class BinaryDiffConfig {
 
+    private static final long STORE_CLEAN_UP_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final long STORE_COMPACTION_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Selects where sides are stored through the {@code diffresolver.store.type} property.
+     *
+     * <p>{@code memory} keeps them on the heap, under {@code diffresolver.store.maximum-bytes} bytes by evicting the
+     * least recently used diffs, and rejects sides that would take them over {@code diffresolver.store.hard-cap-bytes}
+     * bytes. Diffs that aren't accessed for {@code diffresolver.store.ttl} seconds are removed.
+     *
+     * <p>{@code segment} appends them to files of {@code diffresolver.store.segment-size} bytes in
+     * {@code diffresolver.store.directory}, where they survive restarts, forcing every write to the storage device if
+     * {@code diffresolver.store.sync} is set.
+     */
+    @Bean
+    public DiffStore diffStore(@Value("${diffresolver.store.type:memory}") String type,
+            @Value("${diffresolver.store.maximum-bytes:536870912}") long maximumBytes,
+            @Value("${diffresolver.store.hard-cap-bytes:805306368}") long hardCapBytes,
+            @Value("${diffresolver.store.ttl:3600}") long ttlSeconds,
+            @Value("${diffresolver.store.directory:diffresolver-data}") String directory,
+            @Value("${diffresolver.store.segment-size:268435456}") int segmentSize,
+            @Value("${diffresolver.store.sync:false}") boolean sync,
+            @Value("${diffresolver.index.chunk-size:65536}") int indexChunkSize) throws IOException {
+        switch (type) {
+            case "memory":
+                return new BoundedDiffStore(maximumBytes, hardCapBytes, TimeUnit.SECONDS.toMillis(ttlSeconds),
+                        STORE_CLEAN_UP_INTERVAL_MILLIS, Clock.systemUTC());
+            case "segment":
+                return new SegmentDiffStore(Paths.get(directory), segmentSize, sync, indexChunkSize,
+                        STORE_COMPACTION_INTERVAL_MILLIS);
+            default:
+                throw new IllegalArgumentException("Unknown diff store type: " + type);
+        }
+    }
+
+    @Bean
+    public DiffStoreMetrics diffStoreMetrics(DiffStore diffStore) {
+        return new DiffStoreMetrics(diffStore);
+    }
+
+    @Bean
+    public BufferPoolMetrics bufferPoolMetrics() {
+        return new BufferPoolMetrics(BufferPool.SHARED);
+    }
+
+    @Bean
+    public DiffMetrics diffMetrics(MeterRegistry meterRegistry) {
+        return new DiffMetrics(meterRegistry);
+    }
+
+    /**
+     * Selects the comparison engine through the {@code diffresolver.engine} property: {@code byte} compares one byte
+     * per iteration, while {@code word} compares eight bytes at a time.
+     *
+     * <p>Comparisons larger than {@code diffresolver.parallel.threshold} bytes are split into chunks of
+     * {@code diffresolver.parallel.chunk-size} bytes, compared by {@code diffresolver.parallel.parallelism} threads. A
+     * parallelism of one disables parallel comparisons altogether.
+     */
+    @Bean
+    public DiffEngine diffEngine(@Value("${diffresolver.engine:word}") String engine,
+            @Value("${diffresolver.parallel.parallelism:0}") int parallelism,
+            @Value("${diffresolver.parallel.threshold:8388608}") int parallelThreshold,
+            @Value("${diffresolver.parallel.chunk-size:1048576}") int chunkSize) {
+        DiffEngine diffEngine;
+        switch (engine) {
+            case "byte":
+                diffEngine = new ByteByByteDiffEngine();
+                break;
+            case "word":
+                diffEngine = new WordDiffEngine();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown diff engine: " + engine);
+        }
+
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        return parallelism == 1 ? diffEngine
+                : new ParallelDiffEngine(diffEngine, parallelism, parallelThreshold, chunkSize);
+    }
+
+    /**
+     * Caches resolved diffs up to an estimated {@code diffresolver.cache.maximum-bytes} bytes.
+     */
+    @Bean
+    public DiffResultCache diffResultCache(@Value("${diffresolver.cache.maximum-bytes:67108864}") long maximumBytes) {
+        return new DiffResultCache(maximumBytes);
+    }
+
+    /**
+     * Selects where decoded sides of at least {@code diffresolver.offheap.threshold} bytes are held through the
+     * {@code diffresolver.offheap.mode} property: {@code heap} keeps every side on the heap, {@code direct} holds large
+     * ones in direct buffers, and {@code mapped} in memory-mapped temporary files created in
+     * {@code diffresolver.offheap.directory}.
+     */
+    @Bean
+    public SideBufferAllocator sideBufferAllocator(@Value("${diffresolver.offheap.mode:heap}") String mode,
+            @Value("${diffresolver.offheap.threshold:16777216}") int threshold,
+            @Value("${diffresolver.offheap.directory:${java.io.tmpdir}}") String directory) {
+        switch (mode) {
+            case "heap":
+                return SideBufferAllocator.HEAP;
+            case "direct":
+                return new SideBufferAllocator(SideBufferAllocator.Mode.DIRECT, threshold, null);
+            case "mapped":
+                return new SideBufferAllocator(SideBufferAllocator.Mode.MAPPED, threshold, Paths.get(directory));
+            default:
+                throw new IllegalArgumentException("Unknown off-heap mode: " + mode);
+        }
+    }
+
+    /**
+     * Selects how upload bodies are read through the {@code diffresolver.upload.mode} property: {@code non-blocking}
+     * reads them with non-blocking servlet I/O, so slow clients don't hold a request thread, giving up on those that
+     * take more than {@code diffresolver.upload.timeout} seconds, while {@code blocking} lets controllers read them
+     * from the connection. Bodies larger than {@code diffresolver.upload.max-bytes}, by default the store's hard cap,
+     * are rejected.
+     */
+    @Bean
+    public FilterRegistrationBean uploadFilter(@Value("${diffresolver.upload.mode:non-blocking}") String mode,
+            @Value("${diffresolver.upload.timeout:300}") long timeoutSeconds,
+            @Value("${diffresolver.upload.max-bytes:${diffresolver.store.hard-cap-bytes:805306368}}") long maxBytes,
+            SideBufferAllocator sideBufferAllocator) {
+        FilterRegistrationBean registration = new FilterRegistrationBean(new NonBlockingUploadFilter(
+                sideBufferAllocator, TimeUnit.SECONDS.toMillis(timeoutSeconds), maxBytes));
+        registration.addUrlPatterns("/v1/diff/*");
+        registration.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ASYNC);
+        registration.setAsyncSupported(true);
+        registration.setOrder(Ordered.LOWEST_PRECEDENCE - 1);
+        switch (mode) {
+            case "non-blocking":
+                break;
+            case "blocking":
+                registration.setEnabled(false);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown upload mode: " + mode);
+        }
+        return registration;
+    }
+
+    /**
+     * Decompresses {@code gzip} and {@code deflate} request bodies, and compresses responses of at least
+     * {@code diffresolver.compression.min-response-size} bytes at {@code diffresolver.compression.level} when the
+     * client accepts it. It runs after the upload filter, so non-blocking uploads are buffered compressed. Bodies
+     * inflating to more than {@code diffresolver.compression.max-inflated-bytes}, by default the store's hard cap, are
+     * answered with {@code 413 Payload Too Large}. Setting {@code diffresolver.compression.enabled} to {@code false}
+     * disables both.
+     */
+    @Bean
+    public FilterRegistrationBean contentEncodingFilter(
+            @Value("${diffresolver.compression.enabled:true}") boolean enabled,
+            @Value("${diffresolver.compression.min-response-size:2048}") int minResponseSize,
+            @Value("${diffresolver.compression.level:6}") int level,
+            @Value("${diffresolver.compression.max-inflated-bytes:${diffresolver.store.hard-cap-bytes:805306368}}")
+                    long maxInflatedBytes) {
+        FilterRegistrationBean registration = new FilterRegistrationBean(
+                new ContentEncodingFilter(minResponseSize, level, maxInflatedBytes));
+        registration.addUrlPatterns("/v1/diff/*");
+        registration.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ASYNC);
+        registration.setAsyncSupported(true);
+        registration.setOrder(Ordered.LOWEST_PRECEDENCE);
+        registration.setEnabled(enabled);
+        return registration;
+    }
+
+    /**
+     * Sides larger than {@code diffresolver.index.chunk-size} bytes are indexed with a hash tree over chunks of that
+     * size, so that comparisons only scan the chunks that differ. Zero disables indexing.
+     *
+     * <p>Deltas between sides of different sizes match blocks of {@code diffresolver.delta.block-size} bytes, indexing
+     * at most {@code diffresolver.delta.max-index-entries} blocks of the left side. Raw uploads and patches larger than
+     * {@code diffresolver.upload.max-bytes} are rejected, whether they're read by the upload filter or not.
+     */
+    @Bean
+    public DeltaResolverService diffResolver(DiffStore diffStore, DiffEngine diffEngine,
+            DiffResultCache diffResultCache, DiffMetrics diffMetrics, SideBufferAllocator sideBufferAllocator,
+            @Value("${diffresolver.index.chunk-size:65536}") int indexChunkSize,
+            @Value("${diffresolver.delta.block-size:16}") int deltaBlockSize,
+            @Value("${diffresolver.delta.max-index-entries:1048576}") int deltaMaxIndexEntries,
+            @Value("${diffresolver.upload.max-bytes:${diffresolver.store.hard-cap-bytes:805306368}}")
+                    long maxUploadBytes) {
+        DeltaDiffResolverService diffResolver = new DeltaDiffResolverService(diffStore, diffEngine, diffResultCache,
+                new BlockMatchingDeltaEngine(deltaBlockSize, deltaMaxIndexEntries));
+        diffResolver.setIndexChunkSize(indexChunkSize);
+        diffResolver.setMetrics(diffMetrics);
+        diffResolver.setSideBufferAllocator(sideBufferAllocator);
+        diffResolver.setMaxUploadSize(maxUploadBytes);
+        return diffResolver;
+    }
+
+    /**
+     * Runs diff jobs on {@code diffresolver.jobs.workers} threads, or {@code diffresolver.jobs.large-workers} threads
+     * for diffs larger than {@code diffresolver.jobs.large-threshold} bytes, each with a queue of
+     * {@code diffresolver.jobs.queue-capacity} jobs. Finished jobs are kept for {@code diffresolver.jobs.result-ttl}
+     * seconds.
+     */
     @Bean
-    public DiffResolverService diffResolver(){
-        return new SimpleDiffResolverService();
+    public DiffJobService diffJobService(DiffResolverService diffResolver,
+            @Value("${diffresolver.jobs.workers:2}") int workers,
+            @Value("${diffresolver.jobs.large-workers:1}") int largeWorkers,
+            @Value("${diffresolver.jobs.queue-capacity:64}") int queueCapacity,
+            @Value("${diffresolver.jobs.large-threshold:8388608}") int largeThreshold,
+            @Value("${diffresolver.jobs.result-ttl:600}") long resultTtlSeconds) {
+        return new DiffJobService(diffResolver, workers, largeWorkers, queueCapacity, largeThreshold,
+                TimeUnit.SECONDS.toMillis(resultTtlSeconds), Clock.systemUTC());
     }
 
 }
@@ -0,0 +1,205 @@
+package com.pmattioli.diffresolver.service.delta;
+
+import java.nio.ByteBuffer;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@code DeltaEngine} that finds the bytes both sides have in common by matching blocks, in the style of xdelta and
+ * bsdiff, instead of computing an edit distance.
+ *
+ * <p>The left side is indexed by the rolling hash of blocks of {@code blockSize} bytes taken every {@code blockSize}
+ * bytes or more, in a table of at most {@code maxIndexEntries} entries. The right side is then scanned one byte at a
+ * time: a block of it is matched either at the same distance from the end of the previous match in the left side, which
+ * catches bytes that were just replaced, or at the position its hash points to in the index, which catches bytes that
+ * were inserted or deleted. Every match is verified byte by byte and extended both ways, and the bytes between two
+ * matches are reported as deleted from the left side and inserted into the right side. The common prefix and suffix of
+ * both sides are matched as well, whatever their length.
+ *
+ * <p>Both time and memory grow linearly with the size of the data, and the index never takes more than
+ * {@code maxIndexEntries * 4} bytes, at the cost of some matches shorter than twice the indexing stride being missed.
+ * Matching is greedy and only moves forward on both sides, so the operations found are valid but not always the
+ * fewest: a block that moved is reported as deleted and inserted again.
+ *
+ * <p>Sides are read at absolute indexes wherever they're held, so sides kept in direct or memory-mapped buffers are
+ * compared without being copied to the heap.
+ * @author pmattioli
+ */
+public class BlockMatchingDeltaEngine implements DeltaEngine {
+
+    public static final int DEFAULT_BLOCK_SIZE = 16;
+    public static final int DEFAULT_MAX_INDEX_ENTRIES = 1 << 20;
+
+    private static final long HASH_MULTIPLIER = 0x100000001b3L;
+    private static final long SLOT_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    private final int blockSize;
+    private final int maxIndexEntries;
+    private final long removalFactor;
+
+    public BlockMatchingDeltaEngine() {
+        this(DEFAULT_BLOCK_SIZE, DEFAULT_MAX_INDEX_ENTRIES);
+    }
+
+    /**
+     * @param blockSize the size of the blocks matched, which is also the shortest match found
+     * @param maxIndexEntries the maximum number of blocks of the left side indexed
+     */
+    public BlockMatchingDeltaEngine(int blockSize, int maxIndexEntries) {
+        Assert.isTrue(blockSize > 0, "Block size has to be positive");
+        Assert.isTrue(maxIndexEntries > 0 && maxIndexEntries <= 1 << 29,
+                "Maximum index entries has to be between 1 and 2^29");
+        this.blockSize = blockSize;
+        this.maxIndexEntries = maxIndexEntries;
+        long factor = 1;
+        for (int i = 1; i < blockSize; i++) {
+            factor *= HASH_MULTIPLIER;
+        }
+        this.removalFactor = factor;
+    }
+
+    @Override
+    public boolean delta(byte[] leftSide, byte[] rightSide, DeltaHandler handler) {
+        return delta(ByteBuffer.wrap(leftSide), ByteBuffer.wrap(rightSide), handler);
+    }
+
+    @Override
+    public boolean delta(ByteBuffer leftSide, ByteBuffer rightSide, DeltaHandler handler) {
+        int prefixLength = commonPrefixLength(leftSide, 0, rightSide, 0);
+        if (prefixLength > 0 && !handler.onOperation(DeltaOperation.COPY, 0, 0, prefixLength)) {
+            return false;
+        }
+        BlockIndex index = new BlockIndex(leftSide);
+        int leftPosition = prefixLength;
+        int rightPosition = prefixLength;
+
+        int scan = rightPosition;
+        long hash = scan + blockSize <= rightSide.limit() ? hash(rightSide, scan) : 0;
+        while (scan + blockSize <= rightSide.limit()) {
+            int match = leftPosition + scan - rightPosition;
+            if (match > leftSide.limit() - blockSize || !blockEquals(leftSide, match, rightSide, scan)) {
+                match = index.find(hash);
+                if (match < leftPosition || !blockEquals(leftSide, match, rightSide, scan)) {
+                    match = -1;
+                }
+            }
+            if (match < 0) {
+                if (scan + blockSize < rightSide.limit()) {
+                    hash = (hash - rightSide.get(scan) * removalFactor) * HASH_MULTIPLIER
+                            + rightSide.get(scan + blockSize);
+                }
+                scan++;
+                continue;
+            }
+
+            int backwards = 0;
+            while (match - backwards > leftPosition && scan - backwards > rightPosition
+                    && leftSide.get(match - backwards - 1) == rightSide.get(scan - backwards - 1)) {
+                backwards++;
+            }
+            int leftStart = match - backwards;
+            int rightStart = scan - backwards;
+            int length = backwards + blockSize
+                    + commonPrefixLength(leftSide, match + blockSize, rightSide, scan + blockSize);
+            if (!reportGap(leftPosition, leftStart, rightPosition, rightStart, handler)
+                    || !handler.onOperation(DeltaOperation.COPY, leftStart, rightStart, length)) {
+                return false;
+            }
+            leftPosition = leftStart + length;
+            rightPosition = rightStart + length;
+            scan = rightPosition;
+            if (scan + blockSize <= rightSide.limit()) {
+                hash = hash(rightSide, scan);
+            }
+        }
+
+        int suffixLength = commonSuffixLength(leftSide, leftPosition, rightSide, rightPosition);
+        int leftEnd = leftSide.limit() - suffixLength;
+        int rightEnd = rightSide.limit() - suffixLength;
+        return reportGap(leftPosition, leftEnd, rightPosition, rightEnd, handler)
+                && (suffixLength == 0 || handler.onOperation(DeltaOperation.COPY, leftEnd, rightEnd, suffixLength));
+    }
+
+    private static boolean reportGap(int leftFrom, int leftTo, int rightFrom, int rightTo, DeltaHandler handler) {
+        return (leftFrom == leftTo
+                        || handler.onOperation(DeltaOperation.DELETE, leftFrom, rightFrom, leftTo - leftFrom))
+                && (rightFrom == rightTo
+                        || handler.onOperation(DeltaOperation.INSERT, leftTo, rightFrom, rightTo - rightFrom));
+    }
+
+    private long hash(ByteBuffer data, int from) {
+        long hash = 0;
+        for (int i = from; i < from + blockSize; i++) {
+            hash = hash * HASH_MULTIPLIER + data.get(i);
+        }
+        return hash;
+    }
+
+    private boolean blockEquals(ByteBuffer left, int leftFrom, ByteBuffer right, int rightFrom) {
+        for (int i = 0; i < blockSize; i++) {
+            if (left.get(leftFrom + i) != right.get(rightFrom + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int commonPrefixLength(ByteBuffer left, int leftFrom, ByteBuffer right, int rightFrom) {
+        int length = 0;
+        int maxLength = Math.min(left.limit() - leftFrom, right.limit() - rightFrom);
+        while (length < maxLength && left.get(leftFrom + length) == right.get(rightFrom + length)) {
+            length++;
+        }
+        return length;
+    }
+
+    private static int commonSuffixLength(ByteBuffer left, int leftFrom, ByteBuffer right, int rightFrom) {
+        int length = 0;
+        int maxLength = Math.min(left.limit() - leftFrom, right.limit() - rightFrom);
+        while (length < maxLength && left.get(left.limit() - length - 1) == right.get(right.limit() - length - 1)) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Open hash table from the hash of a block of the left side to the position of its first occurrence, without
+     * collision chains: a block whose slot is taken is simply not indexed, and positions found are always verified.
+     */
+    private final class BlockIndex {
+
+        private final int[] positions;
+        private final int shift;
+
+        private BlockIndex(ByteBuffer data) {
+            int blockCount = data.limit() / blockSize;
+            int stride = blockCount <= maxIndexEntries
+                    ? blockSize
+                    : (int) ((data.limit() + (long) maxIndexEntries - 1) / maxIndexEntries);
+            int entries = Math.max(1, Math.min(blockCount, maxIndexEntries));
+            int bits = 32 - Integer.numberOfLeadingZeros(entries * 2 - 1);
+            this.positions = new int[1 << bits];
+            this.shift = 64 - bits;
+
+            for (long position = 0; position + blockSize <= data.limit(); position += stride) {
+                int slot = slot(hash(data, (int) position));
+                if (positions[slot] == 0) {
+                    positions[slot] = (int) position + 1;
+                }
+            }
+        }
+
+        /**
+         * @return the position of a block of the left side that may have the given hash, or -1 if there is none
+         */
+        private int find(long hash) {
+            return positions[slot(hash)] - 1;
+        }
+
+        private int slot(long hash) {
+            return (int) ((hash * SLOT_MULTIPLIER) >>> shift);
+        }
+
+    }
+
+}
@@ -0,0 +1,224 @@
+package com.pmattioli.diffresolver.service.delta;
+
+import java.util.Arrays;
+
+/**
+ * The edit operations that turn the left side of a diff into the right side, which may have a different size.
+ *
+ * <p>Operations are held in order, and each one starts where the previous one ended: a {@code COPY} advances both
+ * sides, an {@code INSERT} only the right side and a {@code DELETE} only the left side. Offsets are zero-based byte
+ * indexes. Like a {@code DiffResult}, a {@code Delta} grows with the number of edits and not with the size of the data.
+ * @author pmattioli
+ */
+public final class Delta {
+
+    private final int leftLength;
+    private final int rightLength;
+    private final DeltaOperation[] operations;
+    private final int[] leftOffsets;
+    private final int[] rightOffsets;
+    private final int[] lengths;
+
+    private Delta(int leftLength, int rightLength, DeltaOperation[] operations, int[] leftOffsets,
+            int[] rightOffsets, int[] lengths) {
+        this.leftLength = leftLength;
+        this.rightLength = rightLength;
+        this.operations = operations;
+        this.leftOffsets = leftOffsets;
+        this.rightOffsets = rightOffsets;
+        this.lengths = lengths;
+    }
+
+    public static Builder builder(int leftLength, int rightLength) {
+        return new Builder(leftLength, rightLength);
+    }
+
+    public int getLeftLength() {
+        return leftLength;
+    }
+
+    public int getRightLength() {
+        return rightLength;
+    }
+
+    /**
+     * @return whether both sides are equal, that is, whether there is nothing but a {@code COPY} of the whole left side
+     */
+    public boolean isEqual() {
+        return leftLength == rightLength && (operations.length == 0
+                || (operations.length == 1 && operations[0] == DeltaOperation.COPY && lengths[0] == leftLength));
+    }
+
+    public int getOperationCount() {
+        return operations.length;
+    }
+
+    /**
+     * @param index the index of the operation, from zero to {@code getOperationCount() - 1}
+     * @return the kind of the operation
+     */
+    public DeltaOperation getOperation(int index) {
+        return operations[index];
+    }
+
+    /**
+     * @param index the index of the operation, from zero to {@code getOperationCount() - 1}
+     * @return the zero-based index in the left side where the operation applies
+     */
+    public int getLeftOffset(int index) {
+        return leftOffsets[index];
+    }
+
+    /**
+     * @param index the index of the operation, from zero to {@code getOperationCount() - 1}
+     * @return the zero-based index in the right side where the operation applies
+     */
+    public int getRightOffset(int index) {
+        return rightOffsets[index];
+    }
+
+    /**
+     * @param index the index of the operation, from zero to {@code getOperationCount() - 1}
+     * @return the number of bytes copied, inserted or deleted
+     */
+    public int getLength(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * Passes every operation to handler, in order.
+     *
+     * @param handler the handler receiving the operations
+     * @return {@code true} if every operation was passed, {@code false} if the handler stopped
+     */
+    public boolean replay(DeltaHandler handler) {
+        for (int index = 0; index < operations.length; index++) {
+            if (!handler.onOperation(operations[index], leftOffsets[index], rightOffsets[index], lengths[index])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (o == this) return true;
+        if (!(o instanceof Delta)) {
+            return false;
+        }
+        Delta delta = (Delta) o;
+        return leftLength == delta.leftLength && rightLength == delta.rightLength &&
+                Arrays.equals(operations, delta.operations) &&
+                Arrays.equals(leftOffsets, delta.leftOffsets) &&
+                Arrays.equals(rightOffsets, delta.rightOffsets) &&
+                Arrays.equals(lengths, delta.lengths);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 31 * leftLength + rightLength;
+        result = 31 * result + Arrays.hashCode(operations);
+        result = 31 * result + Arrays.hashCode(leftOffsets);
+        result = 31 * result + Arrays.hashCode(rightOffsets);
+        return 31 * result + Arrays.hashCode(lengths);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Delta[leftLength=").append(leftLength)
+                .append(", rightLength=").append(rightLength).append(", operations=[");
+        for (int index = 0; index < operations.length; index++) {
+            if (index > 0) {
+                builder.append(", ");
+            }
+            builder.append(operations[index]).append(' ').append(leftOffsets[index]).append('/')
+                    .append(rightOffsets[index]).append('+').append(lengths[index]);
+        }
+        return builder.append("]]").toString();
+    }
+
+    /**
+     * Accumulates operations in order, checking that each one starts where the previous one ended and merging
+     * consecutive operations of the same kind.
+     */
+    public static final class Builder implements DeltaHandler {
+
+        private static final int INITIAL_CAPACITY = 8;
+
+        private final int leftLength;
+        private final int rightLength;
+        private DeltaOperation[] operations = new DeltaOperation[0];
+        private int[] leftOffsets = new int[0];
+        private int[] rightOffsets = new int[0];
+        private int[] lengths = new int[0];
+        private int count;
+        private int leftEnd;
+        private int rightEnd;
+
+        private Builder(int leftLength, int rightLength) {
+            this.leftLength = leftLength;
+            this.rightLength = rightLength;
+        }
+
+        /**
+         * @param operation the kind of operation
+         * @param leftOffset the zero-based index in the left side where the operation applies
+         * @param rightOffset the zero-based index in the right side where the operation applies
+         * @param length the number of bytes copied, inserted or deleted
+         * @return this builder
+         * @throws IllegalArgumentException when the operation is empty, out of bounds or doesn't start where the
+         * previous one ended
+         */
+        public Builder add(DeltaOperation operation, int leftOffset, int rightOffset, int length) {
+            int leftAdvance = operation == DeltaOperation.INSERT ? 0 : length;
+            int rightAdvance = operation == DeltaOperation.DELETE ? 0 : length;
+            if (length <= 0 || leftOffset != leftEnd || rightOffset != rightEnd
+                    || leftOffset > leftLength - leftAdvance || rightOffset > rightLength - rightAdvance) {
+                throw new IllegalArgumentException("Invalid operation " + operation + " " + leftOffset + "/"
+                        + rightOffset + "+" + length);
+            }
+            leftEnd += leftAdvance;
+            rightEnd += rightAdvance;
+            if (count > 0 && operations[count - 1] == operation) {
+                lengths[count - 1] += length;
+                return this;
+            }
+            if (count == operations.length) {
+                int capacity = Math.max(INITIAL_CAPACITY, count * 2);
+                operations = Arrays.copyOf(operations, capacity);
+                leftOffsets = Arrays.copyOf(leftOffsets, capacity);
+                rightOffsets = Arrays.copyOf(rightOffsets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            operations[count] = operation;
+            leftOffsets[count] = leftOffset;
+            rightOffsets[count] = rightOffset;
+            lengths[count] = length;
+            count++;
+            return this;
+        }
+
+        @Override
+        public boolean onOperation(DeltaOperation operation, int leftOffset, int rightOffset, int length) {
+            add(operation, leftOffset, rightOffset, length);
+            return true;
+        }
+
+        /**
+         * @return the delta
+         * @throws IllegalStateException when the operations added don't cover both sides entirely
+         */
+        public Delta build() {
+            if (leftEnd != leftLength || rightEnd != rightLength) {
+                throw new IllegalStateException("Operations cover " + leftEnd + "/" + rightEnd + " bytes out of "
+                        + leftLength + "/" + rightLength);
+            }
+            return new Delta(leftLength, rightLength, Arrays.copyOf(operations, count),
+                    Arrays.copyOf(leftOffsets, count), Arrays.copyOf(rightOffsets, count),
+                    Arrays.copyOf(lengths, count));
+        }
+
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.pmattioli.diffresolver.service.delta;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds edit operations that turn one byte array into another, which may have a different size.
+ * @author pmattioli
+ */
+public interface DeltaEngine {
+
+    /**
+     * Reports the operations that turn leftSide into rightSide, in the order they apply. Together they cover both
+     * sides entirely, as described by {@code Delta}.
+     *
+     * @param leftSide the left side of the comparison
+     * @param rightSide the right side of the comparison
+     * @param handler the handler receiving every operation
+     * @return {@code true} if both sides were covered, {@code false} if the handler stopped the comparison
+     */
+    boolean delta(byte[] leftSide, byte[] rightSide, DeltaHandler handler);
+
+    /**
+     * Same as {@code delta(byte[], byte[], DeltaHandler)}, for sides held in buffers, such as direct or memory-mapped
+     * ones, indexed from zero up to their limit. Buffers are read at absolute indexes, and their position, limit and
+     * byte order are left untouched.
+     *
+     * <p>The default implementation hands the arrays of heap buffers over to the other method, and copies any other
+     * buffer to the heap. Engines that can read buffers directly should override it.
+     *
+     * @param leftSide the left side of the comparison
+     * @param rightSide the right side of the comparison
+     * @param handler the handler receiving every operation
+     * @return {@code true} if both sides were covered, {@code false} if the handler stopped the comparison
+     */
+    default boolean delta(ByteBuffer leftSide, ByteBuffer rightSide, DeltaHandler handler) {
+        if (leftSide.hasArray() && rightSide.hasArray() && leftSide.arrayOffset() == 0 && rightSide.arrayOffset() == 0
+                && leftSide.array().length == leftSide.limit() && rightSide.array().length == rightSide.limit()) {
+            return delta(leftSide.array(), rightSide.array(), handler);
+        }
+        byte[] left = new byte[leftSide.limit()];
+        byte[] right = new byte[rightSide.limit()];
+        ((ByteBuffer) leftSide.duplicate().position(0)).get(left);
+        ((ByteBuffer) rightSide.duplicate().position(0)).get(right);
+        return delta(left, right, handler);
+    }
+
+}
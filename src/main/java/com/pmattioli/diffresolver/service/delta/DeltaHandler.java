@@ -0,0 +1,19 @@
+package com.pmattioli.diffresolver.service.delta;
+
+/**
+ * Receives the edit operations that turn the left side of a diff into the right side, in the order they apply.
+ * @author pmattioli
+ */
+@FunctionalInterface
+public interface DeltaHandler {
+
+    /**
+     * @param operation the kind of operation
+     * @param leftOffset the zero-based index in the left side where the operation applies
+     * @param rightOffset the zero-based index in the right side where the operation applies
+     * @param length the number of bytes copied, inserted or deleted
+     * @return {@code true} to go on, {@code false} to stop
+     */
+    boolean onOperation(DeltaOperation operation, int leftOffset, int rightOffset, int length);
+
+}
@@ -0,0 +1,25 @@
+package com.pmattioli.diffresolver.service.delta;
+
+/**
+ * The kinds of edit operations a {@code Delta} is made of. Applied in order, they turn the left side into the right
+ * side.
+ * @author pmattioli
+ */
+public enum DeltaOperation {
+
+    /**
+     * Bytes found at the same position in both sides, once the edits before them are taken into account.
+     */
+    COPY,
+
+    /**
+     * Bytes of the right side that aren't in the left side.
+     */
+    INSERT,
+
+    /**
+     * Bytes of the left side that aren't in the right side.
+     */
+    DELETE
+
+}
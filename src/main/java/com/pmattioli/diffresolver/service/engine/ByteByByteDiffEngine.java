@@ -0,0 +1,53 @@
+package com.pmattioli.diffresolver.service.engine;
+
+import java.nio.ByteBuffer;
+
+import com.pmattioli.diffresolver.service.MismatchHandler;
+
+/**
+ * Reference {@code DiffEngine} which compares one byte per iteration.
+ * @author pmattioli
+ */
+public class ByteByByteDiffEngine implements DiffEngine {
+
+    @Override
+    public boolean diff(byte[] leftSide, byte[] rightSide, int from, int to, MismatchHandler handler) {
+
+        int rangeStart = -1;
+        for (int i = from; i < to; i++) {
+            if (leftSide[i] != rightSide[i]) {
+                if (rangeStart < 0) {
+                    rangeStart = i;
+                }
+            } else if (rangeStart >= 0) {
+                if (!handler.onMismatch(rangeStart, i - rangeStart)) {
+                    return false;
+                }
+                rangeStart = -1;
+            }
+        }
+        return rangeStart < 0 || handler.onMismatch(rangeStart, to - rangeStart);
+
+    }
+
+    @Override
+    public boolean diff(ByteBuffer leftSide, ByteBuffer rightSide, int from, int to, MismatchHandler handler) {
+
+        int rangeStart = -1;
+        for (int i = from; i < to; i++) {
+            if (leftSide.get(i) != rightSide.get(i)) {
+                if (rangeStart < 0) {
+                    rangeStart = i;
+                }
+            } else if (rangeStart >= 0) {
+                if (!handler.onMismatch(rangeStart, i - rangeStart)) {
+                    return false;
+                }
+                rangeStart = -1;
+            }
+        }
+        return rangeStart < 0 || handler.onMismatch(rangeStart, to - rangeStart);
+
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.pmattioli.diffresolver.service.engine;
+
+import java.nio.ByteBuffer;
+
+import com.pmattioli.diffresolver.service.MismatchHandler;
+import com.pmattioli.diffresolver.service.codec.BufferPool;
+
+/**
+ * Compares two equal-sized byte arrays and reports the ranges at which they differ.
+ *
+ * <p>Implementations only differ in how fast they find the mismatches: for the same input every engine must report
+ * exactly the same bytes, in ascending order. Reported ranges may be split at arbitrary points, since consumers such as
+ * {@code DiffResult.Builder} merge ranges that touch each other.
+ * @author pmattioli
+ */
+public interface DiffEngine {
+
+    /**
+     * Compares the bytes of leftSide and rightSide from index {@code from} (inclusive) to index {@code to}
+     * (exclusive).
+     *
+     * @param leftSide the left side of the comparison
+     * @param rightSide the right side of the comparison, at least as long as {@code to}
+     * @param from the index of the first byte to compare
+     * @param to the index after the last byte to compare
+     * @param handler the handler receiving every mismatch range found
+     * @return {@code true} if the whole range was compared, {@code false} if the handler stopped the comparison
+     */
+    boolean diff(byte[] leftSide, byte[] rightSide, int from, int to, MismatchHandler handler);
+
+    /**
+     * Same as {@code diff(byte[], byte[], int, int, MismatchHandler)}, for sides held in buffers, such as direct or
+     * memory-mapped ones, indexed from zero. Buffers are read at absolute indexes, and their position, limit and byte
+     * order are left untouched.
+     *
+     * <p>The default implementation hands the arrays of heap buffers over to the other method, and copies the bytes of
+     * any other buffer into pooled arrays one window at a time. Engines that can read buffers directly should override
+     * it.
+     *
+     * @param leftSide the left side of the comparison
+     * @param rightSide the right side of the comparison, at least as long as {@code to}
+     * @param from the index of the first byte to compare
+     * @param to the index after the last byte to compare
+     * @param handler the handler receiving every mismatch range found
+     * @return {@code true} if the whole range was compared, {@code false} if the handler stopped the comparison
+     */
+    default boolean diff(ByteBuffer leftSide, ByteBuffer rightSide, int from, int to, MismatchHandler handler) {
+        if (leftSide.hasArray() && rightSide.hasArray() && leftSide.arrayOffset() == 0
+                && rightSide.arrayOffset() == 0) {
+            return diff(leftSide.array(), rightSide.array(), from, to, handler);
+        }
+
+        int windowSize = Math.min(64 * 1024, to - from);
+        byte[] leftWindow = BufferPool.SHARED.acquire(windowSize);
+        byte[] rightWindow = BufferPool.SHARED.acquire(windowSize);
+        try {
+            ByteBuffer leftView = leftSide.duplicate();
+            ByteBuffer rightView = rightSide.duplicate();
+            for (int windowStart = from; windowStart < to; windowStart += windowSize) {
+                int length = Math.min(windowSize, to - windowStart);
+                leftView.clear().position(windowStart);
+                leftView.get(leftWindow, 0, length);
+                rightView.clear().position(windowStart);
+                rightView.get(rightWindow, 0, length);
+                int offset = windowStart;
+                if (!diff(leftWindow, rightWindow, 0, length,
+                        (start, rangeLength) -> handler.onMismatch(offset + start, rangeLength))) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            BufferPool.SHARED.release(leftWindow);
+            BufferPool.SHARED.release(rightWindow);
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.pmattioli.diffresolver.service.engine;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.util.Assert;
+
+import com.pmattioli.diffresolver.service.DiffResult;
+import com.pmattioli.diffresolver.service.MismatchHandler;
+
+/**
+ * {@code DiffEngine} which splits large comparisons into chunks and compares them concurrently on a dedicated
+ * {@code ForkJoinPool}, delegating the comparison of each chunk to another engine.
+ *
+ * <p>Ranges no longer than the parallel threshold are handed to the delegate engine on the calling thread, so small
+ * comparisons don't pay for any task scheduling. For larger ones, the chunks are reported in ascending order as they
+ * complete. The calling thread streams the first chunk, and any chunk the pool hasn't started yet, straight to the
+ * handler, while the pool compares up to twice its parallelism of the following chunks ahead of it. Only
+ * the mismatch ranges of those chunks are held, so the memory used is bounded by the differences within a few chunks,
+ * whatever the size of the input or the total number of differences.
+ *
+ * <p>When the handler stops the comparison, the chunks not started yet are cancelled, so stopping at the first mismatch
+ * costs about as much as with the delegate engine alone.
+ * @author pmattioli
+ */
+public class ParallelDiffEngine implements DiffEngine, AutoCloseable {
+
+    private final DiffEngine delegate;
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+    private final int chunkSize;
+    private final int maxChunksAhead;
+
+    /**
+     * @param delegate the engine comparing every chunk
+     * @param parallelism the number of threads of the dedicated pool
+     * @param parallelThreshold the size, in bytes, above which comparisons are split into chunks
+     * @param chunkSize the maximum size, in bytes, of every chunk
+     */
+    public ParallelDiffEngine(DiffEngine delegate, int parallelism, int parallelThreshold, int chunkSize) {
+        Assert.notNull(delegate, "Delegate engine can't be null");
+        Assert.isTrue(parallelism > 0, "Parallelism has to be positive");
+        Assert.isTrue(chunkSize > 0, "Chunk size has to be positive");
+        this.delegate = delegate;
+        this.pool = new ForkJoinPool(parallelism);
+        this.parallelThreshold = Math.max(parallelThreshold, chunkSize);
+        this.chunkSize = chunkSize;
+        this.maxChunksAhead = 2 * parallelism;
+    }
+
+    @Override
+    public boolean diff(byte[] leftSide, byte[] rightSide, int from, int to, MismatchHandler handler) {
+        return diff(ByteBuffer.wrap(leftSide), ByteBuffer.wrap(rightSide), from, to, handler);
+    }
+
+    @Override
+    public boolean diff(ByteBuffer leftSide, ByteBuffer rightSide, int from, int to, MismatchHandler handler) {
+
+        if (to - from <= parallelThreshold) {
+            return delegate.diff(leftSide, rightSide, from, to, handler);
+        }
+
+        ArrayDeque<ChunkTask> pending = new ArrayDeque<>(maxChunksAhead);
+        int nextChunk = from;
+        try {
+            while (nextChunk < to || !pending.isEmpty()) {
+                ChunkTask task = pending.poll();
+                if (task == null) {
+                    task = chunkTask(leftSide, rightSide, nextChunk, to);
+                    nextChunk = task.to;
+                }
+                while (nextChunk < to && pending.size() < maxChunksAhead) {
+                    ChunkTask chunkAhead = chunkTask(leftSide, rightSide, nextChunk, to);
+                    pool.execute(chunkAhead);
+                    pending.add(chunkAhead);
+                    nextChunk = chunkAhead.to;
+                }
+                if (!task.report(handler)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            for (ChunkTask task : pending) {
+                task.discard();
+            }
+        }
+
+    }
+
+    private ChunkTask chunkTask(ByteBuffer leftSide, ByteBuffer rightSide, int from, int to) {
+        return new ChunkTask(leftSide, rightSide, from, (int) Math.min(to, (long) from + chunkSize));
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Compares a chunk on the pool, unless the thread reporting the chunks claims it first to compare it itself. A
+     * discarded chunk stops collecting mismatches, so it doesn't keep a pool thread busy for nothing.
+     */
+    private final class ChunkTask extends RecursiveTask<DiffResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient ByteBuffer leftSide;
+        private final transient ByteBuffer rightSide;
+        private final int from;
+        private final int to;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile boolean discarded;
+
+        private ChunkTask(ByteBuffer leftSide, ByteBuffer rightSide, int from, int to) {
+            this.leftSide = leftSide;
+            this.rightSide = rightSide;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected DiffResult compute() {
+            if (!claimed.compareAndSet(false, true)) {
+                return null;
+            }
+            DiffResult.Builder result = DiffResult.builder(leftSide.limit());
+            MismatchHandler collector = (offset, length) -> !discarded && result.onMismatch(offset, length);
+            delegate.diff(leftSide, rightSide, from, to, collector);
+            return result.build();
+        }
+
+        /**
+         * Reports the mismatch ranges of the chunk, comparing it on the calling thread if the pool hasn't started yet.
+         */
+        private boolean report(MismatchHandler handler) {
+            if (claimed.compareAndSet(false, true)) {
+                cancel(false);
+                return delegate.diff(leftSide, rightSide, from, to, handler);
+            }
+            return join().compare(from, to, handler);
+        }
+
+        private void discard() {
+            discarded = true;
+            claimed.set(true);
+            cancel(false);
+        }
+
+    }
+
+}
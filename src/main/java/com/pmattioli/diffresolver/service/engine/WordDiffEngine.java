@@ -0,0 +1,88 @@
+package com.pmattioli.diffresolver.service.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.pmattioli.diffresolver.service.MismatchHandler;
+
+/**
+ * {@code DiffEngine} which compares eight bytes at a time (SWAR, SIMD within a register).
+ *
+ * <p>Both sides are read as little-endian {@code long} words through {@code ByteBuffer} views, so a run of equal bytes
+ * costs a single comparison per word. When two words differ, the set bits of their XOR point at the differing bytes:
+ * with little-endian words, {@code Long.numberOfTrailingZeros / 8} is the index of the lowest differing byte. Bytes
+ * that don't fill a whole word at the end of the range are compared one by one. Direct and memory-mapped buffers are
+ * read the same way, without copying them to the heap.
+ * @author pmattioli
+ */
+public class WordDiffEngine implements DiffEngine {
+
+    @Override
+    public boolean diff(byte[] leftSide, byte[] rightSide, int from, int to, MismatchHandler handler) {
+        return diff(ByteBuffer.wrap(leftSide), ByteBuffer.wrap(rightSide), from, to, handler);
+    }
+
+    @Override
+    public boolean diff(ByteBuffer leftSide, ByteBuffer rightSide, int from, int to, MismatchHandler handler) {
+
+        ByteBuffer leftWords = leftSide.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer rightWords = rightSide.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        RangeTracker ranges = new RangeTracker(handler);
+
+        int i = from;
+        int lastWordStart = to - Long.BYTES;
+        for (; i <= lastWordStart; i += Long.BYTES) {
+            long difference = leftWords.getLong(i) ^ rightWords.getLong(i);
+            while (difference != 0) {
+                int byteIndex = Long.numberOfTrailingZeros(difference) >>> 3;
+                if (!ranges.mismatch(i + byteIndex)) {
+                    return false;
+                }
+                difference &= ~(0xFFL << (byteIndex << 3));
+            }
+        }
+        for (; i < to; i++) {
+            if (leftWords.get(i) != rightWords.get(i) && !ranges.mismatch(i)) {
+                return false;
+            }
+        }
+        return ranges.flush();
+
+    }
+
+    /**
+     * Groups consecutive differing bytes so the handler is called once per run rather than once per byte.
+     */
+    private static final class RangeTracker {
+
+        private final MismatchHandler handler;
+        private int rangeStart;
+        private int rangeEnd;
+
+        private RangeTracker(MismatchHandler handler) {
+            this.handler = handler;
+        }
+
+        private boolean mismatch(int index) {
+            if (index == rangeEnd && rangeEnd > rangeStart) {
+                rangeEnd++;
+                return true;
+            }
+            boolean goOn = flush();
+            rangeStart = index;
+            rangeEnd = index + 1;
+            return goOn;
+        }
+
+        private boolean flush() {
+            if (rangeEnd == rangeStart) {
+                return true;
+            }
+            int start = rangeStart;
+            rangeStart = rangeEnd;
+            return handler.onMismatch(start, rangeEnd - start);
+        }
+
+    }
+
+}
@@ -0,0 +1,231 @@
+package com.pmattioli.diffresolver.service.hash;
+
+import java.nio.ByteBuffer;
+
+import org.springframework.util.Assert;
+
+/**
+ * Merkle tree over fixed-size chunks of a side's data, used to find the chunks in which two sides differ without
+ * scanning their bytes.
+ *
+ * <p>Leaves hold the XXH64 digest of every chunk, and every parent the digest of its two children, so two trees built
+ * with the same chunk size over data of the same length share a node exactly where the bytes under it are equal. A
+ * comparison walks down both trees from the root and skips every subtree whose hashes match: its cost is proportional
+ * to the number of differing chunks times the height of the tree, rather than to the size of the data.
+ *
+ * <p>The hash of the root fingerprints the whole data, and serves as the digest of indexed sides, since it's kept up
+ * to date by rehashing only the chunks that change. As with any 64-bit digest, a differing chunk only goes unnoticed if
+ * its hash collides, with a probability close to 2^-64.
+ * @author pmattioli
+ */
+public final class ChunkHashTree {
+
+    private final int chunkSize;
+    private final int dataLength;
+    private final long[][] levels;
+
+    private ChunkHashTree(int chunkSize, int dataLength, long[][] levels) {
+        this.chunkSize = chunkSize;
+        this.dataLength = dataLength;
+        this.levels = levels;
+    }
+
+    /**
+     * @param data the data to index
+     * @param chunkSize the size of every chunk but the last one, in bytes
+     * @return the hash tree of data
+     */
+    public static ChunkHashTree build(byte[] data, int chunkSize) {
+        return build(ByteBuffer.wrap(data), chunkSize);
+    }
+
+    /**
+     * @param data the buffer holding the data to index, from index zero up to its limit
+     * @param chunkSize the size of every chunk but the last one, in bytes
+     * @return the hash tree of data
+     */
+    public static ChunkHashTree build(ByteBuffer data, int chunkSize) {
+        Assert.isTrue(chunkSize > 0, "Chunk size has to be positive");
+        int dataLength = data.limit();
+        int chunkCount = Math.max(1, (int) ((dataLength + (long) chunkSize - 1) / chunkSize));
+
+        int height = 1;
+        for (int width = chunkCount; width > 1; width = (width + 1) / 2) {
+            height++;
+        }
+        long[][] levels = new long[height][];
+        levels[0] = new long[chunkCount];
+        for (int level = 1, width = chunkCount; level < height; level++) {
+            width = (width + 1) / 2;
+            levels[level] = new long[width];
+        }
+
+        ChunkHashTree tree = new ChunkHashTree(chunkSize, dataLength, levels);
+        tree.update(data, 0, dataLength);
+        return tree;
+    }
+
+    /**
+     * Recomputes the hashes of the chunks overlapping a range of bytes that changed, and of their ancestors.
+     *
+     * @param data the data indexed, which has to keep the length the tree was built for
+     * @param from the index of the first byte changed
+     * @param to the index after the last byte changed
+     */
+    public void update(byte[] data, int from, int to) {
+        update(ByteBuffer.wrap(data), from, to);
+    }
+
+    /**
+     * Same as {@code update(byte[], int, int)}, for data held in a buffer, from index zero up to its limit.
+     *
+     * @param data the buffer holding the data indexed, which has to keep the length the tree was built for
+     * @param from the index of the first byte changed
+     * @param to the index after the last byte changed
+     */
+    public void update(ByteBuffer data, int from, int to) {
+        Assert.isTrue(data.limit() == dataLength, "Data length changed from " + dataLength + " to " + data.limit());
+        if (from >= to && dataLength > 0) {
+            return;
+        }
+        int firstChunk = from / chunkSize;
+        int lastChunk = Math.max(firstChunk, (to - 1) / chunkSize);
+        for (int chunk = firstChunk; chunk <= lastChunk; chunk++) {
+            int chunkStart = chunk * chunkSize;
+            levels[0][chunk] = XxHash64.hash(data, chunkStart, Math.min(chunkSize, dataLength - chunkStart));
+        }
+        for (int level = 1; level < levels.length; level++) {
+            firstChunk /= 2;
+            lastChunk /= 2;
+            long[] children = levels[level - 1];
+            for (int node = firstChunk; node <= lastChunk; node++) {
+                int child = node * 2;
+                levels[level][node] = child + 1 < children.length
+                        ? XxHash64.hash(children[child], children[child + 1])
+                        : children[child];
+            }
+        }
+    }
+
+    /**
+     * @return a tree with the same hashes as this one, which can be updated independently
+     */
+    public ChunkHashTree copy() {
+        long[][] levelsCopy = new long[levels.length][];
+        for (int level = 0; level < levels.length; level++) {
+            levelsCopy[level] = levels[level].clone();
+        }
+        return new ChunkHashTree(chunkSize, dataLength, levelsCopy);
+    }
+
+    /**
+     * @return the hash of the root of the tree, which covers every byte of the data indexed
+     */
+    public long getRootHash() {
+        return levels[levels.length - 1][0];
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @param other a tree to compare with
+     * @return whether both trees index data of the same length with the same chunk size, and can be compared
+     */
+    public boolean isComparableWith(ChunkHashTree other) {
+        return chunkSize == other.chunkSize && dataLength == other.dataLength;
+    }
+
+    /**
+     * Reports, in ascending order, the runs of consecutive chunks whose hashes differ between both trees, clipped to a
+     * window of bytes.
+     *
+     * @param other a tree comparable with this one
+     * @param from the index of the first byte of the window
+     * @param to the index after the last byte of the window
+     * @param visitor the visitor receiving every run of differing bytes, as a byte range
+     * @return {@code true} if the whole window was visited, {@code false} if the visitor stopped it
+     */
+    public boolean visitDifferingRanges(ChunkHashTree other, int from, int to, RangeVisitor visitor) {
+        Assert.isTrue(isComparableWith(other), "Hash trees can't be compared");
+        if (from >= to) {
+            return true;
+        }
+        RunCollector runs = new RunCollector(from, to, visitor);
+        int top = levels.length - 1;
+        return visit(other, top, 0, from / chunkSize, (to - 1) / chunkSize, runs) && runs.flush();
+    }
+
+    private boolean visit(ChunkHashTree other, int level, int node, int firstChunk, int lastChunk, RunCollector runs) {
+        int nodeFirstChunk = node << level;
+        int nodeLastChunk = Math.min(((node + 1) << level) - 1, levels[0].length - 1);
+        if (nodeLastChunk < firstChunk || nodeFirstChunk > lastChunk
+                || levels[level][node] == other.levels[level][node]) {
+            return true;
+        }
+        if (level == 0) {
+            return runs.add(node);
+        }
+        int child = node * 2;
+        return visit(other, level - 1, child, firstChunk, lastChunk, runs)
+                && (child + 1 >= levels[level - 1].length
+                        || visit(other, level - 1, child + 1, firstChunk, lastChunk, runs));
+    }
+
+    /**
+     * Receives ranges of bytes.
+     */
+    @FunctionalInterface
+    public interface RangeVisitor {
+
+        /**
+         * @param from the index of the first byte of the range
+         * @param to the index after the last byte of the range
+         * @return {@code true} to go on, {@code false} to stop
+         */
+        boolean visit(int from, int to);
+
+    }
+
+    /**
+     * Merges consecutive differing chunks into a single byte range, so they can be scanned in one go.
+     */
+    private final class RunCollector {
+
+        private final int from;
+        private final int to;
+        private final RangeVisitor visitor;
+        private int runFirstChunk = -1;
+        private int runLastChunk = -1;
+
+        private RunCollector(int from, int to, RangeVisitor visitor) {
+            this.from = from;
+            this.to = to;
+            this.visitor = visitor;
+        }
+
+        private boolean add(int chunk) {
+            if (runFirstChunk >= 0 && chunk == runLastChunk + 1) {
+                runLastChunk = chunk;
+                return true;
+            }
+            boolean goOn = flush();
+            runFirstChunk = chunk;
+            runLastChunk = chunk;
+            return goOn;
+        }
+
+        private boolean flush() {
+            if (runFirstChunk < 0) {
+                return true;
+            }
+            int start = Math.max(from, runFirstChunk * chunkSize);
+            int end = (int) Math.min(to, (runLastChunk + 1L) * chunkSize);
+            runFirstChunk = -1;
+            return visitor.visit(start, end);
+        }
+
+    }
+
+}
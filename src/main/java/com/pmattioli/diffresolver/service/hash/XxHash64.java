@@ -0,0 +1,144 @@
+package com.pmattioli.diffresolver.service.hash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 64-bit xxHash (XXH64), a fast non-cryptographic hash used to fingerprint the data of each side.
+ *
+ * <p>This implementation follows the reference specification, with a seed of zero. Only the digests of sides up to
+ * the index chunk size are plain XXH64 hashes of their data, which clients can reproduce with any standard xxHash
+ * library: larger sides are digested as the root hash of their {@code ChunkHashTree}, built from the XXH64 hash of
+ * every chunk.
+ * @author pmattioli
+ */
+public final class XxHash64 {
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+    private static final int STRIPE_LENGTH = 32;
+
+    private XxHash64() {
+    }
+
+    public static long hash(byte[] data) {
+        return hash(data, 0, data.length);
+    }
+
+    /**
+     * @param data the array holding the bytes to hash
+     * @param offset the index of the first byte to hash
+     * @param length the number of bytes to hash
+     * @return the XXH64 digest of the bytes, with a seed of zero
+     */
+    public static long hash(byte[] data, int offset, int length) {
+        return hash(ByteBuffer.wrap(data), offset, length);
+    }
+
+    /**
+     * Same as {@code hash(byte[], int, int)}, for bytes held in a buffer, such as a direct or memory-mapped one. The
+     * buffer is read at absolute indexes, so its position, limit and byte order are left untouched.
+     *
+     * @param data the buffer holding the bytes to hash
+     * @param offset the index of the first byte to hash
+     * @param length the number of bytes to hash
+     * @return the XXH64 digest of the bytes, with a seed of zero
+     */
+    public static long hash(ByteBuffer data, int offset, int length) {
+        ByteBuffer buffer = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int index = offset;
+        int end = offset + length;
+        long hash;
+
+        if (length >= STRIPE_LENGTH) {
+            long v1 = PRIME_1 + PRIME_2;
+            long v2 = PRIME_2;
+            long v3 = 0;
+            long v4 = -PRIME_1;
+            int lastStripeStart = end - STRIPE_LENGTH;
+            do {
+                v1 = round(v1, buffer.getLong(index));
+                v2 = round(v2, buffer.getLong(index + 8));
+                v3 = round(v3, buffer.getLong(index + 16));
+                v4 = round(v4, buffer.getLong(index + 24));
+                index += STRIPE_LENGTH;
+            } while (index <= lastStripeStart);
+
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = PRIME_5;
+        }
+
+        hash += length;
+
+        for (; index + 8 <= end; index += 8) {
+            hash ^= round(0, buffer.getLong(index));
+            hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+        }
+        if (index + 4 <= end) {
+            hash ^= (buffer.getInt(index) & 0xFFFFFFFFL) * PRIME_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME_2 + PRIME_3;
+            index += 4;
+        }
+        for (; index < end; index++) {
+            hash ^= (buffer.get(index) & 0xFF) * PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME_1;
+        }
+
+        return avalanche(hash);
+    }
+
+    /**
+     * Hashes two {@code long} values, the same way as {@code hash} hashes their 16 little-endian bytes, without
+     * needing an array to hold them.
+     *
+     * @param first the first value
+     * @param second the second value
+     * @return the XXH64 digest of both values, with a seed of zero
+     */
+    public static long hash(long first, long second) {
+        long hash = PRIME_5 + 2 * Long.BYTES;
+        hash ^= round(0, first);
+        hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+        hash ^= round(0, second);
+        hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+        return avalanche(hash);
+    }
+
+    /**
+     * @param digest a digest
+     * @return the digest as 16 lowercase hexadecimal digits, the way xxHash tools print it
+     */
+    public static String toHex(long digest) {
+        String hex = Long.toHexString(digest);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    private static long avalanche(long hash) {
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long round(long accumulator, long input) {
+        accumulator += input * PRIME_2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME_1;
+    }
+
+    private static long mergeRound(long accumulator, long value) {
+        accumulator ^= round(0, value);
+        return accumulator * PRIME_1 + PRIME_4;
+    }
+
+}
@@ -1,11 +1,29 @@
 package com.pmattioli.diffresolver.service.impl;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.util.Assert;
 
+import com.pmattioli.diffresolver.service.BatchItemResult;
 import com.pmattioli.diffresolver.service.DiffResolverService;
+import com.pmattioli.diffresolver.service.Side;
+import com.pmattioli.diffresolver.service.SideUpload;
+import com.pmattioli.diffresolver.service.codec.ByteStreams;
+import com.pmattioli.diffresolver.service.codec.StrictBase64Decoder;
+import com.pmattioli.diffresolver.service.metrics.DiffMetrics;
+import com.pmattioli.diffresolver.service.store.ConcurrentDiffStore;
+import com.pmattioli.diffresolver.service.store.DiffSide;
+import com.pmattioli.diffresolver.service.store.DiffSides;
+import com.pmattioli.diffresolver.service.store.DiffStore;
+import com.pmattioli.diffresolver.service.store.DiffStoreFullException;
+import com.pmattioli.diffresolver.service.store.SideBufferAllocator;
 
 /**
  * Provides implementations for methods {@code setLeft} and {@code setRight} according to the
@@ -14,58 +32,252 @@ import com.pmattioli.diffresolver.service.DiffResolverService;
  * <p>The goal of providing a base implementation for these methods is convenience. Since both are efficient (O(1)),
  * it can be assumed that an implementation of the {@code DiffResolverService} will want to focus on the Diff algorithm
  * rather than on these two methods.
+ *
+ * <p>Both sides are kept in a {@code DiffStore}, which is responsible for making concurrent uploads safe. A
+ * {@code ConcurrentDiffStore} is used unless a different one is provided. Data is validated and decoded once, when it
+ * is set, and only the decoded bytes are stored along with their digest and, for data larger than the index chunk
+ * size, the {@code ChunkHashTree} that allows comparing only the chunks that differ. Patching a side replaces it with a
+ * patched copy, made without locking the diff ID and swapped in only if the side hasn't changed meanwhile. Only the
+ * chunks the patch overlaps are rehashed, since the digest of indexed sides is the root hash of their tree.
+ *
+ * <p>Decoded and patched sides are held in buffers from a {@code SideBufferAllocator}, which keeps them on the heap
+ * unless a different one is provided.
+ *
+ * <p>Ingest latencies and payload sizes are recorded through {@code DiffMetrics}, when provided.
  * @author pmattioli
  */
 public abstract class AbstractDiffResolverService implements DiffResolverService {
 
-    private static final String BASE_64_ENCODED_PATTERN =
-            "^([A-Za-z0-9+/]{4})*([A-Za-z0-9+/]{4}|[A-Za-z0-9+/]{3}=|[A-Za-z0-9+/]{2}==)$";
+    public static final int DEFAULT_INDEX_CHUNK_SIZE = 64 * 1024;
+
+    private final DiffStore diffStore;
+    private int indexChunkSize = DEFAULT_INDEX_CHUNK_SIZE;
+    private DiffMetrics metrics = DiffMetrics.NOOP;
+    private SideBufferAllocator sideBufferAllocator = SideBufferAllocator.HEAP;
+    private long maxUploadSize = Long.MAX_VALUE;
+
+    protected AbstractDiffResolverService() {
+        this(new ConcurrentDiffStore());
+    }
+
+    protected AbstractDiffResolverService(DiffStore diffStore) {
+        Assert.notNull(diffStore, "Diff store can't be null");
+        this.diffStore = diffStore;
+    }
+
+    /**
+     * @param indexChunkSize the chunk size, in bytes, of the hash trees built for every side, or zero not to build any
+     */
+    public void setIndexChunkSize(int indexChunkSize) {
+        Assert.isTrue(indexChunkSize >= 0, "Index chunk size can't be negative");
+        this.indexChunkSize = indexChunkSize;
+    }
+
+    /**
+     * @param sideBufferAllocator the allocator of the buffers decoded and patched sides are held in, which decides
+     * whether they're kept on the heap
+     */
+    public void setSideBufferAllocator(SideBufferAllocator sideBufferAllocator) {
+        Assert.notNull(sideBufferAllocator, "Side buffer allocator can't be null");
+        this.sideBufferAllocator = sideBufferAllocator;
+    }
+
+    /**
+     * @param maxUploadSize the largest raw upload or patch accepted, in bytes, whatever length it declares
+     */
+    public void setMaxUploadSize(long maxUploadSize) {
+        Assert.isTrue(maxUploadSize > 0, "Maximum upload size has to be positive");
+        this.maxUploadSize = maxUploadSize;
+    }
+
+    public void setMetrics(DiffMetrics metrics) {
+        Assert.notNull(metrics, "Metrics can't be null");
+        this.metrics = metrics;
+    }
+
+    protected DiffMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public long setLeft(int diffId, String data) {
+        return setDiffSide(diffId, data, Side.LEFT);
+    }
+
+    @Override
+    public long setRight(int diffId, String data) {
+        return setDiffSide(diffId, data, Side.RIGHT);
+    }
+
+    @Override
+    public long setLeft(int diffId, InputStream data, long length) throws IOException {
+        return setRawDiffSide(diffId, data, length, Side.LEFT);
+    }
+
+    @Override
+    public long setRight(int diffId, InputStream data, long length) throws IOException {
+        return setRawDiffSide(diffId, data, length, Side.RIGHT);
+    }
+
+    @Override
+    public List<BatchItemResult<Long>> setSides(List<SideUpload> uploads) {
+        Assert.notNull(uploads, "Uploads can't be null");
+
+        List<BatchItemResult<Long>> results = new ArrayList<>(uploads.size());
+        Map<Integer, DiffSide[]> sidesByDiffId = new LinkedHashMap<>();
+        Map<Integer, List<Integer>> resultIndexesByDiffId = new HashMap<>();
+        for (SideUpload upload : uploads) {
+            try {
+                long start = System.nanoTime();
+                Assert.notNull(upload.getSide(), "Side can't be null");
+                Assert.notNull(upload.getData(), "Encoded data can't be null");
+                DiffSide diffSide = DiffSide.of(
+                        StrictBase64Decoder.decode(upload.getData(), sideBufferAllocator::allocate), indexChunkSize);
+                sidesByDiffId.computeIfAbsent(upload.getDiffId(), diffId -> new DiffSide[2])
+                        [upload.getSide() == Side.LEFT ? 0 : 1] = diffSide;
+                metrics.recordIngest(upload.getSide(), false, diffSide.getLength(), start);
+                resultIndexesByDiffId.computeIfAbsent(upload.getDiffId(), diffId -> new ArrayList<>())
+                        .add(results.size());
+                results.add(BatchItemResult.of(diffSide.getDigest()));
+            } catch (IllegalArgumentException e) {
+                results.add(BatchItemResult.failed(e));
+            }
+        }
+
+        sidesByDiffId.forEach((diffId, sides) -> {
+            try {
+                diffStore.put(diffId, sides[0], sides[1]);
+                onDiffSideUpdated(diffId);
+            } catch (DiffStoreFullException e) {
+                resultIndexesByDiffId.get(diffId).forEach(index -> results.set(index, BatchItemResult.failed(e)));
+            }
+        });
+        return results;
+    }
 
-    private enum Sides {
-        LEFT_SIDE_INDEX,
-        RIGHT_SIDE_INDEX
+    @Override
+    public long patchLeft(int diffId, int from, String data) {
+        return patchDiffSide(diffId, from, data, Side.LEFT);
     }
 
-    private Map<Integer, String[]> diffMap = new HashMap<>();
+    @Override
+    public long patchRight(int diffId, int from, String data) {
+        return patchDiffSide(diffId, from, data, Side.RIGHT);
+    }
 
     @Override
-    public void setLeft(int diffId, String data) {
-        setDiffSide(diffId, data, Sides.LEFT_SIDE_INDEX.ordinal());
+    public long patchLeft(int diffId, int from, InputStream data, long length) throws IOException {
+        return patchRawDiffSide(diffId, from, data, length, Side.LEFT);
     }
 
     @Override
-    public void setRight(int diffId, String data) {
-        setDiffSide(diffId, data, Sides.RIGHT_SIDE_INDEX.ordinal());
+    public long patchRight(int diffId, int from, InputStream data, long length) throws IOException {
+        return patchRawDiffSide(diffId, from, data, length, Side.RIGHT);
     }
 
-    protected String getLeft(int diffId) {
-        return getDiffSide(diffId, Sides.LEFT_SIDE_INDEX.ordinal());
+    protected DiffSide getLeft(int diffId) {
+        return getDiffSide(diffId, Side.LEFT);
     }
 
-    protected String getRight(int diffId) {
-        return getDiffSide(diffId, Sides.RIGHT_SIDE_INDEX.ordinal());
+    protected DiffSide getRight(int diffId) {
+        return getDiffSide(diffId, Side.RIGHT);
+    }
+
+    /**
+     * @param diffId the diff ID to look up
+     * @return a consistent snapshot of both sides, or {@code null} if no side has been set for diffId
+     */
+    protected DiffSides getDiffSides(int diffId) {
+        return diffStore.get(diffId);
     }
 
     protected boolean exists(int diffId) {
-        return diffMap.containsKey(diffId);
+        return diffStore.contains(diffId);
     }
 
-    private void setDiffSide(int diffId, String encodedData, int sideIndex) {
+    private long setDiffSide(int diffId, String encodedData, Side side) {
         Assert.notNull(encodedData, "Encoded data can't be null");
-        Assert.isTrue(encodedData.matches(BASE_64_ENCODED_PATTERN), "Data has to be Base64-encoded");
 
-        String[] diffSides = diffMap.get(diffId);
-        if (diffSides == null){
-            diffSides = new String[2];
-        }
-        diffSides[sideIndex] = encodedData;
-        diffMap.put(diffId, diffSides);
+        long start = System.nanoTime();
+        return storeDiffSide(diffId, StrictBase64Decoder.decode(encodedData, sideBufferAllocator::allocate), side,
+                start);
+    }
+
+    private long setRawDiffSide(int diffId, InputStream data, long length, Side side) throws IOException {
+        Assert.notNull(data, "Data can't be null");
+
+        long start = System.nanoTime();
+        ByteBuffer rawData = ByteStreams.readFully(data, length, maxUploadSize, sideBufferAllocator::allocate);
+        Assert.isTrue(rawData.limit() > 0, "Data can't be empty");
+
+        return storeDiffSide(diffId, rawData, side, start);
+    }
+
+    private long storeDiffSide(int diffId, ByteBuffer decodedData, Side side, long start) {
+        DiffSide diffSide = DiffSide.of(decodedData, indexChunkSize);
+        diffStore.put(diffId, side, diffSide);
+        onDiffSideUpdated(diffId);
+        metrics.recordIngest(side, false, diffSide.getLength(), start);
+        return diffSide.getDigest();
+    }
+
+    private long patchDiffSide(int diffId, int from, String encodedData, Side side) {
+        Assert.notNull(encodedData, "Encoded data can't be null");
+
+        long start = System.nanoTime();
+        return applyPatch(diffId, from, StrictBase64Decoder.decode(encodedData), side, start);
+    }
+
+    private long patchRawDiffSide(int diffId, int from, InputStream data, long length, Side side) throws IOException {
+        Assert.notNull(data, "Data can't be null");
+
+        long start = System.nanoTime();
+        byte[] rawData = ByteStreams.readFully(data, length, maxUploadSize);
+        Assert.isTrue(rawData.length > 0, "Data can't be empty");
+
+        return applyPatch(diffId, from, rawData, side, start);
+    }
+
+    private long applyPatch(int diffId, int from, byte[] patch, Side side, long start) {
+        DiffSides diffSides;
+        do {
+            DiffSides current = diffStore.get(diffId);
+            DiffSide currentSide = current == null ? null : current.get(side);
+            Assert.state(currentSide != null, "No " + side.name().toLowerCase() + " side data for ID " + diffId);
+            DiffSide patchedSide = currentSide.patch(from, patch, sideBufferAllocator::allocate);
+            diffSides = diffStore.replace(diffId, side, currentSide, patchedSide);
+        } while (diffSides == null);
+        onDiffSidePatched(diffId, diffSides, from, from + patch.length);
+        metrics.recordIngest(side, true, patch.length, start);
+        return diffSides.get(side).getDigest();
+    }
+
+    /**
+     * Invoked after either side of diffId has been set, so subclasses can discard anything derived from the previous
+     * data. Does nothing by default.
+     *
+     * @param diffId the diff ID whose data changed
+     */
+    protected void onDiffSideUpdated(int diffId) {
+    }
+
+    /**
+     * Invoked after a range of bytes of either side of diffId has been overwritten, so subclasses can bring anything
+     * derived from the previous data up to date. Defaults to {@code onDiffSideUpdated}.
+     *
+     * @param diffId the diff ID whose data changed
+     * @param diffSides the sides of diffId right after the patch, one version above the sides before it
+     * @param from the index of the first byte overwritten
+     * @param to the index after the last byte overwritten
+     */
+    protected void onDiffSidePatched(int diffId, DiffSides diffSides, int from, int to) {
+        onDiffSideUpdated(diffId);
     }
 
-    private String getDiffSide(int diffId, int sideIndex) {
-        String[] diffSides = diffMap.get(diffId);
+    private DiffSide getDiffSide(int diffId, Side side) {
+        DiffSides diffSides = diffStore.get(diffId);
         Assert.notNull(diffSides, "No diff found for id " + diffId);
-        return diffSides[sideIndex];
+        return diffSides.get(side);
     }
 
 }
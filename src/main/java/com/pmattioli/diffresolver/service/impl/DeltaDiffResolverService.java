@@ -0,0 +1,61 @@
+package com.pmattioli.diffresolver.service.impl;
+
+import org.springframework.util.Assert;
+
+import com.pmattioli.diffresolver.service.DeltaResolverService;
+import com.pmattioli.diffresolver.service.cache.DiffResultCache;
+import com.pmattioli.diffresolver.service.delta.BlockMatchingDeltaEngine;
+import com.pmattioli.diffresolver.service.delta.Delta;
+import com.pmattioli.diffresolver.service.delta.DeltaEngine;
+import com.pmattioli.diffresolver.service.delta.DeltaOperation;
+import com.pmattioli.diffresolver.service.engine.DiffEngine;
+import com.pmattioli.diffresolver.service.store.DiffSide;
+import com.pmattioli.diffresolver.service.store.DiffSides;
+import com.pmattioli.diffresolver.service.store.DiffStore;
+
+/**
+ * Extends {@code SimpleDiffResolverService} with the {@code resolveDelta} method of the {@code DeltaResolverService}
+ * interface, which also compares sides of different sizes.
+ *
+ * <p>Equal-sized sides keep being compared offset by offset through {@code resolve}, while {@code resolveDelta}
+ * delegates to a {@code DeltaEngine}, a {@code BlockMatchingDeltaEngine} unless a different one is provided. Sides with
+ * the same length and digest are reported as a single copy, without comparing them. Sides are handed over to the engine
+ * in the buffers they're held in, so those kept off the heap aren't copied to it.
+ * @author pmattioli
+ */
+public class DeltaDiffResolverService extends SimpleDiffResolverService implements DeltaResolverService {
+
+    private final DeltaEngine deltaEngine;
+
+    public DeltaDiffResolverService(DiffStore diffStore, DiffEngine diffEngine, DiffResultCache resultCache) {
+        this(diffStore, diffEngine, resultCache, new BlockMatchingDeltaEngine());
+    }
+
+    public DeltaDiffResolverService(DiffStore diffStore, DiffEngine diffEngine, DiffResultCache resultCache,
+            DeltaEngine deltaEngine) {
+        super(diffStore, diffEngine, resultCache);
+        Assert.notNull(deltaEngine, "Delta engine can't be null");
+        this.deltaEngine = deltaEngine;
+    }
+
+    @Override
+    public Delta resolveDelta(int diffId) {
+
+        DiffSides diffSides = super.getDiffSides(diffId);
+        Assert.state(diffSides != null, "Diff ID " + diffId + " doesn't exist");
+
+        DiffSide leftSide = diffSides.getLeft();
+        Assert.state(leftSide != null, "No left side data for ID " + diffId);
+        DiffSide rightSide = diffSides.getRight();
+        Assert.state(rightSide != null, "No right side data for ID " + diffId);
+
+        Delta.Builder delta = Delta.builder(leftSide.getLength(), rightSide.getLength());
+        if (leftSide.matches(rightSide)) {
+            return delta.add(DeltaOperation.COPY, 0, 0, leftSide.getLength()).build();
+        }
+        deltaEngine.delta(leftSide.getBuffer(), rightSide.getBuffer(), delta);
+        return delta.build();
+
+    }
+
+}
@@ -1,12 +1,23 @@
 package com.pmattioli.diffresolver.service.impl;
 
-import java.nio.charset.Charset;
-import java.util.Arrays;
-import java.util.Base64;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.springframework.util.Assert;
 
+import com.pmattioli.diffresolver.service.DiffComparison;
+import com.pmattioli.diffresolver.service.DiffResult;
+import com.pmattioli.diffresolver.service.MismatchHandler;
+import com.pmattioli.diffresolver.service.cache.DiffResultCache;
+import com.pmattioli.diffresolver.service.engine.ByteByByteDiffEngine;
+import com.pmattioli.diffresolver.service.engine.DiffEngine;
+import com.pmattioli.diffresolver.service.hash.ChunkHashTree;
+import com.pmattioli.diffresolver.service.store.DiffSide;
+import com.pmattioli.diffresolver.service.store.DiffSides;
+import com.pmattioli.diffresolver.service.store.DiffStore;
+
 /**
  * Provides a very simple implementation for the {@code resolveDiff} method according to the {@code DiffResolverService}
  * interface, including validation.
@@ -18,50 +29,223 @@ import org.springframework.util.Assert;
  * <li><a href="https://sourceforge.net/projects/javaxdelta/">javaxdelta</a></li>
  * <li><a href="https://sourceforge.net/projects/jbdiff/">jbdiff</a></li>
  * </ul>
+ *
+ * <p>Sides of different sizes can be compared with {@code DeltaDiffResolverService}, which matches blocks in the style
+ * of these libraries.
+ *
+ * <p>The byte comparison itself is delegated to a {@code DiffEngine}. A {@code ByteByByteDiffEngine} is used unless a
+ * different one is provided.
+ *
+ * <p>Sides with the same length and digest are reported as equal right away, without comparing them.
+ *
+ * <p>When a {@code DiffResultCache} is provided, results are cached for the version of the sides they were computed
+ * from, and discarded as soon as either side is set again. Patching a side only compares the patched range again,
+ * and splices it into the cached result. Comparisons streamed through {@code prepare} are cached as
+ * well, as long as they don't hold so many mismatch ranges that collecting them would defeat streaming.
+ *
+ * <p>Resulting diffs are only logged at the {@code FINE} level, and only one out of every {@value #TRACE_SAMPLE_RATE},
+ * since printing them costs as much as computing them. Comparison latencies and mismatch counts are recorded through
+ * {@code DiffMetrics} instead.
  * @author pmattioli
  */
 public class SimpleDiffResolverService extends AbstractDiffResolverService {
 
     private static final Logger LOG = Logger.getLogger(SimpleDiffResolverService.class.getName());
+    private static final int MAX_STREAMED_RANGES_CACHED = 1 << 16;
+    private static final int TRACE_SAMPLE_RATE = 100;
+
+    private final DiffEngine diffEngine;
+    private final DiffResultCache resultCache;
+
+    public SimpleDiffResolverService() {
+        this(new ByteByByteDiffEngine());
+    }
+
+    public SimpleDiffResolverService(DiffEngine diffEngine) {
+        super();
+        this.diffEngine = diffEngine;
+        this.resultCache = null;
+    }
+
+    public SimpleDiffResolverService(DiffStore diffStore, DiffEngine diffEngine) {
+        this(diffStore, diffEngine, null);
+    }
+
+    public SimpleDiffResolverService(DiffStore diffStore, DiffEngine diffEngine, DiffResultCache resultCache) {
+        super(diffStore);
+        this.diffEngine = diffEngine;
+        this.resultCache = resultCache;
+    }
 
     @Override
-    public int[] resolveDiff(int diffId) {
+    public DiffComparison prepare(int diffId) {
 
-        Assert.state(super.exists(diffId), "Diff ID " + diffId + " doesn't exist");
+        DiffSides diffSides = super.getDiffSides(diffId);
+        Assert.state(diffSides != null, "Diff ID " + diffId + " doesn't exist");
 
-        byte[] decodedLeftData = getDecodedData(super.getLeft(diffId),"No left side data for ID " + diffId);
-        byte[] decodedRightData = getDecodedData(super.getRight(diffId),"No right side data for ID " + diffId);
+        DiffSide leftSide = diffSides.getLeft();
+        Assert.state(leftSide != null, "No left side data for ID " + diffId);
+        DiffSide rightSide = diffSides.getRight();
+        Assert.state(rightSide != null, "No right side data for ID " + diffId);
 
-        return doResolveDiff(decodedLeftData, decodedRightData);
+        Assert.state(leftSide.getLength() == rightSide.getLength(), "Files have different sizes");
+
+        if (leftSide.matches(rightSide)) {
+            getMetrics().recordEqualDigests();
+            return DiffResult.builder(leftSide.getLength()).build();
+        }
+        if (resultCache != null) {
+            DiffResult cachedResult = resultCache.get(diffId, diffSides.getVersion());
+            if (cachedResult != null) {
+                getMetrics().recordCachedResult();
+                return cachedResult;
+            }
+        }
+        return new SidesComparison(diffId, diffSides.getVersion(), leftSide, rightSide);
 
     }
 
+    @Override
+    public DiffResult resolve(int diffId) {
+
+        DiffComparison comparison = prepare(diffId);
+        if (!(comparison instanceof SidesComparison)) {
+            return (DiffResult) comparison;
+        }
+
+        DiffResult.Builder result = DiffResult.builder(comparison.getLength());
+        comparison.compare(result);
+
+        DiffResult diffResult = result.build();
+        if (LOG.isLoggable(Level.FINE) && ThreadLocalRandom.current().nextInt(TRACE_SAMPLE_RATE) == 0) {
+            LOG.fine("Resulting diff for ID " + diffId + ": " + diffResult);
+        }
+        if (resultCache != null) {
+            resultCache.put(diffId, ((SidesComparison) comparison).version, diffResult);
+        }
+
+        return diffResult;
+
+    }
+
+    @Override
+    protected void onDiffSideUpdated(int diffId) {
+        if (resultCache != null) {
+            resultCache.invalidate(diffId);
+        }
+    }
+
+    /**
+     * Splices the comparison of the patched range into the result cached for the sides before the patch, so the result
+     * stays cached without comparing the rest of the sides again. The cached result is discarded when there is none for
+     * the previous version or the sides can't be compared.
+     */
+    @Override
+    protected void onDiffSidePatched(int diffId, DiffSides diffSides, int from, int to) {
+        if (resultCache == null) {
+            return;
+        }
+        DiffResult previousResult = resultCache.peek(diffId, diffSides.getVersion() - 1);
+        DiffSide leftSide = diffSides.getLeft();
+        DiffSide rightSide = diffSides.getRight();
+        if (previousResult == null || leftSide == null || rightSide == null
+                || leftSide.getLength() != rightSide.getLength()) {
+            resultCache.invalidate(diffId);
+            return;
+        }
+
+        DiffResult.Builder result = DiffResult.builder(leftSide.getLength());
+        previousResult.compare(0, from, result);
+        doResolveDiff(leftSide.getBuffer(), rightSide.getBuffer(), from, to, result);
+        previousResult.compare(to, leftSide.getLength(), result);
+        resultCache.put(diffId, diffSides.getVersion(), result.build());
+    }
+
     /**
-     * This method is protected so the algorithm can be replaced while reusing the decoding logic, if desired.
+     * This method is protected so the algorithm can be replaced while reusing the lookup logic, if desired.
      *
-     * @param leftSide a {@code byte[]} representing a UTF-8 byte stream for the left side of the diff comparison.
-     * @param rightSide a {@code byte[]} representing a UTF-8 byte stream for the right side of the diff comparison.
-     * @return the offsets array according to the {@code DiffResolverService} interface
+     * @param leftSide a {@code ByteBuffer} holding the left side of the diff comparison, from index zero.
+     * @param rightSide a {@code ByteBuffer} holding the right side of the diff comparison, from index zero.
+     * @param from the index of the first byte to compare
+     * @param to the index after the last byte to compare
+     * @param handler the handler receiving the mismatch ranges according to the {@code DiffResolverService} interface
+     * @return {@code true} if the whole range was compared, {@code false} if the handler stopped the comparison
      */
-    protected int[] doResolveDiff(byte[] leftSide, byte[] rightSide) {
+    protected boolean doResolveDiff(ByteBuffer leftSide, ByteBuffer rightSide, int from, int to,
+            MismatchHandler handler) {
+        return diffEngine.diff(leftSide, rightSide, from, to, handler);
+    }
 
-        Assert.state(leftSide.length == rightSide.length, "Files have different sizes");
+    /**
+     * Compares the sides of a diff on demand, scanning only the chunks whose hashes differ when both sides have
+     * comparable hash trees. When the whole of both sides is compared, the mismatches are also collected on the side so
+     * they can be cached, unless there are too many of them to be worth it.
+     */
+    private final class SidesComparison implements DiffComparison {
+
+        private final int diffId;
+        private final long version;
+        private final DiffSide leftSide;
+        private final DiffSide rightSide;
+
+        private SidesComparison(int diffId, long version, DiffSide leftSide, DiffSide rightSide) {
+            this.diffId = diffId;
+            this.version = version;
+            this.leftSide = leftSide;
+            this.rightSide = rightSide;
+        }
 
-        int[] offsetsForDiffs = new int[leftSide.length];
-        for(int i=0; i < leftSide.length; i++){
-            if (leftSide[i] != rightSide[i]){
-                offsetsForDiffs[i] = i+1;
-            }
+        @Override
+        public int getLength() {
+            return leftSide.getLength();
         }
 
-        LOG.info("Resulting offsets array: " + Arrays.toString(offsetsForDiffs));
+        @Override
+        public boolean compare(int from, int to, MismatchHandler handler) {
+            if (from < 0 || to > getLength() || from > to) {
+                throw new IllegalArgumentException("Invalid window " + from + "-" + to + " for length "
+                        + getLength());
+            }
+            long start = System.nanoTime();
+            if (from != 0 || to != getLength()) {
+                boolean completed = scan(from, to, handler);
+                getMetrics().recordComparison(start);
+                return completed;
+            }
 
-        return offsetsForDiffs;
+            DiffResult.Builder result = DiffResult.builder(getLength());
+            long[] mismatchCount = { 0 };
+            boolean[] collecting = { resultCache != null };
+            boolean completed = scan(from, to, (offset, length) -> {
+                mismatchCount[0] += length;
+                if (collecting[0]) {
+                    result.addRange(offset, length);
+                    collecting[0] = result.getRangeCount() <= MAX_STREAMED_RANGES_CACHED;
+                }
+                return handler.onMismatch(offset, length);
+            });
+            getMetrics().recordComparison(start);
+            if (completed) {
+                getMetrics().recordMismatches(mismatchCount[0]);
+                if (collecting[0]) {
+                    resultCache.put(diffId, version, result.build());
+                }
+            }
+            return completed;
+        }
 
-    }
+        private boolean scan(int from, int to, MismatchHandler handler) {
+            ByteBuffer leftData = leftSide.getBuffer();
+            ByteBuffer rightData = rightSide.getBuffer();
+            ChunkHashTree leftTree = leftSide.getHashTree();
+            ChunkHashTree rightTree = rightSide.getHashTree();
+            if (leftTree == null || rightTree == null || !leftTree.isComparableWith(rightTree)) {
+                return doResolveDiff(leftData, rightData, from, to, handler);
+            }
+            return leftTree.visitDifferingRanges(rightTree, from, to,
+                    (start, end) -> doResolveDiff(leftData, rightData, start, end, handler));
+        }
 
-    private byte[] getDecodedData(String encodedData, String exceptionMessage) {
-        Assert.state(encodedData != null, exceptionMessage);
-        return Base64.getDecoder().decode(encodedData.getBytes(Charset.forName("UTF-8")));
     }
+
 }
@@ -0,0 +1,96 @@
+package com.pmattioli.diffresolver.service.job;
+
+import com.pmattioli.diffresolver.service.DiffResult;
+
+/**
+ * A diff resolution queued by {@code DiffJobService}, along with its outcome once it's known.
+ *
+ * <p>The outcome fields are written by the worker thread running the job and read by request threads polling it, so
+ * they are volatile, and the status is always written last.
+ * @author pmattioli
+ */
+public class DiffJob {
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    private final long id;
+    private final int diffId;
+    private final int length;
+    private volatile DiffResult result;
+    private volatile String error;
+    private volatile long completedAt;
+    private volatile Status status = Status.QUEUED;
+
+    DiffJob(long id, int diffId, int length) {
+        this.id = id;
+        this.diffId = diffId;
+        this.length = length;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getDiffId() {
+        return diffId;
+    }
+
+    /**
+     * @return the byte size of the sides compared
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the result of the job, or {@code null} unless its status is {@code DONE}
+     */
+    public DiffResult getResult() {
+        return result;
+    }
+
+    /**
+     * @return why the job failed, or {@code null} unless its status is {@code FAILED}
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return when the job finished, in milliseconds since the epoch, or zero if it hasn't finished yet
+     */
+    public long getCompletedAt() {
+        return completedAt;
+    }
+
+    public boolean isFinished() {
+        Status current = status;
+        return current == Status.DONE || current == Status.FAILED;
+    }
+
+    void start() {
+        status = Status.RUNNING;
+    }
+
+    void complete(DiffResult result, long now) {
+        this.result = result;
+        this.completedAt = now;
+        this.status = Status.DONE;
+    }
+
+    void fail(String error, long now) {
+        this.error = error;
+        this.completedAt = now;
+        this.status = Status.FAILED;
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.pmattioli.diffresolver.service.job;
+
+import java.time.Clock;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.util.Assert;
+
+import com.pmattioli.diffresolver.service.DiffComparison;
+import com.pmattioli.diffresolver.service.DiffResolverService;
+import com.pmattioli.diffresolver.service.DiffResult;
+
+/**
+ * Resolves diffs in the background, so that large comparisons don't hold a request thread until they are done.
+ *
+ * <p>Submitting a job validates the diff right away through {@code DiffResolverService.prepare}, and then queues the
+ * comparison, which works on the sides as they were at that point. Jobs run on two bounded pools: comparisons of more
+ * than {@code largeThreshold} bytes go to their own workers and queue, so a burst of huge diffs can't hold back the
+ * small ones. When the queue of a pool is full, {@code submit} throws a {@code RejectedExecutionException} rather than
+ * queueing more work than the service can keep up with. Results already known, such as those of equal or cached sides,
+ * complete the job without queueing it.
+ *
+ * <p>Finished jobs are kept for {@code resultTtlMillis} and then forgotten.
+ * @author pmattioli
+ */
+public class DiffJobService implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(DiffJobService.class.getName());
+
+    private final DiffResolverService diffResolver;
+    private final ThreadPoolExecutor smallJobExecutor;
+    private final ThreadPoolExecutor largeJobExecutor;
+    private final int largeThreshold;
+    private final long resultTtlMillis;
+    private final Clock clock;
+    private final ScheduledExecutorService purger;
+    private final ConcurrentMap<Long, DiffJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong lastJobId = new AtomicLong();
+
+    /**
+     * @param diffResolver the service resolving the diffs
+     * @param workers the number of threads running jobs up to {@code largeThreshold} bytes
+     * @param largeWorkers the number of threads running jobs larger than {@code largeThreshold} bytes
+     * @param queueCapacity the maximum number of jobs waiting for a thread, for each of both pools
+     * @param largeThreshold the byte size above which a job is considered large
+     * @param resultTtlMillis how long finished jobs are kept, in milliseconds
+     * @param clock the clock finished jobs are timed with
+     */
+    public DiffJobService(DiffResolverService diffResolver, int workers, int largeWorkers, int queueCapacity,
+            int largeThreshold, long resultTtlMillis, Clock clock) {
+        Assert.notNull(diffResolver, "Diff resolver can't be null");
+        Assert.isTrue(workers > 0 && largeWorkers > 0, "Number of workers has to be positive");
+        Assert.isTrue(queueCapacity > 0, "Queue capacity has to be positive");
+        Assert.isTrue(resultTtlMillis > 0, "Result time to live has to be positive");
+        this.diffResolver = diffResolver;
+        this.smallJobExecutor = newExecutor(workers, queueCapacity, "diff-job-");
+        this.largeJobExecutor = newExecutor(largeWorkers, queueCapacity, "large-diff-job-");
+        this.largeThreshold = largeThreshold;
+        this.resultTtlMillis = resultTtlMillis;
+        this.clock = clock;
+        this.purger = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "diff-job-purger"));
+        long purgePeriod = Math.max(1000, resultTtlMillis / 4);
+        purger.scheduleWithFixedDelay(this::purgeExpired, purgePeriod, purgePeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Validates the diff identified by diffId and queues its resolution.
+     *
+     * @param diffId the diff ID to resolve
+     * @return the job, already finished if the result was known
+     * @throws IllegalStateException for the same reasons as {@code DiffResolverService.prepare}
+     * @throws RejectedExecutionException when too many jobs are waiting already
+     */
+    public DiffJob submit(int diffId) {
+        DiffComparison comparison = diffResolver.prepare(diffId);
+        DiffJob job = new DiffJob(lastJobId.incrementAndGet(), diffId, comparison.getLength());
+        if (comparison instanceof DiffResult) {
+            job.complete((DiffResult) comparison, clock.millis());
+            jobs.put(job.getId(), job);
+            return job;
+        }
+
+        ThreadPoolExecutor executor = comparison.getLength() > largeThreshold ? largeJobExecutor : smallJobExecutor;
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, comparison));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new RejectedExecutionException("Too many diff jobs are queued, try again later", e);
+        }
+        return job;
+    }
+
+    /**
+     * @param jobId the ID returned when the job was submitted
+     * @return the job, or {@code null} if there is no such job or it expired
+     */
+    public DiffJob get(long jobId) {
+        DiffJob job = jobs.get(jobId);
+        return job == null || isExpired(job, clock.millis()) ? null : job;
+    }
+
+    /**
+     * Forgets every finished job older than the result time to live. Invoked periodically.
+     */
+    public void purgeExpired() {
+        long now = clock.millis();
+        jobs.values().removeIf(job -> isExpired(job, now));
+    }
+
+    private boolean isExpired(DiffJob job, long now) {
+        return job.isFinished() && now - job.getCompletedAt() >= resultTtlMillis;
+    }
+
+    private void run(DiffJob job, DiffComparison comparison) {
+        job.start();
+        try {
+            DiffResult.Builder result = DiffResult.builder(comparison.getLength());
+            comparison.compare(result);
+            job.complete(result.build(), clock.millis());
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "Diff job " + job.getId() + " failed", e);
+            job.fail(e.getMessage(), clock.millis());
+        }
+    }
+
+    @Override
+    public void close() {
+        purger.shutdownNow();
+        smallJobExecutor.shutdownNow();
+        largeJobExecutor.shutdownNow();
+    }
+
+    private static ThreadPoolExecutor newExecutor(int threads, int queueCapacity, String threadNamePrefix) {
+        AtomicLong threadCount = new AtomicLong();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> daemon(runnable, threadNamePrefix + threadCount.incrementAndGet()));
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.pmattioli.diffresolver.service.metrics;
+
+import org.springframework.util.Assert;
+
+import com.pmattioli.diffresolver.service.codec.BufferPool;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Reports the arrays acquired from a {@code BufferPool} as the {@code diffresolver.buffers.acquired} counter, tagged
+ * with the {@code source}: {@code pool} for those reused, {@code heap} for those that had to be allocated. A growing
+ * share of the latter means the pool is too small for the load.
+ * @author pmattioli
+ */
+public class BufferPoolMetrics implements MeterBinder {
+
+    private final BufferPool bufferPool;
+
+    public BufferPoolMetrics(BufferPool bufferPool) {
+        Assert.notNull(bufferPool, "Buffer pool can't be null");
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("diffresolver.buffers.acquired", bufferPool, BufferPool::getHitCount)
+                .description("Scratch arrays acquired by requests")
+                .tag("source", "pool")
+                .register(registry);
+        FunctionCounter.builder("diffresolver.buffers.acquired", bufferPool, BufferPool::getMissCount)
+                .description("Scratch arrays acquired by requests")
+                .tag("source", "heap")
+                .register(registry);
+    }
+
+}
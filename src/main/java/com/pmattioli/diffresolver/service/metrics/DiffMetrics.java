@@ -0,0 +1,125 @@
+package com.pmattioli.diffresolver.service.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.util.Assert;
+
+import com.pmattioli.diffresolver.service.Side;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * Records how long it takes to ingest and to compare sides, how large the ingested payloads are and how many bytes
+ * differ, as Micrometer meters:
+ * <ul>
+ * <li>{@code diffresolver.ingest}: latency of setting or patching a side, tagged with the {@code side} and the
+ * {@code operation} ({@code set} or {@code patch})</li>
+ * <li>{@code diffresolver.ingest.payload}: decoded size, in bytes, of every side or patch ingested, tagged with the
+ * {@code side}</li>
+ * <li>{@code diffresolver.resolve}: latency of comparing sides, whether the whole of them or a window</li>
+ * <li>{@code diffresolver.resolve.mismatches}: number of bytes that differ, for every complete comparison</li>
+ * <li>{@code diffresolver.resolve.shortcuts}: resolutions that didn't compare the sides at all, tagged with the
+ * {@code reason} ({@code equal-digests} or {@code cached})</li>
+ * </ul>
+ *
+ * <p>Latencies and sizes are published as percentile histograms, so that they can be aggregated across instances. Every
+ * meter is registered up front, so recording is only a matter of updating it.
+ * @author pmattioli
+ */
+public class DiffMetrics {
+
+    /**
+     * Discards every measurement, for services that aren't monitored.
+     */
+    public static final DiffMetrics NOOP = new DiffMetrics(new CompositeMeterRegistry());
+
+    private static final long MAX_PAYLOAD_BYTES = Integer.MAX_VALUE;
+
+    private final Map<Side, Timer> setTimers = new EnumMap<>(Side.class);
+    private final Map<Side, Timer> patchTimers = new EnumMap<>(Side.class);
+    private final Map<Side, DistributionSummary> payloadSummaries = new EnumMap<>(Side.class);
+    private final Timer resolveTimer;
+    private final DistributionSummary mismatchSummary;
+    private final Counter equalDigestsCounter;
+    private final Counter cachedResultCounter;
+
+    public DiffMetrics(MeterRegistry registry) {
+        Assert.notNull(registry, "Meter registry can't be null");
+        for (Side side : Side.values()) {
+            setTimers.put(side, ingestTimer(registry, side, "set"));
+            patchTimers.put(side, ingestTimer(registry, side, "patch"));
+            payloadSummaries.put(side, DistributionSummary.builder("diffresolver.ingest.payload")
+                    .description("Decoded size of the sides and patches ingested")
+                    .baseUnit("bytes")
+                    .tag("side", side.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .maximumExpectedValue(MAX_PAYLOAD_BYTES)
+                    .register(registry));
+        }
+        resolveTimer = Timer.builder("diffresolver.resolve")
+                .description("Time spent comparing sides")
+                .publishPercentileHistogram()
+                .register(registry);
+        mismatchSummary = DistributionSummary.builder("diffresolver.resolve.mismatches")
+                .description("Number of bytes that differ between the sides compared")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(MAX_PAYLOAD_BYTES)
+                .register(registry);
+        equalDigestsCounter = shortcutCounter(registry, "equal-digests");
+        cachedResultCounter = shortcutCounter(registry, "cached");
+    }
+
+    /**
+     * @param side the side that was set or patched
+     * @param patch whether only a range of the side was overwritten
+     * @param bytes the number of bytes ingested
+     * @param startNanos the value of {@code System.nanoTime()} when ingesting started
+     */
+    public void recordIngest(Side side, boolean patch, int bytes, long startNanos) {
+        (patch ? patchTimers : setTimers).get(side).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        payloadSummaries.get(side).record(bytes);
+    }
+
+    /**
+     * @param startNanos the value of {@code System.nanoTime()} when the comparison started
+     */
+    public void recordComparison(long startNanos) {
+        resolveTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordMismatches(long mismatchCount) {
+        mismatchSummary.record(mismatchCount);
+    }
+
+    public void recordEqualDigests() {
+        equalDigestsCounter.increment();
+    }
+
+    public void recordCachedResult() {
+        cachedResultCounter.increment();
+    }
+
+    private static Timer ingestTimer(MeterRegistry registry, Side side, String operation) {
+        return Timer.builder("diffresolver.ingest")
+                .description("Time spent decoding, indexing and storing sides and patches")
+                .tag("side", side.name().toLowerCase())
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static Counter shortcutCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("diffresolver.resolve.shortcuts")
+                .description("Resolutions answered without comparing the sides")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+}
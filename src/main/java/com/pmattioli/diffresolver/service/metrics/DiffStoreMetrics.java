@@ -0,0 +1,52 @@
+package com.pmattioli.diffresolver.service.metrics;
+
+import org.springframework.util.Assert;
+
+import com.pmattioli.diffresolver.service.store.BoundedDiffStore;
+import com.pmattioli.diffresolver.service.store.DiffStore;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Reports the footprint of a {@code DiffStore} as the {@code diffresolver.store.diffs} gauge, the number of diff IDs
+ * stored, and the {@code diffresolver.store.bytes} gauge, the combined length of their sides. For a
+ * {@code BoundedDiffStore}, the {@code diffresolver.store.removals} counter reports the diffs it removed, tagged with
+ * the {@code cause}: {@code size} for those evicted to stay within its budget, {@code expired} for those that outlived
+ * their time to live.
+ * @author pmattioli
+ */
+public class DiffStoreMetrics implements MeterBinder {
+
+    private final DiffStore diffStore;
+
+    public DiffStoreMetrics(DiffStore diffStore) {
+        Assert.notNull(diffStore, "Diff store can't be null");
+        this.diffStore = diffStore;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("diffresolver.store.diffs", diffStore, DiffStore::size)
+                .description("Number of diff IDs with at least one side stored")
+                .register(registry);
+        Gauge.builder("diffresolver.store.bytes", diffStore, DiffStore::sizeInBytes)
+                .description("Combined length of every side stored")
+                .baseUnit("bytes")
+                .register(registry);
+        if (diffStore instanceof BoundedDiffStore) {
+            BoundedDiffStore boundedStore = (BoundedDiffStore) diffStore;
+            FunctionCounter.builder("diffresolver.store.removals", boundedStore, BoundedDiffStore::getEvictionCount)
+                    .description("Diffs removed from the store")
+                    .tag("cause", "size")
+                    .register(registry);
+            FunctionCounter.builder("diffresolver.store.removals", boundedStore, BoundedDiffStore::getExpirationCount)
+                    .description("Diffs removed from the store")
+                    .tag("cause", "expired")
+                    .register(registry);
+        }
+    }
+
+}
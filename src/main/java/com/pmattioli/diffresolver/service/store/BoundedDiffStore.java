@@ -0,0 +1,309 @@
+package com.pmattioli.diffresolver.service.store;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+import org.springframework.util.Assert;
+
+import com.pmattioli.diffresolver.service.Side;
+
+/**
+ * {@code DiffStore} that bounds the memory taken by the sides it holds, accounted by their decoded length.
+ *
+ * <p>Three limits apply:
+ * <ul>
+ * <li>A diff that hasn't been set, patched or read for {@code ttlMillis} expires: it's reported as absent and removed
+ * the next time it's looked up or the store is cleaned up.</li>
+ * <li>Whenever the stored sides add up to more than {@code maximumBytes}, diffs are evicted in least recently used
+ * order, so idle ones go first, but never the one being written, until the stored sides are back under
+ * {@value #EVICTION_TARGET_PERCENT}% of {@code maximumBytes}. The margin keeps a store running at its budget from
+ * evicting on every write.</li>
+ * <li>{@code hardCapBytes} is never exceeded: a write that would exceed it evicts diffs to make room first, and is
+ * rejected with a {@code DiffStoreFullException} if it still doesn't fit.</li>
+ * </ul>
+ *
+ * <p>A diff that is set again after it was evicted or expired starts from a version above every version a removed diff
+ * had, so results computed from its previous sides, and cached by version, are never taken for results of the new
+ * ones.
+ *
+ * <p>Like {@code ConcurrentDiffStore}, updates go through {@code ConcurrentMap.compute}, and the space a write takes
+ * is reserved within it, so concurrent writes can't take the store over its hard cap together. Cleaning up runs on the
+ * writing threads, one at a time, whenever the budget is exceeded or the cleanup interval has elapsed since the last
+ * one, so no background thread is needed.
+ * @author pmattioli
+ */
+public class BoundedDiffStore implements DiffStore {
+
+    private static final int EVICTION_TARGET_PERCENT = 90;
+
+    private final ConcurrentMap<Integer, Entry> diffMap = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong removedVersion = new AtomicLong();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+    private final ReentrantLock cleanUpLock = new ReentrantLock();
+    private final long maximumBytes;
+    private final long hardCapBytes;
+    private final long ttlMillis;
+    private final long cleanUpIntervalMillis;
+    private final Clock clock;
+    private volatile long nextCleanUpMillis;
+
+    /**
+     * @param maximumBytes the combined length of the stored sides above which diffs are evicted
+     * @param hardCapBytes the combined length of the stored sides that is never exceeded
+     * @param ttlMillis how long a diff is kept after it was last set, patched or read, in milliseconds
+     * @param cleanUpIntervalMillis how often expired diffs are removed, in milliseconds
+     * @param clock the clock diff accesses are timed with
+     */
+    public BoundedDiffStore(long maximumBytes, long hardCapBytes, long ttlMillis, long cleanUpIntervalMillis,
+            Clock clock) {
+        Assert.isTrue(maximumBytes > 0, "Maximum size has to be positive");
+        Assert.isTrue(hardCapBytes >= maximumBytes, "Hard cap can't be lower than the maximum size");
+        Assert.isTrue(ttlMillis > 0, "Time to live has to be positive");
+        Assert.isTrue(cleanUpIntervalMillis > 0, "Cleanup interval has to be positive");
+        Assert.notNull(clock, "Clock can't be null");
+        this.maximumBytes = maximumBytes;
+        this.hardCapBytes = hardCapBytes;
+        this.ttlMillis = ttlMillis;
+        this.cleanUpIntervalMillis = cleanUpIntervalMillis;
+        this.clock = clock;
+        this.nextCleanUpMillis = clock.millis() + cleanUpIntervalMillis;
+    }
+
+    @Override
+    public void put(int diffId, Side side, DiffSide data) {
+        write(diffId, diffSides -> diffSides.withSide(side, data));
+    }
+
+    @Override
+    public void put(int diffId, DiffSide left, DiffSide right) {
+        write(diffId, diffSides -> diffSides.withSides(left, right));
+    }
+
+    @Override
+    public DiffSides update(int diffId, Side side, UnaryOperator<DiffSide> update) {
+        return write(diffId, diffSides -> {
+            DiffSide current = diffSides.get(side);
+            if (current == null) {
+                throw new IllegalStateException("No " + side.name().toLowerCase() + " side data for ID " + diffId);
+            }
+            return diffSides.withSide(side, update.apply(current));
+        });
+    }
+
+    @Override
+    public DiffSides get(int diffId) {
+        Entry entry = diffMap.get(diffId);
+        if (entry == null) {
+            return null;
+        }
+        long now = clock.millis();
+        if (isExpired(entry, now)) {
+            remove(diffId, entry, expirationCount);
+            return null;
+        }
+        if (entry.lastAccessMillis != now) {
+            entry.lastAccessMillis = now;
+        }
+        return entry.diffSides;
+    }
+
+    @Override
+    public boolean contains(int diffId) {
+        Entry entry = diffMap.get(diffId);
+        return entry != null && !isExpired(entry, clock.millis());
+    }
+
+    @Override
+    public int size() {
+        return diffMap.size();
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return totalBytes.get();
+    }
+
+    /**
+     * @return the number of diffs evicted to keep the store within its maximum size or its hard cap
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * @return the number of diffs removed because they weren't accessed within their time to live
+     */
+    public long getExpirationCount() {
+        return expirationCount.sum();
+    }
+
+    /**
+     * Removes the expired diffs and, when the maximum size is exceeded, evicts diffs until the store is back under it,
+     * waiting for a cleanup already running on another thread to finish first.
+     */
+    public void cleanUp() {
+        cleanUpLock.lock();
+        try {
+            doCleanUp(clock.millis(), null, 0);
+        } finally {
+            cleanUpLock.unlock();
+        }
+    }
+
+    private DiffSides write(int diffId, UnaryOperator<DiffSides> update) {
+        long now = clock.millis();
+        Entry entry;
+        try {
+            entry = diffMap.compute(diffId, (id, current) -> replace(current, update, now));
+        } catch (NoRoomException e) {
+            if (e.bytes <= hardCapBytes) {
+                cleanUpLock.lock();
+                try {
+                    doCleanUp(clock.millis(), diffId, e.bytes);
+                } finally {
+                    cleanUpLock.unlock();
+                }
+            }
+            try {
+                entry = diffMap.compute(diffId, (id, current) -> replace(current, update, now));
+            } catch (NoRoomException retryException) {
+                throw new DiffStoreFullException("Not enough storage left for ID " + diffId + ": the sides stored "
+                        + "can't take more than " + hardCapBytes + " bytes");
+            }
+        }
+
+        if (totalBytes.get() > maximumBytes || now >= nextCleanUpMillis) {
+            if (cleanUpLock.tryLock()) {
+                try {
+                    doCleanUp(now, diffId, 0);
+                } finally {
+                    cleanUpLock.unlock();
+                }
+            }
+        }
+        return entry.diffSides;
+    }
+
+    private Entry replace(Entry current, UnaryOperator<DiffSides> update, long now) {
+        DiffSides previous = current != null && !isExpired(current, now) ? current.diffSides
+                : DiffSides.restore(null, null, Math.max(removedVersion.get(),
+                        current == null ? 0L : current.diffSides.getVersion()));
+        DiffSides updated = update.apply(previous);
+        long bytes = updated.getTotalLength() - (current == null ? 0L : current.diffSides.getTotalLength());
+        if (!reserve(bytes)) {
+            throw new NoRoomException(bytes);
+        }
+        return new Entry(updated, now);
+    }
+
+    private boolean reserve(long bytes) {
+        while (true) {
+            long current = totalBytes.get();
+            if (bytes > 0 && current + bytes > hardCapBytes) {
+                return false;
+            }
+            if (totalBytes.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param keptDiffId the diff ID being written, which is never evicted, or {@code null}
+     * @param requiredBytes the number of bytes to make room for within the hard cap
+     */
+    private void doCleanUp(long now, Integer keptDiffId, long requiredBytes) {
+        nextCleanUpMillis = now + cleanUpIntervalMillis;
+        List<Candidate> candidates = new ArrayList<>(diffMap.size());
+        diffMap.forEach((diffId, entry) -> {
+            if (isExpired(entry, now)) {
+                remove(diffId, entry, expirationCount);
+            } else if (!diffId.equals(keptDiffId)) {
+                candidates.add(new Candidate(diffId, entry));
+            }
+        });
+        long roomBytes = hardCapBytes - requiredBytes;
+        if (totalBytes.get() <= maximumBytes && totalBytes.get() <= roomBytes) {
+            return;
+        }
+
+        long targetBytes = Math.min(maximumBytes / 100 * EVICTION_TARGET_PERCENT
+                + maximumBytes % 100 * EVICTION_TARGET_PERCENT / 100, roomBytes);
+        candidates.sort(Comparator.comparingLong(candidate -> candidate.lastAccessMillis));
+        for (Candidate candidate : candidates) {
+            if (totalBytes.get() <= targetBytes) {
+                break;
+            }
+            remove(candidate.diffId, candidate.entry, evictionCount);
+        }
+    }
+
+    private void remove(int diffId, Entry entry, LongAdder counter) {
+        removedVersion.accumulateAndGet(entry.diffSides.getVersion(), Math::max);
+        if (diffMap.remove(diffId, entry)) {
+            totalBytes.addAndGet(-entry.diffSides.getTotalLength());
+            counter.increment();
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.lastAccessMillis >= ttlMillis;
+    }
+
+    /**
+     * Thrown within {@code ConcurrentMap.compute} when a write doesn't fit, so that room is made for it outside.
+     */
+    private static final class NoRoomException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long bytes;
+
+        private NoRoomException(long bytes) {
+            super(null, null, false, false);
+            this.bytes = bytes;
+        }
+
+    }
+
+    private static final class Entry {
+
+        private final DiffSides diffSides;
+        private volatile long lastAccessMillis;
+
+        private Entry(DiffSides diffSides, long lastAccessMillis) {
+            this.diffSides = diffSides;
+            this.lastAccessMillis = lastAccessMillis;
+        }
+
+    }
+
+    /**
+     * An entry with its last access time read once, so that accesses made while candidates are sorted can't change
+     * their order.
+     */
+    private static final class Candidate {
+
+        private final int diffId;
+        private final Entry entry;
+        private final long lastAccessMillis;
+
+        private Candidate(int diffId, Entry entry) {
+            this.diffId = diffId;
+            this.entry = entry;
+            this.lastAccessMillis = entry.lastAccessMillis;
+        }
+
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.pmattioli.diffresolver.service.store;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+import com.pmattioli.diffresolver.service.Side;
+
+/**
+ * Default in-memory {@code DiffStore}, backed by a {@code ConcurrentHashMap}.
+ *
+ * <p>Updates go through {@code ConcurrentMap.compute}, which locks only the hash bin of the affected diff ID, so
+ * uploads for different IDs proceed in parallel while a read-modify-write on the same ID is atomic. Reads are
+ * lock-free and always observe a fully built {@code DiffSides} instance.
+ *
+ * <p>The combined length of the stored sides is adjusted within each update, so reporting it never walks the map.
+ * @author pmattioli
+ */
+public class ConcurrentDiffStore implements DiffStore {
+
+    private final ConcurrentMap<Integer, DiffSides> diffMap = new ConcurrentHashMap<>();
+    private final LongAdder totalBytes = new LongAdder();
+
+    @Override
+    public void put(int diffId, Side side, DiffSide data) {
+        diffMap.compute(diffId, (id, diffSides) ->
+                replaced(diffSides, (diffSides == null ? DiffSides.empty() : diffSides).withSide(side, data)));
+    }
+
+    @Override
+    public void put(int diffId, DiffSide left, DiffSide right) {
+        diffMap.compute(diffId, (id, diffSides) ->
+                replaced(diffSides, (diffSides == null ? DiffSides.empty() : diffSides).withSides(left, right)));
+    }
+
+    @Override
+    public DiffSides update(int diffId, Side side, UnaryOperator<DiffSide> update) {
+        return diffMap.compute(diffId, (id, diffSides) -> {
+            DiffSide current = diffSides == null ? null : diffSides.get(side);
+            if (current == null) {
+                throw new IllegalStateException("No " + side.name().toLowerCase() + " side data for ID " + diffId);
+            }
+            return replaced(diffSides, diffSides.withSide(side, update.apply(current)));
+        });
+    }
+
+    @Override
+    public DiffSides get(int diffId) {
+        return diffMap.get(diffId);
+    }
+
+    @Override
+    public boolean contains(int diffId) {
+        return diffMap.containsKey(diffId);
+    }
+
+    @Override
+    public int size() {
+        return diffMap.size();
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return totalBytes.sum();
+    }
+
+    private DiffSides replaced(DiffSides previous, DiffSides updated) {
+        totalBytes.add(updated.getTotalLength() - (previous == null ? 0L : previous.getTotalLength()));
+        return updated;
+    }
+
+}
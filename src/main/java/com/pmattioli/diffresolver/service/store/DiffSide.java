@@ -0,0 +1,184 @@
+package com.pmattioli.diffresolver.service.store;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntFunction;
+
+import com.pmattioli.diffresolver.service.hash.ChunkHashTree;
+import com.pmattioli.diffresolver.service.hash.XxHash64;
+
+/**
+ * The decoded data of one side of a diff, along with its digest and, for data larger than a chunk, its
+ * {@code ChunkHashTree}. Both are computed once, when the side is set.
+ *
+ * <p>The digest of data up to a chunk is its XXH64 digest, and the digest of larger data is the root hash of its tree,
+ * so hashing it once is enough, and patching it only rehashes the chunks that change.
+ *
+ * <p>The data is held in a {@code ByteBuffer}, indexed from zero, which is backed by an array for sides kept on the
+ * heap and can be a memory-mapped view for sides kept in files, so that they're compared without copying them.
+ * @author pmattioli
+ */
+public final class DiffSide {
+
+    private final ByteBuffer data;
+    private final long digest;
+    private final ChunkHashTree hashTree;
+
+    private DiffSide(ByteBuffer data, long digest, ChunkHashTree hashTree) {
+        this.data = data;
+        this.digest = digest;
+        this.hashTree = hashTree;
+    }
+
+    /**
+     * @param data the decoded data, which is not copied and must not be modified afterwards
+     * @return a side holding data and its XXH64 digest
+     */
+    public static DiffSide of(byte[] data) {
+        return new DiffSide(ByteBuffer.wrap(data), XxHash64.hash(data), null);
+    }
+
+    /**
+     * @param data the decoded data, which is not copied and must not be modified afterwards
+     * @param chunkSize the chunk size of the hash tree, or zero not to build one
+     * @return a side holding data, its digest and, if data is larger than a chunk, its hash tree
+     */
+    public static DiffSide of(byte[] data, int chunkSize) {
+        return of(ByteBuffer.wrap(data), chunkSize);
+    }
+
+    /**
+     * @param data the decoded data, from index zero up to its limit, which is not copied and must not be modified
+     * afterwards
+     * @param chunkSize the chunk size of the hash tree, or zero not to build one
+     * @return a side holding data, its digest and, if data is larger than a chunk, its hash tree
+     */
+    public static DiffSide of(ByteBuffer data, int chunkSize) {
+        int length = data.limit();
+        if (chunkSize > 0 && length > chunkSize) {
+            ChunkHashTree hashTree = ChunkHashTree.build(data, chunkSize);
+            return new DiffSide(data, hashTree.getRootHash(), hashTree);
+        }
+        return new DiffSide(data, XxHash64.hash(data, 0, length), null);
+    }
+
+    /**
+     * @param data the data, from index zero up to its limit, whose digest is already known
+     * @param digest the digest of data
+     * @return a side holding data and its digest, without a hash tree
+     */
+    static DiffSide restore(ByteBuffer data, long digest) {
+        return new DiffSide(data, digest, null);
+    }
+
+    /**
+     * @param data a copy of the data of this side, held elsewhere
+     * @return a side holding the copy, with the digest and hash tree of this side
+     */
+    DiffSide relocate(ByteBuffer data) {
+        return new DiffSide(data, digest, hashTree);
+    }
+
+    /**
+     * @param chunkSize the chunk size of the hash tree
+     * @return this side if it already has a hash tree or isn't larger than a chunk, or else a copy with a hash tree
+     */
+    DiffSide withHashTree(int chunkSize) {
+        if (hashTree != null || chunkSize <= 0 || getLength() <= chunkSize) {
+            return this;
+        }
+        return new DiffSide(data, digest, ChunkHashTree.build(data, chunkSize));
+    }
+
+    /**
+     * @return the data as an array: the array backing it for sides kept on the heap, or else a copy of it
+     */
+    public byte[] getData() {
+        if (data.hasArray() && data.arrayOffset() == 0 && data.array().length == data.limit()) {
+            return data.array();
+        }
+        byte[] copy = new byte[data.limit()];
+        data.duplicate().get(copy);
+        return copy;
+    }
+
+    /**
+     * @return a view of the data, indexed from zero, which must not be written to
+     */
+    public ByteBuffer getBuffer() {
+        return data.duplicate();
+    }
+
+    public int getLength() {
+        return data.limit();
+    }
+
+    /**
+     * @return the XXH64 digest of the data, with a seed of zero, or the root hash of its tree if it has one
+     */
+    public long getDigest() {
+        return digest;
+    }
+
+    /**
+     * Returns a copy of this side with a range of bytes overwritten. The data is copied to the heap rather than
+     * modified in place, since comparisons may still be reading it, but only the chunks of the hash tree overlapping
+     * the range are rehashed, and so is the digest, which is the root hash of the tree. Sides without a tree are
+     * rehashed in full.
+     *
+     * @param from the index of the first byte to overwrite
+     * @param patch the bytes to write from there on
+     * @return the patched side
+     * @throws IllegalArgumentException when the patch doesn't fit within the data
+     */
+    public DiffSide patch(int from, byte[] patch) {
+        return patch(from, patch, ByteBuffer::allocate);
+    }
+
+    /**
+     * Same as {@code patch(int, byte[])}, copying the data to a buffer obtained from allocator, so that sides held off
+     * the heap can stay there.
+     *
+     * @param from the index of the first byte to overwrite
+     * @param patch the bytes to write from there on
+     * @param allocator the function returning a buffer of the given capacity
+     * @return the patched side
+     * @throws IllegalArgumentException when the patch doesn't fit within the data
+     */
+    public DiffSide patch(int from, byte[] patch, IntFunction<ByteBuffer> allocator) {
+        int length = getLength();
+        if (from < 0 || from > length - patch.length) {
+            throw new IllegalArgumentException("Patch of " + patch.length + " bytes at index " + from
+                    + " doesn't fit within " + length + " bytes");
+        }
+        ByteBuffer patchedData = allocator.apply(length);
+        ByteBuffer output = patchedData.duplicate();
+        output.put(data.duplicate());
+        output.position(from);
+        output.put(patch);
+        if (hashTree == null) {
+            return new DiffSide(patchedData, XxHash64.hash(patchedData, 0, length), null);
+        }
+        ChunkHashTree patchedHashTree = hashTree.copy();
+        patchedHashTree.update(patchedData, from, from + patch.length);
+        return new DiffSide(patchedData, patchedHashTree.getRootHash(), patchedHashTree);
+    }
+
+    /**
+     * @return the hash tree of the data, or {@code null} if there is none
+     */
+    public ChunkHashTree getHashTree() {
+        return hashTree;
+    }
+
+    /**
+     * Tells whether both sides are equal, as far as their length and digest can tell. Two sides with different data
+     * only share a 64-bit digest by accident, with a probability close to 2^-64.
+     *
+     * @param other the side to compare with
+     * @return whether both sides have the same length and digest
+     */
+    public boolean matches(DiffSide other) {
+        return getLength() == other.getLength() && digest == other.digest;
+    }
+
+}
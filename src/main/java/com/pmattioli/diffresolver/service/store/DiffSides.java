@@ -0,0 +1,82 @@
+package com.pmattioli.diffresolver.service.store;
+
+import com.pmattioli.diffresolver.service.Side;
+
+/**
+ * Immutable pair holding the sides of a diff comparison.
+ *
+ * <p>Instances are never modified once published; setting a side produces a new instance via {@code withSide}, which
+ * is what allows a {@code DiffStore} to swap them atomically. Every new instance carries a version one higher than the
+ * instance it replaces, so results computed from a given pair of sides can be told apart from later ones.
+ * @author pmattioli
+ */
+public final class DiffSides {
+
+    private static final DiffSides EMPTY = new DiffSides(null, null, 0);
+
+    private final DiffSide left;
+    private final DiffSide right;
+    private final long version;
+
+    private DiffSides(DiffSide left, DiffSide right, long version) {
+        this.left = left;
+        this.right = right;
+        this.version = version;
+    }
+
+    public static DiffSides empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param left the left side, or {@code null} if it hasn't been set
+     * @param right the right side, or {@code null} if it hasn't been set
+     * @param version the version the sides had when they were stored
+     * @return a pair holding both sides with that version, for stores that move or reload sides they already hold,
+     * or that start a removed diff again above the versions it had
+     */
+    static DiffSides restore(DiffSide left, DiffSide right, long version) {
+        return new DiffSides(left, right, version);
+    }
+
+    public DiffSide getLeft() {
+        return left;
+    }
+
+    public DiffSide getRight() {
+        return right;
+    }
+
+    /**
+     * @return a version that grows by one every time a side is set for this diff ID, and never goes back for as long as
+     * the store holding it runs
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the combined length, in bytes, of the sides that have been set
+     */
+    public long getTotalLength() {
+        return (left == null ? 0L : left.getLength()) + (right == null ? 0L : right.getLength());
+    }
+
+    public DiffSide get(Side side) {
+        return side == Side.LEFT ? left : right;
+    }
+
+    public DiffSides withSide(Side side, DiffSide data) {
+        return side == Side.LEFT ? new DiffSides(data, right, version + 1) : new DiffSides(left, data, version + 1);
+    }
+
+    /**
+     * @param newLeft the new left side, or {@code null} to keep the current one
+     * @param newRight the new right side, or {@code null} to keep the current one
+     * @return a pair with both sides replaced at once, one version above this one
+     */
+    public DiffSides withSides(DiffSide newLeft, DiffSide newRight) {
+        return new DiffSides(newLeft == null ? left : newLeft, newRight == null ? right : newRight, version + 1);
+    }
+
+}
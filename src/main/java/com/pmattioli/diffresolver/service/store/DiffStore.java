@@ -0,0 +1,97 @@
+package com.pmattioli.diffresolver.service.store;
+
+import java.util.function.UnaryOperator;
+
+import com.pmattioli.diffresolver.service.Side;
+
+/**
+ * Storage for the sides of every diff comparison, identified by diff ID.
+ *
+ * <p>Implementations are shared by every request thread, so they must be thread-safe. In particular, setting the left
+ * and the right side of the same diff ID concurrently must never cause either of the updates to be lost.
+ * @author pmattioli
+ */
+public interface DiffStore {
+
+    /**
+     * Atomically sets one side of the comparison identified by diffId, leaving the other side untouched.
+     *
+     * @param diffId the diff ID the data belongs to
+     * @param side the side being set
+     * @param data the decoded data and digest for the specified side
+     * @throws DiffStoreFullException when the store has no room left for the data
+     */
+    void put(int diffId, Side side, DiffSide data);
+
+    /**
+     * Atomically sets both sides of the comparison identified by diffId, or only one of them.
+     *
+     * @param diffId the diff ID the data belongs to
+     * @param left the decoded data and digest for the left side, or {@code null} to leave it untouched
+     * @param right the decoded data and digest for the right side, or {@code null} to leave it untouched
+     * @throws DiffStoreFullException when the store has no room left for the data
+     */
+    void put(int diffId, DiffSide left, DiffSide right);
+
+    /**
+     * Atomically replaces one side of the comparison identified by diffId with the result of applying a function to it,
+     * leaving the other side untouched.
+     *
+     * @param diffId the diff ID the data belongs to
+     * @param side the side being updated
+     * @param update the function computing the new side from the current one, which may run while the diff ID is locked
+     * @return the sides stored for diffId after the update
+     * @throws IllegalStateException when the side hasn't been set for diffId
+     */
+    DiffSides update(int diffId, Side side, UnaryOperator<DiffSide> update);
+
+    /**
+     * Atomically replaces one side of the comparison identified by diffId, but only if it's still the side the
+     * replacement was derived from. This allows deriving it outside the store, without locking the diff ID meanwhile.
+     *
+     * @param diffId the diff ID the data belongs to
+     * @param side the side being replaced
+     * @param expected the side the replacement was derived from
+     * @param data the replacement
+     * @return the sides stored for diffId after the update, or {@code null} if the side had changed in the meantime and
+     * was left untouched
+     * @throws IllegalStateException when the side hasn't been set for diffId
+     */
+    default DiffSides replace(int diffId, Side side, DiffSide expected, DiffSide data) {
+        try {
+            return update(diffId, side, current -> {
+                if (current != expected) {
+                    throw new StaleSideException();
+                }
+                return data;
+            });
+        } catch (StaleSideException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a consistent snapshot of both sides for the specified diffId.
+     *
+     * @param diffId the diff ID to look up
+     * @return the sides stored for diffId, or {@code null} if no side has been set for it
+     */
+    DiffSides get(int diffId);
+
+    /**
+     * @param diffId the diff ID to look up
+     * @return whether at least one side has been set for diffId
+     */
+    boolean contains(int diffId);
+
+    /**
+     * @return the number of diff IDs with at least one side set
+     */
+    int size();
+
+    /**
+     * @return the combined length, in bytes, of every side stored
+     */
+    long sizeInBytes();
+
+}
@@ -0,0 +1,15 @@
+package com.pmattioli.diffresolver.service.store;
+
+/**
+ * Thrown when storing a side would take a {@code DiffStore} over its hard cap, even after evicting every diff it could.
+ * @author pmattioli
+ */
+public class DiffStoreFullException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DiffStoreFullException(String message) {
+        super(message);
+    }
+
+}
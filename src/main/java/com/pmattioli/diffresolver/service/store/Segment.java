@@ -0,0 +1,379 @@
+package com.pmattioli.diffresolver.service.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.pmattioli.diffresolver.service.Side;
+import com.pmattioli.diffresolver.service.hash.XxHash64;
+
+/**
+ * One file of a {@code SegmentDiffStore}. Sides are appended to it as records until it's full, and it's then sealed
+ * with a footer listing its records, so they can be indexed again without reading their data.
+ *
+ * <p>Layout, with big-endian numbers:
+ * <ul>
+ * <li>Records, from the start of the file: a {@value #RECORD_HEADER_BYTES}-byte header holding a magic number, the diff
+ * ID, side and length (ints), the version and digest, and a checksum of the preceding header fields (longs), followed
+ * by the data of the side.</li>
+ * <li>Footer, right after the last record: one {@value #FOOTER_ENTRY_BYTES}-byte entry per record, holding its diff ID,
+ * side, offset and length (ints), and its version and digest (longs).</li>
+ * <li>Trailer, in the last {@value #TRAILER_BYTES} bytes of the file: the offset of the footer and its number of
+ * entries (ints), a checksum of the footer and a magic number (longs).</li>
+ * </ul>
+ *
+ * <p>The file is created at its full capacity, which is sparse on most file systems, and mapped read-only once, so the
+ * data of every record is handed out as a view of that mapping. Records are written through the channel instead, the
+ * data before the header, so that a record with a valid header is complete. A segment that was never sealed is
+ * recovered by walking its headers up to the first invalid one.
+ *
+ * <p>Appending and sealing aren't thread-safe: the store serializes them.
+ * @author pmattioli
+ */
+final class Segment {
+
+    static final int RECORD_HEADER_BYTES = 40;
+    static final int FOOTER_ENTRY_BYTES = 32;
+    static final int TRAILER_BYTES = 24;
+
+    private static final int RECORD_MAGIC = 0x44534752;
+    private static final long TRAILER_MAGIC = 0x445347464F4F5452L;
+    private static final int CHECKSUMMED_HEADER_BYTES = 32;
+    private static final int INITIAL_FOOTER_ENTRIES = 64;
+
+    private final long id;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer mapping;
+    private final int capacity;
+    private final AtomicLong liveBytes = new AtomicLong();
+    private ByteBuffer footer;
+    private volatile int writeOffset;
+    private volatile boolean sealed;
+
+    private Segment(long id, Path path, FileChannel channel, int capacity) throws IOException {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.capacity = capacity;
+        this.mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, capacity);
+    }
+
+    /**
+     * @param path the file to create, which must not exist
+     * @param id the ID of the segment
+     * @param capacity the size of the file, in bytes
+     * @return an empty segment, open for appending
+     * @throws IOException when the file can't be created
+     */
+    static Segment create(Path path, long id, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            writeFully(channel, ByteBuffer.allocate(1), capacity - 1L);
+            Segment segment = new Segment(id, path, channel, capacity);
+            segment.footer = ByteBuffer.allocate(INITIAL_FOOTER_ENTRIES * FOOTER_ENTRY_BYTES);
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing segment, reading its records from the footer if it was sealed, or else from their headers.
+     *
+     * @param path the segment file
+     * @param id the ID of the segment
+     * @param records the list the records found are added to
+     * @return the segment, sealed or open for appending after its last valid record
+     * @throws IOException when the file can't be read or is too small to be a segment
+     */
+    static Segment open(Path path, long id, List<Record> records) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size < RECORD_HEADER_BYTES + FOOTER_ENTRY_BYTES + TRAILER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid segment file " + path + " of " + size + " bytes");
+            }
+            Segment segment = new Segment(id, path, channel, (int) size);
+            if (!segment.readFooter(records)) {
+                segment.footer = ByteBuffer.allocate(INITIAL_FOOTER_ENTRIES * FOOTER_ENTRY_BYTES);
+                segment.scanRecords(records);
+            }
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param length the length of a side
+     * @return the capacity of a segment holding only that side, or -1 if it's too large to be mapped
+     */
+    static long capacityFor(int length) {
+        long capacity = (long) RECORD_HEADER_BYTES + length + FOOTER_ENTRY_BYTES + TRAILER_BYTES;
+        return capacity > Integer.MAX_VALUE ? -1 : capacity;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * @return the number of bytes taken by records, including those that were superseded
+     */
+    int getUsedBytes() {
+        return writeOffset;
+    }
+
+    /**
+     * @return the number of bytes taken by the records the store still refers to
+     */
+    long getLiveBytes() {
+        return liveBytes.get();
+    }
+
+    void addLiveBytes(long delta) {
+        liveBytes.addAndGet(delta);
+    }
+
+    /**
+     * @param length the length of a side
+     * @return whether a record for the side fits, leaving room for the footer
+     */
+    boolean hasRoomFor(int length) {
+        long footerBytes = (long) (footer.position() + FOOTER_ENTRY_BYTES);
+        return (long) writeOffset + RECORD_HEADER_BYTES + length + footerBytes + TRAILER_BYTES <= capacity;
+    }
+
+    /**
+     * Appends a record, which is only visible to recovery once its header has been written, and counts it as live.
+     *
+     * @param diffId the diff ID of the side
+     * @param side which side it is
+     * @param version the version of the diff when the side was stored
+     * @param digest the digest of the side
+     * @param data the data of the side, from its position up to its limit
+     * @param sync whether to force the record to the storage device before returning
+     * @return the record
+     * @throws IOException when the record can't be written
+     */
+    Record append(int diffId, Side side, long version, long digest, ByteBuffer data, boolean sync)
+            throws IOException {
+        int offset = writeOffset;
+        int length = data.remaining();
+        writeFully(channel, data, (long) offset + RECORD_HEADER_BYTES);
+        if (sync) {
+            channel.force(false);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        header.putInt(RECORD_MAGIC).putInt(diffId).putInt(side.ordinal()).putInt(length).putLong(version)
+                .putLong(digest);
+        header.putLong(XxHash64.hash(header, 0, CHECKSUMMED_HEADER_BYTES));
+        header.flip();
+        writeFully(channel, header, offset);
+        if (sync) {
+            channel.force(false);
+        }
+
+        Record record = new Record(this, diffId, side, offset, length, version, digest);
+        addFooterEntry(record);
+        writeOffset = offset + RECORD_HEADER_BYTES + length;
+        liveBytes.addAndGet(record.getStoredBytes());
+        return record;
+    }
+
+    /**
+     * Writes the footer and trailer, after which no more records can be appended.
+     *
+     * @param sync whether to force them to the storage device before returning
+     * @throws IOException when they can't be written
+     */
+    void seal(boolean sync) throws IOException {
+        int footerOffset = writeOffset;
+        int entryCount = footer.position() / FOOTER_ENTRY_BYTES;
+        footer.flip();
+        long checksum = XxHash64.hash(footer, 0, footer.limit());
+        writeFully(channel, footer, footerOffset);
+
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+        trailer.putInt(footerOffset).putInt(entryCount).putLong(checksum).putLong(TRAILER_MAGIC);
+        trailer.flip();
+        writeFully(channel, trailer, (long) capacity - TRAILER_BYTES);
+        if (sync) {
+            channel.force(false);
+        }
+        footer = null;
+        sealed = true;
+    }
+
+    /**
+     * @param offset the offset of a record
+     * @param length the length of its data
+     * @return a read-only view of the data, indexed from zero
+     */
+    ByteBuffer view(int offset, int length) {
+        ByteBuffer view = mapping.duplicate();
+        view.limit(offset + RECORD_HEADER_BYTES + length).position(offset + RECORD_HEADER_BYTES);
+        return view.slice();
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Closes the file. Views of its data that are still referenced stay readable until they're garbage collected.
+     */
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Closes and deletes the file. On POSIX systems, views of its data that are still referenced stay readable until
+     * they're garbage collected, since the mapping holds on to the file.
+     */
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    private boolean readFooter(List<Record> records) {
+        int trailerOffset = capacity - TRAILER_BYTES;
+        int footerOffset = mapping.getInt(trailerOffset);
+        int entryCount = mapping.getInt(trailerOffset + 4);
+        long checksum = mapping.getLong(trailerOffset + 8);
+        if (mapping.getLong(trailerOffset + 16) != TRAILER_MAGIC || footerOffset < 0 || entryCount < 0
+                || (long) footerOffset + (long) entryCount * FOOTER_ENTRY_BYTES > trailerOffset
+                || XxHash64.hash(mapping, footerOffset, entryCount * FOOTER_ENTRY_BYTES) != checksum) {
+            return false;
+        }
+        for (int entry = footerOffset; entry < footerOffset + entryCount * FOOTER_ENTRY_BYTES;
+                entry += FOOTER_ENTRY_BYTES) {
+            records.add(new Record(this, mapping.getInt(entry), Side.values()[mapping.getInt(entry + 4)],
+                    mapping.getInt(entry + 8), mapping.getInt(entry + 12), mapping.getLong(entry + 16),
+                    mapping.getLong(entry + 24)));
+        }
+        writeOffset = footerOffset;
+        sealed = true;
+        return true;
+    }
+
+    private void scanRecords(List<Record> records) {
+        int offset = 0;
+        int end = capacity - TRAILER_BYTES;
+        while (offset + RECORD_HEADER_BYTES <= end && mapping.getInt(offset) == RECORD_MAGIC
+                && XxHash64.hash(mapping, offset, CHECKSUMMED_HEADER_BYTES)
+                        == mapping.getLong(offset + CHECKSUMMED_HEADER_BYTES)) {
+            int side = mapping.getInt(offset + 8);
+            int length = mapping.getInt(offset + 12);
+            if (side < 0 || side >= Side.values().length || length < 0
+                    || (long) offset + RECORD_HEADER_BYTES + length > end) {
+                break;
+            }
+            Record record = new Record(this, mapping.getInt(offset + 4), Side.values()[side], offset, length,
+                    mapping.getLong(offset + 16), mapping.getLong(offset + 24));
+            records.add(record);
+            addFooterEntry(record);
+            offset += RECORD_HEADER_BYTES + length;
+        }
+        writeOffset = offset;
+    }
+
+    private void addFooterEntry(Record record) {
+        if (footer.remaining() < FOOTER_ENTRY_BYTES) {
+            ByteBuffer grown = ByteBuffer.allocate(footer.capacity() * 2);
+            footer.flip();
+            footer = grown.put(footer);
+        }
+        footer.putInt(record.getDiffId()).putInt(record.getSide().ordinal()).putInt(record.getOffset())
+                .putInt(record.getLength()).putLong(record.getVersion()).putLong(record.getDigest());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+
+    /**
+     * Location and metadata of one side stored in a segment.
+     */
+    static final class Record {
+
+        private final Segment segment;
+        private final int diffId;
+        private final Side side;
+        private final int offset;
+        private final int length;
+        private final long version;
+        private final long digest;
+
+        private Record(Segment segment, int diffId, Side side, int offset, int length, long version, long digest) {
+            this.segment = segment;
+            this.diffId = diffId;
+            this.side = side;
+            this.offset = offset;
+            this.length = length;
+            this.version = version;
+            this.digest = digest;
+        }
+
+        Segment getSegment() {
+            return segment;
+        }
+
+        int getDiffId() {
+            return diffId;
+        }
+
+        Side getSide() {
+            return side;
+        }
+
+        int getOffset() {
+            return offset;
+        }
+
+        int getLength() {
+            return length;
+        }
+
+        long getVersion() {
+            return version;
+        }
+
+        long getDigest() {
+            return digest;
+        }
+
+        /**
+         * @return the number of bytes the record takes in its segment
+         */
+        long getStoredBytes() {
+            return (long) RECORD_HEADER_BYTES + length;
+        }
+
+        /**
+         * @return a read-only view of the data of the side, indexed from zero
+         */
+        ByteBuffer getData() {
+            return segment.view(offset, length);
+        }
+
+    }
+
+}
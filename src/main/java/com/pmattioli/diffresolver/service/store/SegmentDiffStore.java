@@ -0,0 +1,443 @@
+package com.pmattioli.diffresolver.service.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.util.Assert;
+
+import com.pmattioli.diffresolver.service.Side;
+
+/**
+ * Durable {@code DiffStore} which appends every side it's given to segment files in a directory, so sides survive a
+ * restart.
+ *
+ * <p>Only an index is kept in memory: for every diff ID, the segment, offset and length of the record holding each
+ * side, along with a {@code DiffSides} whose data are read-only views of the memory-mapped segments. Comparisons read
+ * the sides straight from the page cache, without copying them to the heap. Patched sides are appended again as a
+ * whole, since records are never modified in place.
+ *
+ * <p>Segments are {@code segmentSize} bytes, except for sides too large for one, which get a segment of their own. Once
+ * full, a segment is sealed with a footer listing its records, so that opening the store rebuilds the index from the
+ * footers alone, without reading any side; only the segment that was being written when the store was closed has its
+ * record headers walked instead. Sides keep their version across restarts, and the latest record of each side wins. A
+ * last segment too small to hold anything, left behind by a crash while it was being created, is deleted.
+ *
+ * <p>Superseded records are left behind in their segment. Every {@code compactionIntervalMillis}, a background thread
+ * copies the live records of the sealed segments that are mostly superseded to the segment being written, and deletes
+ * them. Sides that are being compared while their segment is deleted stay readable, since their mapping holds on to
+ * the file.
+ *
+ * <p>Like {@code ConcurrentDiffStore}, updates go through {@code ConcurrentMap.compute}, within which records are
+ * appended one at a time. With {@code sync} enabled, each record is forced to the storage device before the write
+ * returns, so it also survives a crash of the operating system; without it, records survive a crash of the process.
+ * @author pmattioli
+ */
+public class SegmentDiffStore implements DiffStore, Closeable {
+
+    private static final Logger LOG = Logger.getLogger(SegmentDiffStore.class.getName());
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int COMPACTION_LIVE_PERCENT = 50;
+
+    private final ConcurrentMap<Integer, Entry> index = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final LongAdder totalBytes = new LongAdder();
+    private final LongAdder compactionCount = new LongAdder();
+    private final Object appendLock = new Object();
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean sync;
+    private final int indexChunkSize;
+    private final ScheduledExecutorService compactor;
+    private Segment activeSegment;
+
+    /**
+     * Opens the store, recovering the sides held by the segments already in directory.
+     *
+     * @param directory the directory holding the segment files, created if it doesn't exist
+     * @param segmentSize the size of each segment file, in bytes
+     * @param sync whether to force every record to the storage device before a write returns
+     * @param indexChunkSize the chunk size of the hash trees rebuilt for recovered sides, or zero not to build them
+     * @param compactionIntervalMillis how often segments are compacted, in milliseconds
+     * @throws IOException when the directory or its segments can't be read
+     */
+    public SegmentDiffStore(Path directory, int segmentSize, boolean sync, int indexChunkSize,
+            long compactionIntervalMillis) throws IOException {
+        Assert.notNull(directory, "Directory can't be null");
+        Assert.isTrue(segmentSize >= Segment.capacityFor(0), "Segment size has to be at least "
+                + Segment.capacityFor(0) + " bytes");
+        Assert.isTrue(indexChunkSize >= 0, "Chunk size can't be negative");
+        Assert.isTrue(compactionIntervalMillis > 0, "Compaction interval has to be positive");
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+        this.indexChunkSize = indexChunkSize;
+        Files.createDirectories(directory);
+        recover();
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "diff-store-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compactQuietly, compactionIntervalMillis, compactionIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void put(int diffId, Side side, DiffSide data) {
+        index.compute(diffId, (id, entry) -> {
+            DiffSides current = entry == null ? DiffSides.empty() : entry.sides;
+            return write(id, entry, current.withSide(side, data), side == Side.LEFT ? data : null,
+                    side == Side.RIGHT ? data : null);
+        });
+    }
+
+    @Override
+    public void put(int diffId, DiffSide left, DiffSide right) {
+        index.compute(diffId, (id, entry) -> {
+            DiffSides current = entry == null ? DiffSides.empty() : entry.sides;
+            return write(id, entry, current.withSides(left, right), left, right);
+        });
+    }
+
+    @Override
+    public DiffSides update(int diffId, Side side, UnaryOperator<DiffSide> update) {
+        return index.compute(diffId, (id, entry) -> {
+            DiffSide current = entry == null ? null : entry.sides.get(side);
+            if (current == null) {
+                throw new IllegalStateException("No " + side.name().toLowerCase() + " side data for ID " + diffId);
+            }
+            DiffSide updated = update.apply(current);
+            return write(id, entry, entry.sides.withSide(side, updated), side == Side.LEFT ? updated : null,
+                    side == Side.RIGHT ? updated : null);
+        }).sides;
+    }
+
+    /**
+     * Returns the sides stored for diffId. The hash trees of recovered sides are rebuilt the first time they're read.
+     */
+    @Override
+    public DiffSides get(int diffId) {
+        Entry entry = index.get(diffId);
+        if (entry == null) {
+            return null;
+        }
+        DiffSides sides = entry.sides;
+        DiffSide left = sides.getLeft() == null ? null : sides.getLeft().withHashTree(indexChunkSize);
+        DiffSide right = sides.getRight() == null ? null : sides.getRight().withHashTree(indexChunkSize);
+        if (left == sides.getLeft() && right == sides.getRight()) {
+            return sides;
+        }
+        DiffSides indexed = DiffSides.restore(left, right, sides.getVersion());
+        index.replace(diffId, entry, new Entry(indexed, entry.left, entry.right));
+        return indexed;
+    }
+
+    @Override
+    public boolean contains(int diffId) {
+        return index.containsKey(diffId);
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return totalBytes.sum();
+    }
+
+    /**
+     * @return the number of segment files
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return the number of segments deleted by compactions since the store was opened
+     */
+    public long getCompactionCount() {
+        return compactionCount.sum();
+    }
+
+    /**
+     * Copies the live records of every sealed segment that is mostly superseded to the segment being written, and
+     * deletes the segment. This runs periodically in the background, but can also be triggered right away.
+     *
+     * @throws UncheckedIOException when a record can't be copied or a segment can't be deleted
+     */
+    public void compact() {
+        for (Segment segment : segments.values()) {
+            if (segment.isSealed()
+                    && segment.getLiveBytes() * 100 < (long) segment.getUsedBytes() * COMPACTION_LIVE_PERCENT) {
+                compact(segment);
+            }
+        }
+    }
+
+    /**
+     * Stops compacting and closes every segment, forcing the one being written to the storage device.
+     */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (appendLock) {
+            activeSegment.force();
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        TreeMap<Long, Path> segmentFiles = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segmentFiles.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+            }
+        }
+
+        List<Segment.Record> records = new ArrayList<>();
+        for (Map.Entry<Long, Path> segmentFile : segmentFiles.entrySet()) {
+            if (segmentFile.getKey().equals(segmentFiles.lastKey()) && isTruncated(segmentFile.getValue())) {
+                LOG.warning("Deleting " + segmentFile.getValue() + ", which was left truncated while being created");
+                Files.delete(segmentFile.getValue());
+                continue;
+            }
+            Segment segment = Segment.open(segmentFile.getValue(), segmentFile.getKey(), records);
+            segments.put(segment.getId(), segment);
+            if (!segment.isSealed()) {
+                if (activeSegment != null) {
+                    activeSegment.seal(sync);
+                }
+                activeSegment = segment;
+            }
+        }
+        if (activeSegment == null) {
+            activeSegment = createSegment(segmentSize);
+        }
+
+        Map<Integer, Segment.Record[]> latestRecords = new HashMap<>();
+        for (Segment.Record record : records) {
+            Segment.Record[] sideRecords = latestRecords.computeIfAbsent(record.getDiffId(),
+                    id -> new Segment.Record[Side.values().length]);
+            int side = record.getSide().ordinal();
+            if (sideRecords[side] == null || sideRecords[side].getVersion() <= record.getVersion()) {
+                sideRecords[side] = record;
+            }
+        }
+        for (Map.Entry<Integer, Segment.Record[]> diff : latestRecords.entrySet()) {
+            Segment.Record left = diff.getValue()[Side.LEFT.ordinal()];
+            Segment.Record right = diff.getValue()[Side.RIGHT.ordinal()];
+            long version = Math.max(left == null ? 0 : left.getVersion(), right == null ? 0 : right.getVersion());
+            DiffSides sides = DiffSides.restore(restore(left), restore(right), version);
+            index.put(diff.getKey(), replaced(null, new Entry(sides, left, right)));
+            for (Segment.Record record : diff.getValue()) {
+                if (record != null) {
+                    record.getSegment().addLiveBytes(record.getStoredBytes());
+                }
+            }
+        }
+        LOG.info("Recovered " + index.size() + " diffs from " + segments.size() + " segments in " + directory);
+    }
+
+    /**
+     * Tells whether a segment file is smaller than any segment, as the last one is left by a crash between its creation
+     * and its extension to its full size. It can't hold any record, so it's safe to delete.
+     */
+    private static boolean isTruncated(Path file) throws IOException {
+        return Files.size(file) < Segment.capacityFor(0);
+    }
+
+    private static DiffSide restore(Segment.Record record) {
+        return record == null ? null : DiffSide.restore(record.getData(), record.getDigest());
+    }
+
+    /**
+     * Appends the sides that changed, and returns the entry pointing to them. Runs within {@code compute}.
+     */
+    private Entry write(int diffId, Entry previous, DiffSides updated, DiffSide newLeft, DiffSide newRight) {
+        Segment.Record left = previous == null ? null : previous.left;
+        Segment.Record right = previous == null ? null : previous.right;
+        DiffSide leftSide = updated.getLeft();
+        DiffSide rightSide = updated.getRight();
+        if (newLeft != null) {
+            left = append(diffId, Side.LEFT, updated.getVersion(), newLeft);
+            leftSide = newLeft.relocate(left.getData());
+        }
+        if (newRight != null) {
+            try {
+                right = append(diffId, Side.RIGHT, updated.getVersion(), newRight);
+            } catch (RuntimeException e) {
+                if (newLeft != null) {
+                    release(left);
+                }
+                throw e;
+            }
+            rightSide = newRight.relocate(right.getData());
+        }
+        return replaced(previous, new Entry(DiffSides.restore(leftSide, rightSide, updated.getVersion()), left, right));
+    }
+
+    private Segment.Record append(int diffId, Side side, long version, DiffSide data) {
+        synchronized (appendLock) {
+            try {
+                int length = data.getLength();
+                Segment segment = activeSegment;
+                if (Segment.capacityFor(length) > segmentSize) {
+                    long capacity = Segment.capacityFor(length);
+                    if (capacity < 0) {
+                        throw new DiffStoreFullException("Side of " + length + " bytes for ID " + diffId
+                                + " is too large for a segment");
+                    }
+                    segment = createSegment((int) capacity);
+                    Segment.Record record = segment.append(diffId, side, version, data.getDigest(), data.getBuffer(),
+                            sync);
+                    segment.seal(sync);
+                    return record;
+                }
+                if (!segment.hasRoomFor(length)) {
+                    segment.seal(sync);
+                    segment = createSegment(segmentSize);
+                    activeSegment = segment;
+                }
+                return segment.append(diffId, side, version, data.getDigest(), data.getBuffer(), sync);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Side for ID " + diffId + " couldn't be stored", e);
+            }
+        }
+    }
+
+    private Segment createSegment(int capacity) throws IOException {
+        long id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Segment segment = Segment.create(directory.resolve(String.format("%016d", id) + SEGMENT_SUFFIX), id,
+                capacity);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void compact(Segment segment) {
+        for (Integer diffId : index.keySet()) {
+            index.computeIfPresent(diffId, (id, entry) -> {
+                boolean moveLeft = entry.left != null && entry.left.getSegment() == segment;
+                boolean moveRight = entry.right != null && entry.right.getSegment() == segment;
+                if (!moveLeft && !moveRight) {
+                    return entry;
+                }
+                Segment.Record left = entry.left;
+                Segment.Record right = entry.right;
+                DiffSide leftSide = entry.sides.getLeft();
+                DiffSide rightSide = entry.sides.getRight();
+                if (moveLeft) {
+                    left = copy(entry.left, leftSide);
+                    leftSide = leftSide.relocate(left.getData());
+                }
+                if (moveRight) {
+                    try {
+                        right = copy(entry.right, rightSide);
+                    } catch (RuntimeException e) {
+                        if (moveLeft) {
+                            release(left);
+                        }
+                        throw e;
+                    }
+                    rightSide = rightSide.relocate(right.getData());
+                }
+                DiffSides sides = DiffSides.restore(leftSide, rightSide, entry.sides.getVersion());
+                return replaced(entry, new Entry(sides, left, right));
+            });
+        }
+        if (segment.getLiveBytes() == 0) {
+            try {
+                synchronized (appendLock) {
+                    activeSegment.force();
+                }
+                segments.remove(segment.getId());
+                segment.delete();
+                compactionCount.increment();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Segment " + segment.getId() + " couldn't be deleted", e);
+            }
+        }
+    }
+
+    private Segment.Record copy(Segment.Record record, DiffSide data) {
+        return append(record.getDiffId(), record.getSide(), record.getVersion(), data);
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Segment compaction failed", e);
+        }
+    }
+
+    /**
+     * Releases the records the updated entry no longer refers to. Records count as live from the moment they're
+     * appended, so a segment can't be compacted while a write to it is still being indexed.
+     */
+    private Entry replaced(Entry previous, Entry updated) {
+        if (previous != null) {
+            if (previous.left != updated.left) {
+                release(previous.left);
+            }
+            if (previous.right != updated.right) {
+                release(previous.right);
+            }
+        }
+        totalBytes.add(updated.sides.getTotalLength() - (previous == null ? 0L : previous.sides.getTotalLength()));
+        return updated;
+    }
+
+    private static void release(Segment.Record record) {
+        if (record != null) {
+            record.getSegment().addLiveBytes(-record.getStoredBytes());
+        }
+    }
+
+    /**
+     * The sides of a diff, along with the records holding them.
+     */
+    private static final class Entry {
+
+        private final DiffSides sides;
+        private final Segment.Record left;
+        private final Segment.Record right;
+
+        private Entry(DiffSides sides, Segment.Record left, Segment.Record right) {
+            this.sides = sides;
+            this.left = left;
+            this.right = right;
+        }
+
+    }
+
+}
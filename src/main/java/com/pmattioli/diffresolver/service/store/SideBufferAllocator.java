@@ -0,0 +1,103 @@
+package com.pmattioli.diffresolver.service.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.util.Assert;
+
+/**
+ * Allocates the buffers decoded sides are held in: on the heap below {@code threshold} bytes, and from there on off the
+ * heap, so that neither the heap nor garbage collection pauses grow with the size of the payloads.
+ *
+ * <p>Off-heap buffers are either direct buffers, which count against {@code -XX:MaxDirectMemorySize} (the maximum heap
+ * size by default), or memory-mapped temporary files. The files are deleted as soon as they're mapped, so they don't
+ * outlive the process, but their pages can still be written back and evicted by the operating system under memory
+ * pressure. Either kind is released once the buffer is garbage collected, which only takes the small object wrapping
+ * it.
+ * @author pmattioli
+ */
+public class SideBufferAllocator {
+
+    public static final SideBufferAllocator HEAP = new SideBufferAllocator(Mode.HEAP, 0, null);
+
+    /**
+     * Where buffers from the threshold on are allocated.
+     */
+    public enum Mode {
+        HEAP,
+        DIRECT,
+        MAPPED
+    }
+
+    private final Mode mode;
+    private final int threshold;
+    private final Path directory;
+    private final LongAdder offHeapCount = new LongAdder();
+    private final LongAdder offHeapBytes = new LongAdder();
+
+    /**
+     * @param mode where buffers from the threshold on are allocated
+     * @param threshold the capacity, in bytes, from which buffers are allocated off the heap
+     * @param directory the directory temporary files are created in, for {@code MAPPED} buffers
+     */
+    public SideBufferAllocator(Mode mode, int threshold, Path directory) {
+        Assert.notNull(mode, "Mode can't be null");
+        Assert.isTrue(threshold >= 0, "Threshold can't be negative");
+        Assert.isTrue(mode != Mode.MAPPED || directory != null, "Directory can't be null for mapped buffers");
+        this.mode = mode;
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    /**
+     * @param capacity the capacity of the buffer, in bytes
+     * @return a buffer of that capacity, with its position at zero and its limit at its capacity
+     * @throws UncheckedIOException when the temporary file of a mapped buffer can't be created
+     */
+    public ByteBuffer allocate(int capacity) {
+        if (mode == Mode.HEAP || capacity < threshold || capacity == 0) {
+            return ByteBuffer.allocate(capacity);
+        }
+        offHeapCount.increment();
+        offHeapBytes.add(capacity);
+        return mode == Mode.DIRECT ? ByteBuffer.allocateDirect(capacity) : map(capacity);
+    }
+
+    /**
+     * @return the number of buffers allocated off the heap
+     */
+    public long getOffHeapCount() {
+        return offHeapCount.sum();
+    }
+
+    /**
+     * @return the combined capacity of the buffers allocated off the heap, including those released since
+     */
+    public long getOffHeapBytes() {
+        return offHeapBytes.sum();
+    }
+
+    private ByteBuffer map(int capacity) {
+        try {
+            Path file = Files.createTempFile(directory, "side-", ".tmp");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } finally {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    file.toFile().deleteOnExit();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Buffer of " + capacity + " bytes couldn't be mapped", e);
+        }
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.pmattioli.diffresolver.service.store;
+
+/**
+ * Thrown within an update to leave a side untouched, because it isn't the one the replacement was derived from anymore.
+ * @author pmattioli
+ */
+final class StaleSideException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    StaleSideException() {
+        super(null, null, false, false);
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.pmattioli.diffresolver.api.controller;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pmattioli.diffresolver.api.model.DiffDeltaResponse;
+import com.pmattioli.diffresolver.service.DeltaResolverService;
+import com.pmattioli.diffresolver.service.delta.Delta;
+import com.pmattioli.diffresolver.service.delta.DeltaOperation;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(BinaryDeltaController.class)
+public class BinaryDeltaControllerTest {
+
+    private static final String BASE_PATH = "/v1/diff/";
+    private static final int DIFF_ID = 1;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private DeltaResolverService deltaResolverService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Test
+    public void shouldReturnOperationsWithOffsetsWhenDeltaIsResolved() throws Exception {
+        when(deltaResolverService.resolveDelta(DIFF_ID)).thenReturn(Delta.builder(10, 12)
+                .add(DeltaOperation.COPY, 0, 0, 4)
+                .add(DeltaOperation.DELETE, 4, 4, 1)
+                .add(DeltaOperation.INSERT, 5, 4, 3)
+                .add(DeltaOperation.COPY, 5, 7, 5)
+                .build());
+
+        mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + DIFF_ID + "/delta").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(new DiffDeltaResponse(10, 12, Arrays.asList(
+                        new DiffDeltaResponse.Operation("COPY", 1, 1, 4),
+                        new DiffDeltaResponse.Operation("DELETE", 5, 5, 1),
+                        new DiffDeltaResponse.Operation("INSERT", 6, 5, 3),
+                        new DiffDeltaResponse.Operation("COPY", 6, 8, 5))))));
+    }
+
+    @Test
+    public void shouldReturnPreconditionFailedWhenASideIsMissing() throws Exception {
+        when(deltaResolverService.resolveDelta(DIFF_ID)).thenThrow(new IllegalStateException("No left side data"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + DIFF_ID + "/delta").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+}
@@ -1,11 +1,26 @@
 package com.pmattioli.diffresolver.api.controller;
 
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -13,17 +28,27 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.util.Assert;
+import org.springframework.web.context.WebApplicationContext;
 
 import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pmattioli.diffresolver.api.filter.ContentEncodingFilter;
 import com.pmattioli.diffresolver.api.model.DiffApiRequest;
 import com.pmattioli.diffresolver.api.model.DiffApiResponse;
+import com.pmattioli.diffresolver.api.model.DiffEqualityResponse;
+import com.pmattioli.diffresolver.api.model.DiffSummaryResponse;
+import com.pmattioli.diffresolver.api.writer.BinaryDiffDecoder;
+import com.pmattioli.diffresolver.api.writer.DiffResponseFormat;
 import com.pmattioli.diffresolver.service.DiffResolverService;
+import com.pmattioli.diffresolver.service.DiffResult;
+import com.pmattioli.diffresolver.service.store.DiffStoreFullException;
 
 @RunWith(SpringRunner.class)
 @WebMvcTest(BinaryDiffController.class)
@@ -41,12 +66,15 @@ public class BinaryDiffControllerTest {
     @Autowired
     ObjectMapper objectMapper;
 
+    @Autowired
+    private WebApplicationContext context;
+
     @Test
-    public void shouldReturnSuccesfulResponseWhenDiffResolverReturnsArrayWithValuesGreaterThanZero() throws Exception {
+    public void shouldReturnSuccesfulResponseWhenDiffResolverReturnsMismatchRanges() throws Exception {
         DiffApiResponse response =
                 readObjectFromTestResouceFile("succesfulApiResponse.json", DiffApiResponse.class);
-        int[] mockDiffResolverResponseArray = getExpectedDiffResolverServiceResponse(response);
-        when(diffResolverService.resolveDiff(DIFF_ID)).thenReturn(mockDiffResolverResponseArray);
+        DiffResult mockDiffResolverResult = getExpectedDiffResolverServiceResponse(response);
+        when(diffResolverService.prepare(DIFF_ID)).thenReturn(mockDiffResolverResult);
 
         mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + DIFF_ID).accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
@@ -54,22 +82,158 @@ public class BinaryDiffControllerTest {
     }
 
     @Test
-    public void shouldReturnBothAreEqualResponseWhenDiffResolverReturnsArrayWithAllZeroValues() throws Exception {
+    public void shouldReturnBothAreEqualResponseWhenDiffResolverReturnsNoMismatchRanges() throws Exception {
         DiffApiResponse response =
                 readObjectFromTestResouceFile("bothAreEqual.json", DiffApiResponse.class);
-        int[] mockDiffResolverResponseArray = {0, 0, 0, 0, 0};
-        when(diffResolverService.resolveDiff(DIFF_ID)).thenReturn(mockDiffResolverResponseArray);
+        DiffResult mockDiffResolverResult = DiffResult.builder(5).build();
+        when(diffResolverService.prepare(DIFF_ID)).thenReturn(mockDiffResolverResult);
 
         mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + DIFF_ID).accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(content().json(objectMapper.writeValueAsString(response)));
     }
 
+    @Test
+    public void shouldStreamEveryOffsetOfLongMismatchRanges() throws Exception {
+        when(diffResolverService.prepare(DIFF_ID))
+                .thenReturn(DiffResult.builder(2000).addRange(0, 3).addRange(997, 4).build());
+
+        mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + DIFF_ID).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(
+                        new DiffApiResponse(2000, "[1, 2, 3, 998, 999, 1000, 1001]"))));
+    }
+
+    @Test
+    public void shouldReturnFirstPageWithNextOffsetWhenLimitIsReached() throws Exception {
+        when(diffResolverService.prepare(DIFF_ID))
+                .thenReturn(DiffResult.builder(2000).addRange(0, 3).addRange(997, 4).build());
+
+        mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + DIFF_ID + "?limit=4").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(
+                        new DiffApiResponse(2000, "[1, 2, 3, 998]", 999))));
+    }
+
+    @Test
+    public void shouldResumeFromNextOffsetWithinWindow() throws Exception {
+        when(diffResolverService.prepare(DIFF_ID))
+                .thenReturn(DiffResult.builder(2000).addRange(0, 3).addRange(997, 4).build());
+
+        mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + DIFF_ID + "?start=2&end=999&from=3&limit=2")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(
+                        new DiffApiResponse(2000, "[3, 998]", 999))));
+    }
+
+    @Test
+    public void shouldReturnDeltaEncodedOffsetsWhenAcceptHeaderAsksForThem() throws Exception {
+        DiffResult result = DiffResult.builder(2000).addRange(0, 3).addRange(997, 4).build();
+        when(diffResolverService.prepare(DIFF_ID)).thenReturn(result);
+
+        byte[] body = mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + DIFF_ID)
+                .header(HttpHeaders.ACCEPT, "application/json;q=0.5, " + DiffResponseFormat.OFFSETS_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(DiffResponseFormat.OFFSETS_VALUE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        BinaryDiffDecoder.Page page = BinaryDiffDecoder.decode(body);
+        assertThat(page.getResult(), equalTo(result));
+        assertThat(page.getNext(), nullValue());
+    }
+
+    @Test
+    public void shouldReturnRangesPageWithNextOffsetWhenAcceptHeaderAsksForThem() throws Exception {
+        when(diffResolverService.prepare(DIFF_ID))
+                .thenReturn(DiffResult.builder(2000).addRange(0, 3).addRange(997, 4).build());
+
+        byte[] body = mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + DIFF_ID + "?limit=4")
+                .header(HttpHeaders.ACCEPT, DiffResponseFormat.RANGES_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(DiffResponseFormat.RANGES_VALUE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        BinaryDiffDecoder.Page page = BinaryDiffDecoder.decode(body);
+        assertThat(page.getResult(), equalTo(DiffResult.builder(2000).addRange(0, 3).addRange(997, 1).build()));
+        assertThat(page.getNext(), equalTo(999));
+    }
+
+    @Test
+    public void shouldReturnEmptyOffsetsWhenWindowHasNoDifferences() throws Exception {
+        when(diffResolverService.prepare(DIFF_ID))
+                .thenReturn(DiffResult.builder(2000).addRange(0, 3).addRange(997, 4).build());
+
+        mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + DIFF_ID + "?start=4&end=997")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"length\":2000,\"offsets\":\"[]\"}", true));
+    }
+
+    @Test
+    public void shouldReturnPreconditionFailedWhenWindowIsOutOfBounds() throws Exception {
+        when(diffResolverService.prepare(DIFF_ID)).thenReturn(DiffResult.builder(2000).build());
+
+        mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + DIFF_ID + "?end=2001")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    public void shouldReturnFirstOffsetWhenEqualityIsChecked() throws Exception {
+        when(diffResolverService.prepare(DIFF_ID))
+                .thenReturn(DiffResult.builder(2000).addRange(0, 3).addRange(997, 4).build());
+
+        mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + DIFF_ID + "?mode=equal")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(new DiffEqualityResponse(2000, 1)), true));
+    }
+
+    @Test
+    public void shouldReturnEqualityInHeadersWhenHeadRequested() throws Exception {
+        when(diffResolverService.prepare(DIFF_ID)).thenReturn(DiffResult.builder(2000).addRange(997, 4).build());
+
+        mockMvc.perform(MockMvcRequestBuilders.head(BASE_PATH + DIFF_ID))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Diff-Equal", "false"))
+                .andExpect(header().string("X-Diff-First-Offset", "998"))
+                .andExpect(content().bytes(new byte[0]));
+
+        when(diffResolverService.prepare(DIFF_ID)).thenReturn(DiffResult.builder(2000).build());
+
+        mockMvc.perform(MockMvcRequestBuilders.head(BASE_PATH + DIFF_ID))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Diff-Equal", "true"))
+                .andExpect(header().doesNotExist("X-Diff-First-Offset"));
+    }
+
+    @Test
+    public void shouldReturnCountBoundsAndHistogramWhenSummaryIsRequested() throws Exception {
+        when(diffResolverService.prepare(DIFF_ID))
+                .thenReturn(DiffResult.builder(2000).addRange(0, 3).addRange(997, 4).build());
+
+        mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + DIFF_ID + "?mode=summary&blocks=4")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(
+                        new DiffSummaryResponse(2000, 7, 1, 1001, 500, new int[] { 3, 3, 1, 0 })), true));
+    }
+
+    @Test
+    public void shouldReturnPreconditionFailedWhenSummaryBlocksAreOutOfBounds() throws Exception {
+        when(diffResolverService.prepare(DIFF_ID)).thenReturn(DiffResult.builder(2000).build());
+
+        mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + DIFF_ID + "?mode=summary&blocks=0")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     public void shouldReturnNotEqualSizeDataResponseWhenDataProvidedHasDifferentSizes() throws Exception {
         DiffApiResponse response =
                 readObjectFromTestResouceFile("filesHaveDifferentSizesResponse.json", DiffApiResponse.class);
-        when(diffResolverService.resolveDiff(DIFF_ID)).thenThrow(new IllegalArgumentException(response.getMessage()));
+        when(diffResolverService.prepare(DIFF_ID)).thenThrow(new IllegalArgumentException(response.getMessage()));
 
         mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + DIFF_ID).accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isPreconditionFailed())
@@ -90,6 +254,114 @@ public class BinaryDiffControllerTest {
                 .andExpect(content().json(objectMapper.writeValueAsString(response)));
     }
 
+    @Test
+    public void shouldReturnInsufficientStorageWhenTheStoreIsFull() throws Exception {
+        DiffApiRequest request = readObjectFromTestResouceFile("left.json", DiffApiRequest.class);
+        when(diffResolverService.setLeft(DIFF_ID, request.getData())).thenThrow(new DiffStoreFullException(
+                "Not enough storage left for ID 1: the sides stored can't take more than 100 bytes"));
+
+        mockMvc.perform(MockMvcRequestBuilders.post(BASE_PATH + DIFF_ID + "/left")
+                .content(objectMapper.writeValueAsString(request))
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isInsufficientStorage())
+                .andExpect(content().json(objectMapper.writeValueAsString(new DiffApiResponse(
+                        "Not enough storage left for ID 1: the sides stored can't take more than 100 bytes"))));
+    }
+
+    @Test
+    public void shouldReturnPayloadTooLargeWhenACompressedBodyInflatesPastTheLimit() throws Exception {
+        MockMvc compressingMockMvc = MockMvcBuilders.webAppContextSetup(context)
+                .addFilters(new ContentEncodingFilter(2048, 6, 64 * 1024))
+                .build();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream output = new GZIPOutputStream(compressed)) {
+            output.write("{\"data\":\"".getBytes(StandardCharsets.US_ASCII));
+            byte[] data = new byte[64 * 1024];
+            Arrays.fill(data, (byte) 'A');
+            for (int i = 0; i < 256; i++) {
+                output.write(data);
+            }
+            output.write("\"}".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        compressingMockMvc.perform(MockMvcRequestBuilders.post(BASE_PATH + DIFF_ID + "/left")
+                .content(compressed.toByteArray())
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isPayloadTooLarge())
+                .andExpect(content().json(objectMapper.writeValueAsString(new DiffApiResponse(
+                        "Decompressed body is larger than 65536 bytes"))));
+        verify(diffResolverService, never()).setLeft(anyInt(), anyString());
+    }
+
+    @Test
+    public void shouldReturnDigestOfPostedData() throws Exception {
+        DiffApiRequest request = readObjectFromTestResouceFile("left.json", DiffApiRequest.class);
+        DiffApiResponse response = readObjectFromTestResouceFile("leftPostResult.json", DiffApiResponse.class);
+        when(diffResolverService.setLeft(DIFF_ID, request.getData())).thenReturn(0x2f279d1d74d9bb82L);
+
+        mockMvc.perform(MockMvcRequestBuilders.post(BASE_PATH + DIFF_ID + "/left")
+                .content(objectMapper.writeValueAsString(request))
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(response)));
+    }
+
+    @Test
+    public void shouldPassRequestBodyToDiffResolverWhenPostedWithBinaryData() throws Exception {
+        DiffApiResponse response =
+                readObjectFromTestResouceFile("succesfulPostResult.json", DiffApiResponse.class);
+
+        mockMvc.perform(MockMvcRequestBuilders.post(BASE_PATH + DIFF_ID + "/right")
+                .content(new byte[] { 1, 2, 3 })
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(response)));
+
+        verify(diffResolverService).setRight(eq(DIFF_ID), any(InputStream.class), eq(3L));
+    }
+
+    @Test
+    public void shouldPassZeroBasedIndexToDiffResolverWhenPatchedWithOffset() throws Exception {
+        DiffApiRequest request = readObjectFromTestResouceFile("left.json", DiffApiRequest.class);
+        request.setOffset(5);
+        when(diffResolverService.patchLeft(DIFF_ID, 4, request.getData())).thenReturn(0x2f279d1d74d9bb82L);
+
+        mockMvc.perform(MockMvcRequestBuilders.patch(BASE_PATH + DIFF_ID + "/left")
+                .content(objectMapper.writeValueAsString(request))
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(new DiffApiResponse(
+                        "Data was patched successfully for ID " + DIFF_ID, "2f279d1d74d9bb82"))));
+    }
+
+    @Test
+    public void shouldPassRequestBodyToDiffResolverWhenPatchedWithBinaryData() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.patch(BASE_PATH + DIFF_ID + "/right?offset=1")
+                .content(new byte[] { 1, 2, 3 })
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        verify(diffResolverService).patchRight(eq(DIFF_ID), eq(0), any(InputStream.class), eq(3L));
+    }
+
+    @Test
+    public void shouldReturnPreconditionFailedWhenPatchedWithoutOffset() throws Exception {
+        DiffApiRequest request = readObjectFromTestResouceFile("left.json", DiffApiRequest.class);
+
+        mockMvc.perform(MockMvcRequestBuilders.patch(BASE_PATH + DIFF_ID + "/left")
+                .content(objectMapper.writeValueAsString(request))
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     public void shouldReturnBadRequestWhenPostedWithNonIntegerDiffId() throws Exception {
         DiffApiRequest request = readObjectFromTestResouceFile("left.json", DiffApiRequest.class);
@@ -118,22 +390,22 @@ public class BinaryDiffControllerTest {
     }
 
     /**
-     * Returns an array such as the one the {@code DiffResolverService} would return in order for the
+     * Returns a result such as the one the {@code DiffResolverService} would return in order for the
      * controller to produce the DiffApiResponse passed by parameter.
      *
      * <p>It's a convenience method for unit-testing the {@code BinaryDiffController} using resource files.
-     * @param response the {@code DiffApiResponse} from which the expected offsets array will be  constructed
-     * @return the offset array that the unit test should expect for a particular {@code DiffApiResponse} to be produced
+     * @param response the {@code DiffApiResponse} from which the expected diff result will be  constructed
+     * @return the diff result that the unit test should expect for a particular {@code DiffApiResponse} to be produced
      * @throws IOException if the ObjectMapper fails to parse the offsets string from the response
      */
-    private int[] getExpectedDiffResolverServiceResponse(DiffApiResponse response) throws IOException {
-        int[] expectedResponse = new int[response.getLength()];
+    private DiffResult getExpectedDiffResolverServiceResponse(DiffApiResponse response) throws IOException {
+        DiffResult.Builder expectedResponse = DiffResult.builder(response.getLength());
         MappingIterator<Integer> it = objectMapper.readerFor(Integer.class).readValues(response.getOffsets());
         for (; it.hasNext(); ) {
             Integer offset = it.next();
-            expectedResponse[offset-1] = offset;
+            expectedResponse.addRange(offset-1, 1);
         }
-        return expectedResponse;
+        return expectedResponse.build();
     }
 
 }
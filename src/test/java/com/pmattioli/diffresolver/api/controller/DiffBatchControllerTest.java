@@ -0,0 +1,136 @@
+package com.pmattioli.diffresolver.api.controller;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pmattioli.diffresolver.api.model.DiffBatchRequest;
+import com.pmattioli.diffresolver.api.model.DiffBatchResponse;
+import com.pmattioli.diffresolver.service.BatchItemResult;
+import com.pmattioli.diffresolver.service.DiffResolverService;
+import com.pmattioli.diffresolver.service.DiffResult;
+import com.pmattioli.diffresolver.service.SideUpload;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(DiffBatchController.class)
+public class DiffBatchControllerTest {
+
+    private static final String BATCH_PATH = "/v1/diff/batch";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private DiffResolverService diffResolverService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Captor
+    private ArgumentCaptor<List<SideUpload>> uploads;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void shouldReturnStatusOfEveryItemWhenBatchIsUploaded() throws Exception {
+        DiffBatchRequest request = new DiffBatchRequest();
+        request.setItems(Arrays.asList(new DiffBatchRequest.Item(1, "left", "UGxlYXNlIGhpcmUgbWUh"),
+                new DiffBatchRequest.Item(1, "middle", "UGxlYXNlIGhpcmUgbWUh"),
+                new DiffBatchRequest.Item(2, "right", "UGxlYXNl")));
+        when(diffResolverService.setSides(anyListOf(SideUpload.class))).thenReturn(Arrays.asList(
+                BatchItemResult.of(0x2f279d1d74d9bb82L),
+                BatchItemResult.failed(new IllegalArgumentException("Data has to be Base64-encoded"))));
+
+        mockMvc.perform(MockMvcRequestBuilders.post(BATCH_PATH)
+                .content(objectMapper.writeValueAsString(request))
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(new DiffBatchResponse(Arrays.asList(
+                        new DiffBatchResponse.Item(1, "left", 200, "Data was added sucessfully for ID 1",
+                                "2f279d1d74d9bb82", null, null),
+                        new DiffBatchResponse.Item(1, "middle", 412, "Side has to be left or right", null, null,
+                                null),
+                        new DiffBatchResponse.Item(2, "right", 412, "Data has to be Base64-encoded", null, null,
+                                null))))));
+
+        verify(diffResolverService).setSides(uploads.capture());
+        assertThat(uploads.getValue().size(), equalTo(2));
+    }
+
+    @Test
+    public void shouldReturnResultOfEveryDiffWhenBatchIsResolved() throws Exception {
+        DiffBatchRequest request = new DiffBatchRequest();
+        request.setDiffIds(new int[] { 1, 2, 3 });
+        when(diffResolverService.resolveAll(any(int[].class))).thenReturn(Arrays.asList(
+                BatchItemResult.of(DiffResult.builder(15).addRange(7, 1).addRange(12, 1).build()),
+                BatchItemResult.of(DiffResult.builder(15).build()),
+                BatchItemResult.failed(new IllegalStateException("Files have different sizes"))));
+
+        mockMvc.perform(MockMvcRequestBuilders.post(BATCH_PATH + "/resolve")
+                .content(objectMapper.writeValueAsString(request))
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(new DiffBatchResponse(Arrays.asList(
+                        new DiffBatchResponse.Item(1, null, 200, null, null, 15, "[8, 13]"),
+                        new DiffBatchResponse.Item(2, null, 200, "Both data strings provided are equal", null, null,
+                                null),
+                        new DiffBatchResponse.Item(3, null, 412, "Files have different sizes", null, null,
+                                null))))));
+    }
+
+    @Test
+    public void shouldStreamTheOffsetsOfEveryDiffFromItsRangesWhenBatchIsResolved() throws Exception {
+        DiffBatchRequest request = new DiffBatchRequest();
+        request.setDiffIds(new int[] { 1, 2 });
+        when(diffResolverService.resolveAll(any(int[].class))).thenReturn(Arrays.asList(
+                BatchItemResult.of(DiffResult.builder(100_000).addRange(2, 3).addRange(99_990, 10).build()),
+                BatchItemResult.failed(new IllegalStateException("No left side data for ID 2"))));
+
+        mockMvc.perform(MockMvcRequestBuilders.post(BATCH_PATH + "/resolve")
+                .content(objectMapper.writeValueAsString(request))
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"items\":[{\"diffId\":1,\"status\":200,\"length\":100000,"
+                        + "\"offsets\":\"[3, 4, 5, 99991, 99992, 99993, 99994, 99995, 99996, 99997, 99998, 99999, "
+                        + "100000]\"},{\"diffId\":2,\"status\":412,\"message\":\"No left side data for ID 2\"}]}"));
+    }
+
+    @Test
+    public void shouldReturnPreconditionFailedWhenBatchHasNoItems() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post(BATCH_PATH)
+                .content("{}")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.pmattioli.diffresolver.api.controller;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pmattioli.diffresolver.api.model.DiffApiResponse;
+import com.pmattioli.diffresolver.api.model.DiffJobResponse;
+import com.pmattioli.diffresolver.service.DiffResult;
+import com.pmattioli.diffresolver.service.job.DiffJob;
+import com.pmattioli.diffresolver.service.job.DiffJobService;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(DiffJobController.class)
+public class DiffJobControllerTest {
+
+    private static final String BASE_PATH = "/v1/diff/";
+    private static final int DIFF_ID = 1;
+    private static final long JOB_ID = 7;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private DiffJobService diffJobService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Test
+    public void shouldReturnAcceptedWithJobLocationWhenJobIsSubmitted() throws Exception {
+        DiffJob job = job(DiffJob.Status.QUEUED, null);
+        when(diffJobService.submit(DIFF_ID)).thenReturn(job);
+
+        mockMvc.perform(MockMvcRequestBuilders.post(BASE_PATH + DIFF_ID + "/jobs").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/v1/diff/jobs/" + JOB_ID))
+                .andExpect(content().json(objectMapper.writeValueAsString(
+                        new DiffJobResponse(JOB_ID, DIFF_ID, "QUEUED", null, null))));
+    }
+
+    @Test
+    public void shouldReturnTooManyRequestsWhenJobIsRejected() throws Exception {
+        when(diffJobService.submit(DIFF_ID)).thenThrow(new RejectedExecutionException("Too many diff jobs"));
+
+        mockMvc.perform(MockMvcRequestBuilders.post(BASE_PATH + DIFF_ID + "/jobs").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(content().json(objectMapper.writeValueAsString(
+                        new DiffApiResponse("Too many diff jobs"))));
+    }
+
+    @Test
+    public void shouldReturnResultLocationWhenJobIsDone() throws Exception {
+        DiffJob job = job(DiffJob.Status.DONE, DiffResult.builder(15).addRange(7, 1).build());
+        when(diffJobService.get(JOB_ID)).thenReturn(job);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + "jobs/" + JOB_ID).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(
+                        new DiffJobResponse(JOB_ID, DIFF_ID, "DONE", "/v1/diff/jobs/" + JOB_ID + "/result", null))));
+    }
+
+    @Test
+    public void shouldReturnDiffWhenResultOfDoneJobIsRequested() throws Exception {
+        DiffJob job = job(DiffJob.Status.DONE, DiffResult.builder(15).addRange(7, 1).addRange(12, 1).build());
+        when(diffJobService.get(JOB_ID)).thenReturn(job);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + "jobs/" + JOB_ID + "/result")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(new DiffApiResponse(15, "[8, 13]"))));
+    }
+
+    @Test
+    public void shouldReturnAcceptedWhenResultOfRunningJobIsRequested() throws Exception {
+        DiffJob job = job(DiffJob.Status.RUNNING, null);
+        when(diffJobService.get(JOB_ID)).thenReturn(job);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + "jobs/" + JOB_ID + "/result")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isAccepted());
+    }
+
+    @Test
+    public void shouldReturnNotFoundWhenJobDoesNotExist() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get(BASE_PATH + "jobs/" + JOB_ID).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound());
+    }
+
+    private static DiffJob job(DiffJob.Status status, DiffResult result) {
+        DiffJob job = mock(DiffJob.class);
+        when(job.getId()).thenReturn(JOB_ID);
+        when(job.getDiffId()).thenReturn(DIFF_ID);
+        when(job.getStatus()).thenReturn(status);
+        when(job.getResult()).thenReturn(result);
+        return job;
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.pmattioli.diffresolver.api.filter;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.pmattioli.diffresolver.service.codec.PayloadTooLargeException;
+
+public class ContentEncodingFilterTest {
+
+    private static final int MAX_INFLATED_SIZE = 1024 * 1024;
+
+    private final ContentEncodingFilter filter = new ContentEncodingFilter(100, 6, MAX_INFLATED_SIZE);
+
+    @Test
+    public void shouldPreferGzipUnlessDeflateHasAHigherQuality() throws Exception {
+        assertThat(ContentEncodingFilter.negotiate("gzip, deflate"), equalTo("gzip"));
+        assertThat(ContentEncodingFilter.negotiate("deflate, gzip;q=0.5"), equalTo("deflate"));
+        assertThat(ContentEncodingFilter.negotiate("*"), equalTo("gzip"));
+        assertThat(ContentEncodingFilter.negotiate("br, *;q=0"), nullValue());
+        assertThat(ContentEncodingFilter.negotiate("gzip;q=0, deflate;q=0"), nullValue());
+        assertThat(ContentEncodingFilter.negotiate(null), nullValue());
+    }
+
+    @Test
+    public void shouldSendResponsesBelowTheMinimumSizeAsTheyAreWithTheirLength() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v1/diff/1");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+                response.getOutputStream().write(new byte[99]);
+            }
+        });
+
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING), nullValue());
+        assertThat(response.getContentLength(), equalTo(99));
+        assertThat(response.getContentAsByteArray(), equalTo(new byte[99]));
+    }
+
+    @Test
+    public void shouldCompressResponsesFromTheMinimumSize() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v1/diff/1");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "deflate");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        byte[] body = new byte[10_000];
+        Arrays.fill(body, (byte) 'x');
+
+        filter.doFilter(request, response, new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+                response.getOutputStream().write(body, 0, 60);
+                response.getOutputStream().write(body, 60, body.length - 60);
+            }
+        });
+
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING), equalTo("deflate"));
+        assertThat(response.getContentAsByteArray().length < 100, equalTo(true));
+        Inflater inflater = new Inflater();
+        inflater.setInput(response.getContentAsByteArray());
+        byte[] inflated = new byte[body.length + 1];
+        assertThat(inflater.inflate(inflated), equalTo(body.length));
+        inflater.end();
+    }
+
+    @Test
+    public void shouldStopInflatingABodyOnceItGoesPastTheMaximumSize() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream output = new GZIPOutputStream(compressed)) {
+            byte[] zeros = new byte[64 * 1024];
+            for (int i = 0; i < 1024; i++) {
+                output.write(zeros);
+            }
+        }
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/v1/diff/1/left");
+        request.addHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        request.setContent(compressed.toByteArray());
+        long[] inflated = new long[1];
+        boolean[] rejected = new boolean[1];
+
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+                InputStream input = request.getInputStream();
+                byte[] buffer = new byte[8192];
+                try {
+                    for (int read; (read = input.read(buffer)) >= 0; ) {
+                        inflated[0] += read;
+                    }
+                } catch (PayloadTooLargeException e) {
+                    rejected[0] = true;
+                }
+            }
+        });
+
+        assertThat(compressed.size() < 128 * 1024, equalTo(true));
+        assertThat(rejected[0], equalTo(true));
+        assertThat(inflated[0], lessThanOrEqualTo((long) MAX_INFLATED_SIZE));
+    }
+
+    @Test
+    public void shouldRejectUnsupportedContentEncodings() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/v1/diff/1/left");
+        request.addHeader(HttpHeaders.CONTENT_ENCODING, "br");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain());
+
+        assertThat(response.getStatus(), equalTo(415));
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.pmattioli.diffresolver.api.filter;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.pmattioli.diffresolver.service.store.SideBufferAllocator;
+
+public class NonBlockingUploadFilterTest {
+
+    private static final String BODY_ATTRIBUTE = NonBlockingUploadFilter.class.getName() + ".BODY";
+    private static final int MAX_BODY_SIZE = 4 * 1024 * 1024;
+    private static final int PART_SIZE = 64 * 1024;
+
+    private final SideBufferAllocator allocator = new SideBufferAllocator(SideBufferAllocator.Mode.DIRECT, 0, null);
+    private final NonBlockingUploadFilter filter = new NonBlockingUploadFilter(allocator, 60_000, MAX_BODY_SIZE);
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    @Test
+    public void shouldRejectBodiesDeclaredLargerThanTheMaximumSize() throws Exception {
+        UploadRequest request = new UploadRequest(MAX_BODY_SIZE + 1L);
+
+        filter.doFilter(request, response, new MockFilterChain());
+
+        assertThat(response.getStatus(), equalTo(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE));
+        assertThat(request.input.listener, nullValue());
+    }
+
+    @Test
+    public void shouldGrowTheBufferAsTheBodyArrivesInsteadOfSizingItFromTheDeclaredLength() throws Exception {
+        UploadRequest request = new UploadRequest(MAX_BODY_SIZE);
+
+        filter.doFilter(request, response, new MockFilterChain());
+        request.input.send(1);
+
+        assertThat(allocator.getOffHeapBytes(), equalTo(0L));
+
+        request.input.send(3 * 1024 * 1024 / PART_SIZE - 1);
+        request.input.end();
+
+        ByteBuffer body = (ByteBuffer) request.getAttribute(BODY_ATTRIBUTE);
+        assertThat(body.remaining(), equalTo(3 * 1024 * 1024));
+    }
+
+    @Test
+    public void shouldRejectBodiesGoingPastTheMaximumSizeWhileTheyArrive() throws Exception {
+        UploadRequest request = new UploadRequest(-1);
+        request.addHeader(HttpHeaders.TRANSFER_ENCODING, "chunked");
+
+        filter.doFilter(request, response, new MockFilterChain());
+        request.input.send(MAX_BODY_SIZE / PART_SIZE + 2);
+
+        assertThat(response.getStatus(), equalTo(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE));
+        assertThat(request.input.parts.isEmpty(), equalTo(false));
+        assertThat(request.getAttribute(BODY_ATTRIBUTE), nullValue());
+    }
+
+    /**
+     * Upload whose body is handed to the filter's read listener part by part, the way the container would.
+     */
+    private final class UploadRequest extends MockHttpServletRequest {
+
+        private final long contentLength;
+        private final UploadInputStream input = new UploadInputStream();
+
+        private UploadRequest(long contentLength) {
+            super("POST", "/v1/diff/1/left");
+            this.contentLength = contentLength;
+            setAsyncSupported(true);
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return contentLength;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return input;
+        }
+
+        @Override
+        public AsyncContext startAsync() {
+            return startAsync(this, response);
+        }
+
+    }
+
+    private static final class UploadInputStream extends ServletInputStream {
+
+        private final Queue<byte[]> parts = new ArrayDeque<>();
+        private ReadListener listener;
+        private boolean ended;
+
+        private void send(int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                parts.add(new byte[PART_SIZE]);
+            }
+            listener.onDataAvailable();
+        }
+
+        private void end() throws IOException {
+            ended = true;
+            listener.onAllDataRead();
+        }
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            byte[] part = parts.remove();
+            System.arraycopy(part, 0, buffer, offset, part.length);
+            return part.length;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return ended && parts.isEmpty();
+        }
+
+        @Override
+        public boolean isReady() {
+            return !parts.isEmpty();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            this.listener = readListener;
+        }
+
+    }
+
+}
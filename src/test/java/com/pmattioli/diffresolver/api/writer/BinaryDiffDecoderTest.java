@@ -0,0 +1,101 @@
+package com.pmattioli.diffresolver.api.writer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.pmattioli.diffresolver.service.DiffResult;
+
+public class BinaryDiffDecoderTest {
+
+    private static final int LENGTH = 1_000_000;
+
+    @Test
+    public void shouldDecodeWhatWasWrittenInBothFormatsAcrossManyFrames() throws Exception {
+        DiffResult.Builder builder = DiffResult.builder(LENGTH);
+        for (int offset = 0; offset < LENGTH - 200_000; offset += 97) {
+            builder.addRange(offset, 1 + offset % 40);
+        }
+        builder.addRange(LENGTH - 100_000, 100_000);
+        DiffResult result = builder.build();
+
+        for (boolean ranges : new boolean[] { false, true }) {
+            BinaryDiffDecoder.Page page = BinaryDiffDecoder.decode(write(result, ranges, 1234));
+
+            assertThat(page.getResult(), equalTo(result));
+            assertThat(page.getNext(), equalTo(1234));
+        }
+    }
+
+    @Test
+    public void shouldDecodeEqualSides() throws Exception {
+        DiffResult result = DiffResult.builder(LENGTH).build();
+
+        assertThat(BinaryDiffDecoder.decode(write(result, false, null)).getResult(), equalTo(result));
+        assertThat(BinaryDiffDecoder.decode(write(result, true, null)).getResult(), equalTo(result));
+    }
+
+    @Test
+    public void shouldBeSeveralTimesSmallerThanJsonForDenseDiffs() throws Exception {
+        DiffResult.Builder everyOtherByte = DiffResult.builder(LENGTH);
+        DiffResult.Builder runs = DiffResult.builder(LENGTH);
+        for (int offset = 0; offset < LENGTH; offset += 16) {
+            runs.addRange(offset, 8);
+            for (int index = offset; index < offset + 16; index += 2) {
+                everyOtherByte.addRange(index, 1);
+            }
+        }
+
+        assertThat(write(everyOtherByte.build(), false, null).length * 5, lessThan(json(everyOtherByte.build())));
+        assertThat(write(runs.build(), true, null).length * 20, lessThan(json(runs.build())));
+    }
+
+    @Test
+    public void shouldLeaveWhatFollowsTheDiffInTheStream() throws Exception {
+        byte[] written = write(DiffResult.builder(LENGTH).addRange(5, 10).build(), true, null);
+        byte[] followed = Arrays.copyOf(written, written.length + 2);
+        followed[written.length] = 42;
+        ByteArrayInputStream input = new ByteArrayInputStream(followed);
+
+        BinaryDiffDecoder.decode(input);
+
+        assertThat(input.read(), equalTo(42));
+        assertThat(input.available(), equalTo(1));
+    }
+
+    @Test(expected = EOFException.class)
+    public void shouldThrowWhenTheDiffIsTruncated() throws Exception {
+        byte[] written = write(DiffResult.builder(LENGTH).addRange(5, 10).build(), true, null);
+
+        BinaryDiffDecoder.decode(Arrays.copyOf(written, written.length - 1));
+    }
+
+    private static int json(DiffResult result) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JsonGenerator generator = new JsonFactory().createGenerator(output)) {
+            JsonDiffWriter writer = new JsonDiffWriter(generator, result.getLength());
+            result.compare(writer);
+            writer.finish();
+        }
+        return output.size();
+    }
+
+    private static byte[] write(DiffResult result, boolean ranges, Integer next) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BinaryDiffWriter writer = new BinaryDiffWriter(output, result.getLength(), ranges);
+        result.compare(writer);
+        writer.finish(next);
+        return output.toByteArray();
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.pmattioli.diffresolver.api.writer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pmattioli.diffresolver.api.model.DiffApiResponse;
+import com.pmattioli.diffresolver.service.DiffComparison;
+import com.pmattioli.diffresolver.service.engine.ParallelDiffEngine;
+import com.pmattioli.diffresolver.service.engine.WordDiffEngine;
+import com.pmattioli.diffresolver.service.impl.SimpleDiffResolverService;
+
+public class DiffResponseWriterTest {
+
+    private static final int DIFF_ID = 1;
+    private static final int PARALLEL_THRESHOLD = 64 * 1024;
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int LENGTH = 8 * 1024 * 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong comparedBytes = new AtomicLong();
+    private ParallelDiffEngine parallelEngine;
+    private DiffComparison comparison;
+
+    @Before
+    public void setUp() throws Exception {
+        parallelEngine = new ParallelDiffEngine((left, right, from, to, handler) -> {
+            comparedBytes.addAndGet(to - from);
+            return new WordDiffEngine().diff(left, right, from, to, handler);
+        }, 2, PARALLEL_THRESHOLD, CHUNK_SIZE);
+        SimpleDiffResolverService diffResolver = new SimpleDiffResolverService(parallelEngine);
+        byte[] data = new byte[LENGTH];
+        byte[] alteredData = data.clone();
+        for (int index = 0; index < alteredData.length; index += 2) {
+            alteredData[index] = 1;
+        }
+        diffResolver.setLeft(DIFF_ID, new ByteArrayInputStream(data), LENGTH);
+        diffResolver.setRight(DIFF_ID, new ByteArrayInputStream(alteredData), LENGTH);
+        comparison = diffResolver.prepare(DIFF_ID);
+    }
+
+    @After
+    public void tearDown() {
+        parallelEngine.close();
+    }
+
+    @Test
+    public void shouldOnlyCompareAboutOnePageWhenPagingAboveTheParallelThreshold() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        DiffResponseWriter.write(comparison, null, null, 1001, 5, objectMapper.getFactory(), response);
+
+        assertThat(objectMapper.readValue(response.getContentAsByteArray(), DiffApiResponse.class),
+                equalTo(new DiffApiResponse(LENGTH, "[1001, 1003, 1005, 1007, 1009]", 1011)));
+        assertThat(comparedBytes.get(), lessThanOrEqualTo(5L * CHUNK_SIZE));
+    }
+
+    @Test
+    public void shouldReturnTheSamePageInTheBinaryFormatsAboveTheParallelThreshold() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        DiffResponseWriter.write(comparison, 3, null, null, 2, DiffResponseFormat.RANGES, objectMapper.getFactory(),
+                response);
+
+        BinaryDiffDecoder.Page page = BinaryDiffDecoder.decode(response.getContentAsByteArray());
+        assertThat(page.getResult().getOffsets(), equalTo(new int[] { 3, 5 }));
+        assertThat(page.getNext(), equalTo(7));
+        assertThat(comparedBytes.get(), lessThanOrEqualTo(5L * CHUNK_SIZE));
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.pmattioli.diffresolver.integration;
+
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.pmattioli.diffresolver.api.writer.BinaryDiffWriter;
+import com.pmattioli.diffresolver.service.DiffComparison;
+import com.pmattioli.diffresolver.service.codec.ByteStreams;
+import com.pmattioli.diffresolver.service.codec.StrictBase64Decoder;
+import com.pmattioli.diffresolver.service.engine.WordDiffEngine;
+import com.pmattioli.diffresolver.service.impl.SimpleDiffResolverService;
+import com.pmattioli.diffresolver.service.store.ConcurrentDiffStore;
+
+/**
+ * Profiles the heap allocated by the thread handling a mid-sized diff, once warmed up, on the ingest and resolve
+ * paths. What the paths keep, the decoded sides, goes into buffers allocated up front, so whatever is measured is the
+ * garbage left behind: the scratch arrays they used to allocate now come from the buffer pool, and only a few small
+ * objects remain.
+ */
+public class AllocationProfileTest {
+
+    private static final Logger LOG = Logger.getLogger(AllocationProfileTest.class.getName());
+    private static final int DIFF_ID = 1;
+    private static final int SIZE = 256 * 1024;
+    private static final int WARMUP_ITERATIONS = 2000;
+    private static final int ITERATIONS = 200;
+    private static final long MAX_BYTES_PER_REQUEST = 2048;
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private byte[] data;
+
+    @Before
+    public void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+        data = new byte[SIZE];
+        new Random(42).nextBytes(data);
+    }
+
+    @Test
+    public void shouldAllocateAlmostNothingWhenDecodingBase64IntoDirectBuffers() throws Exception {
+        String encoded = Base64.getEncoder().encodeToString(data);
+        ByteBuffer target = ByteBuffer.allocateDirect(SIZE);
+
+        long bytesPerRequest = measure("Base64 decode", () -> StrictBase64Decoder.decode(encoded, capacity -> target));
+
+        assertThat(bytesPerRequest, lessThan(MAX_BYTES_PER_REQUEST));
+    }
+
+    @Test
+    public void shouldAllocateAlmostNothingWhenReadingStreamsOfUnknownLengthIntoDirectBuffers() throws Exception {
+        ByteBuffer target = ByteBuffer.allocateDirect(SIZE);
+
+        long bytesPerRequest = measure("Raw read", () -> {
+            try {
+                ByteStreams.readFully(new ByteArrayInputStream(data), -1, capacity -> target);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertThat(bytesPerRequest, lessThan(MAX_BYTES_PER_REQUEST));
+    }
+
+    @Test
+    public void shouldAllocateAlmostNothingWhenResolvingAndSerializingADiff() throws Exception {
+        SimpleDiffResolverService diffResolver = new SimpleDiffResolverService(new ConcurrentDiffStore(),
+                new WordDiffEngine());
+        byte[] right = data.clone();
+        for (int index = 0; index < SIZE; index += 97) {
+            right[index]++;
+        }
+        diffResolver.setLeft(DIFF_ID, new ByteArrayInputStream(data), SIZE);
+        diffResolver.setRight(DIFF_ID, new ByteArrayInputStream(right), SIZE);
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+
+        long bytesPerRequest = measure("Resolve and serialize", () -> {
+            DiffComparison comparison = diffResolver.prepare(DIFF_ID);
+            BinaryDiffWriter writer = new BinaryDiffWriter(sink, comparison.getLength(), false);
+            comparison.compare(writer);
+            try {
+                writer.finish(null);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertThat(bytesPerRequest, lessThan(MAX_BYTES_PER_REQUEST));
+    }
+
+    private long measure(String path, Runnable request) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            request.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            request.run();
+        }
+        long bytesPerRequest = (threadBean.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+        LOG.info(path + ": " + bytesPerRequest + " bytes allocated per request");
+        return bytesPerRequest;
+    }
+
+}
@@ -1,10 +1,22 @@
 package com.pmattioli.diffresolver.integration;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertThat;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Base64;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -52,8 +64,8 @@ public class BinaryDiffApiIntegrationTest {
     @DirtiesContext
     public void getDiffSucceedsWhenBothSidesArePosted() throws Exception {
 
-        post(DIFF_ID + "/left", "left.json");
-        post(DIFF_ID + "/right", "right.json");
+        post(DIFF_ID + "/left", "left.json", "leftPostResult.json");
+        post(DIFF_ID + "/right", "right.json", "rightPostResult.json");
 
         ResponseEntity<String> response = template.getForEntity(base.toString() + DIFF_ID, String.class);
 
@@ -62,12 +74,41 @@ public class BinaryDiffApiIntegrationTest {
 
     }
 
+    @Test
+    @DirtiesContext
+    public void getDiffSucceedsWhenBothSidesArePostedAsBinaryData() throws Exception {
+
+        postBinary(DIFF_ID + "/left", "left.json", "leftPostResult.json");
+        postBinary(DIFF_ID + "/right", "right.json", "rightPostResult.json");
+
+        ResponseEntity<String> response = template.getForEntity(base.toString() + DIFF_ID, String.class);
+
+        assertThat(response.getStatusCode(), equalTo(HttpStatus.OK));
+        assertResponseEqualsJsonFile(response, "succesfulApiResponse.json");
+
+    }
+
+    @Test
+    @DirtiesContext
+    public void getDiffReturnsFirstPageAndNextOffsetWhenLimitIsSet() throws Exception {
+
+        post(DIFF_ID + "/left", "left.json", "leftPostResult.json");
+        post(DIFF_ID + "/right", "right.json", "rightPostResult.json");
+
+        ResponseEntity<String> response = template.getForEntity(base.toString() + DIFF_ID + "?limit=1",
+                String.class);
+
+        assertThat(response.getStatusCode(), equalTo(HttpStatus.OK));
+        assertResponseEqualsJsonFile(response, "firstPageApiResponse.json");
+
+    }
+
     @Test
     @DirtiesContext
     public void getDiffProducesSidesAreEqualMessageWhenBothSidesArePostedWithTheSameData() throws Exception {
 
-        post(DIFF_ID + "/left", "left.json");
-        post(DIFF_ID + "/right", "left.json");
+        post(DIFF_ID + "/left", "left.json", "leftPostResult.json");
+        post(DIFF_ID + "/right", "left.json", "leftPostResult.json");
 
         ResponseEntity<String> response = template.getForEntity(base.toString() + DIFF_ID, String.class);
 
@@ -80,8 +121,8 @@ public class BinaryDiffApiIntegrationTest {
     @DirtiesContext
     public void getDiffProducesSidesAreNotEqualSizeMessageWhenBothSidesArePostedWithDifferentSizeData() throws Exception {
 
-        post(DIFF_ID + "/left", "left.json");
-        post(DIFF_ID + "/right", "notEqualSizeData.json");
+        post(DIFF_ID + "/left", "left.json", "leftPostResult.json");
+        post(DIFF_ID + "/right", "notEqualSizeData.json", "notEqualSizeDataPostResult.json");
 
         ResponseEntity<String> response = template.getForEntity(base.toString() + DIFF_ID, String.class);
 
@@ -94,7 +135,7 @@ public class BinaryDiffApiIntegrationTest {
     @DirtiesContext
     public void getDiffFailsWhenOnlyLeftSideIsPosted() throws Exception {
 
-        post(DIFF_ID + "/left", "left.json");
+        post(DIFF_ID + "/left", "left.json", "leftPostResult.json");
 
         ResponseEntity<String> response = template.getForEntity(base.toString() + DIFF_ID, String.class);
 
@@ -107,7 +148,7 @@ public class BinaryDiffApiIntegrationTest {
     @DirtiesContext
     public void getDiffFailsWhenOnlyRightSideIsPosted() throws Exception {
 
-        post(DIFF_ID + "/right", "left.json");
+        post(DIFF_ID + "/right", "left.json", "leftPostResult.json");
 
         ResponseEntity<String> response = template.getForEntity(base.toString() + DIFF_ID, String.class);
 
@@ -116,6 +157,25 @@ public class BinaryDiffApiIntegrationTest {
 
     }
 
+    @Test
+    @DirtiesContext
+    public void prometheusEndpointExposesIngestResolveAndStoreMetrics() throws Exception {
+
+        post(DIFF_ID + "/left", "left.json", "leftPostResult.json");
+        post(DIFF_ID + "/right", "right.json", "rightPostResult.json");
+        template.getForEntity(base.toString() + DIFF_ID + "?limit=1", String.class);
+
+        ResponseEntity<String> response = template.getForEntity("http://localhost:" + port + "/prometheus",
+                String.class);
+
+        assertThat(response.getStatusCode(), equalTo(HttpStatus.OK));
+        assertThat(response.getBody(),
+                containsString("diffresolver_ingest_seconds_count{operation=\"set\",side=\"left\",} 1.0"));
+        assertThat(response.getBody(), containsString("diffresolver_resolve_seconds_count 1.0"));
+        assertThat(response.getBody(), containsString("diffresolver_store_diffs 1.0"));
+
+    }
+
     @Test
     public void getDiffFailsWhenNoDatahasBeenPosted() throws Exception {
 
@@ -126,13 +186,87 @@ public class BinaryDiffApiIntegrationTest {
 
     }
 
-    private void post(final String path, final String requestFileName) throws Exception {
+    @Test
+    @DirtiesContext
+    public void getDiffIsCompressedWhenSidesArePostedCompressedAndTheClientAcceptsIt() throws Exception {
+
+        byte[] left = new byte[30_000];
+        byte[] right = left.clone();
+        for (int index = 0; index < right.length; index += 3) {
+            right[index] = 1;
+        }
+        DiffApiRequest leftRequest = new DiffApiRequest();
+        leftRequest.setData(Base64.getEncoder().encodeToString(left));
+        HttpHeaders jsonHeaders = new HttpHeaders();
+        jsonHeaders.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        jsonHeaders.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        HttpHeaders binaryHeaders = new HttpHeaders();
+        binaryHeaders.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        binaryHeaders.set(HttpHeaders.CONTENT_ENCODING, "deflate");
+
+        ResponseEntity<String> leftResponse = template.postForEntity(base.toString() + DIFF_ID + "/left",
+                new HttpEntity<>(gzip(objectMapper.writeValueAsBytes(leftRequest)), jsonHeaders),
+                String.class);
+        ResponseEntity<String> rightResponse = template.postForEntity(base.toString() + DIFF_ID + "/right",
+                new HttpEntity<>(deflate(right), binaryHeaders), String.class);
+        assertThat(leftResponse.getStatusCode(), equalTo(HttpStatus.OK));
+        assertThat(rightResponse.getStatusCode(), equalTo(HttpStatus.OK));
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(base.toString() + DIFF_ID).openConnection();
+        connection.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        assertThat(connection.getResponseCode(), equalTo(200));
+        assertThat(connection.getHeaderField(HttpHeaders.CONTENT_ENCODING), equalTo("gzip"));
+        DiffApiResponse response;
+        try (InputStream body = new GZIPInputStream(connection.getInputStream())) {
+            response = objectMapper.readValue(body, DiffApiResponse.class);
+        }
+        assertThat(response.getLength(), equalTo(30_000));
+        assertThat(response.getOffsets(), startsWith("[1, 4, 7, "));
+
+    }
+
+    @Test
+    @DirtiesContext
+    public void getDiffIsNotCompressedWhenTheResponseIsSmall() throws Exception {
+
+        post(DIFF_ID + "/left", "left.json", "leftPostResult.json");
+        post(DIFF_ID + "/right", "right.json", "rightPostResult.json");
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(base.toString() + DIFF_ID).openConnection();
+        connection.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        assertThat(connection.getResponseCode(), equalTo(200));
+        assertThat(connection.getHeaderField(HttpHeaders.CONTENT_ENCODING), nullValue());
+        assertThat(connection.getHeaderFields().get(HttpHeaders.VARY), hasItem(HttpHeaders.ACCEPT_ENCODING));
+
+    }
+
+    private void post(final String path, final String requestFileName, final String responseFileName)
+            throws Exception {
 
         ResponseEntity<String> response = template.postForEntity(base.toString() + path,
                 getJsonRequestEntityFromResource(requestFileName), String.class);
 
         assertThat(response.getStatusCode(), equalTo(HttpStatus.OK));
-        assertResponseEqualsJsonFile(response, "succesfulPostResult.json");
+        assertResponseEqualsJsonFile(response, responseFileName);
+
+    }
+
+    /**
+     * Posts the Base64-decoded data of the specified request file as a raw binary body.
+     */
+    private void postBinary(final String path, final String requestFileName, final String responseFileName)
+            throws Exception {
+
+        DiffApiRequest request = objectMapper.readValue(new ClassPathResource(requestFileName).getInputStream(),
+                DiffApiRequest.class);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+
+        ResponseEntity<String> response = template.postForEntity(base.toString() + path,
+                new HttpEntity<>(Base64.getDecoder().decode(request.getData()), headers), String.class);
+
+        assertThat(response.getStatusCode(), equalTo(HttpStatus.OK));
+        assertResponseEqualsJsonFile(response, responseFileName);
 
     }
 
@@ -146,6 +280,22 @@ public class BinaryDiffApiIntegrationTest {
 
     }
 
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream output = new GZIPOutputStream(compressed)) {
+            output.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream output = new DeflaterOutputStream(compressed)) {
+            output.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
     private HttpEntity<DiffApiRequest> getJsonRequestEntityFromResource(String fileName) throws IOException {
 
         DiffApiRequest body = objectMapper.readValue(new ClassPathResource(fileName).getInputStream(),
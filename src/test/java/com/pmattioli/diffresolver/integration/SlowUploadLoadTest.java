@@ -0,0 +1,167 @@
+package com.pmattioli.diffresolver.integration;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.pmattioli.diffresolver.Application;
+
+/**
+ * Load test holding many uploads open halfway through their bodies, the way slow clients would, while a diff is
+ * resolved, for both upload modes. The server only has {@value #REQUEST_THREADS} request threads: reading uploads on
+ * them lets the slow ones take every thread, so the diff can't be resolved until they're done, while reading them with
+ * non-blocking I/O leaves the threads free.
+ */
+public class SlowUploadLoadTest {
+
+    private static final Logger LOG = Logger.getLogger(SlowUploadLoadTest.class.getName());
+    private static final int REQUEST_THREADS = 8;
+    private static final int SLOW_UPLOADS = 200;
+    private static final int RESOLVE_TIMEOUT_MILLIS = 3000;
+    private static final int RESOLVED_DIFF_ID = 1;
+    private static final int SIDE_SIZE = 3000;
+
+    @Test
+    public void shouldResolveDiffsWhileSlowUploadsAreInProgressWhenNonBlocking() throws Exception {
+        try (ConfigurableApplicationContext application = start("non-blocking")) {
+            int port = ((EmbeddedWebApplicationContext) application).getEmbeddedServletContainer().getPort();
+            List<SlowUpload> uploads = startSlowUploads(port);
+
+            long resolveMillis = resolve(port);
+            LOG.info("Non-blocking uploads: resolved in " + resolveMillis + " ms while " + SLOW_UPLOADS
+                    + " uploads were in progress");
+
+            assertThat(resolveMillis >= 0, equalTo(true));
+            assertThat(finish(uploads), equalTo(SLOW_UPLOADS));
+        }
+    }
+
+    @Test
+    public void shouldNotResolveDiffsWhileSlowUploadsAreInProgressWhenBlocking() throws Exception {
+        try (ConfigurableApplicationContext application = start("blocking")) {
+            int port = ((EmbeddedWebApplicationContext) application).getEmbeddedServletContainer().getPort();
+            List<SlowUpload> uploads = startSlowUploads(port);
+
+            long resolveMillis = resolve(port);
+            LOG.info("Blocking uploads: " + (resolveMillis < 0 ? "not resolved within " + RESOLVE_TIMEOUT_MILLIS
+                    : "resolved in " + resolveMillis) + " ms while " + SLOW_UPLOADS + " uploads were in progress");
+
+            assertThat(resolveMillis, equalTo(-1L));
+            assertThat(finish(uploads), equalTo(SLOW_UPLOADS));
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String uploadMode) {
+        return new SpringApplicationBuilder(Application.class)
+                .run("--server.port=0", "--server.tomcat.max-threads=" + REQUEST_THREADS,
+                        "--diffresolver.upload.mode=" + uploadMode);
+    }
+
+    /**
+     * Sets both sides of the diff to resolve, and then sends the headers and half of the body of every slow upload.
+     */
+    private static List<SlowUpload> startSlowUploads(int port) throws IOException {
+        byte[] side = new byte[SIDE_SIZE];
+        new Random(7).nextBytes(side);
+        String body = "{\"data\":\"" + Base64.getEncoder().encodeToString(side) + "\"}";
+        for (String path : new String[] { "/left", "/right" }) {
+            SlowUpload upload = new SlowUpload(port, RESOLVED_DIFF_ID + path, body);
+            upload.sendRest();
+            assertThat(upload.readStatus(), equalTo(200));
+        }
+
+        List<SlowUpload> uploads = new ArrayList<>();
+        for (int i = 0; i < SLOW_UPLOADS; i++) {
+            uploads.add(new SlowUpload(port, (RESOLVED_DIFF_ID + 1 + i) + "/left", body));
+        }
+        return uploads;
+    }
+
+    /**
+     * @return how long resolving the diff took, in milliseconds, or -1 if it didn't complete in time
+     */
+    private static long resolve(int port) throws IOException {
+        long start = System.nanoTime();
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/v1/diff/"
+                + RESOLVED_DIFF_ID).openConnection();
+        connection.setReadTimeout(RESOLVE_TIMEOUT_MILLIS);
+        try {
+            assertThat(connection.getResponseCode(), equalTo(200));
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } catch (SocketTimeoutException e) {
+            return -1;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * @return the number of uploads answered with 200 once the rest of their bodies has been sent
+     */
+    private static int finish(List<SlowUpload> uploads) throws IOException {
+        for (SlowUpload upload : uploads) {
+            upload.sendRest();
+        }
+        int succeeded = 0;
+        for (SlowUpload upload : uploads) {
+            if (upload.readStatus() == 200) {
+                succeeded++;
+            }
+        }
+        return succeeded;
+    }
+
+    private static final class SlowUpload {
+
+        private final Socket socket;
+        private final byte[] body;
+
+        private SlowUpload(int port, String path, String body) throws IOException {
+            this.socket = new Socket("localhost", port);
+            this.body = body.getBytes(StandardCharsets.US_ASCII);
+            socket.setSoTimeout(60_000);
+            OutputStream output = socket.getOutputStream();
+            output.write(("POST /v1/diff/" + path + " HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Content-Type: application/json\r\nContent-Length: " + this.body.length
+                    + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            output.write(this.body, 0, this.body.length / 2);
+            output.flush();
+        }
+
+        private void sendRest() throws IOException {
+            OutputStream output = socket.getOutputStream();
+            output.write(body, body.length / 2, body.length - body.length / 2);
+            output.flush();
+        }
+
+        private int readStatus() throws IOException {
+            try (Socket closed = socket) {
+                String statusLine = new BufferedReader(new InputStreamReader(closed.getInputStream(),
+                        StandardCharsets.US_ASCII)).readLine();
+                return Integer.parseInt(statusLine.split(" ")[1]);
+            }
+        }
+
+    }
+
+}
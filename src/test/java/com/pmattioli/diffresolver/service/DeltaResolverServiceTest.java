@@ -0,0 +1,78 @@
+package com.pmattioli.diffresolver.service;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.pmattioli.diffresolver.service.cache.DiffResultCache;
+import com.pmattioli.diffresolver.service.delta.Delta;
+import com.pmattioli.diffresolver.service.delta.DeltaOperation;
+import com.pmattioli.diffresolver.service.engine.WordDiffEngine;
+import com.pmattioli.diffresolver.service.impl.DeltaDiffResolverService;
+import com.pmattioli.diffresolver.service.store.ConcurrentDiffStore;
+
+public class DeltaResolverServiceTest {
+
+    private static final String DATA = "UGxlYXNlIGhpcmUgbWUgYXMgc29vbiBhcyB5b3UgY2FuIQ==";
+    private static final String INSERTED_DATA = "UGxlYXNlIGhpcmUgbWUgcmlnaHQgYXMgc29vbiBhcyB5b3UgY2FuIQ==";
+    private static final int DIFF_ID = 1;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final DeltaResolverService deltaResolverService = new DeltaDiffResolverService(new ConcurrentDiffStore(),
+            new WordDiffEngine(), new DiffResultCache(1024 * 1024));
+
+    @Test
+    public void shouldReturnInsertOperationWhenRightSideHasInsertedBytes() throws Exception {
+        deltaResolverService.setLeft(DIFF_ID, DATA);
+        deltaResolverService.setRight(DIFF_ID, INSERTED_DATA);
+
+        assertThat(deltaResolverService.resolveDelta(DIFF_ID), equalTo(Delta.builder(34, 40)
+                .add(DeltaOperation.COPY, 0, 0, 15)
+                .add(DeltaOperation.INSERT, 15, 15, 6)
+                .add(DeltaOperation.COPY, 15, 21, 19)
+                .build()));
+
+    }
+
+    @Test
+    public void shouldReturnSingleCopyWhenSidesAreEqual() throws Exception {
+        deltaResolverService.setLeft(DIFF_ID, DATA);
+        deltaResolverService.setRight(DIFF_ID, DATA);
+
+        assertThat(deltaResolverService.resolveDelta(DIFF_ID).isEqual(), equalTo(true));
+
+    }
+
+    @Test
+    public void shouldNotReportEqualSidesWhenSidesOfTheSameSizeHaveNothingInCommon() throws Exception {
+        deltaResolverService.setLeft(DIFF_ID, "QUFBQQ==");
+        deltaResolverService.setRight(DIFF_ID, "QkJCQg==");
+
+        Delta delta = deltaResolverService.resolveDelta(DIFF_ID);
+
+        assertThat(delta, equalTo(Delta.builder(4, 4)
+                .add(DeltaOperation.DELETE, 0, 0, 4)
+                .add(DeltaOperation.INSERT, 4, 0, 4)
+                .build()));
+        assertThat(delta.isEqual(), equalTo(false));
+
+    }
+
+    @Test
+    public void shouldThrowIllegalStateExceptionWhenOnlyLeftDataIsSet() throws Exception {
+
+        thrown.expect(IllegalStateException.class);
+        thrown.expectMessage("No right side data for ID " + DIFF_ID);
+
+        deltaResolverService.setLeft(DIFF_ID, DATA);
+
+        deltaResolverService.resolveDelta(DIFF_ID);
+
+    }
+
+}
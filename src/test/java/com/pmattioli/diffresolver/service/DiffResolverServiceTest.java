@@ -1,10 +1,18 @@
 package com.pmattioli.diffresolver.service;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -15,6 +23,18 @@ import org.springframework.context.annotation.Import;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import com.pmattioli.diffresolver.service.cache.DiffResultCache;
+import com.pmattioli.diffresolver.service.engine.ByteByByteDiffEngine;
+import com.pmattioli.diffresolver.service.engine.DiffEngine;
+import com.pmattioli.diffresolver.service.engine.ParallelDiffEngine;
+import com.pmattioli.diffresolver.service.engine.WordDiffEngine;
+import com.pmattioli.diffresolver.service.hash.XxHash64;
+import com.pmattioli.diffresolver.service.impl.SimpleDiffResolverService;
+import com.pmattioli.diffresolver.service.metrics.DiffMetrics;
+import com.pmattioli.diffresolver.service.store.ConcurrentDiffStore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 @RunWith(SpringRunner.class)
 @Import(DiffResolverServiceTestConfig.class)
 public class DiffResolverServiceTest {
@@ -42,6 +62,266 @@ public class DiffResolverServiceTest {
 
     }
 
+    @Test
+    @DirtiesContext
+    public void shouldReturnExpectedMismatchRangesWhenBothLefAndRightDataHaveBeenSet() throws Exception {
+        diffResolverService.setLeft(DIFF_ID, DATA);
+        diffResolverService.setRight(DIFF_ID, ALTERED_DATA);
+
+        DiffResult diffResult = diffResolverService.resolve(DIFF_ID);
+
+        assertThat(diffResult, equalTo(DiffResult.builder(15).addRange(7, 1).addRange(12, 1).build()));
+        assertArrayEquals(new int[] { 8, 13 }, diffResult.getOffsets());
+
+    }
+
+    @Test
+    @DirtiesContext
+    public void shouldReturnTheSameResultForRawDataAsForBase64Data() throws Exception {
+        byte[] rawData = Base64.getDecoder().decode(DATA);
+        byte[] rawAlteredData = Base64.getDecoder().decode(ALTERED_DATA);
+        diffResolverService.setLeft(DIFF_ID, new ByteArrayInputStream(rawData), rawData.length);
+        diffResolverService.setRight(DIFF_ID, new ByteArrayInputStream(rawAlteredData), -1);
+
+        assertThat(diffResolverService.resolve(DIFF_ID),
+                equalTo(DiffResult.builder(15).addRange(7, 1).addRange(12, 1).build()));
+
+    }
+
+    @Test
+    public void shouldThrowIllegalArgumentExceptionWhenRawDataIsShorterThanDeclared() throws Exception {
+
+        thrown.expect(IllegalArgumentException.class);
+
+        diffResolverService.setLeft(DIFF_ID, new ByteArrayInputStream(new byte[10]), 11);
+
+    }
+
+    @Test
+    public void shouldThrowIllegalArgumentExceptionWhenRawDataIsEmpty() throws Exception {
+
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Data can't be empty");
+
+        diffResolverService.setRight(DIFF_ID, new ByteArrayInputStream(new byte[0]), -1);
+
+    }
+
+    @Test
+    public void shouldReportSidesWithTheSameDigestAsEqualWithoutComparingThem() throws Exception {
+        DiffResolverService fastPathService = new SimpleDiffResolverService((left, right, from, to, handler) -> {
+            throw new AssertionError("Sides with the same digest shouldn't be compared");
+        });
+
+        long leftDigest = fastPathService.setLeft(DIFF_ID, DATA);
+        long rightDigest = fastPathService.setRight(DIFF_ID, DATA);
+
+        assertThat(leftDigest, equalTo(rightDigest));
+        assertThat(fastPathService.resolve(DIFF_ID).isEqual(), equalTo(true));
+
+    }
+
+    @Test
+    public void shouldOnlyCompareTheChunksThatDifferWhenSidesAreIndexed() throws Exception {
+        List<String> comparedRanges = new ArrayList<>();
+        SimpleDiffResolverService indexedService = new SimpleDiffResolverService((left, right, from, to, handler) -> {
+            comparedRanges.add(from + "-" + to);
+            return new ByteByByteDiffEngine().diff(left, right, from, to, handler);
+        });
+        indexedService.setIndexChunkSize(1024);
+        byte[] data = new byte[16 * 1024];
+        byte[] alteredData = data.clone();
+        alteredData[5000] = 1;
+        indexedService.setLeft(DIFF_ID, new ByteArrayInputStream(data), data.length);
+        indexedService.setRight(DIFF_ID, new ByteArrayInputStream(alteredData), alteredData.length);
+
+        assertThat(indexedService.resolve(DIFF_ID), equalTo(DiffResult.builder(data.length).addRange(5000, 1).build()));
+        assertThat(comparedRanges, contains("4096-5120"));
+
+    }
+
+    @Test
+    public void shouldStopAtTheFirstMismatchWhenCheckingEquality() throws Exception {
+        List<String> comparedRanges = new ArrayList<>();
+        SimpleDiffResolverService indexedService = new SimpleDiffResolverService((left, right, from, to, handler) -> {
+            comparedRanges.add(from + "-" + to);
+            return new ByteByByteDiffEngine().diff(left, right, from, to, handler);
+        });
+        indexedService.setIndexChunkSize(1024);
+        byte[] data = new byte[16 * 1024];
+        byte[] alteredData = data.clone();
+        alteredData[5000] = 1;
+        alteredData[12000] = 1;
+        indexedService.setLeft(DIFF_ID, new ByteArrayInputStream(data), data.length);
+        indexedService.setRight(DIFF_ID, new ByteArrayInputStream(alteredData), alteredData.length);
+
+        assertThat(indexedService.prepare(DIFF_ID).findFirstMismatch(), equalTo(5000));
+        assertThat(comparedRanges, contains("4096-5120"));
+
+    }
+
+    @Test
+    public void shouldStopEarlyWhenCheckingEqualityOfALargeDenseDiffThroughTheParallelEngine() throws Exception {
+        AtomicLong comparedBytes = new AtomicLong();
+        DiffEngine countingEngine = (left, right, from, to, handler) -> {
+            comparedBytes.addAndGet(to - from);
+            return new WordDiffEngine().diff(left, right, from, to, handler);
+        };
+        try (ParallelDiffEngine parallelEngine = new ParallelDiffEngine(countingEngine, 2, 64 * 1024, 16 * 1024)) {
+            SimpleDiffResolverService indexedService = new SimpleDiffResolverService(parallelEngine);
+            indexedService.setIndexChunkSize(1024);
+            byte[] data = new byte[8 * 1024 * 1024];
+            byte[] alteredData = data.clone();
+            for (int index = 0; index < alteredData.length; index += 2) {
+                alteredData[index] = 1;
+            }
+            indexedService.setLeft(DIFF_ID, new ByteArrayInputStream(data), data.length);
+            indexedService.setRight(DIFF_ID, new ByteArrayInputStream(alteredData), alteredData.length);
+
+            assertThat(indexedService.prepare(DIFF_ID).findFirstMismatch(), equalTo(0));
+            assertThat(comparedBytes.get(), lessThanOrEqualTo(8L * 16 * 1024));
+
+            MismatchSummary summary = new MismatchSummary(data.length, 4);
+            assertTrue(indexedService.prepare(DIFF_ID).compare(summary));
+            assertThat(summary.getMismatchCount(), equalTo(data.length / 2));
+            assertThat(summary.getLastIndex(), equalTo(data.length - 2));
+        }
+
+    }
+
+    @Test
+    @DirtiesContext
+    public void shouldSumUpMismatchesPerBlockInASinglePass() throws Exception {
+        diffResolverService.setLeft(DIFF_ID, DATA);
+        diffResolverService.setRight(DIFF_ID, ALTERED_DATA);
+
+        MismatchSummary summary = new MismatchSummary(15, 3);
+        assertTrue(diffResolverService.prepare(DIFF_ID).compare(summary));
+
+        assertThat(summary.getMismatchCount(), equalTo(2));
+        assertThat(summary.getFirstIndex(), equalTo(7));
+        assertThat(summary.getLastIndex(), equalTo(12));
+        assertThat(summary.getBlockSize(), equalTo(5));
+        assertArrayEquals(new int[] { 0, 1, 1 }, summary.getHistogram());
+
+    }
+
+    @Test
+    public void shouldReturnTheDigestOfEqualDataWhenALargeSideIsPatched() throws Exception {
+        SimpleDiffResolverService indexedService = new SimpleDiffResolverService();
+        indexedService.setIndexChunkSize(1024);
+        byte[] data = new byte[16 * 1024];
+        byte[] alteredData = data.clone();
+        alteredData[5000] = 1;
+        indexedService.setLeft(DIFF_ID, new ByteArrayInputStream(data), data.length);
+
+        long patchedDigest = indexedService.patchLeft(DIFF_ID, 5000, new ByteArrayInputStream(new byte[] { 1 }), 1);
+
+        assertThat(patchedDigest, equalTo(indexedService.setRight(DIFF_ID, new ByteArrayInputStream(alteredData),
+                alteredData.length)));
+        assertThat(indexedService.resolve(DIFF_ID), equalTo(DiffResult.builder(data.length).build()));
+
+    }
+
+    @Test
+    @DirtiesContext
+    public void shouldReturnUpdatedMismatchRangesWhenASideIsPatched() throws Exception {
+        diffResolverService.setLeft(DIFF_ID, DATA);
+        diffResolverService.setRight(DIFF_ID, ALTERED_DATA);
+
+        long digest = diffResolverService.patchRight(DIFF_ID, 7, new ByteArrayInputStream("h".getBytes("UTF-8")), 1);
+
+        assertThat(diffResolverService.resolve(DIFF_ID), equalTo(DiffResult.builder(15).addRange(12, 1).build()));
+        assertThat(digest, equalTo(XxHash64.hash("Please hire Me!".getBytes("UTF-8"))));
+
+    }
+
+    @Test
+    public void shouldOnlyCompareThePatchedRangeWhenTheResultIsCached() throws Exception {
+        List<String> comparedRanges = new ArrayList<>();
+        DiffResolverService cachedService = new SimpleDiffResolverService(new ConcurrentDiffStore(),
+                (left, right, from, to, handler) -> {
+                    comparedRanges.add(from + "-" + to);
+                    return new ByteByByteDiffEngine().diff(left, right, from, to, handler);
+                }, new DiffResultCache(1024 * 1024));
+        cachedService.setLeft(DIFF_ID, DATA);
+        cachedService.setRight(DIFF_ID, ALTERED_DATA);
+        cachedService.resolve(DIFF_ID);
+
+        cachedService.patchLeft(DIFF_ID, 11, "IE0=");
+
+        assertThat(cachedService.resolve(DIFF_ID), equalTo(DiffResult.builder(15).addRange(7, 1).build()));
+        assertThat(comparedRanges, contains("0-15", "11-13"));
+
+    }
+
+    @Test
+    public void shouldRecordIngestAndComparisonMetrics() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SimpleDiffResolverService meteredService = new SimpleDiffResolverService(new ConcurrentDiffStore(),
+                new ByteByByteDiffEngine(), new DiffResultCache(1024 * 1024));
+        meteredService.setMetrics(new DiffMetrics(registry));
+        meteredService.setLeft(DIFF_ID, DATA);
+        meteredService.setRight(DIFF_ID, ALTERED_DATA);
+        meteredService.patchRight(DIFF_ID, 7, "aA==");
+        meteredService.resolve(DIFF_ID);
+        meteredService.resolve(DIFF_ID);
+
+        assertThat(registry.get("diffresolver.ingest").tag("operation", "set").timers().size(), equalTo(2));
+        assertThat(registry.get("diffresolver.ingest").tag("side", "right").tag("operation", "patch").timer().count(),
+                equalTo(1L));
+        assertThat(registry.get("diffresolver.ingest.payload").tag("side", "right").summary().totalAmount(),
+                equalTo(16.0));
+        assertThat(registry.get("diffresolver.resolve").timer().count(), equalTo(1L));
+        assertThat(registry.get("diffresolver.resolve.mismatches").summary().totalAmount(), equalTo(1.0));
+        assertThat(registry.get("diffresolver.resolve.shortcuts").tag("reason", "cached").counter().count(),
+                equalTo(1.0));
+
+    }
+
+    @Test
+    @DirtiesContext
+    public void shouldThrowIllegalArgumentExceptionWhenPatchDoesNotFitWithinTheSide() throws Exception {
+
+        thrown.expect(IllegalArgumentException.class);
+
+        diffResolverService.setLeft(DIFF_ID, DATA);
+
+        diffResolverService.patchLeft(DIFF_ID, 14, "IE0=");
+
+    }
+
+    @Test
+    @DirtiesContext
+    public void shouldThrowIllegalStateExceptionWhenPatchingASideThatIsNotSet() throws Exception {
+
+        thrown.expect(IllegalStateException.class);
+        thrown.expectMessage("No right side data for ID " + DIFF_ID);
+
+        diffResolverService.setLeft(DIFF_ID, DATA);
+
+        diffResolverService.patchRight(DIFF_ID, 0, DATA);
+
+    }
+
+    @Test
+    @DirtiesContext
+    public void shouldSetEveryValidSideAndReportInvalidOnesWhenSettingSidesInABatch() throws Exception {
+        List<BatchItemResult<Long>> results = diffResolverService.setSides(Arrays.asList(
+                new SideUpload(DIFF_ID, Side.LEFT, DATA),
+                new SideUpload(DIFF_ID, Side.RIGHT, INVALID_SIZE_DATA),
+                new SideUpload(DIFF_ID, Side.RIGHT, ALTERED_DATA)));
+
+        assertThat(results.get(0).getValue(), equalTo(XxHash64.hash("Please hire me!".getBytes("UTF-8"))));
+        assertThat(results.get(1).getError().getMessage(), equalTo("Data has to be Base64-encoded"));
+        assertThat(results.get(2).isSuccessful(), equalTo(true));
+        assertThat(diffResolverService.resolveAll(new int[] { DIFF_ID, DIFF_ID + 1 }).get(0).getValue(),
+                equalTo(DiffResult.builder(15).addRange(7, 1).addRange(12, 1).build()));
+        assertThat(diffResolverService.resolveAll(new int[] { DIFF_ID, DIFF_ID + 1 }).get(1).getError(),
+                instanceOf(IllegalStateException.class));
+
+    }
+
     @Test
     @DirtiesContext
     public void shouldThrowIllegalStateExceptionWhenOnlyRightDataIsSet() throws Exception {
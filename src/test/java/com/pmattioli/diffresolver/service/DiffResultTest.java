@@ -0,0 +1,67 @@
+package com.pmattioli.diffresolver.service;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class DiffResultTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void shouldMergeRangesThatTouchEachOther() throws Exception {
+        DiffResult diffResult = DiffResult.builder(10).addRange(2, 1).addRange(3, 2).addRange(7, 1).build();
+
+        assertThat(diffResult.getRangeCount(), equalTo(2));
+        assertThat(diffResult.getRangeOffset(0), equalTo(2));
+        assertThat(diffResult.getRangeLength(0), equalTo(3));
+        assertThat(diffResult.getMismatchCount(), equalTo(4));
+        assertArrayEquals(new int[] { 3, 4, 5, 8 }, diffResult.getOffsets());
+    }
+
+    @Test
+    public void shouldAdaptToDenseOffsetsArray() throws Exception {
+        DiffResult diffResult = DiffResult.builder(6).addRange(0, 2).addRange(5, 1).build();
+
+        assertArrayEquals(new int[] { 1, 2, 0, 0, 0, 6 }, diffResult.toOffsetsArray());
+    }
+
+    @Test
+    public void shouldAdaptEqualResultToAllZeroArray() throws Exception {
+        DiffResult diffResult = DiffResult.builder(4).build();
+
+        assertThat(diffResult.isEqual(), equalTo(true));
+        assertArrayEquals(new int[4], diffResult.toOffsetsArray());
+    }
+
+    @Test
+    public void shouldReplayRangesClippedToTheWindow() throws Exception {
+        DiffResult diffResult = DiffResult.builder(20).addRange(2, 4).addRange(10, 1).addRange(15, 3).build();
+        DiffResult.Builder window = DiffResult.builder(20);
+
+        diffResult.compare(4, 16, window);
+
+        assertThat(window.build(),
+                equalTo(DiffResult.builder(20).addRange(4, 2).addRange(10, 1).addRange(15, 1).build()));
+    }
+
+    @Test
+    public void shouldRejectRangesOutOfOrder() throws Exception {
+        thrown.expect(IllegalArgumentException.class);
+
+        DiffResult.builder(10).addRange(5, 1).addRange(2, 1);
+    }
+
+    @Test
+    public void shouldRejectRangesOutOfBounds() throws Exception {
+        thrown.expect(IllegalArgumentException.class);
+
+        DiffResult.builder(10).addRange(8, 3);
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.pmattioli.diffresolver.service.cache;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.pmattioli.diffresolver.service.DiffResolverService;
+import com.pmattioli.diffresolver.service.DiffResult;
+import com.pmattioli.diffresolver.service.engine.WordDiffEngine;
+import com.pmattioli.diffresolver.service.impl.SimpleDiffResolverService;
+import com.pmattioli.diffresolver.service.store.ConcurrentDiffStore;
+
+public class DiffResultCacheTest {
+
+    private static final String DATA = "UGxlYXNlIGhpcmUgbWUh";
+    private static final String ALTERED_DATA = "UGxlYXNlIEhpcmUgTWUh";
+    private static final String PARTIALLY_ALTERED_DATA = "UGxlYXNlIGhpcmUgTWUh";
+    private static final int DIFF_ID = 1;
+
+    private final DiffResultCache cache = new DiffResultCache(1024 * 1024);
+
+    @Test
+    public void shouldOnlyReturnResultsForTheSameVersion() throws Exception {
+        DiffResult result = DiffResult.builder(10).addRange(1, 1).build();
+        cache.put(DIFF_ID, 2, result);
+
+        assertThat(cache.get(DIFF_ID, 2), sameInstance(result));
+        assertThat(cache.get(DIFF_ID, 3), nullValue());
+        assertThat(cache.getStats().getHitCount(), equalTo(1L));
+        assertThat(cache.getStats().getMissCount(), equalTo(1L));
+    }
+
+    @Test
+    public void shouldNotReplaceResultsWithOlderVersions() throws Exception {
+        DiffResult newerResult = DiffResult.builder(10).build();
+        cache.put(DIFF_ID, 3, newerResult);
+        cache.put(DIFF_ID, 2, DiffResult.builder(10).addRange(1, 1).build());
+
+        assertThat(cache.get(DIFF_ID, 3), sameInstance(newerResult));
+    }
+
+    @Test
+    public void shouldStayWithinTheByteBudget() throws Exception {
+        DiffResultCache smallCache = new DiffResultCache(10 * DiffResultCache.weigh(DiffResult.builder(1).build()));
+        for (int diffId = 0; diffId < 100; diffId++) {
+            smallCache.put(diffId, 1, DiffResult.builder(1).build());
+        }
+
+        assertThat(smallCache.getStats().getEntryCount(), lessThanOrEqualTo(10L));
+        assertThat(smallCache.getStats().getEvictionCount(), equalTo(100L - smallCache.getStats().getEntryCount()));
+    }
+
+    @Test
+    public void shouldServeRepeatedResolvesFromCacheUntilASideIsSetAgain() throws Exception {
+        DiffResolverService diffResolverService =
+                new SimpleDiffResolverService(new ConcurrentDiffStore(), new WordDiffEngine(), cache);
+        diffResolverService.setLeft(DIFF_ID, DATA);
+        diffResolverService.setRight(DIFF_ID, ALTERED_DATA);
+
+        DiffResult firstResult = diffResolverService.resolve(DIFF_ID);
+        assertThat(diffResolverService.resolve(DIFF_ID), sameInstance(firstResult));
+        assertThat(cache.getStats().getHitCount(), equalTo(1L));
+
+        diffResolverService.setRight(DIFF_ID, PARTIALLY_ALTERED_DATA);
+
+        assertThat(cache.getStats().getEntryCount(), equalTo(0L));
+        assertThat(diffResolverService.resolve(DIFF_ID).getMismatchCount(), equalTo(1));
+        assertThat(cache.getStats().getMissCount(), equalTo(2L));
+    }
+
+}
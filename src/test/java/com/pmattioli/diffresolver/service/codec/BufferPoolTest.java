@@ -0,0 +1,59 @@
+package com.pmattioli.diffresolver.service.codec;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+    private final BufferPool bufferPool = new BufferPool(1024, 64 * 1024, 8 * 1024);
+
+    @Test
+    public void shouldHandOutArraysOfTheSmallestClassThatFits() throws Exception {
+        assertThat(bufferPool.acquire(0).length, equalTo(1024));
+        assertThat(bufferPool.acquire(1024).length, equalTo(1024));
+        assertThat(bufferPool.acquire(1025).length, equalTo(2048));
+        assertThat(bufferPool.acquire(64 * 1024).length, equalTo(64 * 1024));
+        assertThat(bufferPool.acquire(64 * 1024 + 1).length, equalTo(64 * 1024 + 1));
+    }
+
+    @Test
+    public void shouldReuseReleasedArraysWhenTheirClassIsAcquiredAgain() throws Exception {
+        byte[] array = bufferPool.acquire(3000);
+        bufferPool.release(array);
+
+        assertThat(bufferPool.acquire(2049), sameInstance(array));
+        assertThat(bufferPool.getHitCount(), equalTo(1L));
+        assertThat(bufferPool.getMissCount(), equalTo(1L));
+    }
+
+    @Test
+    public void shouldNotPoolArraysBeyondTheBytesOfTheirClass() throws Exception {
+        byte[][] arrays = new byte[3][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = bufferPool.acquire(4096);
+        }
+        for (byte[] array : arrays) {
+            bufferPool.release(array);
+        }
+
+        assertThat(bufferPool.acquire(4096), sameInstance(arrays[1]));
+        assertThat(bufferPool.acquire(4096), sameInstance(arrays[0]));
+        assertThat(bufferPool.acquire(4096), not(sameInstance(arrays[2])));
+    }
+
+    @Test
+    public void shouldIgnoreArraysThatAreNotTheSizeOfAClass() throws Exception {
+        byte[] tooLarge = bufferPool.acquire(128 * 1024);
+        bufferPool.release(tooLarge);
+        bufferPool.release(new byte[3000]);
+        bufferPool.release(null);
+
+        assertThat(bufferPool.acquire(128 * 1024), not(sameInstance(tooLarge)));
+        assertThat(bufferPool.acquire(3000).length, equalTo(4096));
+    }
+
+}
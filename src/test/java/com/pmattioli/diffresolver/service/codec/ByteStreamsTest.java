@@ -0,0 +1,70 @@
+package com.pmattioli.diffresolver.service.codec;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ByteStreamsTest {
+
+    private static final int MAX_LENGTH = 1024 * 1024;
+
+    private int largestAllocation;
+
+    @Test
+    public void shouldReadDataOfTheDeclaredLengthIntoABufferOfExactlyThatSize() throws Exception {
+        byte[] data = new byte[MAX_LENGTH - 3];
+        new Random(11).nextBytes(data);
+
+        ByteBuffer buffer = ByteStreams.readFully(new ByteArrayInputStream(data), data.length, MAX_LENGTH,
+                this::allocateDirect);
+
+        assertThat(buffer.capacity(), equalTo(data.length));
+        assertThat(buffer.position(), equalTo(0));
+        assertThat(buffer, equalTo(ByteBuffer.wrap(data)));
+        assertThat(ByteStreams.readFully(new ByteArrayInputStream(data), data.length, MAX_LENGTH), equalTo(data));
+    }
+
+    @Test
+    public void shouldOnlyAllocateTheDeclaredLengthOnceTheDataProvesIt() throws Exception {
+        try {
+            ByteStreams.readFully(new ByteArrayInputStream(new byte[10]), MAX_LENGTH, MAX_LENGTH,
+                    this::allocateDirect);
+            fail("Expected the truncated data to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), equalTo("Data length doesn't match the declared length " + MAX_LENGTH));
+        }
+
+        assertThat(largestAllocation, equalTo(64 * 1024));
+    }
+
+    @Test(expected = PayloadTooLargeException.class)
+    public void shouldRejectADeclaredLengthOverTheMaximum() throws Exception {
+        ByteStreams.readFully(new ByteArrayInputStream(new byte[10]), MAX_LENGTH + 1, MAX_LENGTH,
+                this::allocateDirect);
+    }
+
+    @Test(expected = PayloadTooLargeException.class)
+    public void shouldRejectDataOfUnknownLengthOnceItGoesOverTheMaximum() throws Exception {
+        ByteStreams.readFully(new ByteArrayInputStream(new byte[MAX_LENGTH + 1]), -1, MAX_LENGTH);
+    }
+
+    @Test
+    public void shouldReadDataOfUnknownLengthUpToTheMaximum() throws Exception {
+        byte[] data = new byte[MAX_LENGTH];
+        new Random(13).nextBytes(data);
+
+        assertThat(ByteStreams.readFully(new ByteArrayInputStream(data), -1, MAX_LENGTH), equalTo(data));
+    }
+
+    private ByteBuffer allocateDirect(int capacity) {
+        largestAllocation = Math.max(largestAllocation, capacity);
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+}
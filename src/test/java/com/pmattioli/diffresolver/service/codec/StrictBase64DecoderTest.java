@@ -0,0 +1,63 @@
+package com.pmattioli.diffresolver.service.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Base64;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StrictBase64DecoderTest {
+
+    @Test
+    public void shouldDecodeLikeTheJdkDecoderForEveryPaddingLength() throws Exception {
+        Random random = new Random(42);
+        for (int size = 1; size < 64; size++) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            String encoded = Base64.getEncoder().encodeToString(data);
+
+            assertArrayEquals(data, StrictBase64Decoder.decode(encoded));
+        }
+    }
+
+    @Test
+    public void shouldDecodeIntoDirectBuffersLikeIntoArrays() throws Exception {
+        Random random = new Random(42);
+        for (int size : new int[] { 1, 2, 3, 4, 100, 49_151, 49_152, 200_000 }) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            String encoded = Base64.getEncoder().encodeToString(data);
+
+            ByteBuffer decoded = StrictBase64Decoder.decode(encoded, ByteBuffer::allocateDirect);
+            byte[] decodedData = new byte[decoded.limit()];
+            decoded.get(decodedData);
+            assertArrayEquals("size " + size, data, decodedData);
+        }
+    }
+
+    @Test
+    public void shouldDecodeUtf8Text() throws Exception {
+        assertArrayEquals("Please hire me!".getBytes(Charset.forName("UTF-8")),
+                StrictBase64Decoder.decode("UGxlYXNlIGhpcmUgbWUh"));
+    }
+
+    @Test
+    public void shouldRejectWhatTheFormerValidationPatternRejected() throws Exception {
+        String[] invalidInputs = { "", "U", "UGx", "UGxlYX", "UGxlYXNlIEhpcmUgTWUh==", "UG=l", "U===", "====",
+                "UGxl\nYXNl", "UGxl YXNl", "UGxl-_Nl", "UGxlYXN\u00e9" };
+
+        for (String invalidInput : invalidInputs) {
+            try {
+                StrictBase64Decoder.decode(invalidInput);
+                fail("Expected '" + invalidInput + "' to be rejected");
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
+}
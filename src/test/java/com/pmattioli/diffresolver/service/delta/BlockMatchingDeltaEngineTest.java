@@ -0,0 +1,170 @@
+package com.pmattioli.diffresolver.service.delta;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BlockMatchingDeltaEngineTest {
+
+    private final DeltaEngine deltaEngine = new BlockMatchingDeltaEngine();
+    private final Random random = new Random(13);
+
+    @Test
+    public void shouldReportASingleCopyWhenSidesAreEqual() throws Exception {
+        byte[] data = randomBytes(1000);
+
+        assertThat(delta(deltaEngine, data, data.clone()),
+                equalTo(Delta.builder(1000, 1000).add(DeltaOperation.COPY, 0, 0, 1000).build()));
+
+    }
+
+    @Test
+    public void shouldReportAnInsertWhenAByteIsInserted() throws Exception {
+        byte[] left = randomBytes(1000);
+        byte[] right = splice(left, 500, 0, new byte[] { 42 });
+
+        assertThat(delta(deltaEngine, left, right), equalTo(Delta.builder(1000, 1001)
+                .add(DeltaOperation.COPY, 0, 0, 500)
+                .add(DeltaOperation.INSERT, 500, 500, 1)
+                .add(DeltaOperation.COPY, 500, 501, 500)
+                .build()));
+
+    }
+
+    @Test
+    public void shouldReportADeleteWhenBytesAreDeleted() throws Exception {
+        byte[] left = randomBytes(1000);
+        byte[] right = splice(left, 100, 30, new byte[0]);
+
+        assertThat(delta(deltaEngine, left, right), equalTo(Delta.builder(1000, 970)
+                .add(DeltaOperation.COPY, 0, 0, 100)
+                .add(DeltaOperation.DELETE, 100, 100, 30)
+                .add(DeltaOperation.COPY, 130, 100, 870)
+                .build()));
+
+    }
+
+    @Test
+    public void shouldReportADeleteAndAnInsertWhenAByteIsReplaced() throws Exception {
+        byte[] left = randomBytes(1000);
+        byte[] right = left.clone();
+        right[700]++;
+
+        assertThat(delta(deltaEngine, left, right), equalTo(Delta.builder(1000, 1000)
+                .add(DeltaOperation.COPY, 0, 0, 700)
+                .add(DeltaOperation.DELETE, 700, 700, 1)
+                .add(DeltaOperation.INSERT, 701, 700, 1)
+                .add(DeltaOperation.COPY, 701, 701, 299)
+                .build()));
+
+    }
+
+    @Test
+    public void shouldReportOnlyADeleteAndAnInsertWhenSidesHaveNothingInCommon() throws Exception {
+        byte[] left = new byte[300];
+        byte[] right = new byte[200];
+        Arrays.fill(right, (byte) 1);
+
+        assertThat(delta(deltaEngine, left, right), equalTo(Delta.builder(300, 200)
+                .add(DeltaOperation.DELETE, 0, 0, 300)
+                .add(DeltaOperation.INSERT, 300, 0, 200)
+                .build()));
+
+    }
+
+    @Test
+    public void shouldTurnTheLeftSideIntoTheRightSideWhenSidesHaveRandomEdits() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            byte[] left = randomBytes(random.nextInt(5000));
+            byte[] right = randomlyEdit(left, random.nextInt(20));
+
+            assertArrayEquals("round " + round, right, apply(delta(deltaEngine, left, right), left, right));
+        }
+    }
+
+    @Test
+    public void shouldStillFindLongMatchesWhenTheIndexIsBounded() throws Exception {
+        byte[] left = randomBytes(100000);
+        byte[] right = splice(left, 50000, 0, randomBytes(10));
+
+        Delta delta = delta(new BlockMatchingDeltaEngine(16, 64), left, right);
+
+        assertArrayEquals(right, apply(delta, left, right));
+        assertThat(delta.getOperationCount(), equalTo(3));
+
+    }
+
+    @Test
+    public void shouldReportTheSameOperationsWhenSidesAreHeldInDirectBuffers() throws Exception {
+        byte[] left = randomBytes(5000);
+        byte[] right = randomlyEdit(left, 10);
+        ByteBuffer leftBuffer = ByteBuffer.allocateDirect(left.length).put(left);
+        ByteBuffer rightBuffer = ByteBuffer.allocateDirect(right.length).put(right);
+        leftBuffer.flip();
+        rightBuffer.flip();
+
+        Delta.Builder delta = Delta.builder(left.length, right.length);
+        deltaEngine.delta(leftBuffer.asReadOnlyBuffer(), rightBuffer.asReadOnlyBuffer(), delta);
+
+        assertThat(delta.build(), equalTo(delta(deltaEngine, left, right)));
+        assertThat(leftBuffer.position(), equalTo(0));
+        assertThat(rightBuffer.position(), equalTo(0));
+
+    }
+
+    private static Delta delta(DeltaEngine deltaEngine, byte[] left, byte[] right) {
+        Delta.Builder delta = Delta.builder(left.length, right.length);
+        deltaEngine.delta(left, right, delta);
+        return delta.build();
+    }
+
+    /**
+     * Rebuilds the right side from the left side and the bytes inserted, checking that copied bytes are equal.
+     */
+    private static byte[] apply(Delta delta, byte[] left, byte[] right) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        delta.replay((operation, leftOffset, rightOffset, length) -> {
+            if (operation == DeltaOperation.COPY) {
+                assertArrayEquals(Arrays.copyOfRange(right, rightOffset, rightOffset + length),
+                        Arrays.copyOfRange(left, leftOffset, leftOffset + length));
+                result.write(left, leftOffset, length);
+            } else if (operation == DeltaOperation.INSERT) {
+                result.write(right, rightOffset, length);
+            }
+            return true;
+        });
+        return result.toByteArray();
+    }
+
+    private byte[] randomlyEdit(byte[] data, int editCount) {
+        byte[] edited = data;
+        for (int edit = 0; edit < editCount; edit++) {
+            int offset = random.nextInt(edited.length + 1);
+            int removed = Math.min(edited.length - offset, random.nextInt(50));
+            edited = splice(edited, offset, removed, randomBytes(random.nextInt(50)));
+        }
+        return edited;
+    }
+
+    private static byte[] splice(byte[] data, int offset, int removed, byte[] inserted) {
+        byte[] spliced = new byte[data.length - removed + inserted.length];
+        System.arraycopy(data, 0, spliced, 0, offset);
+        System.arraycopy(inserted, 0, spliced, offset, inserted.length);
+        System.arraycopy(data, offset + removed, spliced, offset + inserted.length, data.length - offset - removed);
+        return spliced;
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+}
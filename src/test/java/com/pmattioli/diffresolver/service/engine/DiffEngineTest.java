@@ -0,0 +1,114 @@
+package com.pmattioli.diffresolver.service.engine;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.pmattioli.diffresolver.service.DiffResult;
+
+public class DiffEngineTest {
+
+    private static final double[] DIFFERENCE_DENSITIES = { 0, 0.001, 0.1, 0.5, 1 };
+
+    private final DiffEngine referenceEngine = new ByteByByteDiffEngine();
+    private final DiffEngine wordEngine = new WordDiffEngine();
+    private final Random random = new Random(7);
+
+    @Test
+    public void shouldProduceTheSameResultAsTheByteByByteEngine() throws Exception {
+        for (int size = 0; size < 100; size++) {
+            for (double density : DIFFERENCE_DENSITIES) {
+                byte[] left = randomBytes(size);
+                byte[] right = alter(left, density);
+
+                assertThat("size " + size + ", density " + density,
+                        diff(wordEngine, left, right, 0, size), equalTo(diff(referenceEngine, left, right, 0, size)));
+            }
+        }
+    }
+
+    @Test
+    public void shouldProduceTheSameResultForUnalignedWindows() throws Exception {
+        byte[] left = randomBytes(257);
+        byte[] right = alter(left, 0.05);
+
+        for (int from = 0; from < 20; from++) {
+            for (int to = left.length - 20; to <= left.length; to++) {
+                assertThat(diff(wordEngine, left, right, from, to),
+                        equalTo(diff(referenceEngine, left, right, from, to)));
+            }
+        }
+    }
+
+    @Test
+    public void shouldStopWhenTheHandlerAsksTo() throws Exception {
+        byte[] left = new byte[64];
+        byte[] right = new byte[64];
+        right[3] = 1;
+        right[20] = 1;
+        right[40] = 1;
+
+        for (DiffEngine engine : new DiffEngine[] { referenceEngine, wordEngine }) {
+            List<Integer> offsets = new ArrayList<>();
+            boolean completed = engine.diff(left, right, 0, left.length, (offset, length) -> {
+                offsets.add(offset);
+                return offsets.size() < 2;
+            });
+
+            assertThat(completed, equalTo(false));
+            assertThat(offsets.size(), equalTo(2));
+            assertThat(offsets.get(1), equalTo(20));
+        }
+    }
+
+    @Test
+    public void shouldProduceTheSameResultForDirectBuffersAsForArrays() throws Exception {
+        DiffEngine defaultEngine = (left, right, from, to, handler) -> referenceEngine.diff(left, right, from, to,
+                handler);
+        for (DiffEngine engine : new DiffEngine[] { referenceEngine, wordEngine, defaultEngine }) {
+            for (int size : new int[] { 0, 7, 100, 200_000 }) {
+                byte[] left = randomBytes(size);
+                byte[] right = alter(left, 0.01);
+
+                DiffResult.Builder result = DiffResult.builder(size);
+                engine.diff(direct(left), direct(right), 0, size, result);
+                assertThat("size " + size, result.build(), equalTo(diff(referenceEngine, left, right, 0, size)));
+            }
+        }
+    }
+
+    private static ByteBuffer direct(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data).flip();
+        return buffer;
+    }
+
+    private DiffResult diff(DiffEngine engine, byte[] left, byte[] right, int from, int to) {
+        DiffResult.Builder result = DiffResult.builder(left.length);
+        engine.diff(left, right, from, to, result);
+        return result.build();
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private byte[] alter(byte[] original, double density) {
+        byte[] altered = original.clone();
+        for (int i = 0; i < altered.length; i++) {
+            if (random.nextDouble() < density) {
+                altered[i] ^= 1 + random.nextInt(255);
+            }
+        }
+        return altered;
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.pmattioli.diffresolver.service.engine;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.pmattioli.diffresolver.service.DiffResult;
+import com.pmattioli.diffresolver.service.MismatchHandler;
+
+public class ParallelDiffEngineTest {
+
+    private static final int PARALLEL_THRESHOLD = 1024;
+    private static final int CHUNK_SIZE = 100;
+
+    private final CountingDiffEngine delegate = new CountingDiffEngine();
+    private final ParallelDiffEngine parallelEngine =
+            new ParallelDiffEngine(delegate, 4, PARALLEL_THRESHOLD, CHUNK_SIZE);
+    private final Random random = new Random(11);
+
+    @After
+    public void tearDown() {
+        parallelEngine.close();
+    }
+
+    @Test
+    public void shouldProduceTheSameResultAsTheSequentialEngine() throws Exception {
+        for (double density : new double[] { 0, 0.01, 0.5, 1 }) {
+            byte[] left = new byte[10_007];
+            random.nextBytes(left);
+            byte[] right = left.clone();
+            for (int i = 0; i < right.length; i++) {
+                if (random.nextDouble() < density) {
+                    right[i]++;
+                }
+            }
+
+            assertThat("density " + density, diff(parallelEngine, left, right),
+                    equalTo(diff(new ByteByByteDiffEngine(), left, right)));
+        }
+    }
+
+    @Test
+    public void shouldCompareSmallInputsSequentially() throws Exception {
+        byte[] left = new byte[PARALLEL_THRESHOLD];
+        byte[] right = new byte[PARALLEL_THRESHOLD];
+
+        diff(parallelEngine, left, right);
+
+        assertThat(delegate.invocations.get(), equalTo(1));
+    }
+
+    @Test
+    public void shouldSplitLargeInputsIntoChunks() throws Exception {
+        byte[] left = new byte[PARALLEL_THRESHOLD + 1];
+        byte[] right = new byte[PARALLEL_THRESHOLD + 1];
+
+        diff(parallelEngine, left, right);
+
+        assertThat(delegate.invocations.get(), equalTo(11));
+    }
+
+    @Test
+    public void shouldStopComparingChunksWhenTheHandlerStops() throws Exception {
+        byte[] left = new byte[100 * CHUNK_SIZE];
+        byte[] right = new byte[left.length];
+        Arrays.fill(right, (byte) 1);
+        int[] reported = { 0 };
+
+        boolean completed = parallelEngine.diff(left, right, 0, left.length, (offset, length) -> {
+            reported[0]++;
+            return false;
+        });
+
+        assertThat(completed, equalTo(false));
+        assertThat(reported[0], equalTo(1));
+        assertThat(delegate.invocations.get(), lessThanOrEqualTo(2 * 4 + 2));
+    }
+
+    @Test
+    public void shouldReportChunksInAscendingOrderWhileTheyAreCompared() throws Exception {
+        byte[] left = new byte[100 * CHUNK_SIZE + 7];
+        byte[] right = left.clone();
+        for (int i = 0; i < right.length; i += 3) {
+            right[i] = 1;
+        }
+        int[] lastOffset = { -1 };
+
+        parallelEngine.diff(left, right, 0, left.length, (offset, length) -> {
+            assertThat(offset > lastOffset[0], equalTo(true));
+            lastOffset[0] = offset + length - 1;
+            return true;
+        });
+
+        assertThat(lastOffset[0], equalTo(right.length - 1 - (right.length - 1) % 3));
+    }
+
+    private DiffResult diff(DiffEngine engine, byte[] left, byte[] right) {
+        DiffResult.Builder result = DiffResult.builder(left.length);
+        engine.diff(left, right, 0, left.length, result);
+        return result.build();
+    }
+
+    private static final class CountingDiffEngine implements DiffEngine {
+
+        private final DiffEngine delegate = new WordDiffEngine();
+        private final AtomicInteger invocations = new AtomicInteger();
+
+        @Override
+        public boolean diff(byte[] leftSide, byte[] rightSide, int from, int to, MismatchHandler handler) {
+            invocations.incrementAndGet();
+            return delegate.diff(leftSide, rightSide, from, to, handler);
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.pmattioli.diffresolver.service.hash;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ChunkHashTreeTest {
+
+    private static final int CHUNK_SIZE = 16;
+
+    @Test
+    public void shouldVisitNoRangeWhenDataIsEqual() throws Exception {
+        byte[] data = randomData(1000);
+
+        assertThat(differingRanges(data, data.clone(), 0, data.length), empty());
+
+    }
+
+    @Test
+    public void shouldVisitOnlyTheChunksThatDifferWhenDataIsAltered() throws Exception {
+        byte[] left = randomData(1000);
+        byte[] right = left.clone();
+        right[40]++;
+        right[50]++;
+        right[999]++;
+
+        assertThat(differingRanges(left, right, 0, left.length), contains("32-64", "992-1000"));
+
+    }
+
+    @Test
+    public void shouldClipRangesToTheWindowWhenComparingAWindow() throws Exception {
+        byte[] left = randomData(1000);
+        byte[] right = left.clone();
+        right[40]++;
+        right[500]++;
+
+        assertThat(differingRanges(left, right, 35, 490), contains("35-48"));
+
+    }
+
+    @Test
+    public void shouldVisitNoRangeWhenTreeIsUpdatedWithTheSameChanges() throws Exception {
+        byte[] left = randomData(1000);
+        byte[] right = left.clone();
+        ChunkHashTree leftTree = ChunkHashTree.build(left, CHUNK_SIZE);
+        ChunkHashTree rightTree = ChunkHashTree.build(right, CHUNK_SIZE);
+
+        right[700] = 1;
+        right[701] = 2;
+        rightTree.update(right, 700, 702);
+        assertThat(differingRanges(leftTree, rightTree, 0, left.length), contains("688-704"));
+
+        left[700] = 1;
+        left[701] = 2;
+        leftTree.update(left, 700, 702);
+        assertThat(differingRanges(leftTree, rightTree, 0, left.length), empty());
+
+    }
+
+    @Test
+    public void shouldLeaveTheOriginalTreeUntouchedWhenACopyIsUpdated() throws Exception {
+        byte[] data = randomData(1000);
+        ChunkHashTree tree = ChunkHashTree.build(data, CHUNK_SIZE);
+        ChunkHashTree copy = tree.copy();
+
+        byte[] patchedData = data.clone();
+        patchedData[100]++;
+        copy.update(patchedData, 100, 101);
+
+        assertThat(differingRanges(tree, copy, 0, data.length), contains("96-112"));
+        assertThat(differingRanges(tree, ChunkHashTree.build(data, CHUNK_SIZE), 0, data.length), empty());
+
+    }
+
+    private static List<String> differingRanges(byte[] left, byte[] right, int from, int to) {
+        return differingRanges(ChunkHashTree.build(left, CHUNK_SIZE), ChunkHashTree.build(right, CHUNK_SIZE), from, to);
+    }
+
+    private static List<String> differingRanges(ChunkHashTree left, ChunkHashTree right, int from, int to) {
+        List<String> ranges = new ArrayList<>();
+        left.visitDifferingRanges(right, from, to, (start, end) -> ranges.add(start + "-" + end));
+        return ranges;
+    }
+
+    private static byte[] randomData(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+}
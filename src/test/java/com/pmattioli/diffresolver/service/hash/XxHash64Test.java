@@ -0,0 +1,42 @@
+package com.pmattioli.diffresolver.service.hash;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+public class XxHash64Test {
+
+    @Test
+    public void shouldMatchReferenceDigests() throws Exception {
+        assertThat(XxHash64.toHex(XxHash64.hash(new byte[0])), equalTo("ef46db3751d8e999"));
+        assertThat(XxHash64.toHex(XxHash64.hash(bytes("abc"))), equalTo("44bc2cf5ad770999"));
+        assertThat(XxHash64.toHex(XxHash64.hash(bytes("Please hire me!"))), equalTo("2f279d1d74d9bb82"));
+    }
+
+    @Test
+    public void shouldHashOnlyTheRequestedRange() throws Exception {
+        byte[] data = bytes("__Please hire me!__");
+
+        assertThat(XxHash64.hash(data, 2, 15), equalTo(XxHash64.hash(bytes("Please hire me!"))));
+    }
+
+    @Test
+    public void shouldHashTwoLongsLikeTheirLittleEndianBytes() throws Exception {
+        byte[] data = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 };
+
+        assertThat(XxHash64.hash(0x0807060504030201L, 0x100F0E0D0C0B0A09L), equalTo(XxHash64.hash(data)));
+    }
+
+    @Test
+    public void shouldPadHexDigestsWithZeros() throws Exception {
+        assertThat(XxHash64.toHex(0xABCL), equalTo("0000000000000abc"));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(Charset.forName("UTF-8"));
+    }
+
+}
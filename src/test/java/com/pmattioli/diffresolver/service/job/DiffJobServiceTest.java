@@ -0,0 +1,149 @@
+package com.pmattioli.diffresolver.service.job;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.pmattioli.diffresolver.service.DiffResolverService;
+import com.pmattioli.diffresolver.service.DiffResult;
+import com.pmattioli.diffresolver.service.engine.ByteByByteDiffEngine;
+import com.pmattioli.diffresolver.service.impl.SimpleDiffResolverService;
+
+public class DiffJobServiceTest {
+
+    private static final String DATA = "UGxlYXNlIGhpcmUgbWUh";
+    private static final String ALTERED_DATA = "UGxlYXNlIEhpcmUgTWUh";
+    private static final int DIFF_ID = 1;
+    private static final long RESULT_TTL_MILLIS = 60000;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final CountDownLatch engineReleased = new CountDownLatch(1);
+    private final MutableClock clock = new MutableClock();
+    private DiffJobService diffJobService;
+
+    @After
+    public void tearDown() {
+        engineReleased.countDown();
+        if (diffJobService != null) {
+            diffJobService.close();
+        }
+    }
+
+    @Test
+    public void shouldCompleteJobWithTheDiffResult() throws Exception {
+        diffJobService = newDiffJobService(new SimpleDiffResolverService(), 1);
+
+        DiffJob job = diffJobService.submit(DIFF_ID);
+
+        assertThat(awaitFinished(job).getStatus(), equalTo(DiffJob.Status.DONE));
+        assertThat(job.getResult(), equalTo(DiffResult.builder(15).addRange(7, 1).addRange(12, 1).build()));
+        assertThat(diffJobService.get(job.getId()), equalTo(job));
+
+    }
+
+    @Test
+    public void shouldRejectJobsWhenTheQueueIsFull() throws Exception {
+        diffJobService = newDiffJobService(new SimpleDiffResolverService((left, right, from, to, handler) -> {
+            awaitUninterruptibly(engineReleased);
+            return true;
+        }), 1);
+        diffJobService.submit(DIFF_ID);
+        diffJobService.submit(DIFF_ID);
+
+        thrown.expect(RejectedExecutionException.class);
+
+        diffJobService.submit(DIFF_ID);
+
+    }
+
+    @Test
+    public void shouldForgetFinishedJobsOnceTheyExpire() throws Exception {
+        diffJobService = newDiffJobService(new SimpleDiffResolverService(), 1);
+        DiffJob job = awaitFinished(diffJobService.submit(DIFF_ID));
+
+        clock.advance(RESULT_TTL_MILLIS - 1);
+        assertThat(diffJobService.get(job.getId()), equalTo(job));
+
+        clock.advance(1);
+        assertThat(diffJobService.get(job.getId()), nullValue());
+
+    }
+
+    @Test
+    public void shouldThrowIllegalStateExceptionWhenSubmittingAnIncompleteDiff() throws Exception {
+        diffJobService = new DiffJobService(new SimpleDiffResolverService(), 1, 1, 1, 1024, RESULT_TTL_MILLIS, clock);
+
+        thrown.expect(IllegalStateException.class);
+
+        diffJobService.submit(DIFF_ID);
+
+    }
+
+    private DiffJobService newDiffJobService(DiffResolverService diffResolver, int queueCapacity) {
+        diffResolver.setLeft(DIFF_ID, DATA);
+        diffResolver.setRight(DIFF_ID, ALTERED_DATA);
+        return new DiffJobService(diffResolver, 1, 1, queueCapacity, 1024, RESULT_TTL_MILLIS, clock);
+    }
+
+    private static DiffJob awaitFinished(DiffJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!job.isFinished() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        return job;
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private volatile long millis = 1000000;
+
+        void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+    }
+
+}
@@ -0,0 +1,196 @@
+package com.pmattioli.diffresolver.service.store;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.pmattioli.diffresolver.service.DiffResult;
+import com.pmattioli.diffresolver.service.Side;
+import com.pmattioli.diffresolver.service.cache.DiffResultCache;
+
+public class BoundedDiffStoreTest {
+
+    private static final long TTL_MILLIS = 60_000;
+    private static final long CLEAN_UP_INTERVAL_MILLIS = 1_000;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedDiffsWhenMaximumSizeIsExceeded() throws Exception {
+        BoundedDiffStore diffStore = new BoundedDiffStore(100, 200, TTL_MILLIS, CLEAN_UP_INTERVAL_MILLIS, clock);
+        for (int diffId = 1; diffId <= 3; diffId++) {
+            diffStore.put(diffId, Side.LEFT, side(30));
+            clock.advance(1);
+        }
+        diffStore.get(1);
+        clock.advance(1);
+
+        diffStore.put(4, Side.LEFT, side(30));
+
+        assertThat(diffStore.contains(1), equalTo(true));
+        assertThat(diffStore.contains(2), equalTo(false));
+        assertThat(diffStore.contains(3), equalTo(true));
+        assertThat(diffStore.contains(4), equalTo(true));
+        assertThat(diffStore.sizeInBytes(), equalTo(90L));
+        assertThat(diffStore.getEvictionCount(), equalTo(1L));
+    }
+
+    @Test
+    public void shouldOnlyEvictDownToTheTargetWhenMaximumSizeIsSmall() throws Exception {
+        BoundedDiffStore diffStore = new BoundedDiffStore(50, 200, TTL_MILLIS, CLEAN_UP_INTERVAL_MILLIS, clock);
+        for (int diffId = 1; diffId <= 4; diffId++) {
+            diffStore.put(diffId, Side.LEFT, side(10));
+            clock.advance(1);
+        }
+
+        diffStore.put(5, Side.LEFT, side(20));
+
+        assertThat(diffStore.contains(1), equalTo(false));
+        assertThat(diffStore.contains(2), equalTo(false));
+        assertThat(diffStore.contains(3), equalTo(true));
+        assertThat(diffStore.contains(4), equalTo(true));
+        assertThat(diffStore.sizeInBytes(), equalTo(40L));
+    }
+
+    @Test
+    public void shouldEvictDiffsToMakeRoomWithinTheHardCap() throws Exception {
+        BoundedDiffStore diffStore = new BoundedDiffStore(100, 100, TTL_MILLIS, CLEAN_UP_INTERVAL_MILLIS, clock);
+        diffStore.put(1, Side.LEFT, side(60));
+        clock.advance(1);
+
+        diffStore.put(2, side(30), side(30));
+
+        assertThat(diffStore.get(1), nullValue());
+        assertThat(diffStore.get(2).getTotalLength(), equalTo(60L));
+        assertThat(diffStore.sizeInBytes(), equalTo(60L));
+    }
+
+    @Test
+    public void shouldRejectSidesThatCanNeverFitWithinTheHardCap() throws Exception {
+        BoundedDiffStore diffStore = new BoundedDiffStore(100, 100, TTL_MILLIS, CLEAN_UP_INTERVAL_MILLIS, clock);
+        diffStore.put(1, Side.LEFT, side(60));
+
+        try {
+            diffStore.put(1, Side.RIGHT, side(50));
+            throw new AssertionError("Sides over the hard cap shouldn't be stored");
+        } catch (DiffStoreFullException e) {
+            assertThat(e.getMessage(),
+                    equalTo("Not enough storage left for ID 1: the sides stored can't take more than 100 bytes"));
+        }
+        assertThat(diffStore.get(1).getRight(), nullValue());
+        assertThat(diffStore.sizeInBytes(), equalTo(60L));
+    }
+
+    @Test
+    public void shouldExpireDiffsThatAreNotAccessedWithinTheirTimeToLive() throws Exception {
+        BoundedDiffStore diffStore = new BoundedDiffStore(100, 100, TTL_MILLIS, CLEAN_UP_INTERVAL_MILLIS, clock);
+        diffStore.put(1, Side.LEFT, side(10));
+        diffStore.put(2, Side.LEFT, side(10));
+        clock.advance(TTL_MILLIS - 1);
+        diffStore.get(1);
+        clock.advance(1);
+
+        diffStore.cleanUp();
+
+        assertThat(diffStore.contains(1), equalTo(true));
+        assertThat(diffStore.contains(2), equalTo(false));
+        assertThat(diffStore.size(), equalTo(1));
+        assertThat(diffStore.sizeInBytes(), equalTo(10L));
+        assertThat(diffStore.getExpirationCount(), equalTo(1L));
+    }
+
+    @Test
+    public void shouldThrowIllegalStateExceptionWhenUpdatingAnExpiredSide() throws Exception {
+        BoundedDiffStore diffStore = new BoundedDiffStore(100, 100, TTL_MILLIS, CLEAN_UP_INTERVAL_MILLIS, clock);
+        diffStore.put(1, Side.LEFT, side(10));
+        clock.advance(TTL_MILLIS);
+
+        thrown.expect(IllegalStateException.class);
+        thrown.expectMessage("No left side data for ID 1");
+
+        diffStore.update(1, Side.LEFT, current -> current.patch(0, new byte[1]));
+    }
+
+    @Test
+    public void shouldNotServeAResultOfEvictedSidesForTheSidesUploadedAfterThem() throws Exception {
+        BoundedDiffStore diffStore = new BoundedDiffStore(100, 100, TTL_MILLIS, CLEAN_UP_INTERVAL_MILLIS, clock);
+        DiffResultCache resultCache = new DiffResultCache(1024 * 1024);
+        diffStore.put(1, Side.LEFT, side(30));
+        diffStore.put(1, Side.RIGHT, side(30));
+        long evictedVersion = diffStore.get(1).getVersion();
+        clock.advance(1);
+        diffStore.put(2, side(30), side(30));
+        assertThat(diffStore.contains(1), equalTo(false));
+
+        diffStore.put(1, Side.LEFT, side(10));
+        resultCache.invalidate(1);
+        diffStore.put(1, Side.RIGHT, side(10));
+        resultCache.invalidate(1);
+        resultCache.put(1, evictedVersion, DiffResult.builder(30).addRange(0, 30).build());
+
+        long version = diffStore.get(1).getVersion();
+        assertThat(version, greaterThan(evictedVersion));
+        assertThat(resultCache.get(1, version), nullValue());
+    }
+
+    @Test
+    public void shouldKeepIncreasingTheVersionOfAnExpiredDiffWhenItIsSetAgain() throws Exception {
+        BoundedDiffStore diffStore = new BoundedDiffStore(100, 100, TTL_MILLIS, CLEAN_UP_INTERVAL_MILLIS, clock);
+        diffStore.put(1, Side.LEFT, side(10));
+        diffStore.put(1, Side.RIGHT, side(10));
+        clock.advance(TTL_MILLIS);
+
+        diffStore.put(1, Side.LEFT, side(10));
+
+        assertThat(diffStore.get(1).getVersion(), equalTo(3L));
+        assertThat(diffStore.get(1).getRight(), nullValue());
+    }
+
+    private static DiffSide side(int length) {
+        return DiffSide.of(new byte[length]);
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private volatile long millis = 1000000;
+
+        void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.pmattioli.diffresolver.service.store;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.pmattioli.diffresolver.service.Side;
+
+public class ConcurrentDiffStoreTest {
+
+    private static final int THREADS = 16;
+    private static final int DIFF_IDS = 2_000;
+    private static final int ROUNDS = 20;
+
+    private final DiffStore diffStore = new ConcurrentDiffStore();
+
+    @Test
+    public void shouldKeepTheOtherSideWhenSettingOneSide() throws Exception {
+        diffStore.put(1, Side.LEFT, side("left"));
+        diffStore.put(1, Side.RIGHT, side("right"));
+        diffStore.put(1, Side.LEFT, side("newLeft"));
+
+        assertThat(diffStore.get(1).getLeft().getData(), equalTo(bytes("newLeft")));
+        assertThat(diffStore.get(1).getRight().getData(), equalTo(bytes("right")));
+    }
+
+    @Test
+    public void shouldSetBothSidesInASingleVersionWhenPuttingBothSides() throws Exception {
+        diffStore.put(1, Side.LEFT, side("left"));
+        diffStore.put(1, side("newLeft"), side("right"));
+
+        assertThat(diffStore.get(1).getLeft().getData(), equalTo(bytes("newLeft")));
+        assertThat(diffStore.get(1).getRight().getData(), equalTo(bytes("right")));
+        assertThat(diffStore.get(1).getVersion(), equalTo(2L));
+    }
+
+    @Test
+    public void shouldTrackTheNumberOfDiffsAndTheCombinedLengthOfTheirSides() throws Exception {
+        diffStore.put(1, Side.LEFT, side("left"));
+        diffStore.put(1, Side.RIGHT, side("right"));
+        diffStore.put(2, side("left"), null);
+        diffStore.put(1, Side.LEFT, side("newLeft"));
+        diffStore.update(2, Side.LEFT, current -> current.patch(0, bytes("L")));
+
+        assertThat(diffStore.size(), equalTo(2));
+        assertThat(diffStore.sizeInBytes(), equalTo(16L));
+    }
+
+    @Test
+    public void shouldOnlyReplaceASideThatDidNotChangeSinceTheReplacementWasDerivedFromIt() throws Exception {
+        diffStore.put(1, Side.LEFT, side("left"));
+        DiffSide left = diffStore.get(1).getLeft();
+        DiffSide patched = left.patch(0, bytes("L"));
+        diffStore.put(1, Side.LEFT, side("newLeft"));
+
+        assertThat(diffStore.replace(1, Side.LEFT, left, patched), nullValue());
+        assertThat(diffStore.get(1).getLeft().getData(), equalTo(bytes("newLeft")));
+        assertThat(diffStore.get(1).getVersion(), equalTo(2L));
+
+        DiffSide newLeft = diffStore.get(1).getLeft();
+        DiffSides replaced = diffStore.replace(1, Side.LEFT, newLeft, newLeft.patch(0, bytes("N")));
+        assertThat(replaced.getLeft().getData(), equalTo(bytes("NewLeft")));
+        assertThat(replaced.getVersion(), equalTo(3L));
+    }
+
+    @Test
+    public void shouldReturnNullForUnknownDiffId() throws Exception {
+        assertThat(diffStore.get(1), nullValue());
+        assertThat(diffStore.contains(1), equalTo(false));
+    }
+
+    /**
+     * Half of the threads only set left sides and the other half only set right sides, all of them hitting the same
+     * diff IDs at the same time. Any lost update would leave a diff ID with a missing or stale side.
+     */
+    @Test
+    public void shouldNotLoseUpdatesWhenBothSidesAreSetConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            Side side = t % 2 == 0 ? Side.LEFT : Side.RIGHT;
+            int offset = t / 2;
+            futures.add(executor.submit(() -> {
+                startSignal.await();
+                for (int round = 0; round < ROUNDS; round++) {
+                    for (int i = 0; i < DIFF_IDS; i++) {
+                        int diffId = (i + offset * 97) % DIFF_IDS;
+                        diffStore.put(diffId, side, side(side.name() + diffId));
+                    }
+                }
+                return null;
+            }));
+        }
+
+        startSignal.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        for (int diffId = 0; diffId < DIFF_IDS; diffId++) {
+            DiffSides diffSides = diffStore.get(diffId);
+            assertThat(diffSides.getLeft().getData(), equalTo(bytes("LEFT" + diffId)));
+            assertThat(diffSides.getRight().getData(), equalTo(bytes("RIGHT" + diffId)));
+        }
+    }
+
+    private static DiffSide side(String value) {
+        return DiffSide.of(bytes(value));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(Charset.forName("UTF-8"));
+    }
+
+}
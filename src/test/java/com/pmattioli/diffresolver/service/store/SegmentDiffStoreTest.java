@@ -0,0 +1,213 @@
+package com.pmattioli.diffresolver.service.store;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import com.pmattioli.diffresolver.service.Side;
+
+public class SegmentDiffStoreTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+    private static final int CHUNK_SIZE = 64;
+    private static final long COMPACTION_INTERVAL_MILLIS = 3_600_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private SegmentDiffStore diffStore;
+
+    @After
+    public void closeStore() throws Exception {
+        if (diffStore != null) {
+            diffStore.close();
+        }
+    }
+
+    @Test
+    public void shouldRecoverSidesAndVersionsWhenReopened() throws Exception {
+        diffStore = open();
+        for (int diffId = 0; diffId < 50; diffId++) {
+            diffStore.put(diffId, Side.LEFT, side("left" + diffId));
+            diffStore.put(diffId, Side.RIGHT, side("right" + diffId));
+        }
+        diffStore.put(7, Side.LEFT, side("newLeft"));
+        diffStore.update(8, Side.RIGHT, current -> current.patch(0, bytes("R")));
+        long version = diffStore.get(7).getVersion();
+
+        diffStore.close();
+        diffStore = open();
+
+        assertThat(diffStore.getSegmentCount() > 1, equalTo(true));
+        assertThat(diffStore.size(), equalTo(50));
+        assertThat(diffStore.get(7).getLeft().getData(), equalTo(bytes("newLeft")));
+        assertThat(diffStore.get(7).getVersion(), equalTo(version));
+        assertThat(diffStore.get(8).getRight().getData(), equalTo(bytes("Right8")));
+        assertThat(diffStore.get(49).getLeft().getData(), equalTo(bytes("left49")));
+        assertThat(diffStore.get(49).getLeft().getDigest(), equalTo(side("left49").getDigest()));
+        assertThat(diffStore.sizeInBytes(), equalTo(632L));
+    }
+
+    @Test
+    public void shouldKeepAppendingToTheLastSegmentWhenReopened() throws Exception {
+        diffStore = open();
+        diffStore.put(1, Side.LEFT, side("left"));
+        diffStore.close();
+        diffStore = open();
+        diffStore.put(1, Side.RIGHT, side("right"));
+        diffStore.close();
+        diffStore = open();
+
+        assertThat(diffStore.getSegmentCount(), equalTo(1));
+        assertThat(diffStore.get(1).getLeft().getData(), equalTo(bytes("left")));
+        assertThat(diffStore.get(1).getRight().getData(), equalTo(bytes("right")));
+    }
+
+    @Test
+    public void shouldIgnoreAnIncompleteRecordWhenReopened() throws Exception {
+        diffStore = open();
+        diffStore.put(1, Side.LEFT, side("left"));
+        diffStore.put(1, Side.RIGHT, side("right"));
+        diffStore.close();
+        diffStore = null;
+
+        File segment = folder.getRoot().listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(Segment.RECORD_HEADER_BYTES + 4 + 8);
+            file.write(new byte[] { 1, 2, 3, 4 });
+        }
+        diffStore = open();
+
+        assertThat(diffStore.get(1).getLeft().getData(), equalTo(bytes("left")));
+        assertThat(diffStore.get(1).getRight(), nullValue());
+        diffStore.put(1, Side.RIGHT, side("newRight"));
+        assertThat(diffStore.get(1).getRight().getData(), equalTo(bytes("newRight")));
+    }
+
+    @Test
+    public void shouldDeleteATruncatedLastSegmentWhenReopened() throws Exception {
+        diffStore = open();
+        diffStore.put(1, Side.LEFT, side("left"));
+        diffStore.close();
+        diffStore = null;
+
+        File truncatedSegment = new File(folder.getRoot(), "0000000000000002.seg");
+        assertThat(truncatedSegment.createNewFile(), equalTo(true));
+        diffStore = open();
+
+        assertThat(diffStore.get(1).getLeft().getData(), equalTo(bytes("left")));
+        diffStore.put(1, Side.RIGHT, side("right"));
+        diffStore.close();
+        diffStore = open();
+        assertThat(diffStore.get(1).getRight().getData(), equalTo(bytes("right")));
+    }
+
+    @Test
+    public void shouldOpenAnEmptyStoreWhenItsOnlySegmentIsTruncated() throws Exception {
+        try (RandomAccessFile file = new RandomAccessFile(new File(folder.getRoot(), "0000000000000001.seg"), "rw")) {
+            file.setLength(Segment.RECORD_HEADER_BYTES);
+        }
+
+        diffStore = open();
+
+        assertThat(diffStore.size(), equalTo(0));
+        diffStore.put(1, Side.LEFT, side("left"));
+        assertThat(diffStore.get(1).getLeft().getData(), equalTo(bytes("left")));
+    }
+
+    @Test
+    public void shouldGiveSidesLargerThanASegmentASegmentOfTheirOwn() throws Exception {
+        diffStore = open();
+        byte[] data = new byte[SEGMENT_SIZE * 3];
+        Arrays.fill(data, (byte) 'x');
+        diffStore.put(1, Side.LEFT, side("small"));
+        diffStore.put(2, Side.LEFT, DiffSide.of(data, CHUNK_SIZE));
+        diffStore.put(3, Side.LEFT, side("small"));
+
+        assertThat(diffStore.getSegmentCount(), equalTo(2));
+        diffStore.close();
+        diffStore = open();
+        assertThat(diffStore.get(2).getLeft().getData(), equalTo(data));
+        assertThat(diffStore.get(3).getLeft().getData(), equalTo(bytes("small")));
+    }
+
+    @Test
+    public void shouldReadSidesThroughMappedBuffers() throws Exception {
+        diffStore = open();
+        diffStore.put(1, Side.LEFT, side("left"));
+
+        assertThat(diffStore.get(1).getLeft().getBuffer().isDirect(), equalTo(true));
+    }
+
+    @Test
+    public void shouldRebuildHashTreesWhenSidesAreFirstReadAfterReopening() throws Exception {
+        diffStore = open();
+        diffStore.put(1, Side.LEFT, DiffSide.of(new byte[CHUNK_SIZE * 4], CHUNK_SIZE));
+        diffStore.close();
+        diffStore = open();
+
+        assertThat(diffStore.get(1).getLeft().getHashTree(), notNullValue());
+    }
+
+    @Test
+    public void shouldDeleteMostlySupersededSegmentsWhenCompacting() throws Exception {
+        diffStore = open();
+        for (int round = 0; round < 10; round++) {
+            for (int diffId = 0; diffId < 20; diffId++) {
+                diffStore.put(diffId, Side.LEFT, side("left" + diffId + "-" + round));
+            }
+        }
+        int segmentCount = diffStore.getSegmentCount();
+
+        diffStore.compact();
+
+        assertThat(diffStore.getSegmentCount() < segmentCount, equalTo(true));
+        assertThat(diffStore.getCompactionCount() > 0, equalTo(true));
+        assertThat(diffStore.get(5).getLeft().getData(), equalTo(bytes("left5-9")));
+        diffStore.close();
+        diffStore = open();
+        for (int diffId = 0; diffId < 20; diffId++) {
+            assertThat(diffStore.get(diffId).getLeft().getData(), equalTo(bytes("left" + diffId + "-9")));
+        }
+    }
+
+    @Test
+    public void shouldThrowWhenUpdatingASideThatWasNotSet() throws Exception {
+        diffStore = open();
+        diffStore.put(1, Side.LEFT, side("left"));
+
+        thrown.expect(IllegalStateException.class);
+        thrown.expectMessage("No right side data for ID 1");
+        diffStore.update(1, Side.RIGHT, current -> current);
+    }
+
+    private SegmentDiffStore open() throws IOException {
+        return new SegmentDiffStore(folder.getRoot().toPath(), SEGMENT_SIZE, false, CHUNK_SIZE,
+                COMPACTION_INTERVAL_MILLIS);
+    }
+
+    private static DiffSide side(String value) {
+        return DiffSide.of(bytes(value));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(Charset.forName("UTF-8"));
+    }
+
+}
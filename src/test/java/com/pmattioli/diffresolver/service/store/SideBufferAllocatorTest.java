@@ -0,0 +1,69 @@
+package com.pmattioli.diffresolver.service.store;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.pmattioli.diffresolver.service.codec.ByteStreams;
+
+public class SideBufferAllocatorTest {
+
+    private static final int THRESHOLD = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldAllocateOnTheHeapBelowTheThreshold() throws Exception {
+        SideBufferAllocator allocator = new SideBufferAllocator(SideBufferAllocator.Mode.DIRECT, THRESHOLD, null);
+
+        assertThat(allocator.allocate(THRESHOLD - 1).isDirect(), equalTo(false));
+        assertThat(allocator.allocate(THRESHOLD).isDirect(), equalTo(true));
+        assertThat(allocator.getOffHeapCount(), equalTo(1L));
+        assertThat(allocator.getOffHeapBytes(), equalTo((long) THRESHOLD));
+    }
+
+    @Test
+    public void shouldMapTemporaryFilesThatAreDeletedRightAway() throws Exception {
+        SideBufferAllocator allocator = new SideBufferAllocator(SideBufferAllocator.Mode.MAPPED, THRESHOLD,
+                folder.getRoot().toPath());
+
+        ByteBuffer buffer = allocator.allocate(THRESHOLD * 4);
+        buffer.putLong(THRESHOLD, 42L);
+
+        assertThat(buffer.isDirect(), equalTo(true));
+        assertThat(buffer.capacity(), equalTo(THRESHOLD * 4));
+        assertThat(buffer.getLong(THRESHOLD), equalTo(42L));
+        assertThat(folder.getRoot().list().length, equalTo(0));
+    }
+
+    @Test
+    public void shouldKeepPatchedSidesOffTheHeap() throws Exception {
+        SideBufferAllocator allocator = new SideBufferAllocator(SideBufferAllocator.Mode.MAPPED, THRESHOLD,
+                folder.getRoot().toPath());
+        byte[] data = new byte[THRESHOLD * 3];
+        new Random(7).nextBytes(data);
+        DiffSide side = DiffSide.of(ByteStreams.readFully(new ByteArrayInputStream(data), -1, allocator::allocate),
+                THRESHOLD / 4);
+
+        DiffSide patched = side.patch(THRESHOLD, new byte[] { 1, 2, 3 }, allocator::allocate);
+        data[THRESHOLD] = 1;
+        data[THRESHOLD + 1] = 2;
+        data[THRESHOLD + 2] = 3;
+
+        assertThat(side.getBuffer().isDirect(), equalTo(true));
+        assertThat(patched.getBuffer().isDirect(), equalTo(true));
+        assertThat(patched.getData(), equalTo(data));
+        assertThat(patched.getDigest(), equalTo(DiffSide.of(data, THRESHOLD / 4).getDigest()));
+        assertThat(patched.getHashTree().visitDifferingRanges(DiffSide.of(data, THRESHOLD / 4).getHashTree(), 0,
+                data.length, (from, to) -> false), equalTo(true));
+    }
+
+}